@@ -0,0 +1,390 @@
+package ru.innova.task.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Общая часть очередей {@link ReorderBuffer}, которые не используют блокировок.
+ * </p>
+ *
+ * <p>
+ * Извлекать числа должен только один поток. Очередное число он хранит в поле {@link #min},
+ * которое читает и пишет только он сам. Засыпает он, только если очередного числа еще нет.
+ * Поток, поместивший в очередь ожидаемое число, должен вызвать {@link #signal(long)}.
+ * </p>
+ *
+ * <p>
+ * Очередь может быть ограничена окном: число, которое отстоит от начала окна на его размер
+ * или дальше, не помещается в очередь, пока окно не сдвинется. Метод {@link #putLong(long)}
+ * при этом блокируется, поэтому {@link Receiver}, помещающий числа, перестает читать
+ * сокет, и отправитель упирается в управление потоком TCP. Начало окна сдвигает
+ * наследник вызовом {@link #advanceWindow(long)}. Ожидание окна - редкий случай,
+ * поэтому для него используются обычная блокировка и условие.
+ * </p>
+ *
+ * <p>
+ * Пропуск чисел (см. {@link #skipTo(long)}) только запоминает новое очередное число и будит
+ * поток, извлекающий числа; сам пропуск выполняет этот поток методом {@link #skip(long)}
+ * перед проверкой очередного числа, так что очередное число по-прежнему меняет только он.
+ * </p>
+ *
+ * <p>
+ * Наследник отвечает только за хранение отметок о пришедших числах
+ * (методы {@link #insert(long)}, {@link #isReady()}, {@link #take(int)} и {@link #skip(long)}).
+ * </p>
+ *
+ * @author sergey
+ */
+public abstract class AbstractReorderBuffer implements ReorderBuffer {
+    /**
+     * Размер окна, при котором окно не ограничено.
+     */
+    public static final int UNLIMITED_WINDOW = Integer.MAX_VALUE;
+    /**
+     * Наибольшее окно.
+     */
+    protected final int maxWindow;
+    /**
+     * Очередное число. Поле читает и пишет только поток, извлекающий числа.
+     */
+    protected long min;
+    /**
+     * Поток, ожидающий очередное число, и само ожидаемое число.
+     */
+    private volatile Thread waiter;
+    private volatile long expected;
+    /**
+     * Начало окна и количество потоков, ожидающих его сдвига.
+     */
+    private volatile long windowStart;
+    private volatile int stalled;
+    private final ReentrantLock windowLock;
+    private final Condition windowMoved;
+    /**
+     * Число, до которого надо пропустить числа, количество пропущенных и количество
+     * отброшенных чисел.
+     */
+    private final AtomicLong skipTarget;
+    private volatile long skipped;
+    private final AtomicLong duplicates;
+
+    /**
+     * Создает объект
+     *
+     * @param maxWindow наибольшее окно или {@link #UNLIMITED_WINDOW}
+     * @param firstValue первое ожидаемое значение
+     */
+    protected AbstractReorderBuffer(int maxWindow, long firstValue) {
+        if (maxWindow <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect window %d", maxWindow));
+        }
+        this.maxWindow = maxWindow;
+        this.min = firstValue;
+        this.waiter = null;
+        this.windowStart = firstValue;
+        this.stalled = 0;
+        this.windowLock = new ReentrantLock();
+        this.windowMoved = windowLock.newCondition();
+        this.skipTarget = new AtomicLong(firstValue);
+        this.skipped = 0;
+        this.duplicates = new AtomicLong(0);
+    }
+
+    /**
+     * Отметить, что число пришло.
+     *
+     * @param value число, которое помещается в окно
+     * @return <code>false</code>, если число уже приходило или меньше очередного
+     */
+    protected abstract boolean insert(long value);
+
+    /**
+     * Узнать, пришло ли очередное число. Вызывается только потоком, извлекающим числа.
+     *
+     * @return <code>true</code>, если число {@link #min} пришло
+     */
+    protected abstract boolean isReady();
+
+    /**
+     * Извлечь идущие подряд числа, начиная с очередного, о котором известно, что оно пришло.
+     * Метод должен увеличить {@link #min} на количество извлеченных чисел.
+     * Вызывается только потоком, извлекающим числа.
+     *
+     * @param maxCount наибольшее количество извлекаемых чисел, не меньше 1
+     * @return количество извлеченных чисел, не меньше 1
+     */
+    protected abstract int take(int maxCount);
+
+    /**
+     * Пропустить числа от очередного до указанного: отметить их пришедшими и извлеченными,
+     * увеличить {@link #min} до указанного числа и сдвинуть окно. Вызывается только потоком,
+     * извлекающим числа.
+     *
+     * @param value новое очередное число, больше {@link #min}
+     */
+    protected abstract void skip(long value);
+
+    /**
+     * Сдвинуть начало окна. Вызывается только потоком, извлекающим числа.
+     *
+     * @param start новое начало окна, не больше {@link #min}
+     */
+    protected final void advanceWindow(long start) {
+        windowStart = start;
+        if (stalled > 0) {
+            windowLock.lock();
+            try {
+                windowMoved.signalAll();
+            } finally {
+                windowLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Положить число в очередь. Если число не помещается в окно, метод ждет,
+     * пока окно сдвинется. Число, которое уже приходило или меньше очередного, отбрасывается.
+     */
+    @Override
+    public void putLong(long value) throws InterruptedException {
+        if (value - windowStart >= maxWindow) {
+            awaitWindow(value);
+        }
+        add(value);
+    }
+
+    /**
+     * Положить число в очередь, если оно помещается в окно. Число, которое уже приходило
+     * или меньше очередного, отбрасывается.
+     *
+     * @return <code>false</code>, если число не помещается в окно
+     */
+    @Override
+    public boolean offerLong(long value) {
+        if (value - windowStart >= maxWindow) {
+            return false;
+        }
+        add(value);
+        return true;
+    }
+
+    @Override
+    public void skipTo(long value) {
+        for (long current = skipTarget.get(); value > current; current = skipTarget.get()) {
+            if (skipTarget.compareAndSet(current, value)) {
+                Thread consumer = waiter;
+                if (consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * Узнать, ждет ли какой-нибудь поток сдвига окна, т.е. остановлен ли прием чисел.
+     *
+     * @return <code>true</code>, если хотя бы один поток ждет сдвига окна
+     */
+    @Override
+    public boolean isStalled() {
+        return stalled > 0;
+    }
+
+    @Override
+    public long takeLong() throws InterruptedException {
+        awaitReady();
+        long value = min;
+        take(1);
+        return value;
+    }
+
+    @Override
+    public long pollLong() {
+        if (!ready()) {
+            return ProtocolConstants.NONE_VALUE;
+        }
+        long value = min;
+        take(1);
+        return value;
+    }
+
+    @Override
+    public long pollLong(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (!awaitReady(timeUnit.toNanos(timeout))) {
+            return ProtocolConstants.NONE_VALUE;
+        }
+        long value = min;
+        take(1);
+        return value;
+    }
+
+    @Override
+    public int drainTo(long[] into) {
+        return drainTo(into, 0, into.length);
+    }
+
+    @Override
+    public int drainTo(long[] into, int offset, int maxElements) {
+        int n = 0;
+        while (n < maxElements && ready()) {
+            long first = min;
+            int count = take(maxElements - n);
+            for (int i = 0; i < count; i++) {
+                into[offset + n++] = first + i;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void takeRun(SequenceRange into, int maxCount) throws InterruptedException {
+        awaitReady();
+        long first = min;
+        into.set(first, take(maxCount));
+    }
+
+    @Override
+    public boolean pollRun(SequenceRange into, int maxCount, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (!awaitReady(timeUnit.toNanos(timeout))) {
+            into.set(min, 0);
+            return false;
+        }
+        long first = min;
+        into.set(first, take(maxCount));
+        return true;
+    }
+
+    /**
+     * Узнать, сколько еще чисел можно положить в очередь без ожидания.
+     * Поскольку числа помещаются вразнобой, метод возвращает {@link Integer#MAX_VALUE}:
+     * поместится ли число в окно, зависит от самого числа.
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    private void add(long value) {
+        if (insert(value)) {
+            signal(value);
+        } else {
+            duplicates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Пропустить числа, если это нужно, и узнать, пришло ли очередное число.
+     * Вызывается только потоком, извлекающим числа.
+     */
+    private boolean ready() {
+        long target = skipTarget.get();
+        if (target > min) {
+            skipped += target - min;
+            skip(target);
+        }
+        return isReady();
+    }
+
+    /**
+     * Разбудить поток, извлекающий числа, если он ждет указанное число.
+     */
+    private void signal(long value) {
+        Thread consumer = waiter;
+        if (consumer != null && value == expected) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Дождаться, пока число поместится в окно.
+     */
+    private void awaitWindow(long value) throws InterruptedException {
+        windowLock.lockInterruptibly();
+        try {
+            stalled++;
+            try {
+                while (value - windowStart >= maxWindow) {
+                    windowMoved.await();
+                }
+            } finally {
+                stalled--;
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    /**
+     * Дождаться очередного числа.
+     */
+    private void awaitReady() throws InterruptedException {
+        if (ready()) {
+            return;
+        }
+        waiter = Thread.currentThread();
+        try {
+            while (!ready()) {
+                // ready() может пропустить числа и сдвинуть очередное число
+                expected = min;
+                if (ready()) {
+                    break;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Дождаться очередного числа, но не дольше указанного времени.
+     *
+     * @param timeout время ожидания в наносекундах
+     * @return <code>true</code>, если число пришло
+     */
+    private boolean awaitReady(long timeout) throws InterruptedException {
+        if (ready()) {
+            return true;
+        }
+        long deadline = System.nanoTime() + timeout;
+        waiter = Thread.currentThread();
+        try {
+            while (!ready()) {
+                // ready() может пропустить числа и сдвинуть очередное число
+                expected = min;
+                if (ready()) {
+                    break;
+                }
+                long nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, nanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+package ru.innova.task.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Запись чисел в {@link GroupCommitWriter} отдельным потоком через два сменяемых буфера.
+ * </p>
+ *
+ * <p>
+ * Поток, добавляющий числа, пишет их в свой (активный) буфер без блокировок. Заполненный буфер
+ * передается потоку записи, а добавление продолжается во второй буфер. Поток записи форматирует
+ * числа переданного буфера в файл, фиксирует их по правилу {@link DurabilityPolicy} и возвращает
+ * буфер. Добавляющий поток ждет, только если оба буфера заполнены, т.е. диск не успевает
+ * за генерацией.
+ * </p>
+ *
+ * <p>
+ * Неполный буфер передается только по {@link #flush()} или после задержки группировки: поток
+ * записи, пробыв свободным заданное время, выставляет запрос, и следующее добавленное число
+ * передает буфер вместе со всеми накопленными. Так при небольшом потоке чисел они не задерживаются
+ * в буфере надолго, а при большом файл пишется целыми буферами, а не по одному числу.
+ * </p>
+ *
+ * <p>
+ * Числа добавляет только один поток. Передача буфера - запись в поле <code>volatile</code>,
+ * ожидающие потоки будятся через {@link LockSupport}.
+ * </p>
+ *
+ * @author sergey
+ */
+public class AsyncLongWriter implements Closeable {
+    /**
+     * Размер буфера по умолчанию.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Задержка группировки по умолчанию, мс.
+     */
+    public static final long DEFAULT_BATCH_DELAY = 10;
+    private static final long IDLE_TIMEOUT = 500;
+    private final GroupCommitWriter output;
+    private final Buffer first;
+    private final Buffer second;
+    private final long batchDelay;
+    private final Thread writer;
+    /**
+     * Буфер, в который добавляет числа добавляющий поток.
+     */
+    private Buffer active;
+    /**
+     * Буфер, переданный потоку записи, или <code>null</code>, если поток записи свободен.
+     */
+    private volatile Buffer pending;
+    /**
+     * Запрос потока записи передать ему неполный буфер.
+     */
+    private volatile boolean requested;
+    private volatile Thread waiter;
+    private volatile boolean closed;
+    private volatile IOException error;
+
+    /**
+     * Создает объект с задержкой группировки по умолчанию и запускает поток записи.
+     *
+     * @param output файл, в который записываются числа
+     * @param bufferSize количество чисел в одном буфере
+     * @param name имя потока записи
+     */
+    public AsyncLongWriter(GroupCommitWriter output, int bufferSize, String name) {
+        this(output, bufferSize, DEFAULT_BATCH_DELAY, name);
+    }
+
+    /**
+     * Создает объект и запускает поток записи.
+     *
+     * @param output файл, в который записываются числа
+     * @param bufferSize количество чисел в одном буфере
+     * @param batchDelay задержка группировки, мс: сколько поток записи ждет, прежде чем
+     *     запросить неполный буфер
+     * @param name имя потока записи
+     */
+    public AsyncLongWriter(GroupCommitWriter output, int bufferSize, long batchDelay, String name) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect buffer size %d", bufferSize));
+        }
+        if (batchDelay <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect batch delay %d", batchDelay));
+        }
+        this.output = output;
+        this.first = new Buffer(bufferSize);
+        this.second = new Buffer(bufferSize);
+        this.batchDelay = TimeUnit.MILLISECONDS.toNanos(batchDelay);
+        this.active = first;
+        this.pending = null;
+        this.requested = false;
+        this.waiter = null;
+        this.closed = false;
+        this.error = null;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Добавить число. Буфер передается потоку записи, только если он заполнен или поток записи
+     * его запросил. Метод ждет, только если оба буфера заполнены.
+     *
+     * @param value число
+     * @throws IOException если поток записи завершился с ошибкой
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    public void append(long value) throws IOException, InterruptedException {
+        if (active.count == active.values.length) {
+            handOver(true);
+        }
+        active.values[active.count++] = value;
+        if (requested) {
+            handOver(false);
+        }
+    }
+
+    /**
+     * Передать потоку записи все добавленные числа, дождавшись, если нужно, пока он освободится.
+     *
+     * @throws IOException если поток записи завершился с ошибкой
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    public void flush() throws IOException, InterruptedException {
+        if (active.count > 0) {
+            handOver(true);
+        }
+    }
+
+    /**
+     * Записать все добавленные числа, дождаться завершения потока записи и закрыть файл.
+     * Повторный вызов ничего не делает.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            closed = true;
+            LockSupport.unpark(writer);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        } finally {
+            output.close();
+        }
+        checkError();
+    }
+
+    @Override
+    public String toString() {
+        return output.toString();
+    }
+
+    /**
+     * Передать активный буфер потоку записи и начать второй буфер.
+     *
+     * @param wait ждать ли, пока поток записи освободится
+     */
+    private void handOver(boolean wait) throws IOException, InterruptedException {
+        if (pending != null) {
+            if (!wait) {
+                return;
+            }
+            waiter = Thread.currentThread();
+            try {
+                while (pending != null) {
+                    checkError();
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+        checkError();
+        requested = false;
+        pending = active;
+        LockSupport.unpark(writer);
+        active = active == first ? second : first;
+    }
+
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null) {
+            throw new IOException("Writer thread failed", e);
+        }
+    }
+
+    /**
+     * Цикл потока записи.
+     */
+    private void write() {
+        try {
+            while (true) {
+                Buffer buffer = pending;
+                if (buffer == null) {
+                    if (closed) {
+                        break;
+                    }
+                    if (!requested) {
+                        // даем числам накопиться, потом просим неполный буфер
+                        LockSupport.parkNanos(this, batchDelay);
+                        if (pending == null) {
+                            requested = true;
+                        }
+                        continue;
+                    }
+                    long timeout = output.getIdleTimeout(IDLE_TIMEOUT);
+                    if (timeout > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout));
+                    }
+                    if (pending == null && output.hasPending()) {
+                        output.commit();
+                    }
+                    continue;
+                }
+                for (int i = 0; i < buffer.count; i++) {
+                    output.appendLong(buffer.values[i]);
+                }
+                if (output.isCommitDue()) {
+                    output.commit();
+                }
+                buffer.count = 0;
+                pending = null;
+                Thread producer = waiter;
+                if (producer != null) {
+                    LockSupport.unpark(producer);
+                }
+            }
+            output.commit();
+        } catch (IOException e) {
+            error = e;
+            Thread producer = waiter;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    /**
+     * Буфер чисел.
+     */
+    private static final class Buffer {
+        final long[] values;
+        int count;
+
+        Buffer(int size) {
+            this.values = new long[size];
+            this.count = 0;
+        }
+    }
+}
@@ -1,28 +1,38 @@
 package ru.innova.task.common;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * Реализация интерфейса {@link DataController} при помощи атомарных целых чисел.
+ * Реализация интерфейса {@link DataController} при помощи атомарных чисел типа <code>long</code>.
  * 
  * @author sergey
  */
 public class AtomicDataController implements DataController {
-    protected final AtomicInteger lastProduced;
-    protected final AtomicInteger lastSaved;
+    protected final AtomicLong lastProduced;
+    protected final AtomicLong lastSaved;
 
     /**
      * Создает объект данного класса
      */
     public AtomicDataController() {
-        this.lastProduced = new AtomicInteger(ProtocolConstants.NONE_VALUE);
-        this.lastSaved = new AtomicInteger(ProtocolConstants.NONE_VALUE);
+        this(ProtocolConstants.NONE_VALUE, ProtocolConstants.NONE_VALUE);
+    }
+
+    /**
+     * Создает объект данного класса, продолжающий отсчет с указанных значений
+     *
+     * @param lastProduced самое большое сгенерированное значение
+     * @param lastSaved самое большое сохраненное значение
+     */
+    public AtomicDataController(long lastProduced, long lastSaved) {
+        this.lastProduced = new AtomicLong(lastProduced);
+        this.lastSaved = new AtomicLong(lastSaved);
     }
     
     @Override
-    public void saved(Integer value) {
-        for (int current = lastSaved.get(); ; current = lastSaved.get()) {
+    public void saved(long value) {
+        for (long current = lastSaved.get(); ; current = lastSaved.get()) {
             if (value <= current) {
                 return;
             }
@@ -33,8 +43,8 @@ public class AtomicDataController implements DataController {
     }
     
     @Override
-    public void produced(Integer value) {
-        for (int current = lastProduced.get(); ; current = lastProduced.get()) {
+    public void produced(long value) {
+        for (long current = lastProduced.get(); ; current = lastProduced.get()) {
             if (value <= current) {
                 return;
             }
@@ -0,0 +1,221 @@
+package ru.innova.task.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <p>
+ * Очередь {@link ReorderBuffer}, в которой отметки о пришедших числах хранятся
+ * битами в словах типа <code>long</code>: одно число занимает один бит, а не ячейку
+ * типа <code>int</code>, как в {@link RingQueue}.
+ * </p>
+ *
+ * <p>
+ * Слова хранятся в цепочке сегментов фиксированного размера. Поток, помещающий число,
+ * устанавливает свой бит операцией compare-and-set над словом. Бит не сбрасывается
+ * и после извлечения числа: все числа сегмента меньше очередного уже извлечены,
+ * поэтому установленный бит в таком месте означает повторно пришедшее число.
+ * Извлекающий поток берет сразу все идущие подряд установленные биты слова.
+ * </p>
+ *
+ * <p>
+ * Сегменты, все числа которых извлечены, отцепляются от начала цепочки, так что после
+ * всплеска перестановок очередь снова занимает столько памяти, сколько нужно для
+ * текущего окна. При пропуске чисел за конец цепочки к ней сразу добавляется сегмент
+ * с пропускаемым числом, а промежуточные сегменты не создаются. Наибольшее окно задается при создании (см. {@link AbstractReorderBuffer});
+ * начало окна совпадает с началом первого сегмента цепочки.
+ * </p>
+ *
+ * @author sergey
+ */
+public class BitmapReorderBuffer extends AbstractReorderBuffer {
+    /**
+     * Количество чисел в одном сегменте по умолчанию.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4096;
+    private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+    private final int segmentSize;
+    /**
+     * Первый сегмент цепочки для потоков, помещающих числа. Меняется только при переходе
+     * к следующему сегменту.
+     */
+    private volatile Segment head;
+    /**
+     * Первый сегмент цепочки для потока, извлекающего числа. Поле читает и пишет только он.
+     */
+    private Segment takeSegment;
+
+    /**
+     * Конструктор по умолчанию. Создает очередь с неограниченным окном и начальным значением 0.
+     */
+    public BitmapReorderBuffer() {
+        this(DEFAULT_SEGMENT_SIZE, UNLIMITED_WINDOW, 0);
+    }
+
+    /**
+     * Создает очередь с указанными параметрами.
+     *
+     * @param segmentSize количество чисел в одном сегменте, кратное 64
+     * @param maxWindow наибольшее окно, не меньше двух сегментов, или {@link #UNLIMITED_WINDOW}
+     * @param firstValue первое ожидаемое значение
+     */
+    public BitmapReorderBuffer(int segmentSize, int maxWindow, long firstValue) {
+        super(maxWindow, firstValue);
+        if (segmentSize <= 0 || segmentSize % Long.SIZE != 0) {
+            throw new IllegalArgumentException(String.format("Incorrect segment size %d", segmentSize));
+        }
+        if (maxWindow / 2 < segmentSize) {
+            throw new IllegalArgumentException(String.format("Window %d must be at least twice the segment size %d", maxWindow, segmentSize));
+        }
+        this.segmentSize = segmentSize;
+        this.takeSegment = new Segment(firstValue, segmentSize);
+        this.head = takeSegment;
+    }
+
+    /**
+     * Узнать количество чисел в очереди. Метод просматривает все сегменты,
+     * поэтому предназначен только для диагностики.
+     */
+    @Override
+    public int size() {
+        Segment segment = head;
+        int result = -(int) (min - segment.base);
+        for (; segment != null; segment = segment.next) {
+            for (int i = 0; i < segment.words.length(); i++) {
+                result += Long.bitCount(segment.words.get(i));
+            }
+        }
+        return Math.max(result, 0);
+    }
+
+    @Override
+    protected boolean insert(long value) {
+        Segment segment = head;
+        if (value < segment.base) {
+            return false;
+        }
+        while (value - segment.base >= segmentSize) {
+            segment = nextOf(segment);
+        }
+        if (value < segment.base) {
+            // число попало в пропущенный промежуток цепочки
+            return false;
+        }
+        int offset = (int) (value - segment.base);
+        return setBits(segment, offset >>> 6, 1L << offset);
+    }
+
+    @Override
+    protected boolean isReady() {
+        int offset = (int) (min - takeSegment.base);
+        return (takeSegment.words.get(offset >>> 6) & (1L << offset)) != 0;
+    }
+
+    /**
+     * Извлечь идущие подряд числа. Числа берутся сразу целыми группами установленных битов.
+     */
+    @Override
+    protected int take(int maxCount) {
+        int count = 0;
+        while (count < maxCount) {
+            int offset = (int) (min - takeSegment.base);
+            long word = takeSegment.words.get(offset >>> 6) >>> offset;
+            int present = Long.numberOfTrailingZeros(~word);
+            if (present == 0) {
+                break;
+            }
+            int n = Math.min(present, maxCount - count);
+            min += n;
+            count += n;
+            if (offset + n == segmentSize) {
+                takeSegment = nextOf(takeSegment);
+                head = takeSegment;
+                advanceWindow(takeSegment.base);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Пропустить числа до указанного. Биты пропущенных чисел в последнем сегменте
+     * устанавливаются, поэтому пришедшие позже пропущенные числа отбрасываются как повторные.
+     * Вызывается только потоком, извлекающим числа.
+     */
+    @Override
+    protected void skip(long value) {
+        Segment segment = takeSegment;
+        while (value - segment.base >= segmentSize) {
+            Segment next = segment.next;
+            if (next == null) {
+                Segment created = new Segment(value - (value - segment.base) % segmentSize, segmentSize);
+                next = NEXT.compareAndSet(segment, null, created) ? created : segment.next;
+            }
+            segment = next;
+        }
+        if (segment != takeSegment) {
+            takeSegment = segment;
+            head = segment;
+            advanceWindow(segment.base);
+            min = Math.max(min, segment.base);
+        }
+        int from = (int) (min - segment.base);
+        int to = (int) (value - segment.base);
+        for (int offset = from; offset < to; offset = (offset | 63) + 1) {
+            int end = Math.min(to, (offset | 63) + 1);
+            long bits = (end - offset == Long.SIZE ? -1L : (1L << (end - offset)) - 1) << offset;
+            setBits(segment, offset >>> 6, bits);
+        }
+        min = value;
+    }
+
+    /**
+     * Установить биты в слове сегмента.
+     *
+     * @return <code>false</code>, если хотя бы один из битов уже был установлен
+     */
+    private static boolean setBits(Segment segment, int index, long bits) {
+        for (long word = segment.words.get(index); ; word = segment.words.get(index)) {
+            if ((word | bits) == word) {
+                return false;
+            }
+            if (segment.words.compareAndSet(index, word, word | bits)) {
+                return (word & bits) == 0;
+            }
+        }
+    }
+
+    private Segment nextOf(Segment segment) {
+        Segment result = segment.next;
+        if (result == null) {
+            Segment created = new Segment(segment.base + segmentSize, segmentSize);
+            if (NEXT.compareAndSet(segment, null, created)) {
+                result = created;
+            } else {
+                result = segment.next;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BitmapReorderBuffer[head=%d, window=%d]", head.base, maxWindow);
+    }
+
+    /**
+     * Участок очереди, в котором хранятся отметки о числах от {@link #base}
+     * до <code>base + segmentSize - 1</code>.
+     */
+    private static final class Segment {
+        final long base;
+        final AtomicLongArray words;
+        volatile Segment next;
+
+        Segment(long base, int size) {
+            this.base = base;
+            this.words = new AtomicLongArray(size / Long.SIZE);
+            this.next = null;
+        }
+    }
+}
@@ -25,14 +25,14 @@ public interface DataController {
      * 
      * @param value полученное значение
      */
-    void saved(Integer value);
+    void saved(long value);
 
     /**
      * Зафиксировать сгенерированное значение.
      * 
      * @param value сгенерированное значение
      */
-    void produced(Integer value);
+    void produced(long value);
     
     /**
      * Узнать, все ли сгенерированные значения сохраненны.
@@ -11,12 +11,12 @@ public class DummyDataController implements DataController {
     private static DummyDataController instance = null;
     
     @Override
-    public void saved(Integer value) {
+    public void saved(long value) {
         // do nothing
     }
     
     @Override
-    public void produced(Integer value) {
+    public void produced(long value) {
         // do nothing
     }
     
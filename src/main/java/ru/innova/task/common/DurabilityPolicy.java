@@ -0,0 +1,110 @@
+package ru.innova.task.common;
+
+/**
+ * <p>
+ * Правило, по которому данные, записанные в выходной файл, фиксируются
+ * (см. {@link GroupCommitWriter}).
+ * </p>
+ *
+ * <p>
+ * Записи накапливаются в буфере и фиксируются группой, когда выполняется
+ * хотя бы одно из условий:
+ * </p>
+ * <ul>
+ * <li>накоплено не меньше {@link #getMaxRecords()} записей;</li>
+ * <li>с первой незафиксированной записи прошло не меньше {@link #getMaxDelayMillis()} миллисекунд;</li>
+ * <li>новых данных нет, и задана фиксация при простое ({@link #isCommitOnIdle()}).</li>
+ * </ul>
+ *
+ * <p>
+ * При фиксации буфер записывается в файл, а если задано {@link #isForce()},
+ * то данные еще и сбрасываются на диск методом {@link java.nio.channels.FileChannel#force(boolean)}.
+ * </p>
+ *
+ * <p>
+ * Правило можно задать системными свойствами (см. {@link #fromSystemProperties()}):
+ * </p>
+ * <ul>
+ * <li><code>output.flush.records</code> - наибольшее количество записей в группе, по умолчанию 1,
+ *     0 - не ограничено;</li>
+ * <li><code>output.flush.millis</code> - наибольшая задержка фиксации, по умолчанию 0 - не ограничена;</li>
+ * <li><code>output.flush.idle</code> - фиксировать при простое, по умолчанию <code>true</code>;</li>
+ * <li><code>output.force</code> - сбрасывать данные на диск, по умолчанию <code>false</code>.</li>
+ * </ul>
+ *
+ * @author sergey
+ */
+public final class DurabilityPolicy {
+    private final int maxRecords;
+    private final long maxDelayMillis;
+    private final boolean commitOnIdle;
+    private final boolean force;
+
+    /**
+     * Создает объект с указанными параметрами.
+     *
+     * @param maxRecords наибольшее количество записей в группе или 0, если не ограничено
+     * @param maxDelayMillis наибольшая задержка фиксации или 0, если не ограничена
+     * @param commitOnIdle фиксировать ли данные при простое
+     * @param force сбрасывать ли данные на диск при фиксации
+     */
+    public DurabilityPolicy(int maxRecords, long maxDelayMillis, boolean commitOnIdle, boolean force) {
+        if (maxRecords < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect number of records %d", maxRecords));
+        }
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect delay %d", maxDelayMillis));
+        }
+        this.maxRecords = maxRecords;
+        this.maxDelayMillis = maxDelayMillis;
+        this.commitOnIdle = commitOnIdle;
+        this.force = force;
+    }
+
+    /**
+     * Создать правило, заданное системными свойствами.
+     *
+     * @return новое правило
+     * @throws IllegalArgumentException если свойства заданы неверно
+     */
+    public static DurabilityPolicy fromSystemProperties() {
+        int records = Integer.getInteger("output.flush.records", 1);
+        long millis = Long.getLong("output.flush.millis", 0L);
+        boolean idle = Boolean.parseBoolean(System.getProperty("output.flush.idle", "true"));
+        boolean force = Boolean.getBoolean("output.force");
+        return new DurabilityPolicy(records, millis, idle, force);
+    }
+
+    /**
+     * @return наибольшее количество записей в группе или 0, если не ограничено
+     */
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * @return наибольшая задержка фиксации в миллисекундах или 0, если не ограничена
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @return <code>true</code>, если данные фиксируются при простое
+     */
+    public boolean isCommitOnIdle() {
+        return commitOnIdle;
+    }
+
+    /**
+     * @return <code>true</code>, если при фиксации данные сбрасываются на диск
+     */
+    public boolean isForce() {
+        return force;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("records=%d, millis=%d, idle=%b, force=%b", maxRecords, maxDelayMillis, commitOnIdle, force);
+    }
+}
@@ -0,0 +1,454 @@
+package ru.innova.task.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Текстовый выходной файл, записи в который фиксируются группами по правилу {@link DurabilityPolicy}.
+ * </p>
+ *
+ * <p>
+ * Каждая запись - число в десятичной записи и разделитель строк {@link System#lineSeparator()},
+ * т.е. файл совпадает с тем, что записал бы {@link java.io.PrintWriter#println(long)}. Число
+ * форматируется сразу в байты буфера, который записывается в {@link FileChannel}, так что
+ * при записи не создаются ни строки, ни другие объекты.
+ * </p>
+ *
+ * <p>
+ * Записи, добавленные методом {@link #appendLong(long)}, считаются зафиксированными только
+ * после вызова {@link #commit()}. Вызывающий поток сам решает, когда фиксировать данные, спрашивая
+ * {@link #isCommitDue()} после добавления записей и {@link #getIdleTimeout(long)} перед ожиданием
+ * новых данных. Так он может сообщать о сохранении данных только после их фиксации.
+ * </p>
+ *
+ * <p>
+ * Если задано правило {@link RollingPolicy}, файл делится на сегменты с именами
+ * <code>&lt;имя&gt;.000000.&lt;расширение&gt;</code>, <code>&lt;имя&gt;.000001.&lt;расширение&gt;</code>
+ * и т.д. (см. {@link #segmentName(String, int)}), и рядом с каждым сегментом пишется
+ * его индекс {@link SegmentIndex}. Новый сегмент начинается только на границе записей.
+ * </p>
+ *
+ * <p>
+ * Объект не является потокобезопасным.
+ * </p>
+ *
+ * @author sergey
+ */
+public class GroupCommitWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MIN_VALUE_TEXT = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    private static final long[] POWERS_OF_TEN = {
+        10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+        10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+    private static final int INDEX_BUFFER_SIZE = SegmentIndex.ENTRY_SIZE * 256;
+    private final DurabilityPolicy policy;
+    private final RollingPolicy rolling;
+    private final String fileName;
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    private final byte[] lineSeparator;
+    private final int maxRecordLength;
+    private final ByteBuffer indexBuffer;
+    private FileOutputStream stream;
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private int segmentIndex;
+    private long segmentBytes;
+    private long segmentRecords;
+    private int pendingRecords;
+    private long firstPendingTime;
+    private long commits;
+    private long committedRecords;
+
+    /**
+     * Создает файл с указанным именем, который не делится на сегменты.
+     * Существующий файл перезаписывается.
+     *
+     * @param fileName имя файла
+     * @param policy правило фиксации данных
+     * @throws IOException при ошибке создания файла
+     */
+    public GroupCommitWriter(String fileName, DurabilityPolicy policy) throws IOException {
+        this(fileName, policy, new RollingPolicy(0, 0, 0, RollingPolicy.DEFAULT_INDEX_INTERVAL));
+    }
+
+    /**
+     * Создает файл с указанным именем. Существующий файл перезаписывается,
+     * сегменты с тем же именем, оставшиеся от прежнего запуска, удаляются.
+     *
+     * @param fileName имя файла
+     * @param policy правило фиксации данных
+     * @param rolling правило деления файла на сегменты
+     * @throws IOException при ошибке создания файла
+     */
+    public GroupCommitWriter(String fileName, DurabilityPolicy policy, RollingPolicy rolling) throws IOException {
+        this(fileName, policy, rolling, false);
+    }
+
+    /**
+     * Создает или открывает файл с указанным именем.
+     *
+     * @param fileName имя файла
+     * @param policy правило фиксации данных
+     * @param rolling правило деления файла на сегменты
+     * @param append <code>true</code> - дописывать существующий файл, а если он делится на сегменты,
+     *     то начать сегмент, следующий за последним существующим;
+     *     <code>false</code> - перезаписать файл и удалить существующие сегменты
+     * @throws IOException при ошибке создания файла
+     */
+    public GroupCommitWriter(String fileName, DurabilityPolicy policy, RollingPolicy rolling, boolean append) throws IOException {
+        this.policy = policy;
+        this.rolling = rolling;
+        this.fileName = fileName;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.bytes = buffer.array();
+        this.lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+        this.maxRecordLength = MIN_VALUE_TEXT.length + lineSeparator.length;
+        this.indexBuffer = ByteBuffer.allocate(INDEX_BUFFER_SIZE);
+        this.segmentIndex = 0;
+        if (rolling.isEnabled()) {
+            if (append) {
+                segmentIndex = lastSegment(fileName) + 1;
+            } else {
+                // после удаления старых сегментов правилом хранения номера начинаются не с 0
+                for (int i = lastSegment(fileName); i >= 0; i--) {
+                    delete(i);
+                }
+            }
+        }
+        open(append);
+        this.pendingRecords = 0;
+        this.commits = 0;
+        this.committedRecords = 0;
+    }
+
+    /**
+     * Добавить в файл одну запись без фиксации.
+     *
+     * @param value число
+     * @throws IOException при ошибке записи
+     */
+    public void appendLong(long value) throws IOException {
+        if (rolling.isEnabled() && isSegmentFull()) {
+            roll();
+        }
+        if (buffer.remaining() < maxRecordLength) {
+            drain();
+        }
+        if (pendingRecords == 0) {
+            firstPendingTime = System.nanoTime();
+        }
+        if (rolling.isEnabled() && segmentRecords % rolling.getIndexInterval() == 0) {
+            mark(value, segmentBytes + buffer.position());
+        }
+        int position = buffer.position();
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_VALUE_TEXT, 0, bytes, position, MIN_VALUE_TEXT.length);
+            position += MIN_VALUE_TEXT.length;
+        } else {
+            if (value < 0) {
+                bytes[position++] = '-';
+                value = -value;
+            }
+            int end = position + digits(value);
+            for (int i = end - 1; i >= position; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position = end;
+        }
+        for (byte b: lineSeparator) {
+            bytes[position++] = b;
+        }
+        buffer.position(position);
+        pendingRecords++;
+        segmentRecords++;
+    }
+
+    /**
+     * Узнать, есть ли незафиксированные записи.
+     *
+     * @return <code>true</code>, если есть незафиксированные записи
+     */
+    public boolean hasPending() {
+        return pendingRecords > 0;
+    }
+
+    /**
+     * Узнать, пора ли фиксировать данные по количеству записей или по времени.
+     *
+     * @return <code>true</code>, если данные пора фиксировать
+     */
+    public boolean isCommitDue() {
+        if (pendingRecords == 0) {
+            return false;
+        }
+        if (policy.getMaxRecords() > 0 && pendingRecords >= policy.getMaxRecords()) {
+            return true;
+        }
+        return policy.getMaxDelayMillis() > 0 && getDelayLeft() <= 0;
+    }
+
+    /**
+     * Узнать, сколько можно ждать новых данных, прежде чем зафиксировать уже добавленные.
+     *
+     * @param defaultTimeout время ожидания в миллисекундах, если незафиксированных записей нет
+     *     или правило не ограничивает ожидание
+     * @return время ожидания в миллисекундах
+     */
+    public long getIdleTimeout(long defaultTimeout) {
+        if (pendingRecords == 0) {
+            return defaultTimeout;
+        }
+        if (policy.isCommitOnIdle()) {
+            return 0;
+        }
+        if (policy.getMaxDelayMillis() > 0) {
+            return Math.max(Math.min(getDelayLeft(), defaultTimeout), 0);
+        }
+        return defaultTimeout;
+    }
+
+    /**
+     * Зафиксировать добавленные записи.
+     *
+     * @throws IOException при ошибке записи
+     */
+    public void commit() throws IOException {
+        if (pendingRecords == 0) {
+            return;
+        }
+        drain();
+        drainIndex();
+        if (policy.isForce()) {
+            force();
+        }
+        commits++;
+        committedRecords += pendingRecords;
+        pendingRecords = 0;
+    }
+
+    /**
+     * Получить имя сегмента файла: номер сегмента вставляется перед расширением.
+     *
+     * @param fileName имя файла
+     * @param index номер сегмента
+     * @return имя сегмента
+     */
+    public static String segmentName(String fileName, int index) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot <= 0) {
+            return String.format("%s.%06d", fileName, index);
+        }
+        return String.format("%s.%06d%s", fileName.substring(0, dot), index, fileName.substring(dot));
+    }
+
+    /**
+     * Получить имя индекса сегмента: расширение сегмента заменяется на {@link SegmentIndex#EXTENSION}.
+     *
+     * @param fileName имя файла
+     * @param index номер сегмента
+     * @return имя индекса
+     */
+    public static String indexName(String fileName, int index) {
+        int dot = fileName.lastIndexOf('.');
+        String base = dot <= 0 ? fileName : fileName.substring(0, dot);
+        return String.format("%s.%06d%s", base, index, SegmentIndex.EXTENSION);
+    }
+
+    /**
+     * Найти последний существующий сегмент файла.
+     *
+     * @param fileName имя файла
+     * @return наибольший номер существующего сегмента или -1, если сегментов нет
+     */
+    public static int lastSegment(String fileName) {
+        File file = new File(fileName).getAbsoluteFile();
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String prefix = (dot <= 0 ? name : name.substring(0, dot)) + ".";
+        String suffix = dot <= 0 ? "" : name.substring(dot);
+        String[] names = file.getParentFile().list();
+        int result = -1;
+        if (names == null) {
+            return result;
+        }
+        for (String candidate: names) {
+            if (candidate.length() == prefix.length() + 6 + suffix.length() && candidate.startsWith(prefix) && candidate.endsWith(suffix)) {
+                try {
+                    result = Math.max(result, Integer.parseInt(candidate.substring(prefix.length(), prefix.length() + 6)));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return количество выполненных фиксаций
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * @return количество зафиксированных записей
+     */
+    public long getCommittedRecords() {
+        return committedRecords;
+    }
+
+    /**
+     * @return среднее количество записей в одной фиксации
+     */
+    public double getAverageBatchSize() {
+        return commits == 0 ? 0 : (double) committedRecords / commits;
+    }
+
+    /**
+     * Зафиксировать добавленные записи и закрыть файл.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records in %d commits, %.1f records per commit, %d segments (%s; %s)", committedRecords, commits, getAverageBatchSize(), segmentIndex + 1, policy, rolling);
+    }
+
+    /**
+     * Записать содержимое буфера в файл.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        segmentBytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Записать накопленные отметки индекса в файл. Вызывается после {@link #drain()},
+     * чтобы индекс не указывал на незаписанные данные.
+     */
+    private void drainIndex() throws IOException {
+        if (indexChannel == null) {
+            return;
+        }
+        indexBuffer.flip();
+        while (indexBuffer.hasRemaining()) {
+            indexChannel.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+
+    /**
+     * Добавить отметку в индекс.
+     */
+    private void mark(long value, long offset) throws IOException {
+        if (indexBuffer.remaining() < SegmentIndex.ENTRY_SIZE) {
+            drain();
+            drainIndex();
+        }
+        indexBuffer.putLong(value).putLong(offset);
+    }
+
+    private boolean isSegmentFull() {
+        if (segmentRecords == 0) {
+            return false;
+        }
+        if (rolling.getMaxRecords() > 0 && segmentRecords >= rolling.getMaxRecords()) {
+            return true;
+        }
+        return rolling.getMaxBytes() > 0 && segmentBytes + buffer.position() >= rolling.getMaxBytes();
+    }
+
+    /**
+     * Закрыть текущий сегмент и начать следующий. Незафиксированные записи
+     * остаются незафиксированными, но уже в закрытом сегменте.
+     */
+    private void roll() throws IOException {
+        drain();
+        drainIndex();
+        if (policy.isForce()) {
+            force();
+        }
+        closeSegment();
+        segmentIndex++;
+        open(false);
+        if (rolling.getKeepSegments() > 0 && segmentIndex >= rolling.getKeepSegments()) {
+            delete(segmentIndex - rolling.getKeepSegments());
+        }
+    }
+
+    private void open(boolean append) throws IOException {
+        if (rolling.isEnabled()) {
+            stream = new FileOutputStream(segmentName(fileName, segmentIndex));
+            indexChannel = new FileOutputStream(indexName(fileName, segmentIndex)).getChannel();
+        } else {
+            stream = new FileOutputStream(fileName, append);
+            indexChannel = null;
+        }
+        channel = stream.getChannel();
+        segmentBytes = channel.size();
+        segmentRecords = 0;
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        if (indexChannel != null) {
+            indexChannel.force(false);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        try {
+            stream.close();
+        } finally {
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Удалить сегмент и его индекс, если они существуют.
+     */
+    private void delete(int index) {
+        new File(indexName(fileName, index)).delete();
+        new File(segmentName(fileName, index)).delete();
+    }
+
+    /**
+     * Узнать количество цифр в десятичной записи неотрицательного числа.
+     */
+    private static int digits(long value) {
+        int result = 1;
+        while (result <= POWERS_OF_TEN.length && value >= POWERS_OF_TEN[result - 1]) {
+            result++;
+        }
+        return result;
+    }
+
+    private long getDelayLeft() {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstPendingTime);
+        return policy.getMaxDelayMillis() - elapsed;
+    }
+}
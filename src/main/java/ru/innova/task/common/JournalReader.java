@@ -0,0 +1,92 @@
+package ru.innova.task.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Последовательное чтение журнала, записанного {@link JournalWriter}.
+ * Сегменты читаются по порядку номеров, пока не встретится отсутствующий файл.
+ * Каждый сегмент отображается в память только для чтения.
+ * </p>
+ *
+ * @author sergey
+ */
+public class JournalReader implements Closeable {
+    private final String baseName;
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private int count;
+    private int position;
+
+    /**
+     * Создает объект для чтения журнала с указанным именем.
+     *
+     * @param baseName имя журнала
+     */
+    public JournalReader(String baseName) {
+        this.baseName = baseName;
+        this.segmentIndex = -1;
+        this.segment = null;
+        this.count = 0;
+        this.position = 0;
+    }
+
+    /**
+     * Прочитать очередные числа журнала.
+     *
+     * @param into массив, в который записываются числа
+     * @param offset смещение в массиве
+     * @param length наибольшее количество чисел
+     * @return количество прочитанных чисел или -1, если журнал закончился
+     * @throws IOException при ошибке чтения или неверном формате сегмента
+     */
+    public int read(long[] into, int offset, int length) throws IOException {
+        while (position == count) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        int n = Math.min(length, count - position);
+        for (int i = 0; i < n; i++) {
+            into[offset + i] = segment.getLong(JournalWriter.HEADER_SIZE + (position + i) * JournalWriter.RECORD_SIZE);
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+    }
+
+    /**
+     * Открыть следующий сегмент.
+     *
+     * @return <code>false</code>, если сегментов больше нет
+     */
+    private boolean nextSegment() throws IOException {
+        File file = new File(JournalWriter.segmentName(baseName, segmentIndex + 1));
+        if (!file.exists()) {
+            return false;
+        }
+        segmentIndex++;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            segment = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        }
+        if (segment.capacity() < JournalWriter.HEADER_SIZE || segment.getInt(0) != JournalWriter.MAGIC) {
+            throw new IOException(String.format("%s is not a journal segment", file));
+        }
+        int capacity = segment.getInt(JournalWriter.CAPACITY_OFFSET);
+        count = segment.getInt(JournalWriter.COUNT_OFFSET);
+        if (count < 0 || count > capacity || JournalWriter.HEADER_SIZE + (long) count * JournalWriter.RECORD_SIZE > segment.capacity()) {
+            throw new IOException(String.format("Journal segment %s is corrupted", file));
+        }
+        position = 0;
+        return true;
+    }
+}
@@ -0,0 +1,216 @@
+package ru.innova.task.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Двоичный журнал сохраненных чисел. Журнал состоит из сегментов - файлов
+ * <code>&lt;имя&gt;.000000.jnl</code>, <code>&lt;имя&gt;.000001.jnl</code> и т.д.
+ * (см. {@link #segmentName(String, int)}), каждый из которых вмещает одинаковое количество чисел.
+ * </p>
+ *
+ * <p>
+ * Сегмент начинается с заголовка: {@link #MAGIC}, вместимость сегмента (четыре байта), первое число
+ * (восемь байтов), количество записанных чисел (четыре байта) и четыре байта выравнивания. За заголовком
+ * следуют числа по восемь байтов (порядок байтов - от старшего к младшему). Сегмент отображается в память целиком,
+ * поэтому запись числа сводится к двум записям в память: самого числа и счетчика в заголовке.
+ * Когда сегмент заполнен, создается следующий.
+ * </p>
+ *
+ * <p>
+ * Записанные числа попадают на диск, когда это решит операционная система, или при вызове
+ * {@link #force()}. Объект не является потокобезопасным. Прочитать журнал можно
+ * с помощью {@link JournalReader}.
+ * </p>
+ *
+ * @author sergey
+ */
+public class JournalWriter implements Closeable {
+    /**
+     * Признак сегмента журнала, "JNL2". Сегменты прежнего формата "JNL1" с числами
+     * по четыре байта не читаются.
+     */
+    public static final int MAGIC = 0x4a4e4c32;
+    /**
+     * Размер заголовка сегмента в байтах.
+     */
+    public static final int HEADER_SIZE = 24;
+    /**
+     * Размер одной записи в байтах.
+     */
+    public static final int RECORD_SIZE = 8;
+    /**
+     * Смещение количества записанных чисел в заголовке сегмента.
+     */
+    public static final int COUNT_OFFSET = 16;
+    /**
+     * Вместимость сегмента по умолчанию.
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 22;
+    static final int CAPACITY_OFFSET = 4;
+    static final int FIRST_OFFSET = 8;
+    private final String baseName;
+    private final int segmentRecords;
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private int count;
+
+    /**
+     * Создает журнал с указанными параметрами. Сегменты журнала с тем же именем,
+     * оставшиеся от прежнего запуска, удаляются.
+     *
+     * @param baseName имя журнала, к которому добавляются номер и расширение сегмента
+     * @param segmentRecords количество чисел в одном сегменте
+     */
+    public JournalWriter(String baseName, int segmentRecords) {
+        this(baseName, segmentRecords, false);
+    }
+
+    /**
+     * Создает или открывает журнал с указанными параметрами.
+     *
+     * @param baseName имя журнала, к которому добавляются номер и расширение сегмента
+     * @param segmentRecords количество чисел в одном сегменте
+     * @param append <code>true</code> - начать сегмент, следующий за последним существующим;
+     *     <code>false</code> - удалить существующие сегменты
+     */
+    public JournalWriter(String baseName, int segmentRecords, boolean append) {
+        if (segmentRecords <= 0 || segmentRecords > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("Incorrect segment size %d", segmentRecords));
+        }
+        this.baseName = baseName;
+        this.segmentRecords = segmentRecords;
+        this.segment = null;
+        this.count = 0;
+        if (append) {
+            this.segmentIndex = lastSegment(baseName);
+        } else {
+            this.segmentIndex = -1;
+            for (int i = lastSegment(baseName); i >= 0; i--) {
+                new File(segmentName(baseName, i)).delete();
+            }
+        }
+    }
+
+    /**
+     * Получить имя файла сегмента.
+     *
+     * @param baseName имя журнала
+     * @param index номер сегмента
+     * @return имя файла
+     */
+    public static String segmentName(String baseName, int index) {
+        return String.format("%s.%06d.jnl", baseName, index);
+    }
+
+    /**
+     * Найти последний существующий сегмент журнала.
+     *
+     * @param baseName имя журнала
+     * @return наибольший номер существующего сегмента или -1, если сегментов нет
+     */
+    public static int lastSegment(String baseName) {
+        return GroupCommitWriter.lastSegment(baseName + ".jnl");
+    }
+
+    /**
+     * Отбросить с конца журнала числа, большие указанного. Сегменты, в которых
+     * не осталось чисел, удаляются. Поскольку числа в журнале идут по возрастанию,
+     * просматривается только конец журнала; сегмент, первое число которого больше указанного,
+     * удаляется без просмотра, а если не должно остаться ни одного числа, сегменты не читаются вовсе.
+     *
+     * @param baseName имя журнала
+     * @param limit наибольшее число, которое остается в журнале, или {@link ProtocolConstants#NONE_VALUE},
+     *     если журнал надо очистить
+     * @throws IOException при ошибке чтения или записи сегмента
+     */
+    public static void truncateAbove(String baseName, long limit) throws IOException {
+        for (int index = lastSegment(baseName); index >= 0; index--) {
+            File file = new File(segmentName(baseName, index));
+            if (limit < 0) {
+                file.delete();
+                continue;
+            }
+            int count;
+            try (RandomAccessFile input = new RandomAccessFile(file, "rw")) {
+                MappedByteBuffer segment = input.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, input.length());
+                if (segment.capacity() < HEADER_SIZE || segment.getInt(0) != MAGIC) {
+                    throw new IOException(String.format("%s is not a journal segment", file));
+                }
+                count = segment.getInt(COUNT_OFFSET);
+                if (count > 0 && segment.getLong(FIRST_OFFSET) > limit) {
+                    count = 0;
+                }
+                while (count > 0 && segment.getLong(HEADER_SIZE + (count - 1) * RECORD_SIZE) > limit) {
+                    count--;
+                }
+                segment.putInt(COUNT_OFFSET, count);
+                segment.force();
+            }
+            if (count > 0) {
+                return;
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Записать число в журнал.
+     *
+     * @param value число
+     * @throws IOException при ошибке создания сегмента
+     */
+    public void append(long value) throws IOException {
+        if (segment == null || count == segmentRecords) {
+            roll();
+        }
+        if (count == 0) {
+            segment.putLong(FIRST_OFFSET, value);
+        }
+        segment.putLong(HEADER_SIZE + count * RECORD_SIZE, value);
+        count++;
+        segment.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Сбросить на диск числа, записанные в текущий сегмент.
+     */
+    public void force() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Закрыть журнал, сбросив текущий сегмент на диск. Отображение сегмента в память
+     * освобождается сборщиком мусора.
+     */
+    @Override
+    public void close() {
+        force();
+        segment = null;
+    }
+
+    /**
+     * Создать следующий сегмент.
+     */
+    private void roll() throws IOException {
+        force();
+        segmentIndex++;
+        long size = HEADER_SIZE + (long) segmentRecords * RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(segmentName(baseName, segmentIndex), "rw")) {
+            file.setLength(0);
+            file.setLength(size);
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        segment.putInt(0, MAGIC);
+        segment.putInt(CAPACITY_OFFSET, segmentRecords);
+        segment.putInt(COUNT_OFFSET, 0);
+        count = 0;
+    }
+}
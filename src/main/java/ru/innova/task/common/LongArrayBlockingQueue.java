@@ -0,0 +1,169 @@
+package ru.innova.task.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная блокирующая очередь целых чисел на основе массива.
+ * Аналог {@link java.util.concurrent.ArrayBlockingQueue} для чисел типа <code>long</code>.
+ *
+ * @author sergey
+ */
+public class LongArrayBlockingQueue implements LongBlockingQueue {
+    private final long[] items;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private int head;
+    private int tail;
+    private int count;
+
+    /**
+     * Создает очередь указанной емкости.
+     *
+     * @param capacity наибольшее количество чисел в очереди
+     */
+    public LongArrayBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect capacity %d", capacity));
+        }
+        this.items = new long[capacity];
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.head = 0;
+        this.tail = 0;
+        this.count = 0;
+    }
+
+    @Override
+    public void putLong(long value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == items.length) {
+                notFull.await();
+            }
+            enqueue(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offerLong(long value) {
+        lock.lock();
+        try {
+            if (count == items.length) {
+                return false;
+            }
+            enqueue(value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long takeLong() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long pollLong() {
+        lock.lock();
+        try {
+            return count == 0 ? ProtocolConstants.NONE_VALUE : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long pollLong(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return ProtocolConstants.NONE_VALUE;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(long[] into) {
+        return drainTo(into, 0, into.length);
+    }
+
+    @Override
+    public int drainTo(long[] into, int offset, int maxElements) {
+        lock.lock();
+        try {
+            int n = Math.min(count, maxElements);
+            int first = Math.min(n, items.length - head);
+            System.arraycopy(items, head, into, offset, first);
+            System.arraycopy(items, 0, into, offset + first, n - first);
+            head = (head + n) % items.length;
+            count -= n;
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return items.length - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(long value) {
+        items[tail] = value;
+        if (++tail == items.length) {
+            tail = 0;
+        }
+        count++;
+        notEmpty.signal();
+    }
+
+    private long dequeue() {
+        long result = items[head];
+        if (++head == items.length) {
+            head = 0;
+        }
+        count--;
+        notFull.signal();
+        return result;
+    }
+}
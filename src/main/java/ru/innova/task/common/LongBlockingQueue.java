@@ -0,0 +1,95 @@
+package ru.innova.task.common;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Блокирующая очередь целых чисел типа <code>long</code>. Аналог {@link BlockingQueue}, в котором числа
+ * хранятся и передаются без упаковки в {@link Long}.
+ * </p>
+ *
+ * <p>
+ * Методы, извлекающие числа с ожиданием или без него, в случае неудачи возвращают
+ * {@link ProtocolConstants#NONE_VALUE}. Это значение не может передаваться через очередь:
+ * все передаваемые числа неотрицательные, а управляющие значения через очереди чисел
+ * не передаются.
+ * </p>
+ *
+ * @author sergey
+ */
+public interface LongBlockingQueue {
+
+    /**
+     * Положить число в очередь. Если в очереди нет места, метод ждет, пока оно появится.
+     *
+     * @param value число
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    void putLong(long value) throws InterruptedException;
+
+    /**
+     * Положить число в очередь, если в ней есть место.
+     *
+     * @param value число
+     * @return <code>true</code>, если число помещено в очередь
+     */
+    boolean offerLong(long value);
+
+    /**
+     * Извлечь число из очереди. Если очередь пуста, метод ждет, пока в ней появится число.
+     *
+     * @return число
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    long takeLong() throws InterruptedException;
+
+    /**
+     * Извлечь число из очереди, если оно там есть.
+     *
+     * @return число или {@link ProtocolConstants#NONE_VALUE}, если очередь пуста
+     */
+    long pollLong();
+
+    /**
+     * Извлечь число из очереди, ожидая его не дольше указанного времени.
+     *
+     * @param timeout время ожидания
+     * @param unit единица измерения времени ожидания
+     * @return число или {@link ProtocolConstants#NONE_VALUE}, если время ожидания истекло
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    long pollLong(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Извлечь из очереди без ожидания все числа, которые поместятся в массив.
+     *
+     * @param into массив для извлеченных чисел
+     * @return количество извлеченных чисел
+     */
+    int drainTo(long[] into);
+
+    /**
+     * Извлечь из очереди без ожидания не больше указанного количества чисел.
+     *
+     * @param into массив для извлеченных чисел
+     * @param offset индекс в массиве, начиная с которого надо помещать числа
+     * @param maxElements наибольшее количество извлекаемых чисел
+     * @return количество извлеченных чисел
+     */
+    int drainTo(long[] into, int offset, int maxElements);
+
+    /**
+     * Узнать количество чисел в очереди.
+     *
+     * @return количество чисел в очереди
+     */
+    int size();
+
+    /**
+     * Узнать, сколько еще чисел можно положить в очередь без ожидания.
+     *
+     * @return количество свободных мест или {@link Integer#MAX_VALUE}, если очередь не ограничена
+     */
+    int remainingCapacity();
+}
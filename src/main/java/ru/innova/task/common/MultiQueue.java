@@ -1,10 +1,7 @@
 package ru.innova.task.common;
 
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 
@@ -25,136 +22,58 @@ import java.util.concurrent.TimeUnit;
  *  реализованы только те, которые нужны для решения задания.
  * </p>
  * <ul>
- *  <li>{@link #put(Integer)}</li>
+ *  <li>{@link #putLong(long)}</li>
  * </ul>
  * 
  * Остальные методы выбрасывают исключение {@linkplain UnsupportedOperationException}.
  * 
  * @author sergey
  */
-public class MultiQueue implements BlockingQueue<Integer> {
-    private final List<BlockingQueue<Integer>> queues;
+public class MultiQueue implements LongBlockingQueue {
+    private final List<LongBlockingQueue> queues;
     
-    @SafeVarargs
-    public MultiQueue(BlockingQueue<Integer>... queues) {
+    public MultiQueue(LongBlockingQueue... queues) {
         this.queues = Arrays.asList(queues);
     }
     
     /**
      * Положить новый элемент в очередь.
-     * В отличие от метода {@linkplain BlockingQueue#put(Object)}, данная реализация
-     * не является блокирующей. Если в очереди не хватает места для хранения новых данных,
-     * то в ней увеличивается внутренний буфер.
+     * Элемент помещается по очереди во все внутренние очереди.
      */
     @Override
-    public void put(Integer value) throws InterruptedException {
-        for (BlockingQueue<Integer> queue: queues) {
-            queue.put(value);
+    public void putLong(long value) throws InterruptedException {
+        for (LongBlockingQueue queue: queues) {
+            queue.putLong(value);
         }
     }
 
     @Override
-    public Integer remove() {
+    public boolean offerLong(long value) {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Integer poll() {
+    public long takeLong() throws InterruptedException {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Integer element() {
+    public long pollLong() {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Integer peek() {
+    public long pollLong(long timeout, TimeUnit unit) throws InterruptedException {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Iterator<Integer> iterator() {
+    public int drainTo(long[] into) {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Object[] toArray() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public <T> T[] toArray(T[] a) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean containsAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean addAll(Collection<? extends Integer> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean removeAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean retainAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public void clear() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean add(Integer e) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean offer(Integer e) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean offer(Integer e, long timeout, TimeUnit unit) throws InterruptedException {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public int remainingCapacity() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean remove(Object o) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean contains(Object o) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public int drainTo(Collection<? super Integer> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public int drainTo(Collection<? super Integer> c, int maxElements) {
-        throw new UnsupportedOperationException();
-    }
-    
-    @Override
-    public boolean isEmpty() {
+    public int drainTo(long[] into, int offset, int maxElements) {
         throw new UnsupportedOperationException();
     }
 
@@ -164,12 +83,7 @@ public class MultiQueue implements BlockingQueue<Integer> {
     }
 
     @Override
-    public Integer take() throws InterruptedException {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Integer poll(long timeout, TimeUnit unit) throws InterruptedException {
+    public int remainingCapacity() {
         throw new UnsupportedOperationException();
     }
 }
@@ -0,0 +1,23 @@
+package ru.innova.task.common;
+
+import java.io.IOException;
+
+/**
+ * Источник чисел, из которого {@link Sender} сам берет числа для отправки,
+ * минуя очередь.
+ *
+ * @author sergey
+ */
+public interface NumberSource {
+
+    /**
+     * Получить очередной блок чисел.
+     *
+     * @param into массив, в который записываются числа
+     * @param maxCount наибольшее количество чисел
+     * @return количество полученных чисел; 0, если генерация остановлена
+     * @throws IOException при ошибке сохранения чисел
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    int reserve(long[] into, int maxCount) throws IOException, InterruptedException;
+}
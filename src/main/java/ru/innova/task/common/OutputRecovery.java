@@ -0,0 +1,170 @@
+package ru.innova.task.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * <p>
+ * Восстановление выходных файлов {@link GroupCommitWriter} после аварийного завершения.
+ * </p>
+ *
+ * <p>
+ * Числа в выходных файлах идут по возрастанию, поэтому все действия выполняются с конца файла:
+ * отбрасываются недописанная последняя строка и строки с числами больше заданного. Просматривается
+ * только отбрасываемый хвост файла, так что время восстановления не зависит от размера файла.
+ * Если не должно остаться ни одного числа, файл обрезается до нулевой длины, а сегменты удаляются
+ * без чтения.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class OutputRecovery {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 24;
+
+    private OutputRecovery() {
+    }
+
+    /**
+     * Отбросить с конца выходного файла недописанную строку и строки с числами больше указанного.
+     * Если файл делится на сегменты, обрабатываются последние сегменты и их индексы, а сегменты,
+     * в которых не осталось строк, удаляются.
+     *
+     * @param fileName имя файла
+     * @param rolling <code>true</code>, если файл делится на сегменты
+     * @param limit наибольшее число, которое остается в файле, или {@link ProtocolConstants#NONE_VALUE},
+     *     если файл надо очистить
+     * @return последнее число, оставшееся в файле, или {@link ProtocolConstants#NONE_VALUE},
+     *     если файл пуст или не существует
+     * @throws IOException при ошибке чтения или записи файла
+     */
+    public static long truncateAbove(String fileName, boolean rolling, long limit) throws IOException {
+        if (limit < 0) {
+            clear(fileName, rolling);
+            return ProtocolConstants.NONE_VALUE;
+        }
+        if (!rolling) {
+            File file = new File(fileName);
+            return file.exists() ? truncateFile(file, limit) : ProtocolConstants.NONE_VALUE;
+        }
+        for (int index = GroupCommitWriter.lastSegment(fileName); index >= 0; index--) {
+            File file = new File(GroupCommitWriter.segmentName(fileName, index));
+            if (!file.exists()) {
+                // сегмент удален правилом хранения
+                continue;
+            }
+            long last = truncateFile(file, limit);
+            File indexFile = new File(GroupCommitWriter.indexName(fileName, index));
+            if (last != ProtocolConstants.NONE_VALUE) {
+                if (indexFile.exists()) {
+                    truncateIndex(indexFile, last, file.length());
+                }
+                return last;
+            }
+            indexFile.delete();
+            file.delete();
+        }
+        return ProtocolConstants.NONE_VALUE;
+    }
+
+    /**
+     * Очистить файл, не читая его: обрезать до нулевой длины или удалить все сегменты и их индексы.
+     */
+    private static void clear(String fileName, boolean rolling) throws IOException {
+        if (!rolling) {
+            File file = new File(fileName);
+            if (file.exists()) {
+                try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                    output.setLength(0);
+                }
+            }
+            return;
+        }
+        for (int index = GroupCommitWriter.lastSegment(fileName); index >= 0; index--) {
+            new File(GroupCommitWriter.indexName(fileName, index)).delete();
+            new File(GroupCommitWriter.segmentName(fileName, index)).delete();
+        }
+    }
+
+    /**
+     * Отбросить хвост одного файла.
+     */
+    private static long truncateFile(File file, long limit) throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            byte[] block = new byte[BLOCK_SIZE];
+            long lineEnd = lastIndexOfNewLine(output, output.length(), block) + 1;
+            long result = ProtocolConstants.NONE_VALUE;
+            while (lineEnd > 0) {
+                long lineStart = lastIndexOfNewLine(output, lineEnd - 1, block) + 1;
+                long value = parseLine(output, lineStart, lineEnd - 1, file);
+                if (value <= limit) {
+                    result = value;
+                    break;
+                }
+                lineEnd = lineStart;
+            }
+            output.setLength(lineEnd);
+            return result;
+        }
+    }
+
+    /**
+     * Отбросить отметки индекса, указывающие на отброшенные строки.
+     */
+    private static void truncateIndex(File indexFile, long limit, long fileLength) throws IOException {
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw")) {
+            long length = index.length() / SegmentIndex.ENTRY_SIZE * SegmentIndex.ENTRY_SIZE;
+            while (length > 0) {
+                index.seek(length - SegmentIndex.ENTRY_SIZE);
+                long value = index.readLong();
+                long offset = index.readLong();
+                if (value <= limit && offset < fileLength) {
+                    break;
+                }
+                length -= SegmentIndex.ENTRY_SIZE;
+            }
+            index.setLength(length);
+        }
+    }
+
+    /**
+     * Найти последний символ перевода строки перед указанной позицией.
+     *
+     * @return позиция символа или -1, если его нет
+     */
+    private static long lastIndexOfNewLine(RandomAccessFile file, long before, byte[] block) throws IOException {
+        long end = before;
+        while (end > 0) {
+            int length = (int) Math.min(block.length, end);
+            long start = end - length;
+            file.seek(start);
+            file.readFully(block, 0, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (block[i] == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    /**
+     * Разобрать строку <code>[start, end)</code>, не включающую перевод строки.
+     */
+    private static long parseLine(RandomAccessFile file, long start, long end, File name) throws IOException {
+        if (end > start && end - start <= MAX_LINE_LENGTH) {
+            byte[] line = new byte[(int) (end - start)];
+            file.seek(start);
+            file.readFully(line);
+            String text = new String(line, "US-ASCII").trim();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // handled below
+            }
+        }
+        throw new IOException(String.format("Incorrect line at offset %d in %s", start, name));
+    }
+}
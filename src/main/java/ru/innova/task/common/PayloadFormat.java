@@ -0,0 +1,224 @@
+package ru.innova.task.common;
+
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Правило формирования полезной нагрузки, которая передается вместе с каждым числом
+ * (см. {@link ProtocolConstants#PAYLOAD_SIGN}).
+ * </p>
+ *
+ * <p>
+ * Длина и содержимое нагрузки однозначно определяются числом, поэтому любой участник,
+ * знающий правило, может проверить полученную нагрузку, не храня отправленную. Длина бывает
+ * постоянной, равномерно распределенной в заданных пределах или распределенной по
+ * показательному закону с заданным средним (не больше {@link ProtocolConstants#MAX_PAYLOAD_SIZE}).
+ * Содержимое - псевдослучайные байты, порожденные из числа.
+ * </p>
+ *
+ * <p>
+ * Правило задается системными свойствами (см. {@link #fromSystemProperties()}) и должно быть
+ * одинаковым у сервера initiator и сервера echo.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class PayloadFormat {
+    /**
+     * Проверка нагрузки не выполняется, нагрузка пропускается.
+     */
+    public static final String CHECKSUM_NONE = "none";
+    /**
+     * Получатели сверяют контрольную сумму каждой нагрузки с ожидаемой.
+     */
+    public static final String CHECKSUM_VERIFY = "verify";
+    /**
+     * Получатели сверяют контрольные суммы, а {@link Saver} дополнительно записывает их в файл.
+     */
+    public static final String CHECKSUM_PERSIST = "persist";
+    private static final String EXPONENTIAL_PREFIX = "exp:";
+    private final int minSize;
+    private final int maxSize;
+    private final double meanSize;
+    private final String checksumMode;
+
+    private PayloadFormat(int minSize, int maxSize, double meanSize, String checksumMode) {
+        if (minSize < 0 || maxSize < minSize || maxSize > ProtocolConstants.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException(String.format("Incorrect payload size %d..%d. Specify sizes from %d to %d", minSize, maxSize, 0, ProtocolConstants.MAX_PAYLOAD_SIZE));
+        }
+        if (!checksumMode.equals(CHECKSUM_NONE) && !checksumMode.equals(CHECKSUM_VERIFY) && !checksumMode.equals(CHECKSUM_PERSIST)) {
+            throw new IllegalArgumentException(String.format("Unknown payload checksum mode %s", checksumMode));
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.meanSize = meanSize;
+        this.checksumMode = checksumMode;
+    }
+
+    /**
+     * Нагрузка постоянной длины.
+     */
+    public static PayloadFormat fixed(int size, String checksumMode) {
+        return new PayloadFormat(size, size, 0, checksumMode);
+    }
+
+    /**
+     * Нагрузка с длиной, равномерно распределенной от <code>minSize</code> до <code>maxSize</code> включительно.
+     */
+    public static PayloadFormat uniform(int minSize, int maxSize, String checksumMode) {
+        return new PayloadFormat(minSize, maxSize, 0, checksumMode);
+    }
+
+    /**
+     * Нагрузка с длиной, распределенной по показательному закону, не больше
+     * {@link ProtocolConstants#MAX_PAYLOAD_SIZE}.
+     */
+    public static PayloadFormat exponential(double meanSize, String checksumMode) {
+        if (!(meanSize > 0)) {
+            throw new IllegalArgumentException(String.format("Incorrect mean payload size %s", meanSize));
+        }
+        return new PayloadFormat(0, ProtocolConstants.MAX_PAYLOAD_SIZE, meanSize, checksumMode);
+    }
+
+    /**
+     * Получить правило из системных свойств:
+     * <ul>
+     * <li><code>payload.size</code> - <code>&lt;size&gt;</code>, <code>&lt;min&gt;-&lt;max&gt;</code> или
+     * <code>exp:&lt;mean&gt;</code>; если свойство не задано, числа передаются без нагрузки;</li>
+     * <li><code>payload.checksum</code> - <code>verify</code> (по умолчанию), <code>persist</code>
+     * или <code>none</code>.</li>
+     * </ul>
+     *
+     * @return правило или <code>null</code>, если нагрузка не задана
+     * @throws IllegalArgumentException если свойства заданы неверно
+     */
+    public static PayloadFormat fromSystemProperties() {
+        String size = System.getProperty("payload.size");
+        if (size == null) {
+            return null;
+        }
+        String checksumMode = System.getProperty("payload.checksum", CHECKSUM_VERIFY);
+        try {
+            if (size.startsWith(EXPONENTIAL_PREFIX)) {
+                return exponential(Double.parseDouble(size.substring(EXPONENTIAL_PREFIX.length())), checksumMode);
+            }
+            int dash = size.indexOf('-', 1);
+            if (dash > 0) {
+                return uniform(Integer.parseInt(size.substring(0, dash)), Integer.parseInt(size.substring(dash + 1)), checksumMode);
+            }
+            return fixed(Integer.parseInt(size), checksumMode);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Incorrect payload size %s", size));
+        }
+    }
+
+    /**
+     * Узнать, сверяют ли получатели контрольные суммы нагрузки.
+     */
+    public boolean isVerify() {
+        return !checksumMode.equals(CHECKSUM_NONE);
+    }
+
+    /**
+     * Узнать, записывает ли {@link Saver} контрольные суммы нагрузки.
+     */
+    public boolean isPersist() {
+        return checksumMode.equals(CHECKSUM_PERSIST);
+    }
+
+    /**
+     * Узнать длину нагрузки числа.
+     *
+     * @param number число
+     * @return длина в байтах
+     */
+    public int size(long number) {
+        if (minSize == maxSize) {
+            return minSize;
+        }
+        int random = mix(fold(number));
+        if (meanSize > 0) {
+            double uniform = ((random >>> 8) + 1) / (double) (1 << 24);
+            return (int) Math.min(Math.round(-meanSize * Math.log(uniform)), maxSize);
+        }
+        return minSize + (int) ((random & 0xFFFFFFFFL) % (maxSize - minSize + 1));
+    }
+
+    /**
+     * Записать нагрузку числа в массив.
+     *
+     * @param number число
+     * @param into массив
+     * @param offset позиция, с которой записывается нагрузка
+     * @return длина нагрузки
+     */
+    public int fill(long number, byte[] into, int offset) {
+        int size = size(number);
+        int state = mix(fold(number) ^ 0x9E3779B9) | 1;
+        for (int i = 0; i < size; i += 4) {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+            int end = Math.min(i + 4, size);
+            int bits = state;
+            for (int j = i; j < end; j++) {
+                into[offset + j] = (byte) bits;
+                bits >>>= 8;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Вычислить ожидаемую контрольную сумму (CRC32) нагрузки числа.
+     *
+     * @param number число
+     * @param scratch рабочий массив длиной не меньше {@link ProtocolConstants#MAX_PAYLOAD_SIZE}
+     * @param crc объект для вычисления контрольной суммы
+     * @return контрольная сумма
+     */
+    public int checksum(long number, byte[] scratch, CRC32 crc) {
+        int size = fill(number, scratch, 0);
+        crc.reset();
+        crc.update(scratch, 0, size);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Дополнить длину нагрузки до границы 4 байтов.
+     */
+    public static int padded(int size) {
+        return (size + 3) & ~3;
+    }
+
+    /**
+     * Свернуть число в 32 бита. Для чисел меньше 2<sup>31</sup> результат совпадает с числом,
+     * так что их нагрузка не зависит от разрядности чисел.
+     */
+    private static int fold(long number) {
+        return (int) (number ^ (number >>> 32));
+    }
+
+    private static int mix(int value) {
+        int x = value;
+        x ^= x >>> 16;
+        x *= 0x7feb352d;
+        x ^= x >>> 15;
+        x *= 0x846ca68b;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    @Override
+    public String toString() {
+        String size;
+        if (meanSize > 0) {
+            size = String.format("%s%.0f", EXPONENTIAL_PREFIX, meanSize);
+        } else if (minSize == maxSize) {
+            size = Integer.toString(minSize);
+        } else {
+            size = String.format("%d-%d", minSize, maxSize);
+        }
+        return String.format("payload %s bytes, checksum %s", size, checksumMode);
+    }
+}
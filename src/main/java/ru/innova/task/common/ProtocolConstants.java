@@ -1,29 +1,67 @@
 package ru.innova.task.common;
 
 /**
+ * <p>
  * Константы используемые при передаче управляющих сообщений.
+ * </p>
+ *
+ * <p>
+ * После двух чисел подключения (тип клиента и тип соединения) данные передаются кадрами.
+ * Каждый кадр начинается с его типа: {@link #BATCH_SIGN} - пакет чисел, {@link #PAYLOAD_SIGN} -
+ * число с нагрузкой, {@link #CONTROL_SIGN} - управляющее значение. Числа передаются
+ * по восемь байтов и только в кадрах с числами, а управляющие значения - только в своих кадрах,
+ * поэтому получателю не нужно проверять знак каждого числа.
+ * </p>
+ *
+ * <p>
+ * Получатель чисел может объявить кадром {@link #CODEC_SIGN}, что понимает пакеты разностей
+ * {@link #DELTA_SIGN}. Отправитель переходит на них, только получив объявление, поэтому
+ * клиенты, которые передают данные кадрами, но о пакетах разностей не знают, продолжают работать
+ * с пакетами {@link #BATCH_SIGN}. Совместимость есть только на уровне кадров: клиенты, которые
+ * передают числа без кадров, с этой версией протокола не работают.
+ * </p>
+ *
+ * <p>
+ * Тем же кадром получатель может объявить флагом {@link #CREDIT_FLOW}, что управляет потоком
+ * кредитами: после этого он выдает кредиты кадрами {@link #CREDIT_SIGN}, а отправитель отправляет
+ * числа только в пределах полученных кредитов.
+ * </p>
+ *
+ * <p>
+ * Клиент может передавать все свои логические потоки через одно соединение, объявив его
+ * типом подключения {@link #MUX_SIGN}. Тогда байты каждого логического потока, включая его
+ * собственные числа подключения, передаются кадрами {@link #STREAM_SIGN} с номером потока,
+ * но не больше, чем разрешила другая сторона кадрами {@link #WINDOW_SIGN}.
+ * </p>
+ *
+ * <p>
+ * Отправитель, продолжающий прежний запуск, объявляет кадром {@link #RESUME_SIGN} последнее
+ * число прежнего запуска. Прокси-сервер передает объявление дальше, перед числами, так что
+ * получатель на другой стороне пропускает числа, которые уже не придут, и отбрасывает
+ * повторно отправленные.
+ * </p>
  * 
  * @author sergey
  */
 public final class ProtocolConstants {
     /**
-     * Пустое значение.
+     * Пустое значение. Очереди чисел возвращают его, если числа нет.
      */
     public static final int NONE_VALUE = -1;
     
     /**
-     * Это значение шлет initator в proxy, когда выполняет старт.
+     * Это значение шлет initator в proxy, когда выполняет старт (в кадре {@link #CONTROL_SIGN}).
      */
     public static final int START_SIGN = -2;
     
     /**
-     * Это значение шлет initator в proxy, когда приостанавливается.
+     * Это значение шлет initator в proxy, когда приостанавливается (в кадре {@link #CONTROL_SIGN}).
      */
     public static final int STOP_SIGN = -3;
     
     
     /**
-     * Это значение шлет initator в proxy перед выходом
+     * Это значение шлет initator в proxy перед выходом (в кадре {@link #CONTROL_SIGN}).
      */
     public static final int EXIT_SIGN = -4;
     
@@ -55,4 +93,111 @@ public final class ProtocolConstants {
      * для передачи данных от proxy к клиенту.
      */
     public static final int RECEIVER_SIGN = -9;
+
+    /**
+     * Этим значением начинается пакет чисел. За ним следует количество чисел в пакете,
+     * а затем сами числа по восемь байтов. Одиночное число передается пакетом из одного числа.
+     */
+    public static final int BATCH_SIGN = -10;
+
+    /**
+     * Наибольшее количество чисел в одном пакете.
+     */
+    public static final int MAX_BATCH_SIZE = 1024;
+
+    /**
+     * Этим значением начинается число с полезной нагрузкой. За ним следуют само число (восемь байтов),
+     * длина нагрузки в байтах и байты нагрузки, дополненные нулями до границы 4 байтов
+     * (см. {@link PayloadFormat}).
+     */
+    public static final int PAYLOAD_SIGN = -11;
+
+    /**
+     * Этим значением начинается управляющий кадр. За ним следует управляющее значение,
+     * например {@link #START_SIGN}.
+     */
+    public static final int CONTROL_SIGN = -12;
+
+    /**
+     * Этим значением начинается кадр, в котором сторона соединения объявляет, какие кодировки
+     * чисел она понимает. За ним следует набор флагов, например {@link #DELTA_CODEC}. Кадр идет
+     * в обратном направлении: его шлет тот, кто получает числа, тому, кто их отправляет.
+     * Пока кадр не получен, числа отправляются пакетами {@link #BATCH_SIGN}.
+     */
+    public static final int CODEC_SIGN = -13;
+
+    /**
+     * Этим значением начинается пакет разностей. За ним следует длина пакета в байтах, а затем
+     * числа в кодировке zig-zag varint, дополненные нулями до границы 4 байтов: первое число
+     * пакета целиком, остальные - разностью с предыдущим числом
+     * (см. {@link ru.innova.task.network.DeltaCodec}). Такие пакеты отправляются, только если
+     * получатель объявил кодировку {@link #DELTA_CODEC}.
+     */
+    public static final int DELTA_SIGN = -14;
+
+    /**
+     * Флаг кодировки пакетами разностей (см. {@link #CODEC_SIGN} и {@link #DELTA_SIGN}).
+     */
+    public static final int DELTA_CODEC = 1;
+
+    /**
+     * Наибольшая длина пакета разностей в байтах без заголовка.
+     */
+    public static final int MAX_DELTA_SIZE = 4096;
+
+    /**
+     * Это значение шлют клиенты в proxy вместо {@link #SENDER_SIGN} или {@link #RECEIVER_SIGN},
+     * чтобы proxy понял, что соединение мультиплексированное: дальше по нему идут только кадры
+     * {@link #STREAM_SIGN}, а каждый логический поток начинается со своих двух чисел подключения.
+     */
+    public static final int MUX_SIGN = -15;
+
+    /**
+     * Этим значением начинается кадр логического потока мультиплексированного соединения.
+     * За ним следуют номер потока, длина данных в байтах и сами данные, дополненные нулями
+     * до границы 4 байтов. Первый кадр с новым номером открывает поток, кадр с длиной
+     * {@link #STREAM_CLOSED} закрывает его (см. {@link ru.innova.task.network.Multiplexer}).
+     */
+    public static final int STREAM_SIGN = -16;
+
+    /**
+     * Длина в кадре {@link #STREAM_SIGN}, означающая закрытие логического потока.
+     */
+    public static final int STREAM_CLOSED = -1;
+
+    /**
+     * Наибольшая длина данных одного кадра {@link #STREAM_SIGN} в байтах.
+     */
+    public static final int MAX_STREAM_DATA = 32768;
+
+    /**
+     * Флаг управления потоком кредитами (см. {@link #CODEC_SIGN} и {@link #CREDIT_SIGN}).
+     */
+    public static final int CREDIT_FLOW = 2;
+
+    /**
+     * Этим значением начинается кадр кредитов. За ним следует количество чисел, которые
+     * отправитель может отправить дополнительно к уже разрешенным. Кадр идет в обратном
+     * направлении, так же как {@link #CODEC_SIGN}, и только после объявления {@link #CREDIT_FLOW}.
+     */
+    public static final int CREDIT_SIGN = -17;
+
+    /**
+     * Этим значением начинается кадр возобновления. За ним следует последнее число прежнего
+     * запуска (восемь байтов): числа до него включительно уже не придут или придут повторно.
+     */
+    public static final int RESUME_SIGN = -18;
+
+    /**
+     * Этим значением начинается кадр окна логического потока мультиплексированного соединения.
+     * За ним следуют номер потока и количество байтов, которые другая сторона может отправить
+     * в поток дополнительно к уже разрешенным. Сразу после открытия потока окно пусто, и каждая
+     * сторона разрешает другой отправить столько байтов, сколько поместится в ее буфер потока.
+     */
+    public static final int WINDOW_SIGN = -19;
+
+    /**
+     * Наибольшая длина полезной нагрузки одного числа в байтах.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 16384;
 }
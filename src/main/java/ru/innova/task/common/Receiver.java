@@ -2,7 +2,6 @@ package ru.innova.task.common;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -10,16 +9,30 @@ import java.util.logging.Level;
 import ru.innova.task.network.NetworkReceiver;
 
 /**
+ * <p>
  * Класс-исполнитель, получающий данные из сети и помещающий их в очередь.
- * 
+ * </p>
+ *
+ * <p>
+ * Управляющие значения приходят в отдельных кадрах и в очередь не попадают: их обрабатывает
+ * {@link ru.innova.task.network.ControlListener}, заданный объекту {@link NetworkReceiver}.
+ * Поэтому числа помещаются в очередь без проверок.
+ * </p>
+ *
+ * <p>
+ * Если очередь не принимает число (например, у {@link ReorderBuffer} заполнено окно),
+ * поток ждет и не читает сокет, так что отправителя останавливает управление потоком TCP.
+ * </p>
+ *
  * @author sergey
  */
 public class Receiver extends AbstractWorker {
     private static final AtomicInteger counter = new AtomicInteger(0);
-    private final BlockingQueue<Integer> output;
+    private final LongBlockingQueue output;
     private final DataController controller;
     private final NetworkReceiver input;
     private final CountDownLatch startSignal;
+    private final long[] batch;
 
     /**
      * Создает новый экземпляр
@@ -30,12 +43,13 @@ public class Receiver extends AbstractWorker {
      * @param name имя потока
      * @param startSignal объект, через который поток дожидается момента старта
      */
-    public Receiver(NetworkReceiver input, BlockingQueue<Integer> output, DataController controller, String name, CountDownLatch startSignal) {
+    public Receiver(NetworkReceiver input, LongBlockingQueue output, DataController controller, String name, CountDownLatch startSignal) {
         super(counter.incrementAndGet(), name);
         this.output = output;
         this.input = input;
         this.controller = controller;
         this.startSignal = startSignal;
+        this.batch = new long[ProtocolConstants.MAX_BATCH_SIZE];
         this.exited = false;
         logger.log(Level.FINE, "[{0}] Receiver.Receiver()", myNumber);
     }
@@ -58,28 +72,10 @@ public class Receiver extends AbstractWorker {
                     return 0;
                 }
                 logger.log(Level.FINE, "[{0}] main loop", myNumber);
-                Integer number = receive();
-                logger.log(Level.FINE, "[{0}] got number {1}", new Object[] {myNumber, number});
-                if (number == null) {
-                    logger.log(Level.FINE, "[{0}] got null", myNumber);
-                    if (exited && controller.areAllSaved()) {
-                        logger.log(Level.FINE, "[{0}] exitting", myNumber);
-                        return 0;
-                    }
-                } else {
-                    if (number < 0) { // TODO move to proxy-specific class
-                        if (number == ProtocolConstants.STOP_SIGN) {
-                            System.out.println("The Initiator server has stopped.");
-                        } else if (number == ProtocolConstants.START_SIGN) {
-                            System.out.println("The Initiator server has started.");
-                        } else if (number == ProtocolConstants.EXIT_SIGN) {
-                            System.out.println("The Initiator server has exited.");
-                        }
-                    } else {
-                        logger.log(Level.FINE, "[{0}] putting number {1}", new Object[] {myNumber, number});
-                        output.put(number);
-                        logger.log(Level.FINE, "[{0}] number {1} put", new Object[] {myNumber, number});
-                    }
+                int count = receive();
+                logger.log(Level.FINE, "[{0}] got numbers {1}..{2}", new Object[] {myNumber, batch[0], batch[count - 1]});
+                for (int i = 0; i < count; i++) {
+                    output.putLong(batch[i]);
                 }
             }
         } catch (InterruptedException e) {
@@ -98,8 +94,8 @@ public class Receiver extends AbstractWorker {
         return 0;
     }
 
-    private Integer receive() throws IOException {
-        return input.receive();
+    private int receive() throws IOException {
+        return input.receive(batch);
     }
 }
  
\ No newline at end of file
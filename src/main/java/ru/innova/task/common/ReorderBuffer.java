@@ -0,0 +1,81 @@
+package ru.innova.task.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Очередь, которая принимает числа вразнобой, а выдает их по порядку.
+ * </p>
+ *
+ * <p>
+ * Поскольку числа выходят из такой очереди только подряд, их можно извлекать
+ * целыми диапазонами: диапазон полностью описывает извлеченные числа, и их не нужно
+ * копировать в массив по одному.
+ * </p>
+ *
+ * <p>
+ * Число, которое уже приходило или меньше очередного, отбрасывается: после возобновления
+ * прежнего запуска отправитель может повторить числа, которые получатель уже извлек.
+ * Количество отброшенных чисел возвращает метод {@link #getDuplicates()}.
+ * </p>
+ *
+ * @author sergey
+ */
+public interface ReorderBuffer extends LongBlockingQueue {
+
+    /**
+     * Извлечь из очереди диапазон чисел, идущих подряд. Если очередного числа еще нет,
+     * метод ждет, пока оно появится.
+     *
+     * @param into объект, в который записывается извлеченный диапазон
+     * @param maxCount наибольшее количество чисел в диапазоне
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    void takeRun(SequenceRange into, int maxCount) throws InterruptedException;
+
+    /**
+     * Извлечь из очереди диапазон чисел, идущих подряд, ожидая очередное число
+     * не дольше указанного времени.
+     *
+     * @param into объект, в который записывается извлеченный диапазон
+     * @param maxCount наибольшее количество чисел в диапазоне
+     * @param timeout время ожидания
+     * @param unit единица измерения времени ожидания
+     * @return <code>true</code>, если диапазон не пуст, и <code>false</code>,
+     *     если время ожидания истекло
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    boolean pollRun(SequenceRange into, int maxCount, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Узнать, остановлен ли прием чисел, т.е. ждет ли какой-нибудь поток, помещающий
+     * число, пока для него освободится место.
+     *
+     * @return <code>true</code>, если прием чисел остановлен
+     */
+    boolean isStalled();
+
+    /**
+     * Пропустить числа, меньшие указанного: они уже не придут. Если очередное число
+     * больше указанного, метод ничего не делает. Числа пропускает поток, извлекающий числа,
+     * при следующем обращении к очереди; пропущенные числа, которые все же придут,
+     * отбрасываются.
+     *
+     * @param value число, с которого очередь продолжает выдавать числа
+     */
+    void skipTo(long value);
+
+    /**
+     * Узнать, сколько чисел отброшено, потому что они уже приходили или были меньше очередного.
+     *
+     * @return количество отброшенных чисел
+     */
+    long getDuplicates();
+
+    /**
+     * Узнать, сколько чисел пропущено методом {@link #skipTo(long)}.
+     *
+     * @return количество пропущенных чисел
+     */
+    long getSkipped();
+}
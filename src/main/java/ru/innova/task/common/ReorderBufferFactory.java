@@ -0,0 +1,54 @@
+package ru.innova.task.common;
+
+/**
+ * <p>
+ * Создает очереди {@link ReorderBuffer} в соответствии с системными свойствами:
+ * </p>
+ *
+ * <ul>
+ * <li><code>reorder.buffer</code> - реализация очереди: <code>ring</code> ({@link RingQueue},
+ *     по умолчанию) или <code>bitmap</code> ({@link BitmapReorderBuffer});</li>
+ * <li><code>reorder.window</code> - наибольшее окно (см. {@link AbstractReorderBuffer}),
+ *     по умолчанию не ограничено.</li>
+ * </ul>
+ *
+ * <p>
+ * Окно должно быть больше, чем количество чисел, которые могут одновременно находиться
+ * в пути: в очередях прокси и буферах сокетов всех соединений. Иначе получатель, ждущий
+ * сдвига окна, может задержать в своем сокете как раз то число, которого ждет окно.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class ReorderBufferFactory {
+    /**
+     * Реализация {@link RingQueue}
+     */
+    public static final String RING = "ring";
+    /**
+     * Реализация {@link BitmapReorderBuffer}
+     */
+    public static final String BITMAP = "bitmap";
+
+    private ReorderBufferFactory() {
+    }
+
+    /**
+     * Создать очередь, выбранную системными свойствами.
+     *
+     * @param firstValue первое ожидаемое значение
+     * @return новая очередь
+     * @throws IllegalArgumentException если свойства заданы неверно
+     */
+    public static ReorderBuffer create(long firstValue) {
+        String kind = System.getProperty("reorder.buffer", RING);
+        int window = Integer.getInteger("reorder.window", AbstractReorderBuffer.UNLIMITED_WINDOW);
+        if (kind.equals(RING)) {
+            return new RingQueue(RingQueue.DEFAULT_SEGMENT_SIZE, window, firstValue);
+        }
+        if (kind.equals(BITMAP)) {
+            return new BitmapReorderBuffer(BitmapReorderBuffer.DEFAULT_SEGMENT_SIZE, window, firstValue);
+        }
+        throw new IllegalArgumentException(String.format("Unknown reorder buffer %s", kind));
+    }
+}
@@ -1,12 +1,7 @@
 package ru.innova.task.common;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerArray;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 
 /**
@@ -15,278 +10,229 @@ import java.util.concurrent.locks.ReentrantLock;
  * В очереди хранятся целые числа. Помещать числа можно вразнобой, но выходить
  * из очереди они будут последовательно.
  * </p>
- * 
+ *
  * <p>
  * Очередь рассчитывает на то, что рано или поздно придут все числа начиная с 1-го.
  * По умолчанию 1-е ожидаемое число равно 0. Если придет число меньше первого
- * или одно и то же число придет 2 раза подряд, то метод put() выбросит исключение
- * {@linkplain IndexOutOfBoundsException}.
+ * или одно и то же число придет 2 раза, то оно отбрасывается (см. {@link ReorderBuffer}).
  * </p>
- * 
- * <p>Метод put() неблокирующий. Если в очереди нет места для сохранения нового элемента,
- * то внутренний массив будет увеличен в 2 раза.
+ *
+ * <p>Числа хранятся в цепочке сегментов фиксированного размера.
+ * Если число не попадает ни в один из имеющихся сегментов, в конец цепочки добавляются новые.
+ * Сегменты, все числа которых уже извлечены, отцепляются от начала цепочки.
+ * При пропуске чисел за конец цепочки к ней сразу добавляется сегмент с пропускаемым
+ * числом, а промежуточные сегменты не создаются.
+ * По умолчанию окно не ограничено, и метод putLong() не блокируется. Если задано наибольшее
+ * окно, то число, не помещающееся в него, ждет сдвига окна (см. {@link AbstractReorderBuffer});
+ * начало окна совпадает с началом первого сегмента цепочки.
  * </p>
- * 
- * Для простоты реализованы только те методы, которые нужны для решения задания.
- * <ul>
- *  <li>{@link #put(Integer)}</li>
- *  <li>{@link #take()}</li>
- *  <li>{@link #poll()}</li>
- *  <li>{@link #size()}</li>
- *  <li>{@link #isEmpty()}</li>
- * </ul>
- * 
- * Остальные методы выбрасывают исключение {@linkplain UnsupportedOperationException}.
- * 
+ *
+ * <p>
+ * Очередь не использует блокировок. Помещать числа могут одновременно несколько потоков:
+ * каждый из них отмечает свою ячейку операцией compare-and-set. Извлекать числа должен
+ * только один поток (см. {@link AbstractReorderBuffer}). Он отмечает извлеченные ячейки
+ * упорядоченной записью и публикует начало цепочки только при переходе к следующему
+ * сегменту.
+ * </p>
+ *
  * @author sergey
  */
-public class RingQueue implements BlockingQueue<Integer> {
+public class RingQueue extends AbstractReorderBuffer {
+    /**
+     * Размер одного сегмента по умолчанию.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024;
     private static final int ABSENT = 0;
     private static final int PRESENT = 1;
-    private final ReentrantLock lock;
-    private final Condition canTake;
-    private volatile AtomicIntegerArray buf;
-    private volatile int bufSize;
-    private volatile int min;
-    private volatile int start;
-    private volatile int count;
-    
+    private static final int TAKEN = 2;
+    private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+    private final int segmentSize;
+    /**
+     * Первый сегмент цепочки для потоков, помещающих числа. Меняется только при переходе
+     * к следующему сегменту.
+     */
+    private volatile Segment head;
+    /**
+     * Сегмент, в который было помещено последнее число. С него начинается поиск сегмента
+     * для чисел, не меньших его начала, чтобы при большом окне не просматривать цепочку
+     * с начала.
+     */
+    private volatile Segment hint;
+    /**
+     * Первый сегмент цепочки для потока, извлекающего числа. Поле читает и пишет только он.
+     */
+    private Segment takeSegment;
+
     /**
      * Конструктор по умолчанию. Создает очередь с начальным значением 0.
      */
     public RingQueue() {
-        this(16, 0);
+        this(DEFAULT_SEGMENT_SIZE, UNLIMITED_WINDOW, 0);
     }
-    
+
     /**
-     * Создает очередь с внутренним массивом указанного размера.
-     * 
-     * @param initialSize начальный размер буфера
+     * Создает очередь с сегментами указанного размера.
+     *
+     * @param segmentSize размер одного сегмента
      */
-    public RingQueue(int initialSize) {
-        this(initialSize, 0);
+    public RingQueue(int segmentSize) {
+        this(segmentSize, UNLIMITED_WINDOW, 0);
     }
-    
+
     /**
      * Создает очередь с указанными параметрами.
-     * 
-     * @param initialSize начальный размер буфера
+     *
+     * @param segmentSize размер одного сегмента
+     * @param maxWindow наибольшее окно, не меньше двух сегментов, или {@link #UNLIMITED_WINDOW}
      * @param firstValue первое ожидаемое значение
      */
-    public RingQueue(int initialSize, int firstValue) {
-        this.bufSize = initialSize;
-        this.buf = new AtomicIntegerArray(bufSize);
-        for (int i = 0; i < bufSize; i++) {
-            buf.set(i, ABSENT);
+    public RingQueue(int segmentSize, int maxWindow, long firstValue) {
+        super(maxWindow, firstValue);
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect segment size %d", segmentSize));
         }
-        this.min = firstValue;
-        this.start = 0;
-        this.count = 0;
-        this.lock = new ReentrantLock();
-        this.canTake = lock.newCondition();
-    }
-    
-    @Override
-    public boolean isEmpty() {
-        return count > 0;
-    }
-    
-    @Override
-    public int size() {
-        return count;
+        if (maxWindow / 2 < segmentSize) {
+            throw new IllegalArgumentException(String.format("Window %d must be at least twice the segment size %d", maxWindow, segmentSize));
+        }
+        this.segmentSize = segmentSize;
+        this.takeSegment = new Segment(firstValue, segmentSize);
+        this.head = takeSegment;
+        this.hint = takeSegment;
     }
-    
+
     /**
-     * Положить новый элемент в очередь.
-     * В отличие от метода {@linkplain BlockingQueue#put(Object)}, данная реализация
-     * не является блокирующей. Если в очереди не хватает места для хранения новых данных,
-     * то в ней увеличивается внутренний буфер.
+     * Узнать количество чисел в очереди. Метод просматривает все сегменты,
+     * поэтому предназначен только для диагностики.
      */
     @Override
-    public void put(Integer value) {
-        lock.lock();
-        try {
-            if (value == null) {
-                throw new NullPointerException("Parameter value is null");
-            }
-            if (value < min) {
-                throw new IndexOutOfBoundsException(String.format("Minimum number expected is %d, but value specified was %d", min, value));
-            }
-            if (value - min >= bufSize) {
-                resize(value);
-            }
-            int position = (value - min + start) % bufSize;
-            if (buf.compareAndSet(position, ABSENT, PRESENT)) {
-                count++;
-            } else {
-                throw new IndexOutOfBoundsException(String.format("Number %d received second time", value));
-            }
-            if (value == min) {
-                canTake.signal();
-            }
-        } finally {
-            lock.unlock();
-        }
-    }
-    
-    @Override
-    public Integer take() throws InterruptedException {
-        lock.lock();
-        try {
-            while (!buf.compareAndSet(start, PRESENT, ABSENT)) {
-                canTake.await();
-            }
-            start++;
-            start %= bufSize;
-            count--;
-            return min++;
-        } finally {
-            lock.unlock();
-        }
-    }
-    
-    @Override
-    public Integer poll(long timeout, TimeUnit timeUnit) throws InterruptedException {
-        lock.lock();
-        try {
-            long nanos = timeUnit.toNanos(timeout);
-            while (!buf.compareAndSet(start, PRESENT, ABSENT)) {
-                if (nanos <= 0) {
-                    return null;
+    public int size() {
+        int result = 0;
+        for (Segment segment = head; segment != null; segment = segment.next) {
+            for (int i = 0; i < segmentSize; i++) {
+                if (segment.slots.get(i) == PRESENT) {
+                    result++;
                 }
-                nanos = canTake.awaitNanos(nanos);
             }
-            start++;
-            start %= bufSize;
-            count--;
-            return min++;
-        } finally {
-            lock.unlock();
         }
+        return result;
     }
 
-    private void resize(int newMax) {
-        int newCapacity = bufSize * 2;
-        while (newCapacity <= newMax - min) {
-            newCapacity *= 2;
+    /**
+     * Отметить, что число пришло. Если число не помещается в имеющиеся сегменты,
+     * то в очередь добавляются новые сегменты.
+     */
+    @Override
+    protected boolean insert(long value) {
+        Segment segment = head;
+        if (value < segment.base) {
+            return false;
         }
-        AtomicIntegerArray newBuf = new AtomicIntegerArray(newCapacity);
-        for (int i = start; i < bufSize; i++) {
-            newBuf.set(i - start, buf.get(i));
+        Segment last = hint;
+        if (last.base > segment.base && value >= last.base) {
+            segment = last;
         }
-        for (int i = 0; i < start; i++) {
-            newBuf.set(i + bufSize - start, buf.get(i));
+        while (value - segment.base >= segmentSize) {
+            segment = nextOf(segment);
         }
-        for (int i = bufSize; i < newCapacity; i++) {
-            newBuf.set(i, ABSENT);
+        if (value < segment.base) {
+            // число попало в пропущенный промежуток цепочки
+            return false;
         }
-        this.buf = newBuf;
-        this.bufSize = newCapacity;
-        this.start = 0;
-    }
-
-    @Override
-    public Integer remove() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Integer poll() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Integer element() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Integer peek() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Iterator<Integer> iterator() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Object[] toArray() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public <T> T[] toArray(T[] a) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean containsAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean addAll(Collection<? extends Integer> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean removeAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean retainAll(Collection<?> c) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public void clear() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean add(Integer e) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean offer(Integer e) {
-        throw new UnsupportedOperationException();
+        if (segment != last) {
+            hint = segment;
+        }
+        return segment.slots.compareAndSet((int) (value - segment.base), ABSENT, PRESENT);
     }
 
+    /**
+     * Узнать, пришло ли очередное число. Вызывается только потоком, извлекающим числа.
+     */
     @Override
-    public boolean offer(Integer e, long timeout, TimeUnit unit) throws InterruptedException {
-        throw new UnsupportedOperationException();
+    protected boolean isReady() {
+        return takeSegment.slots.get((int) (min - takeSegment.base)) == PRESENT;
     }
 
+    /**
+     * Извлечь идущие подряд числа. Извлеченные ячейки отмечаются упорядоченной записью.
+     * Вызывается только потоком, извлекающим числа.
+     */
     @Override
-    public int remainingCapacity() {
-        throw new UnsupportedOperationException();
+    protected int take(int maxCount) {
+        int count = 0;
+        do {
+            int index = (int) (min - takeSegment.base);
+            takeSegment.slots.lazySet(index, TAKEN);
+            min++;
+            count++;
+            if (index + 1 == segmentSize) {
+                takeSegment = nextOf(takeSegment);
+                head = takeSegment;
+                advanceWindow(takeSegment.base);
+            }
+        } while (count < maxCount && isReady());
+        return count;
     }
 
+    /**
+     * Пропустить числа до указанного. Ячейки пропущенных чисел в последнем сегменте
+     * отмечаются извлеченными, поэтому пришедшие позже пропущенные числа отбрасываются.
+     * Вызывается только потоком, извлекающим числа.
+     */
     @Override
-    public boolean remove(Object o) {
-        throw new UnsupportedOperationException();
+    protected void skip(long value) {
+        Segment segment = takeSegment;
+        while (value - segment.base >= segmentSize) {
+            Segment next = segment.next;
+            if (next == null) {
+                Segment created = new Segment(value - (value - segment.base) % segmentSize, segmentSize);
+                next = NEXT.compareAndSet(segment, null, created) ? created : segment.next;
+            }
+            segment = next;
+        }
+        if (segment != takeSegment) {
+            takeSegment = segment;
+            head = segment;
+            advanceWindow(segment.base);
+            min = Math.max(min, segment.base);
+        }
+        for (int index = (int) (min - segment.base); index < value - segment.base; index++) {
+            segment.slots.lazySet(index, TAKEN);
+        }
+        min = value;
     }
 
-    @Override
-    public boolean contains(Object o) {
-        throw new UnsupportedOperationException();
+    private Segment nextOf(Segment segment) {
+        Segment result = segment.next;
+        if (result == null) {
+            Segment created = new Segment(segment.base + segmentSize, segmentSize);
+            if (NEXT.compareAndSet(segment, null, created)) {
+                result = created;
+            } else {
+                result = segment.next;
+            }
+        }
+        return result;
     }
 
     @Override
-    public int drainTo(Collection<? super Integer> c) {
-        throw new UnsupportedOperationException();
+    public String toString() {
+        return String.format("RingQueue[head=%d]", head.base);
     }
 
-    @Override
-    public int drainTo(Collection<? super Integer> c, int maxElements) {
-        throw new UnsupportedOperationException();
-    }
-    
-    @Override
-    public String toString() {
-        return buf.toString();
+    /**
+     * Участок очереди, в котором хранятся отметки о числах от {@link #base}
+     * до <code>base + segmentSize - 1</code>.
+     */
+    private static final class Segment {
+        final long base;
+        final AtomicIntegerArray slots;
+        volatile Segment next;
+
+        Segment(long base, int size) {
+            this.base = base;
+            this.slots = new AtomicIntegerArray(size);
+            this.next = null;
+        }
     }
 }
@@ -0,0 +1,118 @@
+package ru.innova.task.common;
+
+/**
+ * <p>
+ * Правило, по которому выходной файл {@link GroupCommitWriter} делится на сегменты.
+ * </p>
+ *
+ * <p>
+ * Новый сегмент начинается, когда текущий достиг {@link #getMaxBytes()} байтов или
+ * {@link #getMaxRecords()} записей. Если ни одно из ограничений не задано, файл не делится
+ * и пишется под исходным именем. Хранится не больше {@link #getKeepSegments()} последних
+ * сегментов, более старые удаляются вместе с их индексами.
+ * </p>
+ *
+ * <p>
+ * Правило можно задать системными свойствами (см. {@link #fromSystemProperties()}):
+ * </p>
+ * <ul>
+ * <li><code>output.roll.bytes</code> - наибольший размер сегмента в байтах, по умолчанию 0 - не ограничен;</li>
+ * <li><code>output.roll.records</code> - наибольшее количество записей в сегменте, по умолчанию 0 - не ограничено;</li>
+ * <li><code>output.roll.keep</code> - количество хранимых сегментов, по умолчанию 0 - все;</li>
+ * <li><code>output.index.interval</code> - через сколько записей делается отметка в индексе,
+ *     по умолчанию {@link #DEFAULT_INDEX_INTERVAL}.</li>
+ * </ul>
+ *
+ * @author sergey
+ */
+public final class RollingPolicy {
+    /**
+     * Интервал индекса по умолчанию.
+     */
+    public static final int DEFAULT_INDEX_INTERVAL = 4096;
+    private final long maxBytes;
+    private final long maxRecords;
+    private final int keepSegments;
+    private final int indexInterval;
+
+    /**
+     * Создает объект с указанными параметрами.
+     *
+     * @param maxBytes наибольший размер сегмента в байтах или 0, если не ограничен
+     * @param maxRecords наибольшее количество записей в сегменте или 0, если не ограничено
+     * @param keepSegments количество хранимых сегментов или 0, если хранятся все
+     * @param indexInterval через сколько записей делается отметка в индексе
+     */
+    public RollingPolicy(long maxBytes, long maxRecords, int keepSegments, int indexInterval) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect segment size %d", maxBytes));
+        }
+        if (maxRecords < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect number of records %d", maxRecords));
+        }
+        if (keepSegments < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect number of segments %d", keepSegments));
+        }
+        if (indexInterval <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect index interval %d", indexInterval));
+        }
+        this.maxBytes = maxBytes;
+        this.maxRecords = maxRecords;
+        this.keepSegments = keepSegments;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Создать правило, заданное системными свойствами.
+     *
+     * @return новое правило
+     * @throws IllegalArgumentException если свойства заданы неверно
+     */
+    public static RollingPolicy fromSystemProperties() {
+        long bytes = Long.getLong("output.roll.bytes", 0L);
+        long records = Long.getLong("output.roll.records", 0L);
+        int keep = Integer.getInteger("output.roll.keep", 0);
+        int interval = Integer.getInteger("output.index.interval", DEFAULT_INDEX_INTERVAL);
+        return new RollingPolicy(bytes, records, keep, interval);
+    }
+
+    /**
+     * @return <code>true</code>, если файл делится на сегменты
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0 || maxRecords > 0;
+    }
+
+    /**
+     * @return наибольший размер сегмента в байтах или 0, если не ограничен
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return наибольшее количество записей в сегменте или 0, если не ограничено
+     */
+    public long getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * @return количество хранимых сегментов или 0, если хранятся все
+     */
+    public int getKeepSegments() {
+        return keepSegments;
+    }
+
+    /**
+     * @return через сколько записей делается отметка в индексе
+     */
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("bytes=%d, records=%d, keep=%d, interval=%d", maxBytes, maxRecords, keepSegments, indexInterval);
+    }
+}
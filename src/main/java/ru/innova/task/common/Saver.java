@@ -1,61 +1,184 @@
 package ru.innova.task.common;
 
-import java.io.PrintWriter;
-import java.util.concurrent.BlockingQueue;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.zip.CRC32;
 
 import ru.innova.task.common.AbstractWorker;
 import ru.innova.task.common.DataController;
 
 /**
+ * <p>
  * Класс-исполнитель, получающий данные из очереди и помещающий их в файл.
- * 
+ * </p>
+ *
+ * <p>
+ * Числа извлекаются из очереди диапазонами (см. {@link ReorderBuffer#pollRun}).
+ * Весь диапазон форматируется в буфер {@link GroupCommitWriter} без создания строк.
+ * </p>
+ *
+ * <p>
+ * Записанные числа фиксируются группами по правилу {@link DurabilityPolicy}
+ * (см. {@link GroupCommitWriter}). Правило проверяется после каждого числа, а не после
+ * диапазона, поэтому группа не бывает больше заданной. Если новых данных нет, а фиксация
+ * при простое не задана, числа ждут фиксации по количеству или по времени; при завершении
+ * работы фиксируется все записанное. Объекту {@link DataController} сообщается
+ * только о числах, которые уже зафиксированы. Если очередь пропустила числа
+ * (см. {@link ReorderBuffer#skipTo(long)}), в журнал выводится предупреждение.
+ * Выходной файл делится на сегменты по правилу {@link RollingPolicy#fromSystemProperties()}.
+ * </p>
+ *
+ * <p>
+ * Если задано системное свойство <code>output.journal=true</code>, числа дополнительно
+ * записываются в двоичный журнал {@link JournalWriter}, имя которого получается из имени
+ * выходного файла отбрасыванием расширения. Вместимость сегмента журнала задается свойством
+ * <code>output.journal.records</code>. При фиксации с {@link DurabilityPolicy#isForce()}
+ * журнал тоже сбрасывается на диск.
+ * </p>
+ *
+ * <p>
+ * Если числа передаются с нагрузкой и задано <code>payload.checksum=persist</code>
+ * (см. {@link PayloadFormat}), то контрольная сумма нагрузки каждого сохраненного числа
+ * записывается в файл контрольных сумм (см. {@link #checksumName(String)}), строка которого
+ * соответствует строке выходного файла. Получатели к этому моменту уже сверили нагрузку
+ * с ожидаемой, поэтому записывается ожидаемая сумма. Файл фиксируется вместе с выходным файлом.
+ * </p>
+ *
  * @author sergey
  */
 public class Saver extends AbstractWorker {
-    private static final String OUTPUT_ENCODING = "UTF-8";
-    private final BlockingQueue<Integer> input;
+    private static final int MAX_RUN_SIZE = 4096;
+    private static final long POLL_TIMEOUT = 500;
+    private final ReorderBuffer input;
     private final DataController controller;
     private final String outputFileName;
+    private final DurabilityPolicy policy;
+    private final JournalWriter journal;
+    private final boolean append;
+    private final PayloadFormat payload;
+
+    /**
+     * Создает новый экземпляр класса. Правило фиксации данных задается системными свойствами
+     * (см. {@link DurabilityPolicy#fromSystemProperties()}).
+     * 
+     * @param input входная очередь
+     * @param outputFileName имя выходного файла
+     * @param controller объект для сверки данных, передаваемых в различных направлениях
+     * @param name имя потока
+     */
+    public Saver(ReorderBuffer input, String outputFileName, DataController controller, String name) {
+        this(input, outputFileName, DurabilityPolicy.fromSystemProperties(), controller, name);
+    }
+
+    /**
+     * Создает новый экземпляр класса.
+     * 
+     * @param input входная очередь
+     * @param outputFileName имя выходного файла
+     * @param policy правило фиксации данных
+     * @param controller объект для сверки данных, передаваемых в различных направлениях
+     * @param name имя потока
+     */
+    public Saver(ReorderBuffer input, String outputFileName, DurabilityPolicy policy, DataController controller, String name) {
+        this(input, outputFileName, policy, false, controller, name);
+    }
 
     /**
      * Создает новый экземпляр класса.
      * 
      * @param input входная очередь
      * @param outputFileName имя выходного файла
+     * @param policy правило фиксации данных
+     * @param append <code>true</code> - дописывать существующие выходной файл и журнал,
+     *     <code>false</code> - перезаписать их
      * @param controller объект для сверки данных, передаваемых в различных направлениях
      * @param name имя потока
      */
-    public Saver(BlockingQueue<Integer> input, String outputFileName, DataController controller, String name) {
+    public Saver(ReorderBuffer input, String outputFileName, DurabilityPolicy policy, boolean append, DataController controller, String name) {
         super(1, name);
         this.input = input;
         this.controller = controller;
         this.exited = false;
         this.outputFileName = outputFileName;
+        this.policy = policy;
+        this.append = append;
+        if (Boolean.getBoolean("output.journal")) {
+            int records = Integer.getInteger("output.journal.records", JournalWriter.DEFAULT_SEGMENT_RECORDS);
+            this.journal = new JournalWriter(journalName(outputFileName), records, append);
+        } else {
+            this.journal = null;
+        }
+        PayloadFormat format = PayloadFormat.fromSystemProperties();
+        this.payload = format != null && format.isPersist() ? format : null;
         logger.log(Level.FINE, "[{0}] Saver.Saver()", myNumber);
     }
 
     @Override
     public Integer call() {
         logger.log(Level.FINE, "[{0}] init", myNumber);
-        try (PrintWriter output = new PrintWriter(outputFileName, OUTPUT_ENCODING)) {
+        try (GroupCommitWriter output = new GroupCommitWriter(outputFileName, policy, RollingPolicy.fromSystemProperties(), append)) {
             logger.log(Level.FINE, "[{0}] barrier overcome", myNumber);
-            while (true) {
-                logger.log(Level.FINE, "[{0}] main loop", myNumber);
-                Integer number = input.poll(500, TimeUnit.MILLISECONDS);
-                logger.log(Level.FINE, "[{0}] got number {1}", new Object[] {myNumber, number});
-                if (number == null) {
-                    logger.log(Level.FINE, "[{0}] got null", myNumber);
-                    if (exited && controller.areAllSaved()) {
-                        logger.log(Level.FINE, "[{0}] exiting", myNumber);
-                        return 0;
+            SequenceRange range = new SequenceRange();
+            long lastWritten = ProtocolConstants.NONE_VALUE;
+            long skipped = 0;
+            GroupCommitWriter checksums = null;
+            byte[] scratch = null;
+            CRC32 crc = null;
+            if (payload != null) {
+                checksums = new GroupCommitWriter(checksumName(outputFileName), policy, new RollingPolicy(0, 0, 0, RollingPolicy.DEFAULT_INDEX_INTERVAL), append);
+                scratch = new byte[ProtocolConstants.MAX_PAYLOAD_SIZE];
+                crc = new CRC32();
+            }
+            try {
+                while (true) {
+                    logger.log(Level.FINE, "[{0}] main loop", myNumber);
+                    if (!input.pollRun(range, MAX_RUN_SIZE, output.getIdleTimeout(POLL_TIMEOUT), TimeUnit.MILLISECONDS)) {
+                        logger.log(Level.FINE, "[{0}] got null", myNumber);
+                        if (output.hasPending() && (policy.isCommitOnIdle() || output.isCommitDue() || exited)) {
+                            commit(output, checksums, lastWritten);
+                            continue;
+                        }
+                        if (input.isStalled()) {
+                            logger.log(Level.WARNING, "[{0}] reorder window is full, still waiting for number {1}", new Object[] {myNumber, range.getFirst()});
+                        }
+                        if (exited && controller.areAllSaved()) {
+                            logger.log(Level.FINE, "[{0}] exiting", myNumber);
+                            return 0;
+                        }
+                    } else {
+                        logger.log(Level.FINE, "[{0}] got range {1}", new Object[] {myNumber, range});
+                        if (input.getSkipped() != skipped) {
+                            logger.log(Level.WARNING, "[{0}] {1} numbers before {2} were skipped", new Object[] {myNumber, input.getSkipped() - skipped, range.getFirst()});
+                            skipped = input.getSkipped();
+                        }
+                        for (long number = range.getFirst(); number <= range.getLast(); number++) {
+                            output.appendLong(number);
+                            if (journal != null) {
+                                journal.append(number);
+                            }
+                            if (checksums != null) {
+                                checksums.appendLong(payload.checksum(number, scratch, crc));
+                            }
+                            lastWritten = number;
+                            if (output.isCommitDue()) {
+                                commit(output, checksums, lastWritten);
+                            }
+                        }
+                        logger.log(Level.FINE, "[{0}] written range {1}", new Object[] {myNumber, range});
                     }
-                } else {
-                    output.println(number);
-                    output.flush();
-                    logger.log(Level.FINE, "[{0}] saved number {1}", new Object[] {myNumber, number});
-                    controller.saved(number);
+                }
+            } finally {
+                output.commit();
+                if (checksums != null) {
+                    checksums.close();
+                }
+                if (journal != null) {
+                    journal.close();
+                }
+                logger.log(Level.INFO, "[{0}] {1}", new Object[] {myNumber, output});
+                if (input.getDuplicates() > 0) {
+                    logger.log(Level.INFO, "[{0}] {1} numbers received again were dropped", new Object[] {myNumber, input.getDuplicates()});
                 }
             }
         } catch (InterruptedException e) {
@@ -65,4 +188,37 @@ public class Saver extends AbstractWorker {
         }
         return 0;
     }
+
+    private void commit(GroupCommitWriter output, GroupCommitWriter checksums, long lastWritten) throws IOException {
+        if (checksums != null) {
+            checksums.commit();
+        }
+        output.commit();
+        if (journal != null && policy.isForce()) {
+            journal.force();
+        }
+        logger.log(Level.FINE, "[{0}] saved up to {1}", new Object[] {myNumber, lastWritten});
+        controller.saved(lastWritten);
+    }
+
+    /**
+     * Получить имя файла контрольных сумм нагрузки для выходного файла.
+     *
+     * @param outputFileName имя выходного файла
+     * @return имя файла контрольных сумм
+     */
+    public static String checksumName(String outputFileName) {
+        return journalName(outputFileName) + ".crc";
+    }
+
+    /**
+     * Получить имя журнала для выходного файла.
+     *
+     * @param outputFileName имя выходного файла
+     * @return имя журнала
+     */
+    public static String journalName(String outputFileName) {
+        int dot = outputFileName.lastIndexOf('.');
+        return dot > 0 ? outputFileName.substring(0, dot) : outputFileName;
+    }
 }
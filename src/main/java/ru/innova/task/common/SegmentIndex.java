@@ -0,0 +1,62 @@
+package ru.innova.task.common;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * <p>
+ * Индекс сегмента выходного файла. Индекс хранится рядом с сегментом в файле с расширением
+ * <code>.idx</code> и состоит из отметок по шестнадцать байтов: число (восемь байтов) и смещение
+ * его записи от начала сегмента (восемь байтов). Отметка делается для первой записи сегмента
+ * и далее через каждые {@link RollingPolicy#getIndexInterval()} записей.
+ * </p>
+ *
+ * <p>
+ * Поскольку числа в выходных файлах идут по возрастанию, поиск числа сводится к двоичному
+ * поиску отметки и просмотру не более одного интервала записей от найденного смещения.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class SegmentIndex {
+    /**
+     * Размер одной отметки в байтах.
+     */
+    public static final int ENTRY_SIZE = 16;
+    /**
+     * Расширение файла индекса.
+     */
+    public static final String EXTENSION = ".idx";
+
+    private SegmentIndex() {
+    }
+
+    /**
+     * Найти смещение, с которого надо просматривать сегмент, чтобы найти указанное число.
+     *
+     * @param indexFileName имя файла индекса
+     * @param value искомое число
+     * @return смещение ближайшей отметки, число которой не больше искомого,
+     *     или -1, если искомое число меньше первого числа сегмента
+     * @throws IOException при ошибке чтения индекса
+     */
+    public static long find(String indexFileName, long value) throws IOException {
+        try (RandomAccessFile index = new RandomAccessFile(indexFileName, "r")) {
+            long low = 0;
+            long high = index.length() / ENTRY_SIZE - 1;
+            long result = -1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                index.seek(middle * ENTRY_SIZE);
+                long mark = index.readLong();
+                if (mark <= value) {
+                    result = index.readLong();
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return result;
+        }
+    }
+}
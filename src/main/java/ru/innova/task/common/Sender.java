@@ -9,20 +9,60 @@ import java.util.logging.Level;
 
 import ru.innova.task.network.NetworkSender;
 
+/**
+ * <p>
+ * Класс-исполнитель, извлекающий числа из очереди и отправляющий их по сети.
+ * </p>
+ *
+ * <p>
+ * Управляющие значения (например, {@link ProtocolConstants#START_SIGN}) передаются через отдельную
+ * очередь, если она задана, и отправляются отдельными кадрами (см. {@link NetworkSender#sendControl(int)}).
+ * Каждое значение отправляет один из потоков, который первым его извлечет. Перед отправкой чисел
+ * и перед выходом поток отправляет все накопившиеся управляющие значения.
+ * </p>
+ *
+ * <p>
+ * Если задан источник {@link NumberSource}, то числа поток берет из источника блоками и отправляет
+ * сразу, без передачи через очередь, а когда чисел нет, ждет управляющих значений.
+ * </p>
+ *
+ * @author sergey
+ */
 public class Sender extends AbstractWorker {
     private static final int WAIT_TIMEOUT = 500;
     private static final AtomicInteger counter = new AtomicInteger(0);
-    private final BlockingQueue<Integer> input;
+    private final LongBlockingQueue input;
+    private final BlockingQueue<Integer> control;
+    private final NumberSource source;
     private final NetworkSender output;
     private final DataController controller;
     private final CountDownLatch startSignal;
+    private final long[] batch;
     
-    public Sender(BlockingQueue<Integer> input, NetworkSender output, DataController controller, String name, CountDownLatch startSignal) {
+    public Sender(LongBlockingQueue input, NetworkSender output, DataController controller, String name, CountDownLatch startSignal) {
+        this(input, null, null, output, controller, name, startSignal);
+    }
+
+    /**
+     * Создает новый экземпляр
+     *
+     * @param input очередь чисел
+     * @param control очередь управляющих значений или <code>null</code>, если их нет
+     * @param source источник чисел или <code>null</code>, если числа передаются через очередь
+     * @param output объект, отправляющий данные по сети
+     * @param controller объект, для сверки данных, проходящих в различных направлениях
+     * @param name имя потока
+     * @param startSignal объект, через который поток дожидается момента старта
+     */
+    public Sender(LongBlockingQueue input, BlockingQueue<Integer> control, NumberSource source, NetworkSender output, DataController controller, String name, CountDownLatch startSignal) {
         super(counter.incrementAndGet(), name);
         this.input = input;
+        this.control = control;
+        this.source = source;
         this.output = output;
         this.controller = controller;
         this.startSignal = startSignal;
+        this.batch = new long[ProtocolConstants.MAX_BATCH_SIZE];
         this.exited = false;
         logger.log(Level.FINE, "[{0}] Sender.Sender()", myNumber);
     }
@@ -45,16 +85,40 @@ public class Sender extends AbstractWorker {
                     return 0;
                 }
                 logger.log(Level.FINE, "[{0}] main loop", myNumber);
-                Integer number = input.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+                sendControl();
+                if (source != null) {
+                    int count = input.drainTo(batch);
+                    if (count == 0) {
+                        count = source.reserve(batch, batch.length);
+                    }
+                    if (count > 0) {
+                        send(count);
+                        continue;
+                    }
+                }
+                long number;
+                if (source != null && control != null) {
+                    Integer signal = control.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (signal != null) {
+                        output.sendControl(signal);
+                        continue;
+                    }
+                    number = input.pollLong();
+                } else {
+                    number = input.pollLong(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
                 logger.log(Level.FINE, "[{0}] got number {1}", new Object[] {myNumber, number});
-                if (number == null) {
+                if (number == ProtocolConstants.NONE_VALUE) {
                     logger.log(Level.FINE, "[{0}] got null", new Object[] {myNumber});
                     if (exited  && controller.areAllSaved()) {
+                        sendControl();
                         logger.log(Level.FINE, "[{0}] exitting", myNumber);
                         return 0;
                     }
                 } else {
-                    send(number);
+                    batch[0] = number;
+                    int count = 1 + input.drainTo(batch, 1, batch.length - 1);
+                    send(count);
                 }
             }
         } catch (InterruptedException e) {
@@ -71,8 +135,25 @@ public class Sender extends AbstractWorker {
         return 0;
     }
 
-    private void send(int value) throws IOException {
-        logger.log(Level.FINE, "[{0}] send({1})", new Object[] {myNumber, value});
-        output.send(value);
+    /**
+     * Отправить все накопившиеся управляющие значения.
+     */
+    private void sendControl() throws IOException {
+        if (control == null) {
+            return;
+        }
+        for (Integer signal = control.poll(); signal != null; signal = control.poll()) {
+            logger.log(Level.FINE, "[{0}] sending control signal {1}", new Object[] {myNumber, signal});
+            output.sendControl(signal);
+        }
+    }
+
+    private void send(int count) throws IOException {
+        logger.log(Level.FINE, "[{0}] send({1}, {2})", new Object[] {myNumber, batch[0], count});
+        if (count == 1) {
+            output.send(batch[0]);
+        } else {
+            output.send(batch, 0, count);
+        }
     }
 }
@@ -0,0 +1,79 @@
+package ru.innova.task.common;
+
+/**
+ * <p>
+ * Диапазон последовательных чисел <code>[first, first + count)</code>.
+ * </p>
+ *
+ * <p>
+ * Объект изменяемый: очередь {@link ReorderBuffer} записывает в него очередной
+ * диапазон, поэтому один и тот же объект можно использовать многократно
+ * и не создавать новый объект на каждый диапазон.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class SequenceRange {
+    private long first;
+    private int count;
+
+    /**
+     * Создает пустой диапазон.
+     */
+    public SequenceRange() {
+        this.first = 0;
+        this.count = 0;
+    }
+
+    /**
+     * Узнать первое число диапазона.
+     *
+     * @return первое число
+     */
+    public long getFirst() {
+        return first;
+    }
+
+    /**
+     * Узнать количество чисел в диапазоне.
+     *
+     * @return количество чисел
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Узнать последнее число диапазона.
+     *
+     * @return последнее число; для пустого диапазона число, предшествующее первому
+     */
+    public long getLast() {
+        return first + count - 1;
+    }
+
+    /**
+     * Узнать, пуст ли диапазон.
+     *
+     * @return <code>true</code>, если в диапазоне нет чисел
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Задать диапазон.
+     *
+     * @param first первое число
+     * @param count количество чисел
+     */
+    public void set(long first, int count) {
+        this.first = first;
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%d, %d)", first, first + count);
+    }
+}
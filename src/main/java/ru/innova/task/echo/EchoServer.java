@@ -1,15 +1,14 @@
 package ru.innova.task.echo;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -17,45 +16,96 @@ import java.util.logging.Logger;
 
 import ru.innova.task.common.AbstractWorker;
 import ru.innova.task.common.DummyDataController;
+import ru.innova.task.common.DurabilityPolicy;
 import ru.innova.task.common.InteractionHelper;
+import ru.innova.task.common.JournalWriter;
+import ru.innova.task.common.LongArrayBlockingQueue;
+import ru.innova.task.common.LongBlockingQueue;
 import ru.innova.task.common.MultiQueue;
+import ru.innova.task.common.OutputRecovery;
+import ru.innova.task.common.PayloadFormat;
 import ru.innova.task.common.ProtocolConstants;
 import ru.innova.task.common.Receiver;
-import ru.innova.task.common.RingQueue;
+import ru.innova.task.common.ReorderBuffer;
+import ru.innova.task.common.ReorderBufferFactory;
+import ru.innova.task.common.RollingPolicy;
 import ru.innova.task.common.Saver;
 import ru.innova.task.common.Sender;
 import ru.innova.task.network.ClientNetworkReceiver;
 import ru.innova.task.network.ClientNetworkSender;
+import ru.innova.task.network.ControlListener;
+import ru.innova.task.network.CreditMeter;
+import ru.innova.task.network.MuxTransport;
 import ru.innova.task.network.NetworkReceiver;
 import ru.innova.task.network.NetworkSender;
+import ru.innova.task.network.Transport;
 
 /**
+ * <p>
  * Программа, реализающая Echo Server в соответствии с задачей.
+ * </p>
+ *
+ * <p>
+ * Если задано системное свойство <code>payload.size</code> (см. {@link PayloadFormat}),
+ * то получатели проверяют нагрузку полученных чисел, а отправители отправляют числа обратно
+ * с нагрузкой. Нагрузка определяется числом, поэтому отправители формируют ее заново в своих
+ * буферах, а не хранят полученные байты в очередях.
+ * </p>
+ *
+ * <p>
+ * Системное свойство <code>network.mux=true</code> передает все потоки через одно
+ * мультиплексированное соединение (см. {@link MuxTransport}), как и у Initiator Server.
+ * </p>
+ *
+ * <p>
+ * Если Initiator Server продолжает прежний запуск, он объявляет последнее число прежнего
+ * запуска (см. {@link ProtocolConstants#RESUME_SIGN}). Получатели передают объявление очереди
+ * сохраняемых чисел, и она пропускает числа до него: их Initiator Server уже не отправит.
+ * Повторно отправленные числа, которые уже сохранены, очередь отбрасывает. Числа, которые
+ * сервер успел переслать, но не успел сохранить до аварийного завершения, восстановить нельзя:
+ * о пропуске {@link Saver} выводит предупреждение.
+ * </p>
+ *
+ * <p>
+ * Если задано системное свойство <code>echo.resume=true</code>, сервер тоже продолжает прежний
+ * запуск: выходной файл и журнал обрезаются до последнего целого числа (см. {@link OutputRecovery})
+ * и дописываются, а сохранение продолжается со следующего числа. Иначе файл создается заново.
+ * </p>
  * 
  * @author sergey
  */
 public class EchoServer extends Thread {
+    private static final String OUTPUT_FILE_NAME = "echo_.txt";
     private static final int OUTPUT_QUEUE_SIZE = 100000;
     private static final int MAX_SENDERS = 3;
     private static final int MAX_RECEIVERS = 3;
+    private static final int MAX_MUX_STREAMS = 64;
     private final Logger logger;
     private final Config config;
     private final List<Sender> senders;
     private final List<Receiver> receivers;
-    private final BlockingQueue<Integer> toProxy;
-    private final BlockingQueue<Integer> fromProxy;
-    private final BlockingQueue<Integer> toSave;
+    private final LongBlockingQueue toProxy;
+    private final LongBlockingQueue fromProxy;
+    private final ReorderBuffer toSave;
     private final ExecutorService threadPool;
     private final CountDownLatch startSignal;
+    private final InteractionHelper interactionHelper;
+    private final CreditMeter creditMeter;
     private AbstractWorker saver;
     private Future<Integer> saverFuture;
     
-    EchoServer(Config config) {
+    EchoServer(Config config) throws IOException {
         this.config = config;
         this.receivers = new ArrayList<>(config.receiverThreads);
         this.senders = new ArrayList<>(config.senderThreads);
-        this.toProxy = new LinkedBlockingDeque<>(OUTPUT_QUEUE_SIZE);
-        this.toSave = new RingQueue();
+        this.toProxy = new LongArrayBlockingQueue(OUTPUT_QUEUE_SIZE);
+        this.logger = Logger.getLogger("echo.Server");
+        long lastValue = ProtocolConstants.NONE_VALUE;
+        if (config.resume) {
+            lastValue = recover();
+            logger.log(Level.INFO, "resuming after number {0}", lastValue);
+        }
+        this.toSave = ReorderBufferFactory.create(lastValue + 1);
         this.fromProxy = new MultiQueue(toProxy, toSave);
         this.startSignal = new CountDownLatch(1);
         this.threadPool = Executors.newCachedThreadPool(new ThreadFactory() {
@@ -66,7 +116,23 @@ public class EchoServer extends Thread {
                 return result;
             }
         });
-        this.logger = Logger.getLogger("echo.Server");
+        this.interactionHelper = new InteractionHelper();
+        this.creditMeter = new CreditMeter();
+    }
+
+    /**
+     * Обрезать выходной файл и журнал прежнего запуска до последнего целого числа.
+     *
+     * @return последнее сохраненное число прежнего запуска
+     */
+    private static long recover() throws IOException {
+        boolean rolling = RollingPolicy.fromSystemProperties().isEnabled();
+        long result = OutputRecovery.truncateAbove(OUTPUT_FILE_NAME, rolling, Long.MAX_VALUE);
+        String journal = Saver.journalName(OUTPUT_FILE_NAME);
+        if (JournalWriter.lastSegment(journal) >= 0) {
+            JournalWriter.truncateAbove(journal, result);
+        }
+        return result;
     }
     
     @Override
@@ -82,33 +148,60 @@ public class EchoServer extends Thread {
     }
 
     private void doWork() throws InterruptedException, ExecutionException {
-        InteractionHelper interactionHelper = new InteractionHelper();
-        while (true) {
-            String cmd = interactionHelper.prompt("Enter command: ", "help");
-            if (cmd.equals("help")) {
-                interactionHelper.showMessage("help - show this message\n"
-                                        + "start - start transferring numbers\n"
-                                        + "exit - exit program");
-            } else if (cmd.equals("start")) {
-                startSignal.countDown();
-            } else if (cmd.equals("exit")) {
-                processExit();
-                interactionHelper.showMessage("Bye!");
-                break;
-            }
+        while (execute(interactionHelper.prompt("Enter command: ", "help"))) {
+            // next command
         }
     }
 
-    private void prepare() {
+    /**
+     * Выполнить команду пользователя. Метод вызывается из консольного цикла или
+     * из {@link ru.innova.task.embedded.EmbeddedServer}.
+     *
+     * @param cmd команда
+     * @return <code>false</code>, если команда завершила работу сервера
+     * @throws InterruptedException при прерывании потока во время ожидания
+     * @throws ExecutionException если поток записи файла завершился с ошибкой
+     */
+    public boolean execute(String cmd) throws InterruptedException, ExecutionException {
+        if (cmd.equals("help")) {
+            interactionHelper.showMessage("help - show this message\n"
+                                    + "start - start transferring numbers\n"
+                                    + "exit - exit program");
+        } else if (cmd.equals("start")) {
+            startSignal.countDown();
+        } else if (cmd.equals("exit")) {
+            processExit();
+            interactionHelper.showMessage("Bye!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Создать и запустить потоки сервера. Метод вызывается один раз, до первой команды.
+     */
+    public void prepare() {
+        ControlListener listener = new ControlListener() {
+            @Override
+            public void onControl(int signal) {
+                // the proxy does not forward control values
+            }
+
+            @Override
+            public void onResume(long last) {
+                logger.log(Level.INFO, "initiator resumed after number {0}", last);
+                toSave.skipTo(last + 1);
+            }
+        };
         for (int i = 0; i < config.receiverThreads; i++) {
-            NetworkReceiver input = new ClientNetworkReceiver(config.host, config.port, ProtocolConstants.ECHO_SIGN);
+            NetworkReceiver input = new ClientNetworkReceiver(config.transport, ProtocolConstants.ECHO_SIGN, config.payload, listener);
             receivers.add(new Receiver(input, fromProxy, DummyDataController.getInstance(), "echo.Receiver", startSignal));
         }
         for (int i = 0; i < config.senderThreads; i++) {
-            NetworkSender output = new ClientNetworkSender(config.host, config.port, ProtocolConstants.ECHO_SIGN);
+            NetworkSender output = new ClientNetworkSender(config.transport, ProtocolConstants.ECHO_SIGN, config.payload, creditMeter);
             senders.add(new Sender(toProxy, output, DummyDataController.getInstance(), "echo.Sender", startSignal));
         }
-        this.saver = new Saver(toSave, "echo_.txt", DummyDataController.getInstance(), "echo.Saver");
+        this.saver = new Saver(toSave, OUTPUT_FILE_NAME, DurabilityPolicy.fromSystemProperties(), config.resume, DummyDataController.getInstance(), "echo.Saver");
         for (Receiver receiver: receivers) {
             threadPool.submit(receiver);
         }
@@ -129,13 +222,15 @@ public class EchoServer extends Thread {
         threadPool.shutdown();
         threadPool.awaitTermination(1000, TimeUnit.MILLISECONDS);
         saverFuture.get();
+        logger.log(Level.INFO, "credit: {0}", creditMeter);
     }
     
     private static final class Config {
-        String host;
-        int port;
+        Transport transport;
         int senderThreads;
         int receiverThreads;
+        boolean resume;
+        PayloadFormat payload;
         
         Config() {
             // empty constructor
@@ -149,34 +244,78 @@ public class EchoServer extends Thread {
         } else {
             out = System.err;
         }
-        out.printf("Usage: java %s <proxy-server-host> <proxy-server-port> <sender-threads-count> <receiver-threads-count>\n", EchoServer.class.getName());
+        out.printf("Usage: java [-Dreorder.buffer=ring|bitmap] [-Dreorder.window=<count>] [-Decho.resume=true] [-Dpayload.size=<bytes>|<min>-<max>|exp:<mean> [-Dpayload.checksum=verify|persist|none]] [-Dnetwork.codec=delta|plain] [-Dnetwork.mux=true [-Dnetwork.mux.ring.size=<bytes>]] %s <proxy-server-host> <proxy-server-port>|unix:<socket-path> <sender-threads-count> <receiver-threads-count>\n", EchoServer.class.getName());
         return retval;
     }
 
     private static Config parseArguments(String[] args) {
-        if (args.length != 4) {
+        boolean unix = args.length == 3 && Transport.isUnixAddress(args[0]);
+        if (args.length != 4 && !unix) {
             System.exit(usage(1));
         }
         Config config = new Config();
         int index = 0;
-        config.host = args[index++];
         try {
-            config.port = Integer.parseInt(args[index++]);
+            if (unix) {
+                config.transport = Transport.forUnix(args[index++]);
+            } else {
+                String host = args[index++];
+                config.transport = Transport.tcp(host, Integer.parseInt(args[index++]));
+            }
             config.senderThreads = Integer.parseInt(args[index++]);
             config.receiverThreads = Integer.parseInt(args[index++]);
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             System.err.println(e.getMessage());
             System.exit(usage(2));
         }
-        if (config.senderThreads <= 0 || config.senderThreads > MAX_SENDERS) {
-            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "sender", config.senderThreads, 0, MAX_SENDERS);
+        readProperties(config);
+        return config;
+    }
+
+    /**
+     * Проверить количество потоков и дополнить параметры системными свойствами.
+     * Если параметры заданы неверно, программа завершается.
+     */
+    private static void readProperties(Config config) {
+        boolean mux = Boolean.getBoolean("network.mux");
+        int maxSenders = mux ? MAX_MUX_STREAMS : MAX_SENDERS;
+        int maxReceivers = mux ? MAX_MUX_STREAMS : MAX_RECEIVERS;
+        if (config.senderThreads <= 0 || config.senderThreads > maxSenders) {
+            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "sender", config.senderThreads, 0, maxSenders);
             System.exit(usage(3));
         }
-        if (config.receiverThreads <= 0 || config.receiverThreads > MAX_RECEIVERS) {
-            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "receiver", config.receiverThreads, 0, MAX_RECEIVERS);
+        if (config.receiverThreads <= 0 || config.receiverThreads > maxReceivers) {
+            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "receiver", config.receiverThreads, 0, maxReceivers);
             System.exit(usage(3));
         }
-        return config;
+        if (mux) {
+            config.transport = new MuxTransport(config.transport, ProtocolConstants.ECHO_SIGN);
+        }
+        config.resume = Boolean.getBoolean("echo.resume");
+        try {
+            config.payload = PayloadFormat.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(usage(3));
+        }
+    }
+
+    /**
+     * Создать сервер, который управляется не из консоли, а методом {@link #execute(String)}.
+     *
+     * @param transport транспорт, через который устанавливаются соединения с прокси-сервером
+     * @param senderThreads количество потоков-отправителей
+     * @param receiverThreads количество потоков-получателей
+     * @return сервер; перед первой командой надо вызвать {@link #prepare()}
+     * @throws IOException в случае ошибки восстановления файлов прежнего запуска
+     */
+    public static EchoServer create(Transport transport, int senderThreads, int receiverThreads) throws IOException {
+        Config config = new Config();
+        config.transport = transport;
+        config.senderThreads = senderThreads;
+        config.receiverThreads = receiverThreads;
+        readProperties(config);
+        return new EchoServer(config);
     }
 
     public static void main(String[] args) {
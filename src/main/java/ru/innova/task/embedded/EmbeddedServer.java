@@ -0,0 +1,142 @@
+package ru.innova.task.embedded;
+
+import java.io.PrintStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.innova.task.common.InteractionHelper;
+import ru.innova.task.echo.EchoServer;
+import ru.innova.task.initiator.InitiatorServer;
+import ru.innova.task.network.MemoryTransport;
+import ru.innova.task.network.Transport;
+import ru.innova.task.proxy.ProxyServer;
+
+/**
+ * <p>
+ * Программа, запускающая Proxy Server, Echo Server и Initiator Server в одном процессе.
+ * По умолчанию серверы соединяются транспортом {@link MemoryTransport}, то есть через
+ * кольцевые буферы в памяти, а не через сокеты. Отправители, получатели и формат кадров
+ * остаются теми же, поэтому так можно измерить их работу без сетевого стека. Для сравнения
+ * можно задать порт TCP или <code>unix:&lt;путь&gt;</code>: тогда серверы соединяются
+ * так же, как при запуске в отдельных процессах.
+ * </p>
+ *
+ * <p>
+ * Команды пользователя передаются серверу Initiator. Команды <code>start</code> и
+ * <code>exit</code> передаются также остальным серверам: <code>start</code> - сначала
+ * прокси-серверу, <code>exit</code> - ему последнему. Команда <code>credit</code> выводит
+ * кредиты прокси-сервера и сервера Initiator. Параметры серверов задаются теми же
+ * системными свойствами, что и при раздельном запуске. Транспорт в памяти не поддерживает
+ * циклы обработки событий, поэтому прокси-сервер по умолчанию обслуживает соединения
+ * потоками (<code>proxy.engine=threads</code>).
+ * </p>
+ *
+ * @author sergey
+ */
+public class EmbeddedServer extends Thread {
+    private static final String MEMORY_SERVER_NAME = "proxy";
+    private final Logger logger;
+    private final Config config;
+    private final InteractionHelper interactionHelper;
+
+    EmbeddedServer(Config config) {
+        this.config = config;
+        this.logger = Logger.getLogger("embedded.Server");
+        this.interactionHelper = new InteractionHelper();
+    }
+
+    @Override
+    public void run() {
+        try {
+            ProxyServer proxy = ProxyServer.create(config.serverTransport);
+            EchoServer echo = EchoServer.create(config.clientTransport, config.senderThreads, config.receiverThreads);
+            InitiatorServer initiator = InitiatorServer.create(config.clientTransport, config.senderThreads, config.receiverThreads);
+            proxy.start();
+            echo.prepare();
+            initiator.prepare();
+            while (true) {
+                String command = interactionHelper.prompt("Enter command: ", "help");
+                String cmd = command.trim().split("\\s+")[0];
+                if (cmd.equals("start")) {
+                    proxy.execute(cmd);
+                    echo.execute(cmd);
+                    initiator.execute(command);
+                } else if (cmd.equals("credit")) {
+                    proxy.execute(cmd);
+                    initiator.execute(cmd);
+                } else if (cmd.equals("exit")) {
+                    initiator.execute(cmd);
+                    echo.execute(cmd);
+                    proxy.execute(cmd);
+                    proxy.join();
+                    break;
+                } else {
+                    initiator.execute(command);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Nothing to do. Exit.
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+        }
+    }
+
+    private static final class Config {
+        Transport serverTransport;
+        Transport clientTransport;
+        int senderThreads;
+        int receiverThreads;
+
+        Config() {
+            // empty constructor
+        }
+    }
+
+    private static int usage(int retval) {
+        PrintStream out;
+        if (retval == 0) {
+            out = System.out;
+        } else {
+            out = System.err;
+        }
+        out.printf("Usage: java [-Dmemory.ring.size=<bytes>] [-Dproxy.engine=threads|nio] [<server properties>...] %s [<port>|unix:<socket-path>] <sender-threads-count> <receiver-threads-count>\n", EmbeddedServer.class.getName());
+        return retval;
+    }
+
+    private static Config parseArguments(String[] args) {
+        if (args.length != 2 && args.length != 3) {
+            System.exit(usage(1));
+        }
+        Config config = new Config();
+        int index = 0;
+        try {
+            if (args.length == 2) {
+                config.serverTransport = new MemoryTransport(MEMORY_SERVER_NAME);
+                config.clientTransport = config.serverTransport;
+            } else if (Transport.isUnixAddress(args[index])) {
+                config.serverTransport = Transport.forUnix(args[index++]);
+                config.clientTransport = config.serverTransport;
+            } else {
+                int port = Integer.parseInt(args[index++]);
+                config.serverTransport = Transport.forServer(Integer.toString(port));
+                config.clientTransport = Transport.tcp("localhost", port);
+            }
+            config.senderThreads = Integer.parseInt(args[index++]);
+            config.receiverThreads = Integer.parseInt(args[index++]);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(usage(2));
+        }
+        return config;
+    }
+
+    public static void main(String[] args) {
+        try {
+            Config config = parseArguments(args);
+            EmbeddedServer server = new EmbeddedServer(config);
+            server.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,21 +1,106 @@
 package ru.innova.task.initiator;
 
+import java.util.concurrent.locks.LockSupport;
+
 import ru.innova.task.common.AtomicDataController;
 
 /**
  * Данный класс добавляет к сверке данных, реализованной в {@link AtomicDataController},
- * генерацию значений.
+ * генерацию значений и ожидание сохранения сгенерированных значений (см. {@link InFlightWindow}).
  * 
  * @author sergey
  */
 public class DataGenerator extends AtomicDataController {
+    /**
+     * Поток, ожидающий сохранения значений, или <code>null</code>.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Создает объект, генерирующий значения с начала
+     */
+    public DataGenerator() {
+        super();
+    }
+
+    /**
+     * Создает объект, продолжающий генерацию после указанного значения,
+     * которое считается уже сгенерированным и сохраненным
+     *
+     * @param lastValue последнее значение прежнего запуска
+     */
+    public DataGenerator(long lastValue) {
+        super(lastValue, lastValue);
+    }
 
     /**
      * Получить очередное значение
      * 
      * @return новое значение
      */
-    public int produceNext() {
+    public long produceNext() {
         return lastProduced.incrementAndGet();
     }
+
+    /**
+     * Получить блок из нескольких очередных значений
+     *
+     * @param count количество значений
+     * @return первое значение блока <code>[first, first + count)</code>
+     */
+    public long reserve(int count) {
+        return lastProduced.getAndAdd(count) + 1;
+    }
+
+    @Override
+    public void saved(long value) {
+        super.saved(value);
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Узнать самое большое сохраненное значение
+     */
+    public long getLastSaved() {
+        return lastSaved.get();
+    }
+
+    /**
+     * Узнать количество сгенерированных, но еще не сохраненных значений
+     */
+    public long getInFlight() {
+        return Math.max(lastProduced.get() - lastSaved.get(), 0);
+    }
+
+    /**
+     * Подождать, пока количество несохраненных значений не станет меньше указанного,
+     * но не дольше указанного времени. Ждать может только один поток.
+     *
+     * @param limit количество несохраненных значений
+     * @param timeoutNanos наибольшее время ожидания
+     * @return <code>true</code>, если дождались
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    public boolean awaitInFlightBelow(long limit, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        waiter = Thread.currentThread();
+        try {
+            while (getInFlight() >= limit) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, left);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return true;
+        } finally {
+            waiter = null;
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package ru.innova.task.initiator;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Окно несохраненных чисел для генерации с обратной связью (замкнутый контур): генерация
+ * ждет, пока количество сгенерированных, но еще не сохраненных чисел (см. {@link DataGenerator#getInFlight()})
+ * не станет меньше окна. Так очереди прокси-сервера и окно упорядочивания получателя остаются
+ * небольшими при любой скорости сети.
+ * </p>
+ *
+ * <p>
+ * Окно может быть постоянным или подстраиваться само. Подстройка идет раз в {@link #INTERVAL_NANOS}
+ * наносекунд по правилу, близкому к TCP Vegas. За интервал измеряется скорость сохранения
+ * и, по закону Литтла, задержка (несохраненные числа, деленные на скорость). Наименьшая
+ * задержка считается задержкой пустой системы. Окно, деленное на нее, - ожидаемая скорость;
+ * разница ожидаемой и измеренной скорости, умноженная на нее, - количество чисел, стоящих
+ * в очередях. Если в очередях меньше {@link #ALPHA} чисел, то окно увеличивается на четверть
+ * (скорость еще растет с окном); если больше {@link #BETA} чисел, то окно уменьшается
+ * на десятую часть (растет только задержка). Пороги, как и в TCP Vegas, абсолютные; они
+ * измеряются пакетами по {@link ProtocolConstants#MAX_BATCH_SIZE} чисел, т.к. числа
+ * передаются пакетами. Интервалы, в которых окно ни разу не было заполнено,
+ * не учитываются. Наименьшая задержка забывается раз в
+ * {@link #BASE_RESET_INTERVALS} интервалов, чтобы окно следовало за изменениями сети.
+ * </p>
+ *
+ * <p>
+ * Методы объекта синхронизированы.
+ * </p>
+ *
+ * @author sergey
+ */
+public class InFlightWindow {
+    /**
+     * Интервал подстройки окна.
+     */
+    public static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * Количество чисел в очередях, ниже которого окно увеличивается.
+     */
+    public static final int ALPHA = 2 * ProtocolConstants.MAX_BATCH_SIZE;
+    /**
+     * Количество чисел в очередях, выше которого окно уменьшается.
+     */
+    public static final int BETA = 4 * ProtocolConstants.MAX_BATCH_SIZE;
+    /**
+     * Через сколько интервалов забывается наименьшая задержка.
+     */
+    public static final int BASE_RESET_INTERVALS = 50;
+    private final DataGenerator generator;
+    private final boolean adaptive;
+    private final int minWindow;
+    private final int maxWindow;
+    private int window;
+    private long intervalStart;
+    private long intervalSaved;
+    private boolean limited;
+    private double baseLatency;
+    private int intervals;
+    private double throughput;
+    private double latency;
+
+    /**
+     * Создает окно.
+     *
+     * @param generator объект, считающий сгенерированные и сохраненные числа
+     * @param adaptive <code>true</code> - подстраивать окно, <code>false</code> - окно постоянное и
+     *     равно <code>maxWindow</code>
+     * @param minWindow наименьшее окно
+     * @param maxWindow наибольшее окно
+     */
+    public InFlightWindow(DataGenerator generator, boolean adaptive, int minWindow, int maxWindow) {
+        if (minWindow <= 0 || maxWindow < minWindow) {
+            throw new IllegalArgumentException(String.format("Incorrect window bounds [%d, %d]", minWindow, maxWindow));
+        }
+        this.generator = generator;
+        this.adaptive = adaptive;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.window = adaptive ? minWindow : maxWindow;
+        this.intervalStart = System.nanoTime();
+        this.intervalSaved = generator.getLastSaved();
+        this.limited = false;
+        this.baseLatency = Double.MAX_VALUE;
+        this.intervals = 0;
+        this.throughput = 0;
+        this.latency = 0;
+    }
+
+    /**
+     * Получить разрешение на генерацию чисел, дождавшись, пока в окне появится место,
+     * но не дольше указанного времени.
+     *
+     * @param maxCount наибольшее количество чисел
+     * @param maxWaitNanos наибольшее время ожидания
+     * @return количество чисел от 1 до <code>maxCount</code> или 0, если место не появилось
+     *     за время ожидания
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    public synchronized int acquire(int maxCount, long maxWaitNanos) throws InterruptedException {
+        adapt(System.nanoTime());
+        long free = window - generator.getInFlight();
+        if (free <= 0) {
+            limited = true;
+            if (!generator.awaitInFlightBelow(window, maxWaitNanos)) {
+                return 0;
+            }
+            free = window - generator.getInFlight();
+        }
+        return (int) Math.max(Math.min(free, maxCount), 1);
+    }
+
+    /**
+     * Подстроить окно, если закончился интервал измерения.
+     */
+    private void adapt(long now) {
+        long elapsed = now - intervalStart;
+        if (elapsed < INTERVAL_NANOS) {
+            return;
+        }
+        long saved = generator.getLastSaved();
+        long inFlight = generator.getInFlight();
+        long delivered = saved - intervalSaved;
+        intervalStart = now;
+        intervalSaved = saved;
+        boolean wasLimited = limited;
+        limited = false;
+        if (delivered <= 0) {
+            return;
+        }
+        throughput = delivered * 1e9 / elapsed;
+        latency = inFlight / throughput;
+        if (!adaptive || !wasLimited) {
+            // the window did not limit generation, so the measurement says nothing about it
+            return;
+        }
+        if (++intervals % BASE_RESET_INTERVALS == 0 || latency < baseLatency) {
+            baseLatency = latency;
+        }
+        double queued = window - throughput * baseLatency;
+        if (queued < ALPHA) {
+            window = (int) Math.min((long) window + Math.max(window / 4, 1), maxWindow);
+        } else if (queued > BETA) {
+            window = Math.max(window - Math.max(window / 10, 1), minWindow);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("window %d (%s, [%d, %d]), in flight %d, saved %.0f/s, latency %.1f ms",
+                window, adaptive ? "adaptive" : "fixed", minWindow, maxWindow, generator.getInFlight(), throughput, latency * 1e3);
+    }
+}
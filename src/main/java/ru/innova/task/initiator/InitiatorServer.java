@@ -1,60 +1,140 @@
 package ru.innova.task.initiator;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ru.innova.task.common.AbstractWorker;
+import ru.innova.task.common.DurabilityPolicy;
 import ru.innova.task.common.InteractionHelper;
+import ru.innova.task.common.JournalWriter;
+import ru.innova.task.common.LongArrayBlockingQueue;
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.OutputRecovery;
+import ru.innova.task.common.PayloadFormat;
 import ru.innova.task.common.ProtocolConstants;
 import ru.innova.task.common.Receiver;
-import ru.innova.task.common.RingQueue;
+import ru.innova.task.common.ReorderBuffer;
+import ru.innova.task.common.ReorderBufferFactory;
+import ru.innova.task.common.RollingPolicy;
 import ru.innova.task.common.Saver;
 import ru.innova.task.common.Sender;
 import ru.innova.task.network.ClientNetworkReceiver;
 import ru.innova.task.network.ClientNetworkSender;
+import ru.innova.task.network.CreditMeter;
+import ru.innova.task.network.MuxTransport;
 import ru.innova.task.network.NetworkReceiver;
 import ru.innova.task.network.NetworkSender;
+import ru.innova.task.network.Transport;
 
 /**
+ * <p>
  * Программа, реализающая Initiator Server в соответствии с задачей.
+ * </p>
+ *
+ * <p>
+ * Если задано системное свойство <code>initiator.resume=true</code>, сервер продолжает работу
+ * прежнего запуска: отправленные и полученные числа дописываются в существующие файлы,
+ * а генерация продолжается с числа, следующего за последним числом, которое есть в обоих файлах.
+ * Числа, записанные только в один из файлов, отбрасываются и отправляются заново.
+ * Восстановление читает только концы файлов (см. {@link OutputRecovery}). Последнее число
+ * прежнего запуска отправители объявляют при подключении (см. {@link ProtocolConstants#RESUME_SIGN}),
+ * чтобы Echo Server пропустил числа, которые уже не придут.
+ * </p>
+ *
+ * <p>
+ * Системное свойство <code>initiator.generation</code> задает, кто генерирует числа:
+ * <code>producer</code> (по умолчанию) - поток {@link Producer}, передающий числа отправителям
+ * через очередь, <code>reserve</code> - сами отправители, резервирующие блоки чисел
+ * (см. {@link Producer#reserve(long[], int)}).
+ * </p>
+ *
+ * <p>
+ * Команда <code>start</code> может задавать скорость генерации и ее изменение во времени
+ * (см. {@link LoadProfile}), чтобы измерять поведение системы при заданной нагрузке, а не только
+ * наибольшую пропускную способность. Команда <code>rate</code> и команда <code>stop</code> выводят
+ * заданную и фактическую скорость.
+ * </p>
+ *
+ * <p>
+ * Системное свойство <code>initiator.window</code> включает генерацию с обратной связью (см. {@link InFlightWindow}):
+ * число - постоянное окно несохраненных чисел, <code>adaptive</code> - окно, подстраивающееся
+ * между <code>initiator.window.min</code> и <code>initiator.window.max</code>. Команда <code>window</code>
+ * выводит состояние окна.
+ * </p>
+ *
+ * <p>
+ * Системное свойство <code>payload.size</code> включает передачу чисел с нагрузкой
+ * (см. {@link PayloadFormat}); оно должно совпадать у серверов initiator и echo, а прокси-сервер
+ * должен работать в режиме <code>proxy.mode=forward</code>.
+ * </p>
+ *
+ * <p>
+ * Системное свойство <code>network.mux=true</code> передает все потоки отправителей и получателей
+ * через одно мультиплексированное соединение (см. {@link MuxTransport}). Тогда потоков может быть
+ * больше, чем отдельных соединений.
+ * </p>
  * 
  * @author sergey
  */
 public class InitiatorServer extends Thread {
     private static final String OUTPUT_FILE_NAME = "initiator_receieve.txt";
+    private static final int OUTPUT_QUEUE_SIZE = ProtocolConstants.MAX_BATCH_SIZE;
+    private static final int CONTROL_QUEUE_SIZE = 16;
     private static final int MAX_SENDERS = 3;
     private static final int MAX_RECEIVERS = 3;
+    private static final int MAX_MUX_STREAMS = 64;
+    private static final String GENERATION_PRODUCER = "producer";
+    private static final String GENERATION_RESERVE = "reserve";
+    private static final String WINDOW_ADAPTIVE = "adaptive";
+    private static final int DEFAULT_MIN_WINDOW = ProtocolConstants.MAX_BATCH_SIZE;
+    private static final int DEFAULT_MAX_WINDOW = 1 << 20;
     private final Logger logger;
     private final Config config;
     private final List<Sender> senders;
     private final List<Receiver> receivers;
-    private final BlockingQueue<Integer> toProxy;
-    private final BlockingQueue<Integer> fromProxy;
+    private final LongBlockingQueue toProxy;
+    private final BlockingQueue<Integer> control;
+    private final ReorderBuffer fromProxy;
     private final DataGenerator generator;
+    private final long resumeAfter;
     private final ExecutorService threadPool;
+    private final InteractionHelper interactionHelper;
+    private final CreditMeter creditMeter;
     private AbstractWorker saver;
     private Producer producer;
     private Future<Integer> saverFuture;
     
-    InitiatorServer(Config config) {
+    InitiatorServer(Config config) throws IOException {
         this.config = config;
         this.receivers = new ArrayList<>(config.receiverThreads);
         this.senders = new ArrayList<>(config.senderThreads);
-        this.toProxy = new SynchronousQueue<>();
-        this.fromProxy = new RingQueue();
-        this.generator = new DataGenerator();
+        this.toProxy = new LongArrayBlockingQueue(OUTPUT_QUEUE_SIZE);
+        this.control = new ArrayBlockingQueue<>(CONTROL_QUEUE_SIZE);
+        this.logger = Logger.getLogger("initiator.Server");
+        this.interactionHelper = new InteractionHelper();
+        this.creditMeter = new CreditMeter();
+        long lastValue = ProtocolConstants.NONE_VALUE;
+        if (config.resume) {
+            lastValue = recover();
+            logger.log(Level.INFO, "resuming after number {0}", lastValue);
+        }
+        this.fromProxy = ReorderBufferFactory.create(lastValue + 1);
+        this.generator = new DataGenerator(lastValue);
+        this.resumeAfter = config.resume ? lastValue : ProtocolConstants.NONE_VALUE;
         this.threadPool = Executors.newCachedThreadPool(new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
@@ -63,7 +143,29 @@ public class InitiatorServer extends Thread {
                 return result;
             }
         });
-        this.logger = Logger.getLogger("initiator.Server");
+    }
+
+    /**
+     * Привести файлы прежнего запуска к последнему числу, которое есть в обоих файлах.
+     * Если один из файлов пуст, другой очищается без чтения.
+     *
+     * @return последнее число прежнего запуска
+     */
+    private long recover() throws IOException {
+        boolean rolling = RollingPolicy.fromSystemProperties().isEnabled();
+        long lastSent = OutputRecovery.truncateAbove(Producer.OUTPUT_FILE_NAME, rolling, Long.MAX_VALUE);
+        long lastReceived = OutputRecovery.truncateAbove(OUTPUT_FILE_NAME, rolling, Long.MAX_VALUE);
+        long result = Math.min(lastSent, lastReceived);
+        if (result == ProtocolConstants.NONE_VALUE && Math.max(lastSent, lastReceived) != ProtocolConstants.NONE_VALUE) {
+            logger.log(Level.WARNING, "one of the output files is empty, starting from the beginning (sent up to {0}, received up to {1})", new Object[] {lastSent, lastReceived});
+        }
+        OutputRecovery.truncateAbove(Producer.OUTPUT_FILE_NAME, rolling, result);
+        OutputRecovery.truncateAbove(OUTPUT_FILE_NAME, rolling, result);
+        String journal = Saver.journalName(OUTPUT_FILE_NAME);
+        if (JournalWriter.lastSegment(journal) >= 0) {
+            JournalWriter.truncateAbove(journal, result);
+        }
+        return result;
     }
     
     @Override
@@ -79,38 +181,107 @@ public class InitiatorServer extends Thread {
     }
 
     private void doWork() throws InterruptedException, ExecutionException {
-        InteractionHelper interactionHelper = new InteractionHelper();
-        while (true) {
-            String cmd = interactionHelper.prompt("Enter command: ", "help");
-            if (cmd.equals("help")) {
-                interactionHelper.showMessage("help - show this message\n"
-                                        + "start - start sending numbers\n"
-                                        + "stop - suspend sending numbers\n"
-                                        + "exit - exit program");
-            } else if (cmd.equals("start")) {
-                producer.startWork();
-            } else if (cmd.equals("stop")) {
-                producer.stopWork();
-            } else if (cmd.equals("exit")) {
-                processExit();
-                interactionHelper.showMessage("Bye!");
-                break;
+        while (execute(interactionHelper.prompt("Enter command: ", "help"))) {
+            // next command
+        }
+    }
+
+    /**
+     * Выполнить команду пользователя. Метод вызывается из консольного цикла или, если сервер
+     * работает в одном процессе с остальными, из {@link ru.innova.task.embedded.EmbeddedServer}.
+     *
+     * @param command команда с параметрами
+     * @return <code>false</code>, если команда завершила работу сервера
+     * @throws InterruptedException при прерывании потока во время ожидания
+     * @throws ExecutionException если поток записи файла завершился с ошибкой
+     */
+    public boolean execute(String command) throws InterruptedException, ExecutionException {
+        String[] words = command.trim().split("\\s+");
+        String cmd = words[0];
+        if (cmd.equals("help")) {
+            interactionHelper.showMessage("help - show this message\n"
+                                    + "start - start sending numbers at full speed\n"
+                                    + "start <rate> - start sending <rate> numbers per second\n"
+                                    + "start <rate> ramp <to-rate> <seconds> - change rate linearly\n"
+                                    + "start <rate> step <increment> <seconds> - increase rate every <seconds>\n"
+                                    + "start <rate> burst <burst-rate> <burst-seconds> <period-seconds> - periodic bursts\n"
+                                    + "rate - show target and actual rate\n"
+                                    + "window - show in-flight window\n"
+                                    + "credit - show credits received from proxy and stalls\n"
+                                    + "stop - suspend sending numbers\n"
+                                    + "exit - exit program");
+        } else if (cmd.equals("start")) {
+            LoadProfile profile = null;
+            if (words.length > 1) {
+                try {
+                    profile = LoadProfile.parse(Arrays.copyOfRange(words, 1, words.length));
+                } catch (IllegalArgumentException e) {
+                    interactionHelper.showError("%s", e.getMessage());
+                    return true;
+                }
             }
+            producer.startWork(profile);
+        } else if (cmd.equals("rate")) {
+            showRate();
+        } else if (cmd.equals("window")) {
+            showWindow();
+        } else if (cmd.equals("credit")) {
+            interactionHelper.showMessage("credit: %s", creditMeter);
+        } else if (cmd.equals("stop")) {
+            producer.stopWork();
+            showRate();
+            if (producer.describeWindow() != null) {
+                showWindow();
+            }
+        } else if (cmd.equals("exit")) {
+            processExit();
+            interactionHelper.showMessage("Bye!");
+            return false;
+        }
+        return true;
+    }
+
+    private void showRate() {
+        String rate = producer.describeRate();
+        if (rate == null) {
+            interactionHelper.showMessage("rate is not limited");
+        } else {
+            interactionHelper.showMessage("%s", rate);
+            logger.log(Level.INFO, "rate: {0}", rate);
         }
     }
 
-    private void prepare() {
+    private void showWindow() {
+        String window = producer.describeWindow();
+        if (window == null) {
+            interactionHelper.showMessage("in-flight window is not limited");
+        } else {
+            interactionHelper.showMessage("%s", window);
+            logger.log(Level.INFO, "window: {0}", window);
+        }
+    }
+
+    /**
+     * Создать и запустить потоки сервера. Метод вызывается один раз, до первой команды.
+     */
+    public void prepare() {
         CountDownLatch dummySignal = new CountDownLatch(0);
         for (int i = 0; i < config.receiverThreads; i++) {
-            NetworkReceiver input = new ClientNetworkReceiver(config.host, config.port, ProtocolConstants.INITIATOR_SIGN);
+            NetworkReceiver input = new ClientNetworkReceiver(config.transport, ProtocolConstants.INITIATOR_SIGN, config.payload);
             receivers.add(new Receiver(input, fromProxy, generator, "initiator.Receiver", dummySignal));
         }
+        InFlightWindow window = null;
+        if (config.window > 0) {
+            window = new InFlightWindow(generator, false, config.window, config.window);
+        } else if (config.adaptiveWindow) {
+            window = new InFlightWindow(generator, true, config.minWindow, config.maxWindow);
+        }
+        this.producer = new Producer(toProxy, control, generator, config.resume, config.reserve, window);
         for (int i = 0; i < config.senderThreads; i++) {
-            NetworkSender output = new ClientNetworkSender(config.host, config.port, ProtocolConstants.INITIATOR_SIGN);
-            senders.add(new Sender(toProxy, output, generator, "initiator.Sender", dummySignal));
+            NetworkSender output = new ClientNetworkSender(config.transport, ProtocolConstants.INITIATOR_SIGN, config.payload, creditMeter, resumeAfter);
+            senders.add(new Sender(toProxy, control, config.reserve ? producer : null, output, generator, "initiator.Sender", dummySignal));
         }
-        this.producer = new Producer(toProxy, generator);
-        this.saver = new Saver(fromProxy, OUTPUT_FILE_NAME, generator, "initiator.Saver");
+        this.saver = new Saver(fromProxy, OUTPUT_FILE_NAME, DurabilityPolicy.fromSystemProperties(), config.resume, generator, "initiator.Saver");
         for (Receiver receiver: receivers) {
             threadPool.submit(receiver);
         }
@@ -134,13 +305,20 @@ public class InitiatorServer extends Thread {
         threadPool.shutdown();
         threadPool.awaitTermination(1000, TimeUnit.MILLISECONDS);
         saverFuture.get();
+        logger.log(Level.INFO, "credit: {0}", creditMeter);
     }
     
     private static final class Config {
-        String host;
-        int port;
+        Transport transport;
         int senderThreads;
         int receiverThreads;
+        boolean resume;
+        boolean reserve;
+        int window;
+        boolean adaptiveWindow;
+        int minWindow;
+        int maxWindow;
+        PayloadFormat payload;
         
         Config() {
             // empty constructor
@@ -154,34 +332,108 @@ public class InitiatorServer extends Thread {
         } else {
             out = System.err;
         }
-        out.printf("Usage: java %s <proxy-server-host> <proxy-server-port> <sender-threads-count> <receiver-threads-count>\n", InitiatorServer.class.getName());
+        out.printf("Usage: java [-Dreorder.buffer=ring|bitmap] [-Dreorder.window=<count>] [-Dinitiator.resume=true] [-Dinitiator.generation=producer|reserve] [-Dinitiator.window=<count>|adaptive [-Dinitiator.window.min=<count>] [-Dinitiator.window.max=<count>]] [-Dpayload.size=<bytes>|<min>-<max>|exp:<mean> [-Dpayload.checksum=verify|persist|none]] [-Dnetwork.codec=delta|plain] [-Dnetwork.mux=true [-Dnetwork.mux.ring.size=<bytes>]] %s <proxy-server-host> <proxy-server-port>|unix:<socket-path> <sender-threads-count> <receiver-threads-count>\n", InitiatorServer.class.getName());
         return retval;
     }
 
     private static Config parseArguments(String[] args) {
-        if (args.length != 4) {
+        boolean unix = args.length == 3 && Transport.isUnixAddress(args[0]);
+        if (args.length != 4 && !unix) {
             System.exit(usage(1));
         }
         Config config = new Config();
         int index = 0;
-        config.host = args[index++];
         try {
-            config.port = Integer.parseInt(args[index++]);
+            if (unix) {
+                config.transport = Transport.forUnix(args[index++]);
+            } else {
+                String host = args[index++];
+                config.transport = Transport.tcp(host, Integer.parseInt(args[index++]));
+            }
             config.senderThreads = Integer.parseInt(args[index++]);
             config.receiverThreads = Integer.parseInt(args[index++]);
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             System.err.println(e.getMessage());
             System.exit(usage(2));
         }
-        if (config.senderThreads <= 0 || config.senderThreads > MAX_SENDERS) {
-            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "sender", config.senderThreads, 0, MAX_SENDERS);
+        readProperties(config);
+        return config;
+    }
+
+    /**
+     * Проверить количество потоков и дополнить параметры системными свойствами.
+     * Если параметры заданы неверно, программа завершается.
+     */
+    private static void readProperties(Config config) {
+        boolean mux = Boolean.getBoolean("network.mux");
+        int maxSenders = mux ? MAX_MUX_STREAMS : MAX_SENDERS;
+        int maxReceivers = mux ? MAX_MUX_STREAMS : MAX_RECEIVERS;
+        if (config.senderThreads <= 0 || config.senderThreads > maxSenders) {
+            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "sender", config.senderThreads, 0, maxSenders);
             System.exit(usage(3));
         }
-        if (config.receiverThreads <= 0 || config.receiverThreads > MAX_RECEIVERS) {
-            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "receiver", config.receiverThreads, 0, MAX_RECEIVERS);
+        if (config.receiverThreads <= 0 || config.receiverThreads > maxReceivers) {
+            System.err.printf("Incorrect number of %s threads %d. Specify number greater than %d less or equal than %d\n", "receiver", config.receiverThreads, 0, maxReceivers);
             System.exit(usage(3));
         }
-        return config;
+        if (mux) {
+            config.transport = new MuxTransport(config.transport, ProtocolConstants.INITIATOR_SIGN);
+        }
+        config.resume = Boolean.getBoolean("initiator.resume");
+        String generation = System.getProperty("initiator.generation", GENERATION_PRODUCER);
+        if (!generation.equals(GENERATION_PRODUCER) && !generation.equals(GENERATION_RESERVE)) {
+            System.err.printf("Unknown generation mode %s\n", generation);
+            System.exit(usage(3));
+        }
+        config.reserve = generation.equals(GENERATION_RESERVE);
+        String window = System.getProperty("initiator.window");
+        if (window != null) {
+            if (window.equals(WINDOW_ADAPTIVE)) {
+                config.adaptiveWindow = true;
+            } else {
+                try {
+                    config.window = Integer.parseInt(window);
+                } catch (NumberFormatException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(usage(2));
+                }
+                if (config.window <= 0) {
+                    System.err.printf("Incorrect window %d. Specify number greater than %d\n", config.window, 0);
+                    System.exit(usage(3));
+                }
+            }
+        }
+        config.minWindow = Integer.getInteger("initiator.window.min", DEFAULT_MIN_WINDOW);
+        config.maxWindow = Integer.getInteger("initiator.window.max", DEFAULT_MAX_WINDOW);
+        if (config.minWindow <= 0 || config.maxWindow < config.minWindow) {
+            System.err.printf("Incorrect window bounds %d and %d. Specify numbers greater than %d, minimum less or equal than maximum\n", config.minWindow, config.maxWindow, 0);
+            System.exit(usage(3));
+        }
+        try {
+            config.payload = PayloadFormat.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(usage(3));
+        }
+    }
+
+    /**
+     * Создать сервер, который управляется не из консоли, а методом {@link #execute(String)}.
+     * Остальные параметры берутся из системных свойств, так же как при запуске из командной строки.
+     *
+     * @param transport транспорт, через который устанавливаются соединения с прокси-сервером
+     * @param senderThreads количество потоков-отправителей
+     * @param receiverThreads количество потоков-получателей
+     * @return сервер; перед первой командой надо вызвать {@link #prepare()}
+     * @throws IOException в случае ошибки восстановления файлов прежнего запуска
+     */
+    public static InitiatorServer create(Transport transport, int senderThreads, int receiverThreads) throws IOException {
+        Config config = new Config();
+        config.transport = transport;
+        config.senderThreads = senderThreads;
+        config.receiverThreads = receiverThreads;
+        readProperties(config);
+        return new InitiatorServer(config);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,193 @@
+package ru.innova.task.initiator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Профиль нагрузки: заданная скорость генерации чисел (чисел в секунду) в зависимости
+ * от времени, прошедшего с начала генерации.
+ * </p>
+ *
+ * <p>
+ * Поддерживаются профили:
+ * <ul>
+ * <li><code>&lt;rate&gt;</code> - постоянная скорость;</li>
+ * <li><code>&lt;rate&gt; ramp &lt;to-rate&gt; &lt;seconds&gt;</code> - равномерное изменение скорости
+ * от <code>rate</code> до <code>to-rate</code> за указанное время, затем постоянная скорость <code>to-rate</code>;</li>
+ * <li><code>&lt;rate&gt; step &lt;increment&gt; &lt;seconds&gt;</code> - скорость <code>rate</code>,
+ * которая увеличивается на <code>increment</code> каждые <code>seconds</code> секунд;</li>
+ * <li><code>&lt;rate&gt; burst &lt;burst-rate&gt; &lt;burst-seconds&gt; &lt;period-seconds&gt;</code> -
+ * скорость <code>rate</code>, которая в начале каждого периода на <code>burst-seconds</code> секунд
+ * сменяется скоростью <code>burst-rate</code>.</li>
+ * </ul>
+ * </p>
+ *
+ * @author sergey
+ */
+public final class LoadProfile {
+    private static final String RAMP = "ramp";
+    private static final String STEP = "step";
+    private static final String BURST = "burst";
+    private final String kind;
+    private final double rate;
+    private final double otherRate;
+    private final long durationNanos;
+    private final long periodNanos;
+
+    private LoadProfile(String kind, double rate, double otherRate, double seconds, double periodSeconds) {
+        checkRate(rate);
+        checkRate(otherRate);
+        this.kind = kind;
+        this.rate = rate;
+        this.otherRate = otherRate;
+        this.durationNanos = toNanos(seconds);
+        this.periodNanos = toNanos(periodSeconds);
+    }
+
+    /**
+     * Постоянная скорость.
+     *
+     * @param rate чисел в секунду
+     */
+    public static LoadProfile constant(double rate) {
+        return new LoadProfile(null, rate, rate, 0, 0);
+    }
+
+    /**
+     * Равномерное изменение скорости.
+     *
+     * @param from начальная скорость
+     * @param to конечная скорость
+     * @param seconds время изменения скорости
+     */
+    public static LoadProfile ramp(double from, double to, double seconds) {
+        return new LoadProfile(RAMP, from, to, seconds, 0);
+    }
+
+    /**
+     * Ступенчатое увеличение скорости.
+     *
+     * @param from начальная скорость
+     * @param increment прибавка скорости на каждой ступени
+     * @param seconds длительность ступени
+     */
+    public static LoadProfile step(double from, double increment, double seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException(String.format("Incorrect step duration %s", seconds));
+        }
+        return new LoadProfile(STEP, from, increment, seconds, 0);
+    }
+
+    /**
+     * Периодические всплески скорости.
+     *
+     * @param rate обычная скорость
+     * @param burstRate скорость во время всплеска
+     * @param burstSeconds длительность всплеска
+     * @param periodSeconds период всплесков
+     */
+    public static LoadProfile burst(double rate, double burstRate, double burstSeconds, double periodSeconds) {
+        if (periodSeconds <= 0 || burstSeconds > periodSeconds) {
+            throw new IllegalArgumentException(String.format("Incorrect burst %s s every %s s", burstSeconds, periodSeconds));
+        }
+        return new LoadProfile(BURST, rate, burstRate, burstSeconds, periodSeconds);
+    }
+
+    /**
+     * Разобрать профиль, заданный в командной строке (см. описание класса).
+     *
+     * @param args слова профиля
+     * @return профиль
+     * @throws IllegalArgumentException если профиль задан неверно
+     */
+    public static LoadProfile parse(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Rate is not specified");
+        }
+        double rate = parseNumber(args[0]);
+        if (args.length == 1) {
+            return constant(rate);
+        }
+        String kind = args[1];
+        if (kind.equals(RAMP) && args.length == 4) {
+            return ramp(rate, parseNumber(args[2]), parseNumber(args[3]));
+        }
+        if (kind.equals(STEP) && args.length == 4) {
+            return step(rate, parseNumber(args[2]), parseNumber(args[3]));
+        }
+        if (kind.equals(BURST) && args.length == 5) {
+            return burst(rate, parseNumber(args[2]), parseNumber(args[3]), parseNumber(args[4]));
+        }
+        throw new IllegalArgumentException(String.format("Incorrect load profile %s", join(args)));
+    }
+
+    /**
+     * Узнать заданную скорость.
+     *
+     * @param elapsedNanos время, прошедшее с начала генерации
+     * @return чисел в секунду
+     */
+    public double getRate(long elapsedNanos) {
+        if (kind == null) {
+            return rate;
+        }
+        switch (kind) {
+        case RAMP:
+            if (elapsedNanos >= durationNanos) {
+                return otherRate;
+            }
+            return rate + (otherRate - rate) * elapsedNanos / durationNanos;
+        case STEP:
+            return Math.max(rate + otherRate * (elapsedNanos / durationNanos), 0);
+        default:
+            return elapsedNanos % periodNanos < durationNanos ? otherRate : rate;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (kind == null) {
+            return String.format("%.0f/s", rate);
+        }
+        switch (kind) {
+        case RAMP:
+            return String.format("%.0f/s ramp to %.0f/s in %.1f s", rate, otherRate, durationNanos / 1e9);
+        case STEP:
+            return String.format("%.0f/s step %+.0f/s every %.1f s", rate, otherRate, durationNanos / 1e9);
+        default:
+            return String.format("%.0f/s burst %.0f/s for %.1f s every %.1f s", rate, otherRate, durationNanos / 1e9, periodNanos / 1e9);
+        }
+    }
+
+    private static void checkRate(double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException(String.format("Incorrect rate %s", rate));
+        }
+    }
+
+    private static long toNanos(double seconds) {
+        if (seconds < 0 || Double.isNaN(seconds) || Double.isInfinite(seconds)) {
+            throw new IllegalArgumentException(String.format("Incorrect duration %s", seconds));
+        }
+        return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static double parseNumber(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Incorrect number %s", text));
+        }
+    }
+
+    private static String join(String[] args) {
+        StringBuilder result = new StringBuilder();
+        for (String arg: args) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(arg);
+        }
+        return result.toString();
+    }
+}
@@ -1,44 +1,106 @@
 package ru.innova.task.initiator;
 
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import ru.innova.task.common.AbstractWorker;
+import ru.innova.task.common.AsyncLongWriter;
+import ru.innova.task.common.DurabilityPolicy;
+import ru.innova.task.common.GroupCommitWriter;
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.NumberSource;
 import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.common.RollingPolicy;
 
 /**
  * Объект-исполнитель, отвечающий за генерацию чисел, подлежащих
  * отправке в систему серверов.
  * 
  * В данном классе происходит подготовка чисел для отправки и их сохранение в текстовый файл.
+ * Файл пишет отдельный поток {@link AsyncLongWriter}, так что задержки диска не останавливают
+ * генерацию, пока не заполнены оба его буфера (размер буфера задается системным свойством
+ * <code>initiator.sendlog.buffer</code>, задержка группировки в мс - <code>initiator.sendlog.delay</code>).
+ * Записи в файле фиксируются группами по правилу
+ * {@link DurabilityPolicy#fromSystemProperties()}, а при остановке генерации записываются все
+ * сгенерированные числа. Файл делится на сегменты по правилу {@link RollingPolicy#fromSystemProperties()}.
+ * 
+ * Управляющие значения (старт, остановка, выход) передаются отправителям через отдельную очередь,
+ * а не вместе с числами.
+ * 
+ * Если объект создан в режиме резервирования, то сам он чисел не генерирует. Числа берут потоки
+ * {@link ru.innova.task.common.Sender} блоками через интерфейс {@link NumberSource}: блок резервируется
+ * в {@link DataGenerator#reserve(int)} и сразу записывается в файл. Резервирование и запись блока
+ * выполняются под одной блокировкой, чтобы числа в файле шли по возрастанию; блокировка берется
+ * один раз на блок. Разрешения окна и ограничителя скорости поток получает до блокировки, так что
+ * ожидание разрешения не задерживает других отправителей; окно при этом может быть превышено
+ * не больше чем на блок на каждого отправителя.
+ * 
+ * Генерация может идти с заданной скоростью (открытая нагрузка, не зависящая от скорости
+ * прохождения чисел через систему): см. {@link #startWork(LoadProfile)}. Скорость ограничивается
+ * объектом {@link RateLimiter} в обоих режимах.
+ * 
+ * Если задано окно {@link InFlightWindow}, то генерация идет с обратной связью: несохраненных
+ * чисел не больше окна, и генерация ждет, пока сохранение не догонит ее.
  * 
  * @author sergey
  */
-public class Producer extends AbstractWorker {
-    private static final String OUTPUT_ENCODING = "UTF-8";
-    private static final String OUTPUT_FILE_NAME = "initiator_send.txt";
-    private final BlockingQueue<Integer> output;
+public class Producer extends AbstractWorker implements NumberSource {
+    /**
+     * Имя файла отправленных чисел.
+     */
+    static final String OUTPUT_FILE_NAME = "initiator_send.txt";
+    private static final long IDLE_TIMEOUT = 500;
+    private static final long PERMIT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final LongBlockingQueue output;
+    private final BlockingQueue<Integer> control;
     private final DataGenerator generator;
+    private final boolean append;
+    private final boolean reserving;
+    private final InFlightWindow window;
     private final ReentrantLock mode;
+    private final ReentrantLock logLock;
     private final Condition doSomething;
     private volatile boolean started;
+    /**
+     * Ограничитель скорости или <code>null</code>, если генерация идет с наибольшей скоростью.
+     */
+    private volatile RateLimiter limiter;
+    /**
+     * Файл отправленных чисел, пока он открыт, иначе <code>null</code>. Поле изменяется под {@link #logLock},
+     * и в режиме резервирования файл используется только под этой блокировкой.
+     */
+    private AsyncLongWriter log;
 
     /**
      * Создает объект.
      * 
      * @param output очередь, куда надо помещать новые данные 
+     * @param control очередь, куда надо помещать управляющие значения
      * @param generator объект для генерации данных и сверки с входящими потоками
+     * @param append <code>true</code> - дописывать существующий файл отправленных чисел,
+     *     <code>false</code> - перезаписать его
+     * @param reserving <code>true</code> - числа берут потоки-отправители через {@link #reserve(long[], int)},
+     *     <code>false</code> - числа генерирует данный объект и помещает в очередь
+     * @param window окно несохраненных чисел или <code>null</code>, если генерация идет без обратной связи
      */
-    protected Producer(BlockingQueue<Integer> output, DataGenerator generator) {
+    protected Producer(LongBlockingQueue output, BlockingQueue<Integer> control, DataGenerator generator, boolean append, boolean reserving, InFlightWindow window) {
         super(1, "initiator.Producer");
         this.output = output;
+        this.control = control;
         this.generator = generator;
+        this.append = append;
+        this.reserving = reserving;
+        this.window = window;
+        this.log = null;
+        this.logLock = new ReentrantLock();
         this.mode = new ReentrantLock();
         this.doSomething = mode.newCondition();
         this.started = false;
+        this.limiter = null;
         this.exited = false;
         logger.log(Level.FINE, "[{0}] Producer.Producer()", myNumber);
     }
@@ -46,15 +108,39 @@ public class Producer extends AbstractWorker {
     @Override
     public Integer call() {
         logger.log(Level.FINE, "[{0}] run()", myNumber);
-        try (PrintWriter log = new PrintWriter(OUTPUT_FILE_NAME, OUTPUT_ENCODING)) {
+        int bufferSize = Integer.getInteger("initiator.sendlog.buffer", AsyncLongWriter.DEFAULT_BUFFER_SIZE);
+        long batchDelay = Long.getLong("initiator.sendlog.delay", AsyncLongWriter.DEFAULT_BATCH_DELAY);
+        GroupCommitWriter file;
+        try {
+            file = new GroupCommitWriter(OUTPUT_FILE_NAME, DurabilityPolicy.fromSystemProperties(), RollingPolicy.fromSystemProperties(), append);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+            return 0;
+        }
+        logLock.lock();
+        try {
+            log = new AsyncLongWriter(file, bufferSize, batchDelay, "initiator.SendLog");
+        } finally {
+            logLock.unlock();
+        }
+        try {
             logger.log(Level.FINE, "[{0}] barrier overcome", myNumber);
             while (true) {
                 logger.log(Level.FINE, "[{0}] main loop", myNumber);
+                if (reserving || !started) {
+                    flushLog();
+                }
                 mode.lock();
                 try {
-                    while (!exited && !started) {
-                        logger.log(Level.FINE, "[{0}] waiting for start", myNumber);
-                        doSomething.await();
+                    if (reserving) {
+                        if (!exited) {
+                            doSomething.await(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                        }
+                    } else {
+                        while (!exited && !started) {
+                            logger.log(Level.FINE, "[{0}] waiting for start", myNumber);
+                            doSomething.await();
+                        }
                     }
                 } finally {
                     mode.unlock();
@@ -63,20 +149,112 @@ public class Producer extends AbstractWorker {
                     logger.log(Level.FINE, "[{0}] exitting", myNumber);
                     return 0;
                 }
-                int value = generator.produceNext();
-                output.put(value);
-                log.println(value);
-                log.flush();
-                logger.log(Level.FINE, "[{0}] Value {1} produced", new Object[] {myNumber, value});
+                if (reserving) {
+                    continue;
+                }
+                int count = permits(ProtocolConstants.MAX_BATCH_SIZE, limiter);
+                for (int i = 0; i < count; i++) {
+                    long value = generator.produceNext();
+                    output.putLong(value);
+                    log.append(value);
+                    logger.log(Level.FINE, "[{0}] Value {1} produced", new Object[] {myNumber, value});
+                }
             }
         } catch (InterruptedException e) {
             // Nothing to do. Exit.
         } catch (Exception e) {
             logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+        } finally {
+            closeLog();
         }
         return 0;
     }
 
+    /**
+     * Зарезервировать блок чисел и записать его в файл. Вызывается потоками-отправителями
+     * в режиме резервирования. Если задана скорость генерации или окно, метод ждет разрешения
+     * {@link RateLimiter} и {@link InFlightWindow} и может выдать меньше чисел, чем запрошено.
+     *
+     * @return количество чисел; 0, если генерация остановлена
+     */
+    @Override
+    public int reserve(long[] into, int maxCount) throws IOException, InterruptedException {
+        if (!started || exited) {
+            return 0;
+        }
+        RateLimiter rate = limiter;
+        int count = 0;
+        while (count == 0 && started && !exited) {
+            count = permits(maxCount, rate);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        logLock.lock();
+        try {
+            if (log == null) {
+                // файл уже закрыт: числа не выдаются, маркеры возвращаются ограничителю
+                if (rate != null) {
+                    rate.release(count);
+                }
+                return 0;
+            }
+            long first = generator.reserve(count);
+            for (int i = 0; i < count; i++) {
+                into[i] = first + i;
+                log.append(first + i);
+            }
+        } finally {
+            logLock.unlock();
+        }
+        logger.log(Level.FINE, "[{0}] Values [{1}, {2}) reserved", new Object[] {myNumber, into[0], into[0] + count});
+        return count;
+    }
+
+    /**
+     * Дождаться разрешения окна и ограничителя скорости, но не дольше {@link #PERMIT_WAIT_NANOS}
+     * на каждого.
+     *
+     * @param maxCount наибольшее количество чисел
+     * @param rate ограничитель скорости или <code>null</code>
+     * @return количество чисел, которые можно сгенерировать, или 0, если разрешения нет
+     */
+    private int permits(int maxCount, RateLimiter rate) throws InterruptedException {
+        int count = maxCount;
+        if (window != null) {
+            count = window.acquire(count, PERMIT_WAIT_NANOS);
+            if (count == 0) {
+                return 0;
+            }
+        }
+        if (rate != null) {
+            count = rate.acquire(count, PERMIT_WAIT_NANOS);
+        }
+        return count;
+    }
+
+    private void flushLog() throws IOException, InterruptedException {
+        logLock.lock();
+        try {
+            log.flush();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void closeLog() {
+        logLock.lock();
+        try {
+            log.close();
+            logger.log(Level.INFO, "[{0}] {1}", new Object[] {myNumber, log});
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+        } finally {
+            log = null;
+            logLock.unlock();
+        }
+    }
+
     /**
      * Приостановить генерацию значений
      * 
@@ -84,23 +262,54 @@ public class Producer extends AbstractWorker {
      */
     public void stopWork() throws InterruptedException {
         if (started) {
-            output.put(ProtocolConstants.STOP_SIGN);
+            control.put(ProtocolConstants.STOP_SIGN);
         }
         setStarted(false);
     }
 
     /**
-     * Начать или возобновить генерацию значений
+     * Начать или возобновить генерацию значений с наибольшей скоростью
      * 
      * @throws InterruptedException при прерывании потока во время ожидания
      */
     public void startWork() throws InterruptedException {
+        startWork(null);
+    }
+
+    /**
+     * Начать или возобновить генерацию значений с заданной скоростью. Если генерация уже идет,
+     * то меняется только скорость, а отсчет времени профиля начинается заново.
+     * 
+     * @param profile профиль нагрузки или <code>null</code> для генерации с наибольшей скоростью
+     * @throws InterruptedException при прерывании потока во время ожидания
+     */
+    public void startWork(LoadProfile profile) throws InterruptedException {
+        limiter = profile == null ? null : new RateLimiter(profile);
         if (!started) {
-            output.put(ProtocolConstants.START_SIGN);
+            control.put(ProtocolConstants.START_SIGN);
         }
         setStarted(true);
     }
 
+    /**
+     * Описать заданную и фактическую скорость генерации.
+     *
+     * @return описание или <code>null</code>, если скорость не задана
+     */
+    public String describeRate() {
+        RateLimiter rate = limiter;
+        return rate == null ? null : rate.toString();
+    }
+
+    /**
+     * Описать состояние окна несохраненных чисел.
+     *
+     * @return описание или <code>null</code>, если окно не задано
+     */
+    public String describeWindow() {
+        return window == null ? null : window.toString();
+    }
+
     private void setStarted(boolean newStarted) {
         mode.lock();
         try {
@@ -116,7 +325,7 @@ public class Producer extends AbstractWorker {
         mode.lock();
         try {
             try {
-                output.put(ProtocolConstants.EXIT_SIGN);
+                control.put(ProtocolConstants.EXIT_SIGN);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
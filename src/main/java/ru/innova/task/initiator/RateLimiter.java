@@ -0,0 +1,123 @@
+package ru.innova.task.initiator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Ограничитель скорости генерации по правилу маркерной корзины (token bucket).
+ * </p>
+ *
+ * <p>
+ * Маркеры начисляются по часам {@link System#nanoTime()} со скоростью, заданной профилем
+ * {@link LoadProfile}, и расходуются на генерацию чисел. Корзина вмещает маркеры не больше чем
+ * за {@link #BUCKET_NANOS} наносекунд, так что после паузы генерация не выдает накопленный залп.
+ * Если маркеров нет, поток ждет ровно до появления очередного маркера: коротко - активно,
+ * дольше - через {@link LockSupport#parkNanos(Object, long)}. Погрешность пробуждения потока
+ * не накапливается, т.к. маркеры считаются по часам, а не по числу ожиданий.
+ * </p>
+ *
+ * <p>
+ * Объект считает, сколько чисел предложено профилем и сколько выдано на самом деле,
+ * чтобы сравнивать заданную и фактическую скорость. Методы объекта синхронизированы.
+ * </p>
+ *
+ * @author sergey
+ */
+public class RateLimiter {
+    /**
+     * Емкость корзины в наносекундах работы с заданной скоростью.
+     */
+    public static final long BUCKET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final LoadProfile profile;
+    private final long startTime;
+    private long lastTime;
+    private double tokens;
+    private double offered;
+    private long granted;
+
+    /**
+     * Создает ограничитель. Отсчет времени профиля начинается с момента создания.
+     *
+     * @param profile профиль нагрузки
+     */
+    public RateLimiter(LoadProfile profile) {
+        this.profile = profile;
+        this.startTime = System.nanoTime();
+        this.lastTime = startTime;
+        this.tokens = 0;
+        this.offered = 0;
+        this.granted = 0;
+    }
+
+    /**
+     * Получить разрешение на генерацию чисел, дождавшись хотя бы одного маркера, но не дольше
+     * указанного времени.
+     *
+     * @param maxCount наибольшее количество чисел
+     * @param maxWaitNanos наибольшее время ожидания
+     * @return количество чисел от 1 до <code>maxCount</code> или 0, если маркер не появился
+     *     за время ожидания
+     */
+    public synchronized int acquire(int maxCount, long maxWaitNanos) {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            long now = System.nanoTime();
+            double rate = refill(now);
+            if (tokens >= 1) {
+                int result = (int) Math.min(maxCount, (long) tokens);
+                tokens -= result;
+                granted += result;
+                return result;
+            }
+            long wait = (long) Math.ceil((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+            long left = deadline - now;
+            if (left <= 0) {
+                return 0;
+            }
+            wait = Math.min(wait, left);
+            if (wait > SPIN_NANOS) {
+                LockSupport.parkNanos(this, wait - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Вернуть маркеры, полученные методом {@link #acquire(int, long)}, но не израсходованные.
+     * Возвращенные маркеры могут на время переполнить корзину, т.к. они уже были в ней.
+     *
+     * @param count количество неиспользованных чисел
+     */
+    public synchronized void release(int count) {
+        tokens += count;
+        granted -= count;
+    }
+
+    /**
+     * Начислить маркеры за время, прошедшее после прошлого начисления.
+     *
+     * @return текущая заданная скорость
+     */
+    private double refill(long now) {
+        double rate = profile.getRate(now - startTime);
+        double added = rate * (now - lastTime) / TimeUnit.SECONDS.toNanos(1);
+        lastTime = now;
+        offered += added;
+        tokens = Math.min(tokens + added, Math.max(rate * BUCKET_NANOS / TimeUnit.SECONDS.toNanos(1), 1));
+        return rate;
+    }
+
+    /**
+     * Описать заданную и фактическую скорость с момента создания.
+     */
+    @Override
+    public synchronized String toString() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - startTime, 1) / 1e9;
+        return String.format("profile %s, target %.0f/s now, offered %.0f/s, actual %.0f/s (%d numbers in %.1f s)",
+                profile, profile.getRate(now - startTime), offered / seconds, granted / seconds, granted, seconds);
+    }
+}
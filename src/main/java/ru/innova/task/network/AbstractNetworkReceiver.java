@@ -1,31 +1,328 @@
 package ru.innova.task.network;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
 
 /**
  * Реализация для объектов, которые получают данные по сети.
- * 
+ * Понимает пакеты чисел (см. {@link ProtocolConstants#BATCH_SIGN}), пакеты разностей
+ * (см. {@link ProtocolConstants#DELTA_SIGN}), числа с нагрузкой
+ * (см. {@link ProtocolConstants#PAYLOAD_SIGN}), управляющие кадры (см. {@link ProtocolConstants#CONTROL_SIGN})
+ * и кадры возобновления (см. {@link ProtocolConstants#RESUME_SIGN}).
+ * Тип проверяется один раз на кадр, а числа пакета копируются без проверок. Управляющие значения
+ * и объявления о возобновлении передаются объекту {@link ControlListener}, а если он не задан,
+ * пропускаются.
+ * Нагрузка читается через тот же буфер, что и числа, не накапливаясь в памяти; если правило
+ * {@link PayloadFormat} требует проверки, контрольная сумма нагрузки сверяется с ожидаемой.
+ * Числа с нагрузкой принимаются, только если правило задано. Пакет разностей дочитывается
+ * в буфер целиком и декодируется объектом {@link DeltaCodec}.
+ * Если задан набор кредитов {@link CreditPool}, получатель объявляет флаг
+ * {@link ProtocolConstants#CREDIT_FLOW} и выдает отправителю кредиты кадрами
+ * {@link ProtocolConstants#CREDIT_SIGN}. Кредиты чисел, полученных прошлым вызовом, возвращаются
+ * в набор при следующем вызове, когда эти числа уже помещены в очередь. Новые кредиты выдаются,
+ * когда у отправителя осталось не больше половины окна; если кредитов у отправителя нет,
+ * а в очереди нет места, получатель ждет места, не читая соединение.
+ *
  * @author sergey
  */
 abstract public class AbstractNetworkReceiver extends AbstractNetworkWorker implements NetworkReceiver {
-    protected DataInputStream input;
-    
+    private static final int BUFFER_SIZE = 8192;
+    protected InputStream input;
+    /**
+     * Поток, по которому получатель шлет отправителю объявление кодировок и кредиты.
+     */
+    protected OutputStream feedback;
+    private final ByteBuffer buffer;
+    private int batchRemaining;
+    private final DeltaCodec codec;
+    private final PayloadFormat payload;
+    private final ControlListener listener;
+    private final CRC32 crc;
+    private final byte[] scratch;
+    private final CreditPool credit;
+    private final ByteBuffer grant;
+    private int held;
+    private int consumed;
+
     /**
      * Создает объект
-     * 
+     *
      * @param clientType тип клиента
      */
     public AbstractNetworkReceiver(int clientType) {
+        this(clientType, null, null);
+    }
+
+    /**
+     * Создает объект
+     *
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки или <code>null</code>, если числа передаются без нагрузки
+     */
+    public AbstractNetworkReceiver(int clientType, PayloadFormat payload) {
+        this(clientType, payload, null);
+    }
+
+    /**
+     * Создает объект
+     *
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки или <code>null</code>, если числа передаются без нагрузки
+     * @param listener объект, обрабатывающий управляющие значения, или <code>null</code>
+     */
+    public AbstractNetworkReceiver(int clientType, PayloadFormat payload, ControlListener listener) {
+        this(clientType, payload, listener, null);
+    }
+
+    /**
+     * Создает объект
+     *
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки или <code>null</code>, если числа передаются без нагрузки
+     * @param listener объект, обрабатывающий управляющие значения, или <code>null</code>
+     * @param credit набор кредитов очереди, в которую помещаются числа, или <code>null</code>,
+     *     если получатель не управляет потоком кредитами
+     */
+    public AbstractNetworkReceiver(int clientType, PayloadFormat payload, ControlListener listener, CreditPool credit) {
         super(clientType);
         this.input = null;
+        this.feedback = null;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+        this.batchRemaining = 0;
+        this.codec = new DeltaCodec();
+        this.payload = payload;
+        this.listener = listener;
+        this.crc = payload == null ? null : new CRC32();
+        this.scratch = payload != null && payload.isVerify() ? new byte[ProtocolConstants.MAX_PAYLOAD_SIZE] : null;
+        this.credit = credit;
+        this.grant = ByteBuffer.allocate(8);
+        this.held = 0;
+        this.consumed = 0;
+    }
+
+    @Override
+    public long receive() throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Not connected");
+        }
+        replenish();
+        long result = next();
+        consume(1);
+        return result;
     }
 
     @Override
-    public int receive() throws IOException {
+    public int receive(long[] into) throws IOException {
         if (!isConnected()) {
             throw new IOException("Not connected");
         }
-        return input.readInt();
+        replenish();
+        into[0] = next();
+        int count = 1;
+        while (count < into.length && codec.hasRemaining()) {
+            into[count++] = codec.decode(buffer);
+        }
+        while (count < into.length && batchRemaining > 0 && buffer.remaining() >= 8) {
+            into[count++] = buffer.getLong();
+            batchRemaining--;
+        }
+        consume(count);
+        return count;
+    }
+
+    /**
+     * Закрыть соединение и вернуть в набор кредиты, которые отправитель не успел использовать.
+     */
+    @Override
+    public void close() throws IOException {
+        if (credit != null) {
+            credit.release(held + consumed);
+            held = 0;
+            consumed = 0;
+        }
+        super.close();
+    }
+
+    /**
+     * Вернуть в набор кредиты чисел, полученных прошлым вызовом, и, если нужно, выдать
+     * отправителю новые кредиты.
+     */
+    private void replenish() throws IOException {
+        if (credit == null) {
+            return;
+        }
+        credit.release(consumed);
+        consumed = 0;
+        int window = credit.getWindow();
+        if (held > window / 2) {
+            return;
+        }
+        int count = credit.acquire(window - held);
+        if (count == 0 && held == 0) {
+            long start = System.nanoTime();
+            while (count == 0) {
+                LockSupport.parkNanos(this, ByteRing.PARK_NANOS);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                count = credit.acquire(window);
+            }
+            credit.getMeter().stalled(System.nanoTime() - start);
+        }
+        if (count > 0) {
+            grant.clear();
+            grant.putInt(ProtocolConstants.CREDIT_SIGN);
+            grant.putInt(count);
+            feedback.write(grant.array(), 0, grant.position());
+            held += count;
+        }
+    }
+
+    /**
+     * Учесть полученные числа: они расходуют кредиты отправителя. Числа, отправленные
+     * до получения объявления, кредитов не расходуют.
+     */
+    private void consume(int count) {
+        if (credit != null) {
+            consumed = Math.min(count, held);
+            held -= consumed;
+        }
+    }
+
+    private long next() throws IOException {
+        while (batchRemaining == 0 && !codec.hasRemaining()) {
+            int type = readInt();
+            if (type == ProtocolConstants.BATCH_SIGN) {
+                int count = readInt();
+                if (count <= 0 || count > ProtocolConstants.MAX_BATCH_SIZE) {
+                    throw new IOException(String.format("Incorrect batch size received (%d)", count));
+                }
+                batchRemaining = count;
+            } else if (type == ProtocolConstants.DELTA_SIGN) {
+                int size = readInt();
+                codec.start(size);
+                int padded = PayloadFormat.padded(size);
+                if (buffer.remaining() < padded) {
+                    fill(padded);
+                }
+            } else if (type == ProtocolConstants.PAYLOAD_SIGN) {
+                return readPayload();
+            } else if (type == ProtocolConstants.CONTROL_SIGN) {
+                int signal = readInt();
+                if (listener != null) {
+                    listener.onControl(signal);
+                }
+            } else if (type == ProtocolConstants.RESUME_SIGN) {
+                long last = readLong();
+                if (listener != null) {
+                    listener.onResume(last);
+                }
+            } else {
+                throw new IOException(String.format("Unknown frame type received (%d)", type));
+            }
+        }
+        if (codec.hasRemaining()) {
+            return codec.decode(buffer);
+        }
+        batchRemaining--;
+        return readLong();
+    }
+
+    /**
+     * Объявить отправителю кадром {@link ProtocolConstants#CODEC_SIGN}, какие кодировки
+     * понимает получатель (см. {@link DeltaCodec#supportedCodecs()}) и управляет ли он потоком
+     * кредитами. Тот же поток запоминается для отправки кредитов.
+     *
+     * @param output поток, по которому данные идут к отправителю
+     * @throws IOException в случае ошибки
+     */
+    protected void announceCodecs(OutputStream output) throws IOException {
+        int codecs = DeltaCodec.supportedCodecs();
+        if (credit != null) {
+            codecs |= ProtocolConstants.CREDIT_FLOW;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        frame.putInt(ProtocolConstants.CODEC_SIGN);
+        frame.putInt(codecs);
+        output.write(frame.array());
+        this.feedback = output;
+    }
+
+    /**
+     * Прочитать число с нагрузкой после {@link ProtocolConstants#PAYLOAD_SIGN}.
+     */
+    private long readPayload() throws IOException {
+        if (payload == null) {
+            throw new IOException("Unexpected payload received. Specify the same payload.size on all clients and use proxy.mode=forward");
+        }
+        long number = readLong();
+        int size = readInt();
+        if (size < 0 || size > ProtocolConstants.MAX_PAYLOAD_SIZE) {
+            throw new IOException(String.format("Incorrect payload size received (%d)", size));
+        }
+        crc.reset();
+        int remaining = PayloadFormat.padded(size);
+        int unchecked = size;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                fill(4);
+            }
+            int count = Math.min(remaining, buffer.remaining());
+            if (unchecked > 0) {
+                crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), Math.min(count, unchecked));
+                unchecked -= Math.min(count, unchecked);
+            }
+            buffer.position(buffer.position() + count);
+            remaining -= count;
+        }
+        if (scratch != null) {
+            int checksum = (int) crc.getValue();
+            if (size != payload.size(number) || payload.checksum(number, scratch, crc) != checksum) {
+                throw new IOException(String.format("Payload of number %d is corrupted (%d bytes, checksum %08x)", number, size, checksum));
+            }
+        }
+        return number;
+    }
+
+    private int readInt() throws IOException {
+        if (buffer.remaining() < 4) {
+            fill(4);
+        }
+        return buffer.getInt();
+    }
+
+    private long readLong() throws IOException {
+        if (buffer.remaining() < 8) {
+            fill(8);
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * Дочитать в буфер данные, чтобы в нем было не меньше указанного количества байтов.
+     */
+    private void fill(int size) throws IOException {
+        buffer.compact();
+        try {
+            while (buffer.position() < size) {
+                int count = input.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                buffer.position(buffer.position() + count);
+            }
+        } finally {
+            buffer.flip();
+        }
     }
 }
@@ -1,31 +1,298 @@
 package ru.innova.task.network;
 
-import java.io.DataOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
 
 /**
  * Реализация для объектов, которые отправляют данные по сети.
- * 
+ * Данные сначала собираются в буфере, а затем записываются в сокет одной операцией.
+ * Числа отправляются пакетами (см. {@link ProtocolConstants#BATCH_SIGN}), управляющие значения -
+ * отдельными кадрами (см. {@link ProtocolConstants#CONTROL_SIGN}), так что числа не проверяются.
+ * Если задано правило {@link PayloadFormat}, то каждое число отправляется со своей нагрузкой
+ * (см. {@link ProtocolConstants#PAYLOAD_SIGN}). Нагрузка формируется прямо в буфере отправки,
+ * который создается один раз.
+ * Если получатель объявил кадром {@link ProtocolConstants#CODEC_SIGN}, что понимает пакеты разностей,
+ * и они не запрещены свойством <code>network.codec</code>, то числа без нагрузки отправляются
+ * пакетами разностей (см. {@link DeltaCodec}). Объявление проверяется без ожидания перед каждой
+ * отправкой, пока оно не получено.
+ * Если получатель объявил флаг {@link ProtocolConstants#CREDIT_FLOW}, то числа отправляются только
+ * в пределах кредитов, полученных кадрами {@link ProtocolConstants#CREDIT_SIGN}. Кредиты читаются,
+ * когда полученные кончились; если новых кредитов еще нет, отправитель записывает собранные кадры
+ * и ждет. Полученные кредиты и ожидания учитываются объектом {@link CreditMeter}.
+ *
  * @author sergey
  */
 abstract public class AbstractNetworkSender extends AbstractNetworkWorker implements NetworkSender {
-    protected DataOutputStream output;
-    
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int NUMBER_SIZE = 8;
+    private static final int BUFFER_SIZE = FRAME_HEADER_SIZE + ProtocolConstants.MAX_BATCH_SIZE * NUMBER_SIZE;
+    private static final int PAYLOAD_HEADER_SIZE = 16;
+    protected OutputStream output;
+    /**
+     * Поток, по которому получатель объявляет кодировки и выдает кредиты, или <code>null</code>,
+     * если объявление уже получено, а кредиты не нужны.
+     */
+    protected InputStream feedback;
+    private final ByteBuffer buffer;
+    private final PayloadFormat payload;
+    private final int codecs;
+    private final long[] single;
+    private final byte[] frame;
+    private final CreditMeter meter;
+    private boolean delta;
+    private boolean credited;
+    private int credit;
+
     /**
      * Создает объект.
-     * 
+     *
      * @param clientType тип подключенного клиента.
      */
     public AbstractNetworkSender(int clientType) {
+        this(clientType, null);
+    }
+
+    /**
+     * Создает объект.
+     *
+     * @param clientType тип подключенного клиента.
+     * @param payload правило формирования нагрузки или <code>null</code>, если числа отправляются без нагрузки
+     */
+    public AbstractNetworkSender(int clientType, PayloadFormat payload) {
+        this(clientType, payload, null);
+    }
+
+    /**
+     * Создает объект.
+     *
+     * @param clientType тип подключенного клиента.
+     * @param payload правило формирования нагрузки или <code>null</code>, если числа отправляются без нагрузки
+     * @param meter счетчики полученных кредитов и ожиданий или <code>null</code>, если они не нужны
+     */
+    public AbstractNetworkSender(int clientType, PayloadFormat payload, CreditMeter meter) {
         super(clientType);
         this.output = null;
+        this.feedback = null;
+        this.payload = payload;
+        this.codecs = DeltaCodec.supportedCodecs();
+        this.single = new long[1];
+        this.frame = new byte[FRAME_HEADER_SIZE];
+        this.meter = meter == null ? new CreditMeter() : meter;
+        this.delta = false;
+        this.credited = false;
+        this.credit = 0;
+        int size = payload == null ? BUFFER_SIZE : BUFFER_SIZE + PAYLOAD_HEADER_SIZE + ProtocolConstants.MAX_PAYLOAD_SIZE;
+        this.buffer = ByteBuffer.allocate(size);
     }
 
     @Override
-    public void send(int value) throws IOException {
+    public void send(long value) throws IOException {
         if (!isConnected()) {
             throw new IOException("Not connected");
         }
-        output.writeInt(value);
+        boolean useDelta = checkCodec();
+        takeCredit(1);
+        if (payload != null) {
+            putPayload(value);
+        } else if (useDelta) {
+            single[0] = value;
+            DeltaCodec.encode(single, 0, 1, buffer);
+        } else {
+            buffer.putInt(ProtocolConstants.BATCH_SIGN);
+            buffer.putInt(1);
+            buffer.putLong(value);
+        }
+        flush();
+    }
+
+    @Override
+    public void send(long[] values, int off, int len) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Not connected");
+        }
+        boolean useDelta = checkCodec();
+        if (payload != null) {
+            sendWithPayload(values, off, len);
+            return;
+        }
+        if (useDelta) {
+            sendDelta(values, off, len);
+            return;
+        }
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (buffer.remaining() < FRAME_HEADER_SIZE + NUMBER_SIZE) {
+                flush();
+            }
+            int count = takeCredit(Math.min(Math.min(end - i, ProtocolConstants.MAX_BATCH_SIZE), (buffer.remaining() - FRAME_HEADER_SIZE) / NUMBER_SIZE));
+            buffer.putInt(ProtocolConstants.BATCH_SIGN);
+            buffer.putInt(count);
+            for (int j = 0; j < count; j++) {
+                buffer.putLong(values[i++]);
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void sendControl(int signal) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Not connected");
+        }
+        buffer.putInt(ProtocolConstants.CONTROL_SIGN);
+        buffer.putInt(signal);
+        flush();
+    }
+
+    @Override
+    public void sendResume(long last) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Not connected");
+        }
+        buffer.putInt(ProtocolConstants.RESUME_SIGN);
+        buffer.putLong(last);
+        flush();
+    }
+
+    /**
+     * Отправить числа пакетами разностей.
+     */
+    private void sendDelta(long[] values, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int allowed = takeCredit(end - i);
+            int count = DeltaCodec.encode(values, i, allowed, buffer);
+            if (count == 0) {
+                flush();
+            }
+            credit += allowed - count;
+            i += count;
+        }
+        flush();
+    }
+
+    /**
+     * Проверить, не получено ли от получателя объявление кодировок, не дожидаясь его.
+     *
+     * @return <code>true</code>, если числа надо отправлять пакетами разностей
+     */
+    private boolean checkCodec() throws IOException {
+        if (!credited) {
+            readFeedback(false);
+        }
+        return delta;
+    }
+
+    /**
+     * Получить кредиты на отправку чисел. Если кредитов нет, собранные в буфере кадры
+     * записываются, и метод ждет новых кредитов. Если получатель не управляет потоком кредитами,
+     * разрешено отправить все числа.
+     *
+     * @param wanted сколько чисел надо отправить
+     * @return сколько чисел можно отправить, от 1 до <code>wanted</code>
+     */
+    private int takeCredit(int wanted) throws IOException {
+        if (!credited) {
+            return wanted;
+        }
+        if (credit == 0) {
+            readFeedback(false);
+        }
+        if (credit == 0) {
+            flush();
+            long start = System.nanoTime();
+            while (credit == 0) {
+                readFeedback(true);
+            }
+            meter.stalled(System.nanoTime() - start);
+        }
+        int count = Math.min(wanted, credit);
+        credit -= count;
+        return count;
+    }
+
+    /**
+     * Прочитать кадры, которые получатель шлет отправителю: объявление кодировок
+     * (см. {@link ProtocolConstants#CODEC_SIGN}) и кредиты (см. {@link ProtocolConstants#CREDIT_SIGN}).
+     *
+     * @param wait <code>true</code>, если надо дождаться хотя бы одного кадра
+     */
+    private void readFeedback(boolean wait) throws IOException {
+        boolean blocking = wait;
+        while (feedback != null && (blocking || feedback.available() >= FRAME_HEADER_SIZE)) {
+            blocking = false;
+            new DataInputStream(feedback).readFully(frame);
+            ByteBuffer received = ByteBuffer.wrap(frame);
+            int type = received.getInt();
+            int value = received.getInt();
+            if (type == ProtocolConstants.CODEC_SIGN) {
+                delta = (value & codecs & ProtocolConstants.DELTA_CODEC) != 0;
+                credited = (value & ProtocolConstants.CREDIT_FLOW) != 0;
+                if (!credited) {
+                    feedback = null;
+                }
+            } else if (type == ProtocolConstants.CREDIT_SIGN && credited) {
+                if (value <= 0) {
+                    throw new IOException(String.format("Incorrect credit received (%d)", value));
+                }
+                credit += value;
+                meter.granted(value);
+            } else {
+                throw new IOException(String.format("Unknown frame type received (%d)", type));
+            }
+        }
+    }
+
+    /**
+     * Отправить числа, каждое со своей нагрузкой. Пакеты в этом случае не используются:
+     * каждое число - отдельное сообщение, но сообщения собираются в буфере и записываются вместе.
+     */
+    private void sendWithPayload(long[] values, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int allowed = i + takeCredit(end - i);
+            for (; i < allowed; i++) {
+                if (buffer.remaining() < PAYLOAD_HEADER_SIZE + ProtocolConstants.MAX_PAYLOAD_SIZE) {
+                    flush();
+                }
+                putPayload(values[i]);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Записать в буфер число с нагрузкой. В буфере должно быть место для нагрузки наибольшей длины.
+     */
+    private void putPayload(long value) {
+        int header = buffer.position();
+        int size = payload.fill(value, buffer.array(), buffer.arrayOffset() + header + PAYLOAD_HEADER_SIZE);
+        buffer.putInt(ProtocolConstants.PAYLOAD_SIGN);
+        buffer.putLong(value);
+        buffer.putInt(size);
+        int padded = PayloadFormat.padded(size);
+        for (int j = size; j < padded; j++) {
+            buffer.put(header + PAYLOAD_HEADER_SIZE + j, (byte) 0);
+        }
+        buffer.position(header + PAYLOAD_HEADER_SIZE + padded);
+    }
+
+    private void flush() throws IOException {
+        if (buffer.position() > 0) {
+            try {
+                output.write(buffer.array(), 0, buffer.position());
+            } finally {
+                buffer.clear();
+            }
+        }
     }
 }
@@ -1,7 +1,6 @@
 package ru.innova.task.network;
 
 import java.io.IOException;
-import java.net.Socket;
 
 /**
  * Реализация для объектов, которые отвечают за сетевое взаимодействие.
@@ -15,9 +14,9 @@ abstract public class AbstractNetworkWorker implements NetworkWorker {
     protected final int clientType;
     
     /**
-     * Сокет, который держит соединение
+     * Соединение, установленное через {@link Transport}
      */
-    protected Socket socket;
+    protected Connection connection;
     
     /**
      * Создает объект.
@@ -25,23 +24,23 @@ abstract public class AbstractNetworkWorker implements NetworkWorker {
      * @param clientType тип подключенного клиента
      */
     public AbstractNetworkWorker(int clientType) {
-        this.socket = null;
+        this.connection = null;
         this.clientType = clientType;
     }
 
     @Override
     public void close() throws IOException {
-        if (socket != null) {
+        if (connection != null) {
             try {
-                socket.close();
+                connection.close();
             } finally {
-                this.socket = null;
+                this.connection = null;
             }
         }
     }
     
     @Override
     public boolean isConnected() {
-        return socket != null && socket.isConnected();
+        return connection != null && connection.isConnected();
     }
 }
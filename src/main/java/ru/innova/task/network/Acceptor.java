@@ -0,0 +1,22 @@
+package ru.innova.task.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Интерфейс, описывающий объекты, которые принимают входящие соединения
+ * (см. {@link Transport#listen()}).
+ *
+ * @author sergey
+ */
+public interface Acceptor extends Closeable {
+
+    /**
+     * Дождаться очередного входящего соединения.
+     *
+     * @return установленное соединение
+     * @throws IOException в случае ошибки или если объект закрыт
+     */
+    Connection accept() throws IOException;
+
+}
@@ -0,0 +1,166 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Кольцевой буфер байтов для передачи данных между потоками одного процесса
+ * (см. {@link MemoryTransport}). В буфер пишет один поток, а читает другой; счетчики записанных
+ * и прочитанных байтов изменяются только своими потоками, поэтому блокировки не нужны.
+ * </p>
+ *
+ * <p>
+ * Поток, которому нечего читать или некуда писать, засыпает методом
+ * {@link LockSupport#parkNanos(Object, long)} и будится другим потоком, когда тот продвинет
+ * свой счетчик. Сон ограничен {@link #PARK_NANOS}, поэтому пробуждение не может потеряться.
+ * </p>
+ *
+ * @author sergey
+ */
+class ByteRing {
+    /**
+     * Наибольшее время сна потока, ждущего другой поток.
+     */
+    static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private final byte[] data;
+    private final int mask;
+    private volatile long written;
+    private volatile long read;
+    private volatile boolean closed;
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+
+    /**
+     * Создает объект.
+     *
+     * @param capacity емкость в байтах, степень двойки
+     */
+    ByteRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(String.format("Incorrect ring capacity %d. Specify power of two", capacity));
+        }
+        this.data = new byte[capacity];
+        this.mask = capacity - 1;
+        this.written = 0;
+        this.read = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Записать байты, дождавшись места в буфере.
+     *
+     * @throws IOException если буфер закрыт или поток прерван
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            long tail = written;
+            int free = data.length - (int) (tail - read);
+            if (free == 0) {
+                waitingWriter = Thread.currentThread();
+                if (data.length - (int) (tail - read) == 0 && !closed) {
+                    park();
+                }
+                waitingWriter = null;
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+                continue;
+            }
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            int index = (int) tail & mask;
+            int count = Math.min(Math.min(free, len - done), data.length - index);
+            System.arraycopy(b, off + done, data, index, count);
+            written = tail + count;
+            done += count;
+            wake(waitingReader);
+        }
+    }
+
+    /**
+     * Записать байты без ожидания, если для них есть место.
+     *
+     * @return <code>false</code>, если в буфере нет места для всех байтов
+     * @throws IOException если буфер закрыт
+     */
+    boolean offer(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (data.length - (int) (written - read) < len) {
+            return false;
+        }
+        write(b, off, len);
+        return true;
+    }
+
+    /**
+     * Прочитать байты, дождавшись хотя бы одного.
+     *
+     * @return количество прочитанных байтов или -1, если буфер закрыт и пуст
+     * @throws IOException если поток прерван
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        long head = read;
+        int available = (int) (written - head);
+        while (available == 0) {
+            if (closed) {
+                available = (int) (written - head);
+                if (available == 0) {
+                    return -1;
+                }
+                break;
+            }
+            waitingReader = Thread.currentThread();
+            if (written == head && !closed) {
+                park();
+            }
+            waitingReader = null;
+            available = (int) (written - head);
+        }
+        int index = (int) head & mask;
+        int count = Math.min(Math.min(available, len), data.length - index);
+        System.arraycopy(data, index, b, off, count);
+        read = head + count;
+        wake(waitingWriter);
+        return count;
+    }
+
+    /**
+     * Узнать, сколько байтов можно прочитать без ожидания.
+     */
+    int available() {
+        return (int) (written - read);
+    }
+
+    /**
+     * Закрыть буфер. Читатель дочитывает записанные байты и получает конец потока,
+     * писатель получает ошибку.
+     */
+    void close() {
+        closed = true;
+        wake(waitingReader);
+        wake(waitingWriter);
+    }
+
+    private void park() throws InterruptedIOException {
+        LockSupport.parkNanos(this, PARK_NANOS);
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * Соединение через блокирующий {@link SocketChannel}, у которого нет объекта {@link java.net.Socket},
+ * например Unix domain socket (см. {@link UnixTransport}).
+ * </p>
+ *
+ * <p>
+ * Потоки чтения и записи работают с каналом напрямую, так что чтение и запись из разных потоков
+ * не мешают друг другу. Канал не сообщает, сколько байтов можно прочитать без ожидания, поэтому
+ * {@link InputStream#available()} читает из канала в неблокирующем режиме во внутренний буфер.
+ * Этот метод нельзя вызывать, пока другой поток ждет данные из того же соединения.
+ * </p>
+ *
+ * @author sergey
+ */
+class ChannelConnection implements Connection {
+    private static final int AHEAD_SIZE = 64;
+    private final SocketChannel channel;
+    private final InputStream input;
+    private final OutputStream output;
+
+    /**
+     * Создает объект.
+     *
+     * @param channel подключенный канал в блокирующем режиме
+     */
+    ChannelConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.input = new ChannelInput();
+        this.output = new ChannelOutput();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel.isOpen() && channel.isConnected();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class ChannelInput extends InputStream {
+        private final ByteBuffer ahead;
+
+        ChannelInput() {
+            this.ahead = ByteBuffer.allocate(AHEAD_SIZE);
+            this.ahead.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (ahead.hasRemaining()) {
+                int count = Math.min(len, ahead.remaining());
+                ahead.get(b, off, count);
+                return count;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (!ahead.hasRemaining()) {
+                ahead.clear();
+                channel.configureBlocking(false);
+                try {
+                    // at the end of stream nothing is read, the next read reports it
+                    channel.read(ahead);
+                } finally {
+                    channel.configureBlocking(true);
+                    ahead.flip();
+                }
+            }
+            return ahead.remaining();
+        }
+    }
+
+    private final class ChannelOutput extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(b, off, len);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package ru.innova.task.network;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
 
+import ru.innova.task.common.PayloadFormat;
 import ru.innova.task.common.ProtocolConstants;
 
 /**
@@ -16,8 +13,7 @@ import ru.innova.task.common.ProtocolConstants;
  * @author sergey
  */
 public class ClientNetworkReceiver extends AbstractNetworkReceiver {
-    private final String host;
-    private final int port;
+    private final Transport transport;
     
     /**
      * Создает новый объект.
@@ -27,9 +23,44 @@ public class ClientNetworkReceiver extends AbstractNetworkReceiver {
      * @param clientType тип клиента
      */
     public ClientNetworkReceiver(String host, int port, int clientType) {
-        super(clientType);
-        this.host = host;
-        this.port = port;
+        this(host, port, clientType, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param host имя или адрес узла
+     * @param port номер порта
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки получаемых чисел или <code>null</code>
+     */
+    public ClientNetworkReceiver(String host, int port, int clientType, PayloadFormat payload) {
+        this(Transport.tcp(host, port), clientType, payload);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param transport транспорт, через который устанавливается соединение с сервером
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки получаемых чисел или <code>null</code>
+     */
+    public ClientNetworkReceiver(Transport transport, int clientType, PayloadFormat payload) {
+        this(transport, clientType, payload, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param transport транспорт, через который устанавливается соединение с сервером
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки получаемых чисел или <code>null</code>
+     * @param listener объект, обрабатывающий управляющие значения и объявления о возобновлении,
+     *     или <code>null</code>
+     */
+    public ClientNetworkReceiver(Transport transport, int clientType, PayloadFormat payload, ControlListener listener) {
+        super(clientType, payload, listener);
+        this.transport = transport;
     }
 
     @Override
@@ -51,13 +82,13 @@ public class ClientNetworkReceiver extends AbstractNetworkReceiver {
         }
     }
 
-    private void connectInternal() throws UnknownHostException, IOException {
-        this.socket = new Socket(host, port);
-        InputStream in = socket.getInputStream();
-        this.input = new DataInputStream(in);
-        OutputStream out = socket.getOutputStream();
+    private void connectInternal() throws IOException {
+        this.connection = transport.connect();
+        this.input = connection.getInputStream();
+        OutputStream out = connection.getOutputStream();
         DataOutputStream output = new DataOutputStream(out);
         output.writeInt(clientType);
         output.writeInt(ProtocolConstants.RECEIVER_SIGN);
+        announceCodecs(output);
     }
 }
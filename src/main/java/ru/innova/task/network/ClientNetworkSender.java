@@ -3,19 +3,20 @@ package ru.innova.task.network;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
 
+import ru.innova.task.common.PayloadFormat;
 import ru.innova.task.common.ProtocolConstants;
 
 /**
  * Реализация для объектов, которые отправляют данные от клиента к серверу.
+ * Если клиент продолжает прежний запуск, то после чисел подключения каждого соединения
+ * отправляется кадр {@link ProtocolConstants#RESUME_SIGN}.
  * 
  * @author sergey
  */
 public class ClientNetworkSender extends AbstractNetworkSender {
-    private final String host;
-    private final int port;
+    private final Transport transport;
+    private final long resumeAfter;
     
     /**
      * Создает новый объект.
@@ -25,9 +26,58 @@ public class ClientNetworkSender extends AbstractNetworkSender {
      * @param clientType тип клиента
      */
     public ClientNetworkSender(String host, int port, int clientType) {
-        super(clientType);
-        this.host = host;
-        this.port = port;
+        this(host, port, clientType, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param host имя или адрес узла
+     * @param port номер порта
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки отправляемых чисел или <code>null</code>
+     */
+    public ClientNetworkSender(String host, int port, int clientType, PayloadFormat payload) {
+        this(Transport.tcp(host, port), clientType, payload);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param transport транспорт, через который устанавливается соединение с сервером
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки отправляемых чисел или <code>null</code>
+     */
+    public ClientNetworkSender(Transport transport, int clientType, PayloadFormat payload) {
+        this(transport, clientType, payload, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param transport транспорт, через который устанавливается соединение с сервером
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки отправляемых чисел или <code>null</code>
+     * @param meter счетчики полученных кредитов и ожиданий или <code>null</code>, если они не нужны
+     */
+    public ClientNetworkSender(Transport transport, int clientType, PayloadFormat payload, CreditMeter meter) {
+        this(transport, clientType, payload, meter, ProtocolConstants.NONE_VALUE);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param transport транспорт, через который устанавливается соединение с сервером
+     * @param clientType тип клиента
+     * @param payload правило формирования нагрузки отправляемых чисел или <code>null</code>
+     * @param meter счетчики полученных кредитов и ожиданий или <code>null</code>, если они не нужны
+     * @param resumeAfter последнее число прежнего запуска, которое объявляется серверу при подключении,
+     *     или {@link ProtocolConstants#NONE_VALUE}, если клиент начинает работу заново
+     */
+    public ClientNetworkSender(Transport transport, int clientType, PayloadFormat payload, CreditMeter meter, long resumeAfter) {
+        super(clientType, payload, meter);
+        this.transport = transport;
+        this.resumeAfter = resumeAfter;
     }
 
     @Override
@@ -49,11 +99,17 @@ public class ClientNetworkSender extends AbstractNetworkSender {
         }
     }
 
-    private void connectInternal() throws UnknownHostException, IOException {
-        this.socket = new Socket(host, port);
-        OutputStream out = socket.getOutputStream();
-        this.output = new DataOutputStream(out);
-        output.writeInt(clientType);
-        output.writeInt(ProtocolConstants.SENDER_SIGN);
+    private void connectInternal() throws IOException {
+        this.connection = transport.connect();
+        OutputStream out = connection.getOutputStream();
+        DataOutputStream handshake = new DataOutputStream(out);
+        handshake.writeInt(clientType);
+        handshake.writeInt(ProtocolConstants.SENDER_SIGN);
+        if (resumeAfter != ProtocolConstants.NONE_VALUE) {
+            handshake.writeInt(ProtocolConstants.RESUME_SIGN);
+            handshake.writeLong(resumeAfter);
+        }
+        this.output = out;
+        this.feedback = connection.getInputStream();
     }
 }
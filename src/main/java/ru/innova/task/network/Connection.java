@@ -0,0 +1,37 @@
+package ru.innova.task.network;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Интерфейс, описывающий установленное соединение, независимо от транспорта
+ * (см. {@link Transport}). Чтение и запись можно выполнять из разных потоков.
+ *
+ * @author sergey
+ */
+public interface Connection extends Closeable {
+
+    /**
+     * Получить поток для чтения из соединения. Метод {@link InputStream#available()}
+     * возвращает количество байтов, которые можно прочитать без ожидания.
+     *
+     * @return поток для чтения
+     */
+    InputStream getInputStream();
+
+    /**
+     * Получить поток для записи в соединение.
+     *
+     * @return поток для записи
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * Узнать, установлено ли соединение.
+     *
+     * @return <code>true</code>, если соединение установлено и не закрыто
+     */
+    boolean isConnected();
+
+}
@@ -0,0 +1,28 @@
+package ru.innova.task.network;
+
+/**
+ * Интерфейс, описывающий объекты, которые обрабатывают управляющие значения, полученные
+ * по сети в отдельных кадрах (см. {@link ru.innova.task.common.ProtocolConstants#CONTROL_SIGN}),
+ * и объявления о возобновлении (см. {@link ru.innova.task.common.ProtocolConstants#RESUME_SIGN}).
+ *
+ * @author sergey
+ */
+public interface ControlListener {
+
+    /**
+     * Обработать управляющее значение. Метод вызывается потоком, читающим соединение.
+     *
+     * @param signal управляющее значение, например {@link ru.innova.task.common.ProtocolConstants#START_SIGN}
+     */
+    void onControl(int signal);
+
+    /**
+     * Обработать объявление о возобновлении прежнего запуска
+     * (см. {@link ru.innova.task.common.ProtocolConstants#RESUME_SIGN}). Метод вызывается потоком,
+     * читающим соединение, до чисел, отправленных после объявления.
+     *
+     * @param last последнее число прежнего запуска
+     */
+    void onResume(long last);
+
+}
@@ -0,0 +1,90 @@
+package ru.innova.task.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Счетчики управления потоком кредитами (см. {@link ru.innova.task.common.ProtocolConstants#CREDIT_SIGN}):
+ * сколько раз и сколько чисел разрешено отправить, сколько раз и как долго передача стояла
+ * из-за нехватки кредитов. У получателя чисел счетчики описывают выданные кредиты и ожидание
+ * места в очереди, у отправителя - полученные кредиты и ожидание кредитов.
+ * </p>
+ *
+ * <p>
+ * Счетчики можно изменять из нескольких потоков.
+ * </p>
+ *
+ * @author sergey
+ */
+public class CreditMeter {
+    private final AtomicLong grants;
+    private final AtomicLong credits;
+    private final AtomicLong stalls;
+    private final AtomicLong stallNanos;
+
+    /**
+     * Создает объект.
+     */
+    public CreditMeter() {
+        this.grants = new AtomicLong(0);
+        this.credits = new AtomicLong(0);
+        this.stalls = new AtomicLong(0);
+        this.stallNanos = new AtomicLong(0);
+    }
+
+    /**
+     * Учесть выдачу кредитов.
+     *
+     * @param count количество чисел, которые разрешено отправить
+     */
+    public void granted(int count) {
+        grants.incrementAndGet();
+        credits.addAndGet(count);
+    }
+
+    /**
+     * Учесть остановку передачи из-за нехватки кредитов.
+     *
+     * @param nanos длительность остановки в наносекундах
+     */
+    public void stalled(long nanos) {
+        stalls.incrementAndGet();
+        stallNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Получить количество выдач кредитов.
+     */
+    public long getGrants() {
+        return grants.get();
+    }
+
+    /**
+     * Получить общее количество чисел, которые разрешено отправить.
+     */
+    public long getCredits() {
+        return credits.get();
+    }
+
+    /**
+     * Получить количество остановок передачи.
+     */
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    /**
+     * Получить общую длительность остановок передачи в наносекундах.
+     */
+    public long getStallNanos() {
+        return stallNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = grants.get();
+        return String.format("%d grants, %.1f numbers per grant, %d stalls for %d ms",
+                count, count == 0 ? 0.0 : (double) credits.get() / count, stalls.get(), TimeUnit.NANOSECONDS.toMillis(stallNanos.get()));
+    }
+}
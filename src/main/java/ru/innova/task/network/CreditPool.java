@@ -0,0 +1,114 @@
+package ru.innova.task.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Кредиты на отправку чисел в одну очередь (см. {@link ProtocolConstants#CREDIT_SIGN}).
+ * Очередь заполняют несколько соединений, и каждое выдает своему отправителю кредиты из общего
+ * набора, поэтому сумма выданных и еще не использованных кредитов не превышает свободного места
+ * в очереди. Пока отправители не выходят за пределы кредитов, числа помещаются в очередь
+ * без ожидания, а память очереди ограничена ее емкостью.
+ * </p>
+ *
+ * <p>
+ * Соединение запрашивает кредиты порциями не больше окна, которое задается системным свойством
+ * <code>network.credit.window</code>; значение 0 отключает управление потоком кредитами.
+ * </p>
+ *
+ * @author sergey
+ */
+public class CreditPool {
+    /**
+     * Окно кредитов одного соединения по умолчанию.
+     */
+    public static final int DEFAULT_WINDOW = 8 * ProtocolConstants.MAX_BATCH_SIZE;
+    private final LongBlockingQueue queue;
+    private final int window;
+    private final AtomicInteger outstanding;
+    private final CreditMeter meter;
+
+    /**
+     * Создает объект.
+     *
+     * @param queue очередь, в которую помещаются числа
+     * @param window наибольшее количество кредитов, которое может держать одно соединение
+     */
+    public CreditPool(LongBlockingQueue queue, int window) {
+        this.queue = queue;
+        this.window = window;
+        this.outstanding = new AtomicInteger(0);
+        this.meter = new CreditMeter();
+    }
+
+    /**
+     * Получить окно кредитов одного соединения из системного свойства <code>network.credit.window</code>.
+     *
+     * @return окно кредитов или 0, если управление потоком кредитами отключено
+     * @throws IllegalArgumentException если окно задано неверно
+     */
+    public static int windowFromSystemProperties() {
+        int window = Integer.getInteger("network.credit.window", DEFAULT_WINDOW);
+        if (window < 0) {
+            throw new IllegalArgumentException(String.format("Incorrect credit window %d. Specify number greater or equal than %d", window, 0));
+        }
+        return window;
+    }
+
+    /**
+     * Выдать кредиты, если в очереди есть место, не занятое уже выданными кредитами.
+     *
+     * <p>
+     * Кредиты выдаются под блокировкой. Без нее другое соединение могло бы между чтением
+     * выданных кредитов и свободного места вернуть кредиты и получить столько же снова:
+     * количество выданных кредитов не изменилось бы, а свободное место было бы отдано дважды.
+     * Возврату кредитов блокировка не нужна: числа помещаются в очередь раньше, чем возвращаются
+     * их кредиты, а выданные кредиты читаются раньше свободного места, поэтому каждое число учтено
+     * хотя бы в одном из двух значений.
+     * </p>
+     *
+     * @param max наибольшее количество кредитов
+     * @return количество выданных кредитов, возможно 0
+     */
+    public synchronized int acquire(int max) {
+        int current = outstanding.get();
+        int count = (int) Math.min(max, (long) queue.remainingCapacity() - current);
+        if (count <= 0) {
+            return 0;
+        }
+        outstanding.addAndGet(count);
+        meter.granted(count);
+        return count;
+    }
+
+    /**
+     * Вернуть кредиты чисел, которые уже помещены в очередь.
+     *
+     * @param count количество чисел
+     */
+    public void release(int count) {
+        outstanding.addAndGet(-count);
+    }
+
+    /**
+     * Получить окно кредитов одного соединения.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Получить счетчики выданных кредитов и остановок из-за заполненной очереди.
+     */
+    public CreditMeter getMeter() {
+        return meter;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, %d outstanding, %d queued", meter, outstanding.get(), queue.size());
+    }
+}
@@ -0,0 +1,167 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Кодировка пакетов разностей (см. {@link ProtocolConstants#DELTA_SIGN}). Соседние числа,
+ * которые выдает генератор, почти всегда близки, поэтому вместо восьми байтов на число
+ * передается разность с предыдущим числом в кодировке zig-zag varint: по семь битов в байте,
+ * старший бит - признак продолжения. Разность в пределах &plusmn;63 занимает один байт.
+ * Первое число пакета передается целиком, так что каждый пакет декодируется независимо.
+ * </p>
+ *
+ * <p>
+ * Кодирование выполняют статические методы, а объект хранит состояние декодирования одного
+ * соединения. Декодировать пакет можно, только когда он весь находится в буфере: длина пакета
+ * ограничена {@link ProtocolConstants#MAX_DELTA_SIZE}, так что он помещается в буфер получателя.
+ * </p>
+ *
+ * <p>
+ * Кодировка задается системным свойством <code>network.codec</code>: <code>delta</code>
+ * (по умолчанию) или <code>plain</code>. Она применяется, только если получатель объявил,
+ * что понимает ее (см. {@link ProtocolConstants#CODEC_SIGN}).
+ * </p>
+ *
+ * @author sergey
+ */
+public final class DeltaCodec {
+    /**
+     * Пакеты разностей используются, если обе стороны их понимают.
+     */
+    public static final String CODEC_DELTA = "delta";
+    /**
+     * Числа передаются только пакетами по восемь байтов.
+     */
+    public static final String CODEC_PLAIN = "plain";
+    /**
+     * Наибольшая длина одного числа в кодировке varint.
+     */
+    public static final int MAX_VARINT_SIZE = 10;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private long previous;
+    private int remaining;
+    private int padding;
+
+    /**
+     * Создает объект для декодирования.
+     */
+    public DeltaCodec() {
+        this.previous = 0;
+        this.remaining = 0;
+        this.padding = 0;
+    }
+
+    /**
+     * Узнать из системного свойства <code>network.codec</code>, какие кодировки понимает
+     * данный процесс.
+     *
+     * @return набор флагов для кадра {@link ProtocolConstants#CODEC_SIGN}
+     * @throws IllegalArgumentException если свойство задано неверно
+     */
+    public static int supportedCodecs() {
+        String codec = System.getProperty("network.codec", CODEC_DELTA);
+        if (codec.equals(CODEC_DELTA)) {
+            return ProtocolConstants.DELTA_CODEC;
+        } else if (codec.equals(CODEC_PLAIN)) {
+            return 0;
+        }
+        throw new IllegalArgumentException(String.format("Unknown network codec %s", codec));
+    }
+
+    /**
+     * Записать в буфер пакет разностей из чисел массива, сколько поместится, но не больше
+     * {@link ProtocolConstants#MAX_BATCH_SIZE}.
+     *
+     * @param values массив с числами
+     * @param off индекс первого числа
+     * @param len количество чисел
+     * @param into буфер, в который записывается пакет вместе с заголовком
+     * @return количество записанных чисел; 0, если в буфере нет места ни для одного числа
+     */
+    public static int encode(long[] values, int off, int len, ByteBuffer into) {
+        int header = into.position();
+        int maxSize = Math.min(into.remaining() - FRAME_HEADER_SIZE, ProtocolConstants.MAX_DELTA_SIZE) & ~3;
+        int end = header + FRAME_HEADER_SIZE + maxSize;
+        int position = header + FRAME_HEADER_SIZE;
+        int count = Math.min(len, ProtocolConstants.MAX_BATCH_SIZE);
+        long last = 0;
+        int i = 0;
+        while (i < count && end - position >= MAX_VARINT_SIZE) {
+            long value = values[off + i++];
+            long delta = value - last;
+            long bits = (delta << 1) ^ (delta >> 63);
+            while ((bits & ~0x7FL) != 0) {
+                into.put(position++, (byte) (bits | 0x80));
+                bits >>>= 7;
+            }
+            into.put(position++, (byte) bits);
+            last = value;
+        }
+        if (i == 0) {
+            return 0;
+        }
+        int size = position - header - FRAME_HEADER_SIZE;
+        int padded = PayloadFormat.padded(size);
+        for (int j = size; j < padded; j++) {
+            into.put(position++, (byte) 0);
+        }
+        into.putInt(header, ProtocolConstants.DELTA_SIGN);
+        into.putInt(header + 4, size);
+        into.position(position);
+        return i;
+    }
+
+    /**
+     * Начать декодирование пакета после его заголовка.
+     *
+     * @param size длина пакета в байтах из заголовка
+     * @throws IOException если длина неверна
+     */
+    public void start(int size) throws IOException {
+        if (size <= 0 || size > ProtocolConstants.MAX_DELTA_SIZE) {
+            throw new IOException(String.format("Incorrect delta batch size received (%d)", size));
+        }
+        this.previous = 0;
+        this.remaining = size;
+        this.padding = PayloadFormat.padded(size) - size;
+    }
+
+    /**
+     * Узнать, остались ли в текущем пакете числа.
+     */
+    public boolean hasRemaining() {
+        return remaining > 0;
+    }
+
+    /**
+     * Декодировать очередное число пакета. После последнего числа пропускается дополнение.
+     *
+     * @param from буфер, в котором находится весь остаток пакета
+     * @return число
+     * @throws IOException если число выходит за границу пакета
+     */
+    public long decode(ByteBuffer from) throws IOException {
+        long bits = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (remaining == 0 || shift >= 64) {
+                throw new IOException("Corrupted delta batch received");
+            }
+            b = from.get();
+            remaining--;
+            bits |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        previous += (bits >>> 1) ^ -(bits & 1);
+        if (remaining == 0) {
+            from.position(from.position() + padding);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,82 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Соединение внутри процесса через пару кольцевых буферов {@link ByteRing}: один буфер
+ * для каждого направления. Закрытие соединения закрывает оба буфера, так что другая сторона
+ * дочитывает данные и получает конец потока.
+ *
+ * @author sergey
+ */
+class MemoryConnection implements Connection {
+    private final ByteRing in;
+    private final ByteRing out;
+    private final InputStream input;
+    private final OutputStream output;
+    private volatile boolean closed;
+
+    /**
+     * Создает объект.
+     *
+     * @param in буфер, из которого соединение читает
+     * @param out буфер, в который соединение пишет
+     */
+    MemoryConnection(ByteRing in, ByteRing out) {
+        this.in = in;
+        this.out = out;
+        this.closed = false;
+        this.input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return MemoryConnection.this.in.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                return MemoryConnection.this.in.available();
+            }
+        };
+        this.output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                MemoryConnection.this.out.write(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        in.close();
+        out.close();
+    }
+}
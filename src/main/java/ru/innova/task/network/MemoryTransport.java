@@ -0,0 +1,125 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <p>
+ * Транспорт внутри одного процесса: соединения - это пары кольцевых буферов {@link ByteRing},
+ * сокеты и ядро не участвуют. Транспорт нужен, чтобы запускать все серверы в одном процессе
+ * (см. {@link ru.innova.task.embedded.EmbeddedServer}): так можно измерить стоимость работы
+ * отправителей, получателей, буферов упорядочивания и записи файлов отдельно от сетевого стека.
+ * </p>
+ *
+ * <p>
+ * Сервер регистрируется под именем методом {@link #listen()}, клиенты находят его по тому же
+ * имени. Каналов {@link SocketChannel} у транспорта нет, поэтому прокси-сервер должен
+ * обслуживать соединения потоками (<code>proxy.engine=threads</code>).
+ * </p>
+ *
+ * @author sergey
+ */
+public class MemoryTransport extends Transport {
+    /**
+     * Емкость буфера одного направления соединения по умолчанию.
+     */
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+    private static final ConcurrentMap<String, BlockingQueue<MemoryConnection>> SERVERS = new ConcurrentHashMap<>();
+    private final String name;
+    private final int ringSize;
+
+    /**
+     * Создает объект. Емкость буферов задается системным свойством <code>memory.ring.size</code>.
+     *
+     * @param name имя сервера
+     */
+    public MemoryTransport(String name) {
+        this(name, Integer.getInteger("memory.ring.size", DEFAULT_RING_SIZE));
+    }
+
+    /**
+     * Создает объект.
+     *
+     * @param name имя сервера
+     * @param ringSize емкость буфера одного направления, степень двойки
+     */
+    public MemoryTransport(String name, int ringSize) {
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException(String.format("Incorrect ring size %d. Specify power of two", ringSize));
+        }
+        this.name = name;
+        this.ringSize = ringSize;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+        BlockingQueue<MemoryConnection> server = SERVERS.get(name);
+        if (server == null) {
+            throw new IOException(String.format("In-process server %s is not listening", name));
+        }
+        ByteRing toServer = new ByteRing(ringSize);
+        ByteRing toClient = new ByteRing(ringSize);
+        server.add(new MemoryConnection(toServer, toClient));
+        return new MemoryConnection(toClient, toServer);
+    }
+
+    @Override
+    public Acceptor listen() throws IOException {
+        final BlockingQueue<MemoryConnection> pending = new LinkedBlockingQueue<>();
+        if (SERVERS.putIfAbsent(name, pending) != null) {
+            throw new IOException(String.format("In-process server %s is already listening", name));
+        }
+        return new Acceptor() {
+            private volatile boolean closed = false;
+
+            @Override
+            public Connection accept() throws IOException {
+                try {
+                    MemoryConnection result = pending.take();
+                    if (closed) {
+                        result.close();
+                        throw new IOException("Acceptor closed");
+                    }
+                    return result;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+                SERVERS.remove(name, pending);
+                // wakes up the thread waiting in accept()
+                pending.add(new MemoryConnection(new ByteRing(1), new ByteRing(1)));
+            }
+        };
+    }
+
+    @Override
+    public ServerSocketChannel listenChannel() throws IOException {
+        throw new IOException("In-process transport has no channels. Use proxy.engine=threads");
+    }
+
+    @Override
+    public boolean hasChannels() {
+        return false;
+    }
+
+    @Override
+    public void configure(SocketChannel channel) {
+        // never called, there are no channels
+    }
+
+    @Override
+    public String toString() {
+        return String.format("memory %s", name);
+    }
+}
@@ -0,0 +1,433 @@
+package ru.innova.task.network;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Мультиплексированное соединение: много логических потоков поверх одного соединения
+ * {@link Connection}. Каждый логический поток сам является соединением {@link Connection},
+ * так что отправители и получатели работают с ним так же, как с отдельным сокетом.
+ * Байты логических потоков передаются кадрами {@link ProtocolConstants#STREAM_SIGN}
+ * с номером потока.
+ * </p>
+ *
+ * <p>
+ * Потоки открывает только сторона, установившая соединение (метод {@link #open()}), номера
+ * потоков возрастают и не используются повторно. Другая сторона узнает о новых потоках
+ * из метода {@link #demultiplex(StreamListener)}.
+ * </p>
+ *
+ * <p>
+ * Запись в логический поток формирует кадр в буфере потока и записывает его в соединение
+ * одной операцией под блокировкой соединения. Чтение выполняет один поток, который вызывает
+ * {@link #demultiplex(StreamListener)} и раскладывает данные по кольцевым буферам
+ * {@link ByteRing} логических потоков; емкость буфера задается системным свойством
+ * <code>network.mux.ring.size</code>.
+ * </p>
+ *
+ * <p>
+ * Поток, читающий соединение, никогда не ждет читателей логических потоков, иначе один
+ * непрочитанный поток остановил бы все остальные. Поэтому каждая сторона разрешает другой
+ * отправлять в поток не больше байтов, чем свободно в ее буфере (см.
+ * {@link ProtocolConstants#WINDOW_SIGN}): сразу после открытия потока - всю емкость буфера,
+ * а дальше - прочитанные байты, когда их наберется половина буфера. Запись в поток ждет,
+ * пока другая сторона не разрешит отправить следующие байты. Если другая сторона отправила
+ * больше разрешенного, соединение закрывается с ошибкой.
+ * </p>
+ *
+ * @author sergey
+ */
+public class Multiplexer implements Closeable {
+    /**
+     * Емкость буфера чтения одного логического потока по умолчанию.
+     */
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 12;
+    private final Connection connection;
+    private final OutputStream output;
+    private final InputStream input;
+    private final ConcurrentMap<Integer, Stream> streams;
+    private final AtomicInteger lastOpened;
+    private final int ringSize;
+    private int lastAccepted;
+    private volatile boolean closed;
+
+    /**
+     * Создает объект.
+     *
+     * @param connection соединение, по которому передаются логические потоки
+     */
+    public Multiplexer(Connection connection) {
+        this(connection, ringSizeFromSystemProperties());
+    }
+
+    /**
+     * Создает объект.
+     *
+     * @param connection соединение, по которому передаются логические потоки
+     * @param ringSize емкость буфера чтения одного логического потока, степень двойки
+     */
+    Multiplexer(Connection connection, int ringSize) {
+        this.connection = connection;
+        this.output = connection.getOutputStream();
+        this.input = connection.getInputStream();
+        this.streams = new ConcurrentHashMap<>();
+        this.lastOpened = new AtomicInteger(0);
+        this.ringSize = ringSize;
+        this.lastAccepted = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Получить емкость буфера чтения одного логического потока из системного свойства
+     * <code>network.mux.ring.size</code>.
+     *
+     * @return емкость буфера в байтах
+     * @throws IllegalArgumentException если емкость задана неверно
+     */
+    public static int ringSizeFromSystemProperties() {
+        int ringSize = Integer.getInteger("network.mux.ring.size", DEFAULT_RING_SIZE);
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException(String.format("Incorrect ring size %d. Specify power of two", ringSize));
+        }
+        return ringSize;
+    }
+
+    /**
+     * Открыть новый логический поток.
+     *
+     * @return соединение логического потока
+     * @throws IOException если соединение закрыто или в случае ошибки
+     */
+    public Connection open() throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        Stream stream = new Stream(lastOpened.incrementAndGet());
+        streams.put(stream.id, stream);
+        stream.write(new byte[0], 0, 0);
+        writeFrame(ProtocolConstants.WINDOW_SIGN, stream.id, ringSize);
+        return stream;
+    }
+
+    /**
+     * Читать кадры соединения и раскладывать данные по логическим потокам, пока соединение
+     * не будет закрыто. После выхода из метода соединение и все его логические потоки закрыты.
+     *
+     * @param listener объект, который получает потоки, открытые другой стороной, или
+     *     <code>null</code>, если другая сторона не открывает потоки
+     * @throws IOException в случае ошибки
+     */
+    public void demultiplex(StreamListener listener) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] data = new byte[ProtocolConstants.MAX_STREAM_DATA];
+        try {
+            while (true) {
+                int type = in.readInt();
+                if (type != ProtocolConstants.STREAM_SIGN && type != ProtocolConstants.WINDOW_SIGN) {
+                    throw new IOException(String.format("Unknown frame type received (%d)", type));
+                }
+                int id = in.readInt();
+                int size = in.readInt();
+                if (type == ProtocolConstants.WINDOW_SIGN) {
+                    if (size <= 0) {
+                        throw new IOException(String.format("Incorrect stream window received (%d)", size));
+                    }
+                    Stream stream = streams.get(id);
+                    if (stream != null) {
+                        stream.grant(size);
+                    }
+                    continue;
+                }
+                if (size < ProtocolConstants.STREAM_CLOSED || size > ProtocolConstants.MAX_STREAM_DATA) {
+                    throw new IOException(String.format("Incorrect stream frame size received (%d)", size));
+                }
+                Stream stream = streams.get(id);
+                if (stream == null && listener != null && id > lastAccepted && size != ProtocolConstants.STREAM_CLOSED) {
+                    lastAccepted = id;
+                    stream = new Stream(id);
+                    streams.put(id, stream);
+                    writeFrame(ProtocolConstants.WINDOW_SIGN, id, ringSize);
+                    listener.onStream(stream);
+                }
+                if (size == ProtocolConstants.STREAM_CLOSED) {
+                    if (stream != null) {
+                        stream.closeInput();
+                    }
+                    continue;
+                }
+                in.readFully(data, 0, PayloadFormat.padded(size));
+                if (stream != null) {
+                    stream.deliver(data, size);
+                }
+            }
+        } catch (EOFException e) {
+            // the other side has closed the connection
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Узнать, открыто ли соединение.
+     *
+     * @return <code>true</code>, если соединение не закрыто
+     */
+    public boolean isOpen() {
+        return !closed && connection.isConnected();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Stream stream: new ArrayList<>(streams.values())) {
+            stream.closeInput();
+        }
+        connection.close();
+    }
+
+    /**
+     * Записать в соединение кадр одной операцией.
+     */
+    private void writeFrame(byte[] frame, int len) throws IOException {
+        synchronized (output) {
+            output.write(frame, 0, len);
+        }
+    }
+
+    /**
+     * Записать в соединение кадр без данных: окно или закрытие потока.
+     */
+    private void writeFrame(int type, int id, int value) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE);
+        frame.putInt(type);
+        frame.putInt(id);
+        frame.putInt(value);
+        writeFrame(frame.array(), frame.position());
+    }
+
+    /**
+     * Логический поток мультиплексированного соединения.
+     */
+    private final class Stream implements Connection {
+        final int id;
+        private final ByteRing in;
+        private final ByteBuffer frame;
+        private final InputStream streamInput;
+        private final OutputStream streamOutput;
+        /**
+         * Сколько байтов еще можно отправить другой стороне.
+         */
+        private final AtomicInteger window;
+        /**
+         * Сколько прочитанных байтов еще не разрешено отправить другой стороне снова.
+         */
+        private int consumed;
+        private volatile Thread waitingWriter;
+        private volatile boolean closed;
+
+        Stream(int id) {
+            this.id = id;
+            this.in = new ByteRing(ringSize);
+            this.frame = ByteBuffer.allocate(HEADER_SIZE + ProtocolConstants.MAX_STREAM_DATA);
+            this.window = new AtomicInteger(0);
+            this.consumed = 0;
+            this.closed = false;
+            this.streamInput = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = Stream.this.in.read(b, off, len);
+                    if (count > 0) {
+                        consumed(count);
+                    }
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return Stream.this.in.available();
+                }
+            };
+            this.streamOutput = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    Stream.this.write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    Stream.this.write(b, off, len);
+                }
+            };
+        }
+
+        /**
+         * Записать данные кадрами не длиннее {@link ProtocolConstants#MAX_STREAM_DATA}
+         * в пределах окна. Пустые данные записываются пустым кадром, который открывает поток.
+         */
+        void write(byte[] b, int off, int len) throws IOException {
+            int done = 0;
+            do {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                int count = Math.min(len - done, ProtocolConstants.MAX_STREAM_DATA);
+                if (count > 0) {
+                    count = acquireWindow(count);
+                }
+                frame.clear();
+                frame.putInt(ProtocolConstants.STREAM_SIGN);
+                frame.putInt(id);
+                frame.putInt(count);
+                frame.put(b, off + done, count);
+                for (int i = count; i < PayloadFormat.padded(count); i++) {
+                    frame.put((byte) 0);
+                }
+                writeFrame(frame.array(), frame.position());
+                done += count;
+            } while (done < len);
+        }
+
+        /**
+         * Дождаться, пока другая сторона разрешит отправить хотя бы один байт, и занять окно.
+         *
+         * @param max сколько байтов нужно отправить
+         * @return сколько байтов можно отправить, от 1 до <code>max</code>
+         */
+        private int acquireWindow(int max) throws IOException {
+            while (true) {
+                int current = window.get();
+                if (current > 0) {
+                    int count = Math.min(max, current);
+                    if (window.compareAndSet(current, current - count)) {
+                        return count;
+                    }
+                    continue;
+                }
+                waitingWriter = Thread.currentThread();
+                if (window.get() == 0 && !closed) {
+                    LockSupport.parkNanos(this, ByteRing.PARK_NANOS);
+                }
+                waitingWriter = null;
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        /**
+         * Увеличить окно, полученное от другой стороны.
+         */
+        void grant(int bytes) {
+            window.addAndGet(bytes);
+            wakeWriter();
+        }
+
+        /**
+         * Учесть прочитанные байты и, когда их наберется половина буфера, разрешить
+         * другой стороне отправить их снова.
+         */
+        private void consumed(int count) {
+            consumed += count;
+            if (consumed < ringSize / 2 || closed) {
+                return;
+            }
+            int bytes = consumed;
+            consumed = 0;
+            try {
+                writeFrame(ProtocolConstants.WINDOW_SIGN, id, bytes);
+            } catch (IOException e) {
+                // the connection is already broken, the reader will get the end of stream
+            }
+        }
+
+        /**
+         * Передать читателю потока данные, полученные из соединения. Данные потока, который
+         * уже закрыт этой стороной, пропускаются.
+         *
+         * @throws IOException если данные не помещаются в буфер, то есть другая сторона
+         *     вышла за пределы окна
+         */
+        void deliver(byte[] data, int size) throws IOException {
+            try {
+                if (!in.offer(data, 0, size)) {
+                    throw new IOException(String.format("Stream %d window exceeded", id));
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Закрыть поток, не сообщая другой стороне: другая сторона сама закрыла поток
+         * или соединение. Читатель дочитывает полученные данные и получает конец потока.
+         */
+        void closeInput() {
+            closed = true;
+            streams.remove(id, this);
+            in.close();
+            wakeWriter();
+        }
+
+        private void wakeWriter() {
+            Thread writer = waitingWriter;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return streamInput;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return streamOutput;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return !closed && !Multiplexer.this.closed;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closeInput();
+            try {
+                writeFrame(ProtocolConstants.STREAM_SIGN, id, ProtocolConstants.STREAM_CLOSED);
+            } catch (IOException e) {
+                // the connection is already broken, the other side will close the stream itself
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Транспорт, который передает все соединения клиента логическими потоками одного
+ * мультиплексированного соединения (см. {@link Multiplexer}). Соединение устанавливается
+ * через другой транспорт при первом вызове {@link #connect()} и объявляется прокси-серверу
+ * типом подключения {@link ProtocolConstants#MUX_SIGN}. Данные из соединения читает отдельный
+ * поток. Если соединение разорвано, следующий вызов {@link #connect()} устанавливает новое.
+ * </p>
+ *
+ * <p>
+ * Прокси-сервер принимает мультиплексированные соединения тем же транспортом, что и обычные,
+ * поэтому методы приема соединений передаются другому транспорту без изменений. Логические
+ * потоки разбирают оба движка прокси-сервера.
+ * </p>
+ *
+ * @author sergey
+ */
+public class MuxTransport extends Transport {
+    private final Transport transport;
+    private final int clientType;
+    private final Logger logger;
+    private Multiplexer multiplexer;
+
+    /**
+     * Создает объект.
+     *
+     * @param transport транспорт, через который устанавливается соединение
+     * @param clientType тип клиента
+     */
+    public MuxTransport(Transport transport, int clientType) {
+        this.transport = transport;
+        this.clientType = clientType;
+        this.logger = Logger.getLogger("network.Mux");
+        this.multiplexer = null;
+    }
+
+    @Override
+    public synchronized Connection connect() throws IOException {
+        if (multiplexer == null || !multiplexer.isOpen()) {
+            Connection connection = transport.connect();
+            ByteBuffer handshake = ByteBuffer.allocate(8);
+            handshake.putInt(clientType);
+            handshake.putInt(ProtocolConstants.MUX_SIGN);
+            try {
+                connection.getOutputStream().write(handshake.array());
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+            multiplexer = new Multiplexer(connection);
+            startReader(multiplexer);
+        }
+        return multiplexer.open();
+    }
+
+    private void startReader(final Multiplexer reader) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reader.demultiplex(null);
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, e.getMessage(), e);
+                }
+            }
+        }, "mux-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Acceptor listen() throws IOException {
+        return transport.listen();
+    }
+
+    @Override
+    public ServerSocketChannel listenChannel() throws IOException {
+        return transport.listenChannel();
+    }
+
+    @Override
+    public boolean hasChannels() {
+        return transport.hasChannels();
+    }
+
+    @Override
+    public void configure(SocketChannel channel) throws IOException {
+        transport.configure(channel);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("mux over %s", transport);
+    }
+}
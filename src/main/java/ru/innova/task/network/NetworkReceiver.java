@@ -10,11 +10,24 @@ import java.io.IOException;
 public interface NetworkReceiver extends NetworkWorker {
 
     /**
-     * Получить из сетевого соединения очередное целое число.
+     * Получить из сетевого соединения очередное целое число. Управляющие значения,
+     * полученные до него, передаются объекту {@link ControlListener}, если он задан.
      * 
      * @return очередное целое число, полученное по сети
      * @throws IOException в случае ошибки
      */
-    int receive() throws IOException;
+    long receive() throws IOException;
+
+    /**
+     * Получить из сетевого соединения несколько целых чисел. Метод ждет,
+     * пока не будет получено хотя бы одно число, и возвращает все числа,
+     * которые уже получены и помещаются в массив. Управляющие значения
+     * передаются объекту {@link ControlListener}, если он задан.
+     * 
+     * @param into массив, в который надо поместить полученные числа
+     * @return количество полученных чисел
+     * @throws IOException в случае ошибки
+     */
+    int receive(long[] into) throws IOException;
 
 }
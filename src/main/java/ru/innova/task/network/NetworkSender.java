@@ -15,6 +15,36 @@ public interface NetworkSender extends NetworkWorker {
      * @param value целое число, которое надо отправить по сети
      * @throws IOException в случае ошибки
      */
-    void send(int value) throws IOException;
+    void send(long value) throws IOException;
+
+    /**
+     * Отправить по сети несколько целых чисел. Числа отправляются пакетами
+     * (см. {@link ru.innova.task.common.ProtocolConstants#BATCH_SIGN}),
+     * поэтому на все числа требуется одна операция записи в сокет.
+     * 
+     * @param values массив с числами
+     * @param off индекс первого отправляемого числа
+     * @param len количество отправляемых чисел
+     * @throws IOException в случае ошибки
+     */
+    void send(long[] values, int off, int len) throws IOException;
+
+    /**
+     * Отправить по сети управляющее значение. Значение отправляется отдельным кадром
+     * (см. {@link ru.innova.task.common.ProtocolConstants#CONTROL_SIGN}), а не среди чисел.
+     * 
+     * @param signal управляющее значение
+     * @throws IOException в случае ошибки
+     */
+    void sendControl(int signal) throws IOException;
+
+    /**
+     * Объявить по сети, что отправитель продолжает прежний запуск
+     * (см. {@link ru.innova.task.common.ProtocolConstants#RESUME_SIGN}).
+     *
+     * @param last последнее число прежнего запуска
+     * @throws IOException в случае ошибки
+     */
+    void sendResume(long last) throws IOException;
     
 }
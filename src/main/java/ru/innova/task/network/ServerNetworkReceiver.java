@@ -1,9 +1,6 @@
 package ru.innova.task.network;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 
 /**
  * Реализация для объектов, которые получают данные от клиента.
@@ -15,14 +12,40 @@ public class ServerNetworkReceiver extends AbstractNetworkReceiver {
     /**
      * Создает новый объект.
      * 
-     * @param socket сокет, полученный методом {@link ServerSocket#accept()}.
+     * @param connection соединение, полученное методом {@link Acceptor#accept()}.
      * @param clientType тип подключенного клиента.
      * @throws IOException в случае ошибки связи
      */
-    public ServerNetworkReceiver(Socket socket, int clientType) throws IOException {
-        super(clientType);
-        this.socket = socket;
-        this.input = new DataInputStream(socket.getInputStream());
+    public ServerNetworkReceiver(Connection connection, int clientType) throws IOException {
+        this(connection, clientType, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param connection соединение, полученное методом {@link Acceptor#accept()}.
+     * @param clientType тип подключенного клиента.
+     * @param listener объект, обрабатывающий управляющие значения, или <code>null</code>
+     * @throws IOException в случае ошибки связи
+     */
+    public ServerNetworkReceiver(Connection connection, int clientType, ControlListener listener) throws IOException {
+        this(connection, clientType, listener, null);
+    }
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param connection соединение, полученное методом {@link Acceptor#accept()}.
+     * @param clientType тип подключенного клиента.
+     * @param listener объект, обрабатывающий управляющие значения, или <code>null</code>
+     * @param credit набор кредитов очереди, в которую помещаются числа, или <code>null</code>
+     * @throws IOException в случае ошибки связи
+     */
+    public ServerNetworkReceiver(Connection connection, int clientType, ControlListener listener, CreditPool credit) throws IOException {
+        super(clientType, null, listener, credit);
+        this.connection = connection;
+        this.input = connection.getInputStream();
+        announceCodecs(connection.getOutputStream());
     }
 
     @Override
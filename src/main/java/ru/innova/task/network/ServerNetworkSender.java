@@ -1,32 +1,76 @@
 package ru.innova.task.network;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.innova.task.common.ProtocolConstants;
 
 /**
  * Реализация для объектов, которые отправляют данные от сервера клиенту.
+ * Если задано последнее число прежнего запуска другого клиента, то перед отправкой чисел
+ * клиенту объявляется каждое новое значение (см. {@link ProtocolConstants#RESUME_SIGN}).
+ * Значение проверяется после того, как числа взяты из очереди, поэтому объявление
+ * опережает числа, полученные после него.
  * 
  * @author sergey
  */
 public class ServerNetworkSender extends AbstractNetworkSender {
+    private final AtomicLong resume;
+    private long announced;
+
+    /**
+     * Создает новый объект.
+     * 
+     * @param connection соединение, полученное методом {@link Acceptor#accept()}.
+     * @param clientType тип подключенного клиента.
+     * @throws IOException в случае ошибки связи
+     */
+    public ServerNetworkSender(Connection connection, int clientType) throws IOException {
+        this(connection, clientType, null);
+    }
 
     /**
      * Создает новый объект.
      * 
-     * @param socket сокет, полученный методом {@link ServerSocket#accept()}.
+     * @param connection соединение, полученное методом {@link Acceptor#accept()}.
      * @param clientType тип подключенного клиента.
+     * @param resume последнее число прежнего запуска, которое надо объявить клиенту,
+     *     или <code>null</code>
      * @throws IOException в случае ошибки связи
      */
-    public ServerNetworkSender(Socket socket, int clientType) throws IOException {
+    public ServerNetworkSender(Connection connection, int clientType, AtomicLong resume) throws IOException {
         super(clientType);
-        this.socket = socket;
-        this.output = new DataOutputStream(socket.getOutputStream());
+        this.resume = resume;
+        this.announced = ProtocolConstants.NONE_VALUE;
+        this.connection = connection;
+        this.output = connection.getOutputStream();
+        this.feedback = connection.getInputStream();
     }
 
     @Override
     public void connect() throws IOException {
         // always connected
     }
+
+    @Override
+    public void send(long value) throws IOException {
+        announceResume();
+        super.send(value);
+    }
+
+    @Override
+    public void send(long[] values, int off, int len) throws IOException {
+        announceResume();
+        super.send(values, off, len);
+    }
+
+    private void announceResume() throws IOException {
+        if (resume != null) {
+            long last = resume.get();
+            if (last != announced) {
+                sendResume(last);
+                announced = last;
+            }
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Соединение TCP через {@link Socket}.
+ *
+ * @author sergey
+ */
+class SocketConnection implements Connection {
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+
+    /**
+     * Создает объект. Для сокета отключается алгоритм Нейгла, т.к. данные и так
+     * отправляются пакетами.
+     *
+     * @param socket подключенный сокет
+     * @throws IOException в случае ошибки
+     */
+    SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.input = socket.getInputStream();
+        this.output = socket.getOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return socket.isConnected() && !socket.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
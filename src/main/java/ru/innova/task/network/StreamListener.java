@@ -0,0 +1,19 @@
+package ru.innova.task.network;
+
+/**
+ * Интерфейс, описывающий объекты, которые обрабатывают логические потоки, открытые другой
+ * стороной мультиплексированного соединения (см. {@link Multiplexer}).
+ *
+ * @author sergey
+ */
+public interface StreamListener {
+
+    /**
+     * Обработать новый логический поток. Метод вызывается потоком, читающим соединение,
+     * поэтому он не должен ждать данных из логического потока.
+     *
+     * @param stream соединение логического потока
+     */
+    void onStream(Connection stream);
+
+}
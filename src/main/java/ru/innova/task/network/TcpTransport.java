@@ -0,0 +1,68 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Транспорт TCP. Соединения обслуживаются объектами {@link Socket}.
+ *
+ * @author sergey
+ */
+public class TcpTransport extends Transport {
+    private final String host;
+    private final int port;
+
+    /**
+     * Создает объект.
+     *
+     * @param host имя или адрес узла сервера; <code>null</code> для сервера, который
+     *     принимает соединения на всех адресах
+     * @param port номер порта
+     */
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+        return new SocketConnection(new Socket(host, port));
+    }
+
+    @Override
+    public Acceptor listen() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(port);
+        return new Acceptor() {
+            @Override
+            public Connection accept() throws IOException {
+                return new SocketConnection(serverSocket.accept());
+            }
+
+            @Override
+            public void close() throws IOException {
+                serverSocket.close();
+            }
+        };
+    }
+
+    @Override
+    public ServerSocketChannel listenChannel() throws IOException {
+        ServerSocketChannel result = ServerSocketChannel.open();
+        result.bind(new InetSocketAddress(port));
+        return result;
+    }
+
+    @Override
+    public void configure(SocketChannel channel) throws IOException {
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tcp %s:%d", host == null ? "*" : host, port);
+    }
+}
@@ -0,0 +1,126 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * Способ соединения клиентов с прокси-сервером. Транспорт выбирается по записи адреса:
+ * <code>unix:&lt;путь&gt;</code> - Unix domain socket (см. {@link UnixTransport}), иначе - TCP
+ * (см. {@link TcpTransport}). Если все серверы работают на одном узле, Unix domain socket
+ * позволяет обойтись без стека TCP. Если все серверы работают в одном процессе, можно обойтись
+ * и без сокетов (см. {@link MemoryTransport}).
+ * </p>
+ *
+ * <p>
+ * Клиенты устанавливают соединения методом {@link #connect()}. Прокси-сервер принимает их
+ * либо объектом {@link Acceptor} (по потоку на соединение), либо каналом
+ * {@link ServerSocketChannel} (циклы обработки событий).
+ * </p>
+ *
+ * @author sergey
+ */
+public abstract class Transport {
+    /**
+     * Начало адреса Unix domain socket.
+     */
+    public static final String UNIX_PREFIX = "unix:";
+
+    /**
+     * Узнать, задает ли адрес Unix domain socket.
+     *
+     * @param address адрес из командной строки
+     * @return <code>true</code>, если адрес начинается с {@link #UNIX_PREFIX}
+     */
+    public static boolean isUnixAddress(String address) {
+        return address.startsWith(UNIX_PREFIX);
+    }
+
+    /**
+     * Получить транспорт для подключения к прокси-серверу по TCP.
+     *
+     * @param host имя или адрес узла
+     * @param port номер порта
+     * @return транспорт
+     */
+    public static Transport tcp(String host, int port) {
+        return new TcpTransport(host, port);
+    }
+
+    /**
+     * Получить транспорт по адресу прокси-сервера: <code>&lt;порт&gt;</code>
+     * или <code>unix:&lt;путь&gt;</code>.
+     *
+     * @param address адрес из командной строки
+     * @return транспорт
+     * @throws IllegalArgumentException если адрес задан неверно
+     */
+    public static Transport forServer(String address) {
+        if (isUnixAddress(address)) {
+            return forUnix(address);
+        }
+        try {
+            return new TcpTransport(null, Integer.parseInt(address));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Incorrect address %s. Specify port number or %s<path>", address, UNIX_PREFIX));
+        }
+    }
+
+    /**
+     * Получить транспорт Unix domain socket по адресу <code>unix:&lt;путь&gt;</code>.
+     *
+     * @param address адрес из командной строки
+     * @return транспорт
+     * @throws IllegalArgumentException если путь не задан
+     */
+    public static Transport forUnix(String address) {
+        String path = address.substring(UNIX_PREFIX.length());
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Incorrect address %s. Specify %s<path>", address, UNIX_PREFIX));
+        }
+        return new UnixTransport(path);
+    }
+
+    /**
+     * Установить соединение с сервером.
+     *
+     * @return установленное соединение
+     * @throws IOException в случае ошибки
+     */
+    public abstract Connection connect() throws IOException;
+
+    /**
+     * Начать принимать соединения для обработки в отдельных потоках.
+     *
+     * @return объект, принимающий соединения
+     * @throws IOException в случае ошибки
+     */
+    public abstract Acceptor listen() throws IOException;
+
+    /**
+     * Начать принимать соединения для обработки циклами событий.
+     *
+     * @return канал в блокирующем режиме, принимающий соединения
+     * @throws IOException в случае ошибки
+     */
+    public abstract ServerSocketChannel listenChannel() throws IOException;
+
+    /**
+     * Узнать, поддерживает ли транспорт каналы {@link ServerSocketChannel} и {@link SocketChannel},
+     * без которых не работают циклы обработки событий прокси-сервера.
+     *
+     * @return <code>true</code>, если метод {@link #listenChannel()} поддерживается
+     */
+    public boolean hasChannels() {
+        return true;
+    }
+
+    /**
+     * Настроить принятый канал, например отключить алгоритм Нейгла.
+     *
+     * @param channel канал, полученный из {@link #listenChannel()}
+     * @throws IOException в случае ошибки
+     */
+    public abstract void configure(SocketChannel channel) throws IOException;
+}
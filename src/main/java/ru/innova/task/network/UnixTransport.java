@@ -0,0 +1,128 @@
+package ru.innova.task.network;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * <p>
+ * Транспорт Unix domain socket для серверов, работающих на одном узле. Данные не проходят
+ * через стек TCP, что уменьшает задержку и нагрузку на процессор.
+ * </p>
+ *
+ * <p>
+ * Unix domain socket поддерживается каналами {@link SocketChannel} начиная с Java 16
+ * (<code>java.net.UnixDomainSocketAddress</code>), а проект собирается для Java 7, поэтому
+ * эти методы вызываются через отражение. На более старых версиях Java транспорт сообщает
+ * об ошибке при подключении. У таких каналов нет объекта {@link java.net.Socket}, поэтому
+ * соединения обслуживаются объектами {@link ChannelConnection}.
+ * </p>
+ *
+ * <p>
+ * Перед тем как начать принимать соединения, сервер удаляет файл сокета, оставшийся от
+ * прежнего запуска.
+ * </p>
+ *
+ * @author sergey
+ */
+public class UnixTransport extends Transport {
+    private final String path;
+
+    /**
+     * Создает объект.
+     *
+     * @param path путь к файлу сокета
+     */
+    public UnixTransport(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+        SocketChannel channel = (SocketChannel) open(SocketChannel.class);
+        try {
+            channel.connect(address());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ChannelConnection(channel);
+    }
+
+    @Override
+    public Acceptor listen() throws IOException {
+        final ServerSocketChannel serverChannel = listenChannel();
+        return new Acceptor() {
+            @Override
+            public Connection accept() throws IOException {
+                return new ChannelConnection(serverChannel.accept());
+            }
+
+            @Override
+            public void close() throws IOException {
+                serverChannel.close();
+            }
+        };
+    }
+
+    @Override
+    public ServerSocketChannel listenChannel() throws IOException {
+        Files.deleteIfExists(Paths.get(path));
+        ServerSocketChannel result = (ServerSocketChannel) open(ServerSocketChannel.class);
+        try {
+            result.bind(address());
+        } catch (IOException e) {
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void configure(SocketChannel channel) {
+        // no options for unix domain sockets
+    }
+
+    private SocketAddress address() throws IOException {
+        try {
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) addressClass.getMethod("of", String.class).invoke(null, path);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            throw unsupported(e);
+        } catch (InvocationTargetException e) {
+            throw new IOException(String.format("Incorrect socket path %s", path), e.getCause());
+        }
+    }
+
+    /**
+     * Открыть канал семейства Unix методом <code>open(ProtocolFamily)</code> указанного класса.
+     */
+    private static Object open(Class<?> channelClass) throws IOException {
+        try {
+            ProtocolFamily family = StandardProtocolFamily.valueOf("UNIX");
+            return channelClass.getMethod("open", ProtocolFamily.class).invoke(null, family);
+        } catch (IllegalArgumentException | NoSuchMethodException | IllegalAccessException e) {
+            throw unsupported(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw unsupported(e.getCause());
+        }
+    }
+
+    private static IOException unsupported(Throwable cause) {
+        return new IOException(String.format("Unix domain sockets are not supported by Java %s. Use Java 16 or later", System.getProperty("java.version")), cause);
+    }
+
+    @Override
+    public String toString() {
+        return UNIX_PREFIX + path;
+    }
+}
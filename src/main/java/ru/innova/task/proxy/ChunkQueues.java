@@ -0,0 +1,96 @@
+package ru.innova.task.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Набор очередей для режима пересылки байтов (см. {@link ForwardConnection}).
+ * В отличие от {@link ProxyServer.Queues}, в очередях лежат не числа, а буферы
+ * с байтами, полученными от клиента. Каждый буфер содержит только целые сообщения,
+ * поэтому его можно отправить в любое исходящее соединение как есть.
+ * </p>
+ *
+ * <p>
+ * Буферы берутся из общего пула и возвращаются в него после отправки,
+ * так что в установившемся режиме память не выделяется.
+ * </p>
+ *
+ * @author sergey
+ */
+public final class ChunkQueues {
+    /**
+     * Размер одного буфера. Буфер заведомо вмещает пакет наибольшего размера
+     * и число с нагрузкой наибольшей длины.
+     */
+    static final int CHUNK_SIZE = 32768;
+    private static final int QUEUE_SIZE = 256;
+    private final BlockingQueue<ByteBuffer> toInitiator;
+    private final BlockingQueue<ByteBuffer> toEcho;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    /**
+     * Создает объект
+     */
+    public ChunkQueues() {
+        this.toInitiator = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        this.toEcho = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        this.pool = new ArrayBlockingQueue<>(QUEUE_SIZE * 4);
+    }
+
+    /**
+     * Получить очередь, в которую помещаются данные, полученные от клиента.
+     *
+     * @param clientType тип клиента
+     * @return очередь для данных, полученных от клиента
+     */
+    public BlockingQueue<ByteBuffer> from(int clientType) {
+        if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+            return toEcho;
+        } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+            return toInitiator;
+        }
+        throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+    }
+
+    /**
+     * Получить очередь, из которой берутся данные для отправки клиенту.
+     *
+     * @param clientType тип клиента
+     * @return очередь для данных, отправляемых клиенту
+     */
+    public BlockingQueue<ByteBuffer> to(int clientType) {
+        if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+            return toInitiator;
+        } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+            return toEcho;
+        }
+        throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+    }
+
+    /**
+     * Взять буфер из пула.
+     *
+     * @return пустой буфер размером {@link #CHUNK_SIZE}
+     */
+    ByteBuffer acquire() {
+        ByteBuffer result = pool.poll();
+        if (result == null) {
+            result = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Вернуть буфер в пул.
+     *
+     * @param chunk буфер, который больше не используется
+     */
+    void release(ByteBuffer chunk) {
+        chunk.clear();
+        pool.offer(chunk);
+    }
+}
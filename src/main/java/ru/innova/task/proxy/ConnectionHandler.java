@@ -3,10 +3,10 @@ package ru.innova.task.proxy;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.InterruptedIOException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,77 +15,110 @@ import ru.innova.task.common.DummyDataController;
 import ru.innova.task.common.ProtocolConstants;
 import ru.innova.task.common.Receiver;
 import ru.innova.task.common.Sender;
+import ru.innova.task.network.Acceptor;
+import ru.innova.task.network.Connection;
+import ru.innova.task.network.ControlListener;
+import ru.innova.task.network.Multiplexer;
 import ru.innova.task.network.ServerNetworkReceiver;
 import ru.innova.task.network.ServerNetworkSender;
+import ru.innova.task.network.StreamListener;
 
 /**
  * Обработчик, получающий новые установленные соедиения.
  * Сервер создает экземпляр класса <code>ConnectionHandler</code> для каждого нового соединения.
  * Обработчик считывает тип клиента и тип подключения, на основании этих значений
- * создает обработчик нужного класса и передает управление ему. 
+ * создает обработчик нужного класса и передает управление ему. Управляющие значения,
+ * полученные от клиента, выводятся на консоль, как это делает {@link NioConnection}.
+ * Мультиплексированное соединение (см. {@link ProtocolConstants#MUX_SIGN}) обработчик разбирает
+ * на логические потоки сам, а для каждого логического потока создает свой обработчик,
+ * так что числа каждого потока попадают в те же очереди, что и числа отдельного соединения.
  * 
  * @author sergey
  */
 public class ConnectionHandler implements Callable<Integer> {
-    private final Socket socket;
+    private final Connection connection;
     private final Logger logger;
     private final ProxyServer.Queues queues;
     private final CountDownLatch dummySignal;
+    private final ExecutorService threadPool;
     
     /**
      * Создает объект.
      * 
-     * @param socket сокет, полученный из {@link ServerSocket#accept()}
+     * @param connection соединение, полученное из {@link Acceptor#accept()}
      * @param queues набор очередей
      * @param dummySignal синхронизационный объект, который нужен обработчикам при старте
+     * @param threadPool пул потоков для обработчиков логических потоков
      */
-    public ConnectionHandler(Socket socket, ProxyServer.Queues queues, CountDownLatch dummySignal) {
-        this.socket = socket;
+    public ConnectionHandler(Connection connection, ProxyServer.Queues queues, CountDownLatch dummySignal, ExecutorService threadPool) {
+        this.connection = connection;
         this.queues = queues;
         this.dummySignal = dummySignal;
+        this.threadPool = threadPool;
         this.logger = Logger.getLogger("proxy.Handler");
     }
 
     @Override
     public Integer call() throws Exception {
         try {
-            InputStream in = socket.getInputStream();
+            InputStream in = connection.getInputStream();
             DataInputStream input = new DataInputStream(in);
-            if (socket.isClosed()) {
+            if (!connection.isConnected()) {
                 return 0;
             }
             int clientType = input.readInt();
             int connectorType = input.readInt();
+            if (connectorType == ProtocolConstants.MUX_SIGN) {
+                demultiplex();
+                return 0;
+            }
             AbstractWorker worker = makeWorker(clientType, connectorType);
             return worker.call();
+        } catch (InterruptedIOException e) {
+            // the proxy is shutting down
         } catch (Exception e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
         } finally {
-            socket.close();
+            connection.close();
         }
         return 0;
     }
 
+    /**
+     * Разобрать мультиплексированное соединение на логические потоки, пока клиент его не закроет.
+     */
+    private void demultiplex() throws IOException {
+        Multiplexer multiplexer = new Multiplexer(connection);
+        multiplexer.demultiplex(new StreamListener() {
+            @Override
+            public void onStream(Connection stream) {
+                threadPool.submit(new ConnectionHandler(stream, queues, dummySignal, threadPool));
+            }
+        });
+    }
+
     private AbstractWorker makeWorker(int clientType, int connectorType) throws IOException {
         AbstractWorker worker;
-        if (clientType == ProtocolConstants.INITIATOR_SIGN) {
-            if (connectorType == ProtocolConstants.RECEIVER_SIGN) {
-                worker = new Sender(queues.toInitiator, new ServerNetworkSender(socket, clientType), DummyDataController.getInstance(), "proxy.Sender", dummySignal);
-            } else if (connectorType == ProtocolConstants.SENDER_SIGN) {
-                worker = new Receiver(new ServerNetworkReceiver(socket, clientType), queues.toEcho, DummyDataController.getInstance(), "proxy.Receiver", dummySignal);
-            } else {
-                throw new IllegalStateException(String.format("Incorrect connector type received (%d)", connectorType));
-            }
-        } else if (clientType == ProtocolConstants.ECHO_SIGN) {
-            if (connectorType == ProtocolConstants.RECEIVER_SIGN) {
-                worker = new Sender(queues.toEcho, new ServerNetworkSender(socket, clientType), DummyDataController.getInstance(), "proxy.Sender", dummySignal);
-            } else if (connectorType == ProtocolConstants.SENDER_SIGN) {
-                worker = new Receiver(new ServerNetworkReceiver(socket, clientType), queues.toInitiator, DummyDataController.getInstance(), "proxy.Receiver", dummySignal);
-            } else {
-                throw new IllegalStateException(String.format("Incorrect connector type received (%d)", connectorType));
-            }
+        if (connectorType == ProtocolConstants.RECEIVER_SIGN) {
+            worker = new Sender(queues.to(clientType), new ServerNetworkSender(connection, clientType, queues.resumeTo(clientType)), DummyDataController.getInstance(), "proxy.Sender", dummySignal);
+        } else if (connectorType == ProtocolConstants.SENDER_SIGN) {
+            final int type = clientType;
+            ControlListener listener = new ControlListener() {
+                @Override
+                public void onControl(int signal) {
+                    NioConnection.reportSign(signal);
+                }
+
+                @Override
+                public void onResume(long last) {
+                    if (queues.resumeFrom(type).getAndSet(last) != last) {
+                        NioConnection.reportResume(last);
+                    }
+                }
+            };
+            worker = new Receiver(new ServerNetworkReceiver(connection, clientType, listener, queues.creditFrom(clientType)), queues.from(clientType), DummyDataController.getInstance(), "proxy.Receiver", dummySignal);
         } else {
-            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+            throw new IllegalStateException(String.format("Incorrect connector type received (%d)", connectorType));
         }
         return worker;
     }
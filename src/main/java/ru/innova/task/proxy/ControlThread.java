@@ -14,17 +14,20 @@ public class ControlThread extends AbstractWorker {
     private final InteractionHelper interactionHelper;
     private final CountDownLatch startSignal;
     private final CountDownLatch exitSignal;
+    private final ProxyServer.Queues queues;
 
     /**
      * Создает объект
      * 
      * @param startSignal объект для передачи сигнала о старте
      * @param exitSignal объект для передачи сигнала о выходе
+     * @param queues набор очередей, кредиты которых выводит команда <code>credit</code>
      */
-    public ControlThread(CountDownLatch startSignal, CountDownLatch exitSignal) {
+    public ControlThread(CountDownLatch startSignal, CountDownLatch exitSignal, ProxyServer.Queues queues) {
         super(1, "proxy.Control");
         this.startSignal = startSignal;
         this.exitSignal = exitSignal;
+        this.queues = queues;
         this.interactionHelper = new InteractionHelper();
     }
 
@@ -38,9 +41,12 @@ public class ControlThread extends AbstractWorker {
             if (cmd.equals("help")) {
                 interactionHelper.showMessage("help - show this message\n"
                                         + "start - start transferring numbers\n"
+                                        + "credit - show credit flow control metrics\n"
                                         + "exit - exit program");
             } else if (cmd.equals("start")) {
                 startSignal.countDown();
+            } else if (cmd.equals("credit")) {
+                ProxyServer.showCredit(queues, interactionHelper);
             } else if (cmd.equals("exit")) {
                 interactionHelper.showMessage("Bye!");
                 exitSignal.countDown();
@@ -0,0 +1,195 @@
+package ru.innova.task.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+import ru.innova.task.common.AbstractWorker;
+
+/**
+ * <p>
+ * Цикл обработки событий, обслуживающий набор неблокирующих соединений.
+ * </p>
+ *
+ * <p>
+ * Соединения передаются в цикл методом {@link #register(SocketChannel)} из потока,
+ * принимающего подключения. Дальше вся работа с соединением, включая разбор
+ * начальных управляющих сообщений, выполняется в потоке цикла.
+ * </p>
+ *
+ * <p>
+ * Очереди {@link ProxyServer.Queues} не умеют будить {@link Selector}, поэтому соединения,
+ * которым нечего отправить или некуда положить полученное число, попадают
+ * в список ожидающих. Пока этот список не пуст, цикл просыпается с небольшим
+ * интервалом и снова опрашивает очереди. Интервал растет, пока ни одно
+ * из ожидающих соединений не может продолжить работу, и сбрасывается
+ * при первом успехе. Соединение попадает в список один раз, даже если продолжает
+ * получать события канала, пока ждет очередь, как {@link MuxConnection}.
+ * </p>
+ *
+ * @author sergey
+ */
+public class EventLoop extends AbstractWorker {
+    private static final long MIN_IDLE_TIMEOUT = 1;
+    private static final long MAX_IDLE_TIMEOUT = 16;
+    private final ProxyServer.Queues queues;
+    private final ChunkQueues chunks;
+    private final Selector selector;
+    private final Queue<SocketChannel> newChannels;
+    private final Set<NioConnection> starving;
+    private long idleTimeout;
+
+    /**
+     * Создает объект
+     *
+     * @param number номер цикла
+     * @param queues набор очередей
+     * @param chunks набор очередей для пересылки байтов, или <code>null</code>,
+     *     если прокси разбирает числа
+     * @throws IOException если не удалось открыть {@link Selector}
+     */
+    public EventLoop(int number, ProxyServer.Queues queues, ChunkQueues chunks) throws IOException {
+        super(number, "proxy.EventLoop");
+        this.queues = queues;
+        this.chunks = chunks;
+        this.selector = Selector.open();
+        this.newChannels = new ConcurrentLinkedQueue<>();
+        this.starving = new LinkedHashSet<>();
+        this.idleTimeout = MIN_IDLE_TIMEOUT;
+    }
+
+    /**
+     * Передать циклу новое соединение. Метод можно вызывать из любого потока.
+     *
+     * @param channel только что принятое соединение
+     */
+    public void register(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    @Override
+    public Integer call() {
+        logger.log(Level.FINE, "[{0}] run()", myNumber);
+        try {
+            while (!exited && !Thread.currentThread().isInterrupted()) {
+                registerNewChannels();
+                if (starving.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(idleTimeout);
+                }
+                processSelectedKeys();
+                processStarving();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+        } finally {
+            closeAll();
+        }
+        return 0;
+    }
+
+    @Override
+    public void exitWork() {
+        super.exitWork();
+        selector.wakeup();
+    }
+
+    private void registerNewChannels() {
+        for (SocketChannel channel = newChannels.poll(); channel != null; channel = newChannels.poll()) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new HandshakeConnection(channel, key, queues, chunks));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+                connection = (NioConnection) key.attachment();
+                if (connection.isStarving()) {
+                    starving.add(connection);
+                }
+            } catch (CancelledKeyException e) {
+                connection.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "[{0}] connection closed: {1}", new Object[] {myNumber, e.getMessage()});
+                connection.close();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "[" + myNumber + "] " + e.getMessage(), e);
+                connection.close();
+            }
+        }
+    }
+
+    private void processStarving() {
+        boolean progress = false;
+        Iterator<NioConnection> connections = starving.iterator();
+        while (connections.hasNext()) {
+            NioConnection connection = connections.next();
+            try {
+                if (connection.isClosed() || connection.resume()) {
+                    connections.remove();
+                    progress = true;
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "[{0}] connection closed: {1}", new Object[] {myNumber, e.getMessage()});
+                connection.close();
+                connections.remove();
+            }
+        }
+        if (progress) {
+            idleTimeout = MIN_IDLE_TIMEOUT;
+        } else if (idleTimeout < MAX_IDLE_TIMEOUT) {
+            idleTimeout *= 2;
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key: selector.keys()) {
+            Object connection = key.attachment();
+            if (connection != null) {
+                ((NioConnection) connection).close();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        for (SocketChannel channel = newChannels.poll(); channel != null; channel = newChannels.poll()) {
+            closeQuietly(channel);
+        }
+        closeQuietly(selector);
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "[{0}] {1}", new Object[] {myNumber, e.getMessage()});
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ru.innova.task.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.BlockingQueue;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Неблокирующее соединение, которое пересылает байты без разбора чисел.
+ * </p>
+ *
+ * <p>
+ * Входящее соединение читает данные в буфер из пула {@link ChunkQueues} и просматривает
+ * только заголовки кадров: пакета чисел (см. {@link ProtocolConstants#BATCH_SIGN}),
+ * числа с нагрузкой (см. {@link ProtocolConstants#PAYLOAD_SIGN}) или управляющего кадра
+ * (см. {@link ProtocolConstants#CONTROL_SIGN}). Числа внутри пакета и байты нагрузки
+ * пропускаются целиком, так что нагрузка пересылается без копирования.
+ * Буфер, в котором набрались целые кадры, помещается в очередь как есть, а начало
+ * недочитанного кадра переносится в новый буфер. Управляющие кадры
+ * не пересылаются, а выводятся на консоль, как это делает {@link QueueConnection}.
+ * Кадры возобновления (см. {@link ProtocolConstants#RESUME_SIGN}) выводятся на консоль
+ * и пересылаются вместе с числами, так что объявление доходит до клиента перед ними.
+ * </p>
+ *
+ * <p>
+ * Исходящее соединение берет буферы из очереди и отправляет их клиенту одной
+ * операцией записи, после чего возвращает буферы в пул.
+ * </p>
+ *
+ * @author sergey
+ */
+class ForwardConnection extends NioConnection {
+    private static final int MAX_GATHER = 16;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int PAYLOAD_HEADER_SIZE = 16;
+    private static final int NUMBER_SIZE = 8;
+    private static final int RESUME_SIZE = 12;
+    private final BlockingQueue<ByteBuffer> queue;
+    private final ChunkQueues chunks;
+    private final boolean inbound;
+    private final ByteBuffer[] output;
+    private int outputCount;
+    private ByteBuffer buffer;
+    private ByteBuffer ready;
+    private int scanned;
+    /**
+     * Сколько байтов текущего кадра после заголовка еще не просмотрено.
+     */
+    private int frameRemaining;
+
+    /**
+     * Создает объект
+     *
+     * @param channel канал соединения
+     * @param key ключ, под которым канал зарегистрирован в цикле
+     * @param queue очередь, в которую помещаются или из которой берутся буферы
+     * @param chunks набор очередей, из пула которого берутся буферы
+     * @param inbound <code>true</code> для входящего соединения
+     */
+    ForwardConnection(ByteChannel channel, SelectionKey key, BlockingQueue<ByteBuffer> queue, ChunkQueues chunks, boolean inbound) {
+        super(channel, key);
+        this.queue = queue;
+        this.chunks = chunks;
+        this.inbound = inbound;
+        this.output = inbound ? null : new ByteBuffer[MAX_GATHER];
+        this.outputCount = 0;
+        this.buffer = inbound ? chunks.acquire() : null;
+        this.ready = null;
+        this.scanned = 0;
+        this.frameRemaining = 0;
+    }
+
+    @Override
+    void onReadable() throws IOException {
+        if (channel.read(buffer) < 0) {
+            throw new EOFException("End of stream");
+        }
+        forwardInput();
+    }
+
+    @Override
+    void onWritable() throws IOException {
+        pumpOutput();
+    }
+
+    @Override
+    boolean resume() throws IOException {
+        if (inbound) {
+            forwardInput();
+        } else {
+            pumpOutput();
+        }
+        return !isStarving();
+    }
+
+    @Override
+    void close() {
+        super.close();
+        if (buffer != null) {
+            chunks.release(buffer);
+            buffer = null;
+        }
+        if (ready != null) {
+            chunks.release(ready);
+            ready = null;
+        }
+        for (int i = 0; i < outputCount; i++) {
+            chunks.release(output[i]);
+            output[i] = null;
+        }
+        outputCount = 0;
+    }
+
+    /**
+     * Передать в очередь буферы с целыми кадрами. Если очередь заполнена,
+     * соединение перестает читать данные из канала до тех пор, пока в очереди не появится место.
+     */
+    private void forwardInput() {
+        do {
+            if (ready != null) {
+                if (!queue.offer(ready)) {
+                    setStarving(true, SelectionKey.OP_READ);
+                    return;
+                }
+                ready = null;
+            }
+        } while (scan());
+        setStarving(false, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Просмотреть заголовки кадров, полученных после предыдущего просмотра.
+     *
+     * @return <code>true</code>, если буфер был разрезан и просмотр надо продолжить
+     */
+    private boolean scan() {
+        int end = buffer.position();
+        int position = scanned;
+        int complete = 0;
+        while (position < end) {
+            if (frameRemaining > 0) {
+                int skip = Math.min(frameRemaining, end - position);
+                position += skip;
+                frameRemaining -= skip;
+                if (frameRemaining == 0) {
+                    complete = position;
+                }
+                continue;
+            }
+            if (end - position < FRAME_HEADER_SIZE) {
+                break;
+            }
+            int type = buffer.getInt(position);
+            if (type == ProtocolConstants.BATCH_SIGN) {
+                int count = buffer.getInt(position + 4);
+                if (count <= 0 || count > ProtocolConstants.MAX_BATCH_SIZE) {
+                    throw new IllegalStateException(String.format("Incorrect batch size received (%d)", count));
+                }
+                position += FRAME_HEADER_SIZE;
+                frameRemaining = count * NUMBER_SIZE;
+            } else if (type == ProtocolConstants.PAYLOAD_SIGN) {
+                if (end - position < PAYLOAD_HEADER_SIZE) {
+                    break;
+                }
+                int size = buffer.getInt(position + 12);
+                if (size < 0 || size > ProtocolConstants.MAX_PAYLOAD_SIZE) {
+                    throw new IllegalStateException(String.format("Incorrect payload size received (%d)", size));
+                }
+                position += PAYLOAD_HEADER_SIZE;
+                frameRemaining = PayloadFormat.padded(size);
+                if (frameRemaining == 0) {
+                    complete = position;
+                }
+            } else if (type == ProtocolConstants.RESUME_SIGN) {
+                if (end - position < RESUME_SIZE) {
+                    break;
+                }
+                reportResume(buffer.getLong(position + 4));
+                position += RESUME_SIZE;
+                complete = position;
+            } else if (type == ProtocolConstants.CONTROL_SIGN) {
+                reportSign(buffer.getInt(position + 4));
+                scanned = position + FRAME_HEADER_SIZE;
+                ready = cut(position, FRAME_HEADER_SIZE);
+                return true;
+            } else {
+                throw new IllegalStateException(String.format("Unknown frame type received (%d)", type));
+            }
+        }
+        scanned = position;
+        if (complete > 0) {
+            ready = cut(complete, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Отрезать от буфера начало с целыми кадрами. Остаток буфера переносится в новый буфер.
+     *
+     * @param at граница, по которой режется буфер
+     * @param skip количество байтов после границы, которые надо выбросить
+     * @return буфер с данными до границы, подготовленный к отправке, или <code>null</code>,
+     *     если до границы данных нет
+     */
+    private ByteBuffer cut(int at, int skip) {
+        ByteBuffer next = chunks.acquire();
+        int end = buffer.position();
+        buffer.limit(end);
+        buffer.position(at + skip);
+        next.put(buffer);
+        buffer.limit(at);
+        buffer.position(0);
+        ByteBuffer result = buffer;
+        buffer = next;
+        scanned -= at + skip;
+        if (at == 0) {
+            chunks.release(result);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Отправить клиенту буферы из очереди. Несколько буферов отправляются одной операцией записи.
+     */
+    private void pumpOutput() throws IOException {
+        while (outputCount < output.length) {
+            ByteBuffer chunk = queue.poll();
+            if (chunk == null) {
+                break;
+            }
+            output[outputCount++] = chunk;
+        }
+        if (outputCount == 0) {
+            setStarving(true, SelectionKey.OP_WRITE);
+            return;
+        }
+        ((GatheringByteChannel) channel).write(output, 0, outputCount);
+        int written = 0;
+        while (written < outputCount && !output[written].hasRemaining()) {
+            chunks.release(output[written]);
+            written++;
+        }
+        System.arraycopy(output, written, output, 0, outputCount - written);
+        for (int i = outputCount - written; i < outputCount; i++) {
+            output[i] = null;
+        }
+        outputCount -= written;
+        setStarving(false, SelectionKey.OP_WRITE);
+    }
+}
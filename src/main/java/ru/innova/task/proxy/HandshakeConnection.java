@@ -0,0 +1,108 @@
+package ru.innova.task.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.network.DeltaCodec;
+
+/**
+ * <p>
+ * Только что принятое соединение, которое ждет от клиента тип клиента и тип подключения,
+ * так же как это делает {@link ConnectionHandler}.
+ * </p>
+ *
+ * <p>
+ * Получив оба значения, объект создает соединение, которое будет передавать данные,
+ * и заменяет себя им в {@link SelectionKey#attachment()}. Если задан набор
+ * {@link ChunkQueues}, создается {@link ForwardConnection}, иначе {@link QueueConnection}.
+ * Клиенту, который будет отправлять числа, объявляются кодировки, которые понимает соединение
+ * (см. {@link ProtocolConstants#CODEC_SIGN}); в режиме пересылки - только пакеты без сжатия
+ * и без кредитов.
+ * </p>
+ *
+ * <p>
+ * Сокет, объявленный мультиплексированным (см. {@link ProtocolConstants#MUX_SIGN}), передается
+ * {@link MuxConnection}, а каждый его логический поток снова начинается с этого объекта.
+ * Логический поток не может сам быть мультиплексированным.
+ * </p>
+ *
+ * @author sergey
+ */
+class HandshakeConnection extends NioConnection {
+    private static final int HANDSHAKE_SIZE = 8;
+    private final ProxyServer.Queues queues;
+    private final ChunkQueues chunks;
+    private final ByteBuffer buffer;
+
+    /**
+     * Создает объект
+     *
+     * @param channel канал соединения
+     * @param key ключ, под которым канал зарегистрирован в цикле
+     * @param queues набор очередей для передачи чисел
+     * @param chunks набор очередей для пересылки байтов, или <code>null</code>,
+     *     если прокси разбирает числа
+     */
+    HandshakeConnection(ByteChannel channel, SelectionKey key, ProxyServer.Queues queues, ChunkQueues chunks) {
+        super(channel, key);
+        this.queues = queues;
+        this.chunks = chunks;
+        this.buffer = ByteBuffer.allocate(HANDSHAKE_SIZE);
+    }
+
+    @Override
+    void onReadable() throws IOException {
+        if (channel.read(buffer) < 0) {
+            throw new EOFException("End of stream");
+        }
+        if (!buffer.hasRemaining()) {
+            buffer.flip();
+            int clientType = buffer.getInt();
+            int connectorType = buffer.getInt();
+            key.attach(makeConnection(clientType, connectorType));
+        }
+    }
+
+    @Override
+    void onWritable() {
+        // never registered for writing
+    }
+
+    @Override
+    boolean resume() {
+        return true;
+    }
+
+    private NioConnection makeConnection(int clientType, int connectorType) throws IOException {
+        if (connectorType == ProtocolConstants.MUX_SIGN && channel instanceof SocketChannel) {
+            return new MuxConnection((SocketChannel) channel, key, queues, chunks);
+        }
+        boolean inbound;
+        if (connectorType == ProtocolConstants.SENDER_SIGN) {
+            inbound = true;
+            key.interestOps(SelectionKey.OP_READ);
+        } else if (connectorType == ProtocolConstants.RECEIVER_SIGN) {
+            inbound = false;
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            throw new IllegalStateException(String.format("Incorrect connector type received (%d)", connectorType));
+        }
+        NioConnection result;
+        if (chunks != null) {
+            result = new ForwardConnection(channel, key, inbound ? chunks.from(clientType) : chunks.to(clientType), chunks, inbound);
+        } else {
+            result = new QueueConnection(channel, key, inbound ? queues.from(clientType) : queues.to(clientType), inbound, queues.creditFrom(clientType),
+                    inbound ? queues.resumeFrom(clientType) : queues.resumeTo(clientType));
+        }
+        if (inbound) {
+            // forwarded bytes go to the other clients as is, so they must stay plain batches
+            result.announceCodecs(chunks != null ? 0 : DeltaCodec.supportedCodecs());
+        }
+        return result;
+    }
+}
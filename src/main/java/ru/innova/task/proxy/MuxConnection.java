@@ -0,0 +1,528 @@
+package ru.innova.task.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.network.Multiplexer;
+
+/**
+ * <p>
+ * Неблокирующее мультиплексированное соединение (см. {@link ProtocolConstants#MUX_SIGN}),
+ * которое разбирается на логические потоки в потоке цикла, так же как {@link ConnectionHandler}
+ * разбирает его в отдельных потоках (см. {@link Multiplexer}).
+ * </p>
+ *
+ * <p>
+ * Каждый логический поток обслуживает свое соединение {@link NioConnection}: сначала
+ * {@link HandshakeConnection}, а затем {@link QueueConnection} или {@link ForwardConnection},
+ * как для отдельного сокета. Вместо сокета соединение потока работает с каналом потока,
+ * а вместо ключа сокета - с ключом потока, в котором отмечает нужные ему события.
+ * Объект читает кадры из сокета, раскладывает данные по буферам потоков и вызывает обработчики
+ * соединений тех потоков, которые готовы читать или писать. Записанные потоками данные
+ * собираются кадрами {@link ProtocolConstants#STREAM_SIGN} в общий буфер и отправляются в сокет.
+ * </p>
+ *
+ * <p>
+ * Прием и отправка данных потоков ограничены окнами (см. {@link ProtocolConstants#WINDOW_SIGN}),
+ * емкость буфера потока задается системным свойством <code>network.mux.ring.size</code>.
+ * Поэтому сокет читается всегда, даже если соединение какого-то потока ждет очередь.
+ * Короткие записи, например объявления кодировок и кредиты, могут занять резерв общего буфера:
+ * соединения потоков рассчитывают, что такие записи проходят целиком, как в пустой буфер сокета.
+ * </p>
+ *
+ * @author sergey
+ */
+class MuxConnection extends NioConnection {
+    private static final int HEADER_SIZE = 12;
+    private static final int OUTPUT_SIZE = 1 << 17;
+    private static final int RESERVE = 1024;
+    private static final int SHORT_WRITE = 64;
+    private static final int MAX_ROUNDS = 16;
+    private final SocketChannel socket;
+    private final ProxyServer.Queues queues;
+    private final ChunkQueues chunks;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private final Map<Integer, Stream> streams;
+    private final int ringSize;
+    private final Logger logger;
+    private int lastAccepted;
+    /**
+     * Сколько байтов прочитали и записали соединения потоков, чтобы заметить, что они
+     * продвинулись.
+     */
+    private long moved;
+
+    /**
+     * Создает объект
+     *
+     * @param channel канал соединения
+     * @param key ключ, под которым канал зарегистрирован в цикле
+     * @param queues набор очередей для передачи чисел
+     * @param chunks набор очередей для пересылки байтов, или <code>null</code>,
+     *     если прокси разбирает числа
+     */
+    MuxConnection(SocketChannel channel, SelectionKey key, ProxyServer.Queues queues, ChunkQueues chunks) {
+        super(channel, key);
+        this.socket = channel;
+        this.queues = queues;
+        this.chunks = chunks;
+        this.input = ByteBuffer.allocateDirect(HEADER_SIZE + ProtocolConstants.MAX_STREAM_DATA);
+        this.output = ByteBuffer.allocateDirect(OUTPUT_SIZE);
+        this.streams = new LinkedHashMap<>();
+        this.ringSize = Multiplexer.ringSizeFromSystemProperties();
+        this.logger = Logger.getLogger("proxy.Mux");
+        this.lastAccepted = 0;
+        this.moved = 0;
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    @Override
+    void onReadable() throws IOException {
+        if (socket.read(input) < 0) {
+            throw new EOFException("End of stream");
+        }
+        readFrames();
+        pump();
+    }
+
+    @Override
+    void onWritable() throws IOException {
+        pump();
+    }
+
+    @Override
+    boolean resume() throws IOException {
+        for (Stream stream: new ArrayList<>(streams.values())) {
+            NioConnection connection = stream.connection();
+            if (stream.closed || !connection.isStarving()) {
+                continue;
+            }
+            try {
+                connection.resume();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "stream {0} closed: {1}", new Object[] {stream.id, e.getMessage()});
+                connection.close();
+            }
+        }
+        pump();
+        return !isStarving();
+    }
+
+    /**
+     * Узнать, ждет ли очередь соединение какого-нибудь логического потока.
+     */
+    @Override
+    boolean isStarving() {
+        for (Stream stream: streams.values()) {
+            if (!stream.closed && stream.connection().isStarving()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Закрыть соединения всех логических потоков и сокет.
+     */
+    @Override
+    void close() {
+        for (Stream stream: new ArrayList<>(streams.values())) {
+            if (!stream.closed) {
+                stream.connection().close();
+            }
+        }
+        streams.clear();
+        super.close();
+    }
+
+    /**
+     * Разобрать целиком полученные кадры: открыть новые потоки, разложить данные по буферам
+     * потоков, учесть окна и закрытия потоков.
+     */
+    private void readFrames() {
+        input.flip();
+        while (input.remaining() >= HEADER_SIZE) {
+            int type = input.getInt(input.position());
+            int id = input.getInt(input.position() + 4);
+            int size = input.getInt(input.position() + 8);
+            if (type == ProtocolConstants.WINDOW_SIGN) {
+                if (size <= 0) {
+                    throw new IllegalStateException(String.format("Incorrect stream window received (%d)", size));
+                }
+                input.position(input.position() + HEADER_SIZE);
+                Stream stream = streams.get(id);
+                if (stream != null) {
+                    stream.window += size;
+                }
+                continue;
+            }
+            if (type != ProtocolConstants.STREAM_SIGN) {
+                throw new IllegalStateException(String.format("Unknown frame type received (%d)", type));
+            }
+            if (size < ProtocolConstants.STREAM_CLOSED || size > ProtocolConstants.MAX_STREAM_DATA) {
+                throw new IllegalStateException(String.format("Incorrect stream frame size received (%d)", size));
+            }
+            int padded = size == ProtocolConstants.STREAM_CLOSED ? 0 : PayloadFormat.padded(size);
+            if (input.remaining() < HEADER_SIZE + padded) {
+                break;
+            }
+            input.position(input.position() + HEADER_SIZE);
+            Stream stream = streams.get(id);
+            if (stream == null && id > lastAccepted && size != ProtocolConstants.STREAM_CLOSED) {
+                lastAccepted = id;
+                stream = new Stream(id);
+                streams.put(id, stream);
+            }
+            if (size == ProtocolConstants.STREAM_CLOSED) {
+                if (stream != null) {
+                    stream.inputClosed = true;
+                }
+                continue;
+            }
+            int end = input.position() + padded;
+            if (stream != null) {
+                stream.deliver(input, size);
+            }
+            input.position(end);
+        }
+        input.compact();
+    }
+
+    /**
+     * Дать соединениям потоков прочитать и записать данные и отправить записанное в сокет.
+     * Если потоки продолжают продвигаться и после {@link #MAX_ROUNDS} кругов, соединение
+     * ждет готовности сокета к записи, чтобы цикл успел обслужить остальные соединения
+     * и сразу вернулся к этому.
+     */
+    private void pump() throws IOException {
+        boolean progress = true;
+        for (int i = 0; i < MAX_ROUNDS && progress; i++) {
+            progress = serviceStreams();
+            progress |= flush();
+        }
+        boolean write = progress || output.position() > 0;
+        key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Вызвать обработчики соединений потоков, готовых читать или писать.
+     *
+     * @return <code>true</code>, если соединения потоков прочитали или записали данные
+     */
+    private boolean serviceStreams() {
+        long before = moved;
+        for (Stream stream: new ArrayList<>(streams.values())) {
+            if (stream.closed || stream.key.readyOps() == 0) {
+                continue;
+            }
+            NioConnection connection = stream.connection();
+            try {
+                if ((stream.key.readyOps() & SelectionKey.OP_READ) != 0) {
+                    connection.onReadable();
+                }
+                connection = stream.connection();
+                if (stream.key.isValid() && (stream.key.readyOps() & SelectionKey.OP_WRITE) != 0) {
+                    connection.onWritable();
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "stream {0} closed: {1}", new Object[] {stream.id, e.getMessage()});
+                connection.close();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "stream " + stream.id + ": " + e.getMessage(), e);
+                connection.close();
+            }
+        }
+        return moved != before;
+    }
+
+    /**
+     * Отправить в сокет собранные кадры и повторить окна и закрытия потоков, которым
+     * не хватило места в буфере.
+     *
+     * @return <code>true</code>, если в сокет записаны данные
+     */
+    private boolean flush() throws IOException {
+        if (output.position() == 0) {
+            return false;
+        }
+        output.flip();
+        int written = socket.write(output);
+        output.compact();
+        if (written > 0) {
+            for (Stream stream: new ArrayList<>(streams.values())) {
+                if (stream.closed) {
+                    stream.sendClose();
+                } else {
+                    stream.grant();
+                }
+            }
+        }
+        return written > 0;
+    }
+
+    /**
+     * Записать в буфер кадр без данных: окно или закрытие потока.
+     *
+     * @return <code>false</code>, если кадр не поместился в буфер
+     */
+    private boolean putFrame(int type, int id, int value) {
+        if (output.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        output.putInt(type);
+        output.putInt(id);
+        output.putInt(value);
+        return true;
+    }
+
+    /**
+     * Логический поток: буфер принятых данных, окно отправки и канал, через который
+     * с потоком работает его соединение.
+     */
+    private final class Stream implements ByteChannel, GatheringByteChannel {
+        final int id;
+        final StreamKey key;
+        private final byte[] data;
+        private final int mask;
+        private long written;
+        private long read;
+        /**
+         * Сколько байтов еще можно отправить другой стороне.
+         */
+        int window;
+        /**
+         * Сколько прочитанных байтов еще не разрешено отправить другой стороне снова.
+         */
+        private int consumed;
+        boolean inputClosed;
+        boolean closed;
+
+        Stream(int id) {
+            this.id = id;
+            this.data = new byte[ringSize];
+            this.mask = ringSize - 1;
+            this.written = 0;
+            this.read = 0;
+            this.window = 0;
+            this.consumed = ringSize;
+            this.inputClosed = false;
+            this.closed = false;
+            this.key = new StreamKey(this);
+            key.interestOps(SelectionKey.OP_READ);
+            key.attach(new HandshakeConnection(this, key, queues, chunks));
+            grant();
+        }
+
+        NioConnection connection() {
+            return (NioConnection) key.attachment();
+        }
+
+        /**
+         * Узнать, к чему готов поток: читать, если есть данные или поток закрыт другой стороной,
+         * писать, если есть окно и место в общем буфере или если запись должна получить ошибку.
+         */
+        int readyOps() {
+            int ready = 0;
+            if (written != read || inputClosed) {
+                ready |= SelectionKey.OP_READ;
+            }
+            if (window > 0 && output.remaining() > HEADER_SIZE + RESERVE || inputClosed) {
+                ready |= SelectionKey.OP_WRITE;
+            }
+            return ready;
+        }
+
+        /**
+         * Положить в буфер данные, полученные из сокета. Данные потока, который уже закрыт этой
+         * стороной, пропускаются.
+         */
+        void deliver(ByteBuffer src, int size) {
+            if (closed) {
+                return;
+            }
+            if (data.length - (int) (written - read) < size) {
+                throw new IllegalStateException(String.format("Stream %d window exceeded", id));
+            }
+            int index = (int) written & mask;
+            int first = Math.min(size, data.length - index);
+            src.get(data, index, first);
+            src.get(data, 0, size - first);
+            written += size;
+        }
+
+        /**
+         * Разрешить другой стороне отправить прочитанные байты снова, когда их наберется
+         * половина буфера. Если кадр не поместился, попытка повторяется после отправки буфера.
+         */
+        void grant() {
+            if (consumed >= data.length / 2 && !inputClosed && putFrame(ProtocolConstants.WINDOW_SIGN, id, consumed)) {
+                consumed = 0;
+            }
+        }
+
+        /**
+         * Сообщить другой стороне о закрытии потока и забыть поток. Если кадр не поместился,
+         * попытка повторяется после отправки буфера.
+         */
+        void sendClose() {
+            if (inputClosed || !socket.isOpen() || putFrame(ProtocolConstants.STREAM_SIGN, id, ProtocolConstants.STREAM_CLOSED)) {
+                streams.remove(id);
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            int count = (int) Math.min(written - read, dst.remaining());
+            if (count == 0) {
+                return inputClosed && written == read ? -1 : 0;
+            }
+            int index = (int) read & mask;
+            int first = Math.min(count, data.length - index);
+            dst.put(data, index, first);
+            dst.put(data, 0, count - first);
+            read += count;
+            moved += count;
+            consumed += count;
+            grant();
+            return count;
+        }
+
+        /**
+         * Записать в общий буфер кадр с данными, сколько позволяют окно и место в буфере.
+         */
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (inputClosed) {
+                throw new IOException("Stream closed");
+            }
+            int room = output.remaining() - HEADER_SIZE - 3;
+            if (src.remaining() > SHORT_WRITE) {
+                room -= RESERVE;
+            }
+            int count = Math.min(Math.min(src.remaining(), window), Math.min(room, ProtocolConstants.MAX_STREAM_DATA));
+            if (count <= 0) {
+                return 0;
+            }
+            output.putInt(ProtocolConstants.STREAM_SIGN);
+            output.putInt(id);
+            output.putInt(count);
+            int limit = src.limit();
+            src.limit(src.position() + count);
+            output.put(src);
+            src.limit(limit);
+            for (int i = count; i < PayloadFormat.padded(count); i++) {
+                output.put((byte) 0);
+            }
+            window -= count;
+            moved += count;
+            return count;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                int remaining = srcs[i].remaining();
+                int count = write(srcs[i]);
+                total += count;
+                if (count < remaining) {
+                    break;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sendClose();
+        }
+    }
+
+    /**
+     * Ключ логического потока: хранит события, которые нужны соединению потока,
+     * и само соединение.
+     */
+    private final class StreamKey extends SelectionKey {
+        private final Stream stream;
+        private int interestOps;
+        private boolean cancelled;
+
+        StreamKey(Stream stream) {
+            this.stream = stream;
+            this.interestOps = 0;
+            this.cancelled = false;
+        }
+
+        @Override
+        public SelectableChannel channel() {
+            return socket;
+        }
+
+        @Override
+        public Selector selector() {
+            return MuxConnection.this.key.selector();
+        }
+
+        @Override
+        public boolean isValid() {
+            return !cancelled && MuxConnection.this.key.isValid();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int interestOps() {
+            return interestOps;
+        }
+
+        @Override
+        public SelectionKey interestOps(int ops) {
+            interestOps = ops;
+            return this;
+        }
+
+        @Override
+        public int readyOps() {
+            return cancelled ? 0 : stream.readyOps() & interestOps;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.innova.task.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * <p>
+ * Неблокирующее соединение, обслуживаемое объектом {@link EventLoop}.
+ * Объект соединения хранится в {@link SelectionKey#attachment()}.
+ * </p>
+ *
+ * <p>
+ * Соединение может ждать, пока в очереди появятся данные или освободится место.
+ * На это время соединение снимает интерес к событиям канала и сообщает
+ * об ожидании методом {@link #isStarving()}, а цикл периодически вызывает
+ * {@link #resume()}.
+ * </p>
+ *
+ * <p>
+ * Все методы класса вызываются только из потока цикла, которому принадлежит соединение.
+ * </p>
+ *
+ * <p>
+ * Канал соединения - это сокет или логический поток мультиплексированного соединения
+ * {@link MuxConnection}. Канал логического потока, как и сокет, умеет записывать несколько
+ * буферов одной операцией ({@link java.nio.channels.GatheringByteChannel}), а вместо ключа
+ * сокета у него свой ключ, в котором соединение отмечает нужные ему события.
+ * </p>
+ *
+ * @author sergey
+ */
+abstract class NioConnection {
+    protected final ByteChannel channel;
+    protected final SelectionKey key;
+    private boolean starving;
+
+    /**
+     * Создает объект
+     *
+     * @param channel канал соединения
+     * @param key ключ, под которым канал зарегистрирован в цикле
+     */
+    protected NioConnection(ByteChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+        this.starving = false;
+    }
+
+    /**
+     * Обработать готовность канала к чтению.
+     *
+     * @throws IOException в случае ошибки или закрытия соединения клиентом
+     */
+    abstract void onReadable() throws IOException;
+
+    /**
+     * Обработать готовность канала к записи.
+     *
+     * @throws IOException в случае ошибки
+     */
+    abstract void onWritable() throws IOException;
+
+    /**
+     * Попробовать продолжить работу соединения, ожидающего очередь.
+     *
+     * @return <code>true</code>, если соединение больше не ждет очередь
+     * @throws IOException в случае ошибки
+     */
+    abstract boolean resume() throws IOException;
+
+    /**
+     * Узнать, ждет ли соединение освобождения или заполнения очереди.
+     *
+     * @return <code>true</code>, если соединение надо периодически проверять методом {@link #resume()}
+     */
+    boolean isStarving() {
+        return starving;
+    }
+
+    /**
+     * Узнать, закрыто ли соединение.
+     *
+     * @return <code>true</code>, если соединение закрыто
+     */
+    boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    /**
+     * Закрыть соединение.
+     */
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Перейти в режим ожидания очереди или выйти из него.
+     *
+     * @param newStarving <code>true</code>, если соединение начинает ждать очередь
+     * @param ops события канала, которые нужны соединению, когда оно не ждет очередь
+     */
+    protected void setStarving(boolean newStarving, int ops) {
+        if (newStarving != starving) {
+            key.interestOps(newStarving ? 0 : ops);
+            starving = newStarving;
+        }
+    }
+
+    /**
+     * Объявить клиенту кадром {@link ProtocolConstants#CODEC_SIGN}, какие кодировки чисел понимает
+     * соединение. Объявление отправляется сразу после подключения, когда в буфере сокета заведомо
+     * есть место для него.
+     *
+     * @param codecs набор флагов, например {@link ProtocolConstants#DELTA_CODEC}
+     * @throws IOException в случае ошибки или если объявление не поместилось в буфер сокета
+     */
+    protected void announceCodecs(int codecs) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        frame.putInt(ProtocolConstants.CODEC_SIGN);
+        frame.putInt(codecs);
+        frame.flip();
+        channel.write(frame);
+        if (frame.hasRemaining()) {
+            throw new IOException("Cannot announce codecs");
+        }
+    }
+
+    /**
+     * Вывести сообщение о событии инициатора.
+     *
+     * @param sign управляющее значение, полученное от клиента
+     */
+    protected static void reportSign(int sign) {
+        if (sign == ProtocolConstants.STOP_SIGN) {
+            System.out.println("The Initiator server has stopped.");
+        } else if (sign == ProtocolConstants.START_SIGN) {
+            System.out.println("The Initiator server has started.");
+        } else if (sign == ProtocolConstants.EXIT_SIGN) {
+            System.out.println("The Initiator server has exited.");
+        }
+    }
+
+    /**
+     * Вывести на консоль объявление о возобновлении прежнего запуска. Прежний запуск
+     * продолжает только Initiator Server.
+     *
+     * @param last последнее число прежнего запуска
+     */
+    protected static void reportResume(long last) {
+        System.out.printf("The Initiator server has resumed after number %d.\n", last);
+    }
+}
@@ -0,0 +1,116 @@
+package ru.innova.task.proxy;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+
+import ru.innova.task.common.AbstractWorker;
+import ru.innova.task.network.Transport;
+
+/**
+ * <p>
+ * Поток, слушающий серверное соединение и раздающий подключения циклам обработки событий.
+ * </p>
+ *
+ * <p>
+ * В отличие от {@link ServerWorker}, для каждого соединения не создается отдельный поток.
+ * Все соединения обслуживаются фиксированным набором объектов {@link EventLoop},
+ * каждый из которых работает в своем потоке со своим {@link java.nio.channels.Selector}.
+ * Новые соединения распределяются между циклами по очереди.
+ * </p>
+ *
+ * <p>
+ * В режиме пересылки прокси не разбирает числа, а передает полученные байты
+ * через {@link ChunkQueues} (см. {@link ForwardConnection}).
+ * </p>
+ *
+ * @author sergey
+ */
+public class NioServerWorker extends AbstractWorker {
+    private final Transport transport;
+    private final int eventLoopsCount;
+    private final ExecutorService threadPool;
+    private final CountDownLatch startSignal;
+    private final CountDownLatch exitSignal;
+    private final ProxyServer.Queues queues;
+    private final ChunkQueues chunks;
+    private final List<EventLoop> eventLoops;
+    private volatile ServerSocketChannel serverChannel;
+
+    /**
+     * Создает объект
+     *
+     * @param transport транспорт, через который принимаются соединения
+     * @param eventLoopsCount количество циклов обработки событий
+     * @param forward <code>true</code>, если прокси должен пересылать байты без разбора чисел
+     * @param queues набор очередей
+     * @param startSignal объект для получения сигнала о старте
+     * @param exitSignal объект для получения сигнала о выходе
+     * @param threadPool пул потоков для циклов обработки событий
+     */
+    public NioServerWorker(Transport transport, int eventLoopsCount, boolean forward, ProxyServer.Queues queues, CountDownLatch startSignal, CountDownLatch exitSignal, ExecutorService threadPool) {
+        super(1, "proxy.Server");
+        this.transport = transport;
+        this.eventLoopsCount = eventLoopsCount;
+        this.threadPool = threadPool;
+        this.startSignal = startSignal;
+        this.exitSignal = exitSignal;
+        this.queues = queues;
+        this.chunks = forward ? new ChunkQueues() : null;
+        this.eventLoops = new ArrayList<>(eventLoopsCount);
+        this.serverChannel = null;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            startSignal.await();
+            for (int i = 0; i < eventLoopsCount; i++) {
+                EventLoop eventLoop = new EventLoop(i + 1, queues, chunks);
+                eventLoops.add(eventLoop);
+                threadPool.submit(eventLoop);
+            }
+            this.serverChannel = transport.listenChannel();
+            int next = 0;
+            while (true) {
+                if (exited) {
+                    break;
+                }
+                SocketChannel channel = serverChannel.accept();
+                transport.configure(channel);
+                eventLoops.get(next).register(channel);
+                next = (next + 1) % eventLoops.size();
+            }
+        } catch (IOException e) {
+            if (!exited) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+            }
+            exitSignal.countDown();
+        } catch (InterruptedException e) {
+            exitSignal.countDown();
+            Thread.currentThread().interrupt();
+        } finally {
+            for (EventLoop eventLoop: eventLoops) {
+                eventLoop.exitWork();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void exitWork() {
+        super.exitWork();
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -1,30 +1,46 @@
 package ru.innova.task.proxy;
 
 import java.io.PrintStream;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ru.innova.task.common.AbstractWorker;
 import ru.innova.task.common.InteractionHelper;
+import ru.innova.task.common.LongArrayBlockingQueue;
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.network.CreditPool;
+import ru.innova.task.network.Transport;
 
 /**
  * Программа, реализающая Proxy Server в соответствии с задачей.
+ * Сервер принимает соединения на порту TCP или, если адрес задан как
+ * <code>unix:&lt;путь&gt;</code>, на Unix domain socket (см. {@link Transport}).
+ * Мультиплексированные соединения клиентов (<code>network.mux=true</code>) разбираются
+ * на логические потоки обоими движками (см. {@link ConnectionHandler} и {@link MuxConnection}).
  * 
  * @author sergey
  */
 public class ProxyServer extends Thread {
     private static final int OUTPUT_QUEUE_SIZE = 100000;
+    private static final String ENGINE_THREADS = "threads";
+    private static final String ENGINE_NIO = "nio";
+    private static final String MODE_QUEUE = "queue";
+    private static final String MODE_FORWARD = "forward";
     private final Config config;
     private final Logger logger;
     private final ExecutorService threadPool;
     private final InteractionHelper interactionHelper;
+    private final CountDownLatch startSignal;
+    private final CountDownLatch exitSignal;
+    private final Queues queues;
     
     private ProxyServer(Config config) {
         this.config = config;
@@ -38,25 +54,135 @@ public class ProxyServer extends Thread {
             }
         });
         this.interactionHelper = new InteractionHelper();
+        this.startSignal = new CountDownLatch(1);
+        this.exitSignal = new CountDownLatch(1);
+        this.queues = new Queues(config.creditWindow);
     }
     
+    /**
+     * Очереди чисел между клиентами, кредиты на их заполнение (см. {@link CreditPool})
+     * и последние числа прежних запусков, объявленные клиентами
+     * (см. {@link ProtocolConstants#RESUME_SIGN}).
+     */
     public static final class Queues {
-        public final BlockingQueue<Integer> toInitiator;
-        public final BlockingQueue<Integer> toEcho;
+        public final LongBlockingQueue toInitiator;
+        public final LongBlockingQueue toEcho;
+        private final CreditPool toInitiatorCredit;
+        private final CreditPool toEchoCredit;
+        private final AtomicLong toInitiatorResume;
+        private final AtomicLong toEchoResume;
         
-        public Queues() {
-            this.toInitiator = new LinkedBlockingQueue<>(OUTPUT_QUEUE_SIZE);
-            this.toEcho = new LinkedBlockingQueue<>(OUTPUT_QUEUE_SIZE);
+        /**
+         * Создает объект.
+         *
+         * @param creditWindow окно кредитов одного соединения или 0, если кредиты не выдаются
+         */
+        public Queues(int creditWindow) {
+            this.toInitiator = new LongArrayBlockingQueue(OUTPUT_QUEUE_SIZE);
+            this.toEcho = new LongArrayBlockingQueue(OUTPUT_QUEUE_SIZE);
+            this.toInitiatorCredit = creditWindow > 0 ? new CreditPool(toInitiator, creditWindow) : null;
+            this.toEchoCredit = creditWindow > 0 ? new CreditPool(toEcho, creditWindow) : null;
+            this.toInitiatorResume = new AtomicLong(ProtocolConstants.NONE_VALUE);
+            this.toEchoResume = new AtomicLong(ProtocolConstants.NONE_VALUE);
+        }
+
+        /**
+         * Получить последнее число прежнего запуска, которое объявил клиент, отправляющий числа.
+         *
+         * @param clientType тип клиента
+         * @return объявленное число для очереди {@link #from(int)}
+         */
+        public AtomicLong resumeFrom(int clientType) {
+            if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+                return toEchoResume;
+            } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+                return toInitiatorResume;
+            }
+            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+        }
+
+        /**
+         * Получить последнее число прежнего запуска, которое надо объявить клиенту,
+         * получающему числа.
+         *
+         * @param clientType тип клиента
+         * @return объявленное число для очереди {@link #to(int)}
+         */
+        public AtomicLong resumeTo(int clientType) {
+            if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+                return toInitiatorResume;
+            } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+                return toEchoResume;
+            }
+            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+        }
+
+        /**
+         * Получить кредиты очереди, в которую помещаются данные, полученные от клиента.
+         *
+         * @param clientType тип клиента
+         * @return кредиты очереди {@link #from(int)} или <code>null</code>, если кредиты не выдаются
+         */
+        public CreditPool creditFrom(int clientType) {
+            if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+                return toEchoCredit;
+            } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+                return toInitiatorCredit;
+            }
+            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+        }
+
+        /**
+         * Описать выданные кредиты и остановки из-за заполненных очередей.
+         *
+         * @return описание или <code>null</code>, если кредиты не выдаются
+         */
+        public String describeCredit() {
+            if (toEchoCredit == null) {
+                return null;
+            }
+            return String.format("to echo: %s; to initiator: %s", toEchoCredit, toInitiatorCredit);
+        }
+
+        /**
+         * Получить очередь, в которую помещаются данные, полученные от клиента.
+         * 
+         * @param clientType тип клиента
+         * @return очередь для данных, полученных от клиента
+         */
+        public LongBlockingQueue from(int clientType) {
+            if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+                return toEcho;
+            } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+                return toInitiator;
+            }
+            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
+        }
+
+        /**
+         * Получить очередь, из которой берутся данные для отправки клиенту.
+         * 
+         * @param clientType тип клиента
+         * @return очередь для данных, отправляемых клиенту
+         */
+        public LongBlockingQueue to(int clientType) {
+            if (clientType == ProtocolConstants.INITIATOR_SIGN) {
+                return toInitiator;
+            } else if (clientType == ProtocolConstants.ECHO_SIGN) {
+                return toEcho;
+            }
+            throw new IllegalStateException(String.format("Incorrect server type received (%d)", clientType));
         }
     }
     
     @Override
     public void run() {
         try {
-            CountDownLatch startSignal = new CountDownLatch(1);
-            CountDownLatch exitSignal = new CountDownLatch(1);
-            Future<Integer> serverWorker = threadPool.submit(new ServerWorker(config.port, startSignal, exitSignal, threadPool));
-            Future<Integer> controlThread = threadPool.submit(new ControlThread(startSignal, exitSignal));
+            Future<Integer> serverWorker = threadPool.submit(makeServerWorker(startSignal, exitSignal));
+            Future<Integer> controlThread = null;
+            if (config.interactive) {
+                controlThread = threadPool.submit(new ControlThread(startSignal, exitSignal, queues));
+            }
             while (true) {
                 if (exitSignal.await(500, TimeUnit.MILLISECONDS)) {
                     processExit();
@@ -67,7 +193,7 @@ public class ProxyServer extends Thread {
                     processExit();
                     return;
                 }
-                if (controlThread.isDone()) {
+                if (controlThread != null && controlThread.isDone()) {
                     interactionHelper.showError("Control thread completed. Bye!");
                     processExit();
                     return;
@@ -79,7 +205,55 @@ public class ProxyServer extends Thread {
         }
     }
 
+    /**
+     * Выполнить команду пользователя, если сервер работает в одном процессе с остальными
+     * (см. {@link ru.innova.task.embedded.EmbeddedServer}). После команды <code>exit</code>
+     * сервер завершает работу асинхронно; дождаться завершения можно методом {@link #join()}.
+     *
+     * @param cmd команда
+     * @return <code>false</code>, если команда завершила работу сервера
+     */
+    public boolean execute(String cmd) {
+        if (cmd.equals("start")) {
+            startSignal.countDown();
+        } else if (cmd.equals("credit")) {
+            showCredit(queues, interactionHelper);
+        } else if (cmd.equals("exit")) {
+            exitSignal.countDown();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Вывести выданные кредиты и остановки из-за заполненных очередей.
+     *
+     * @param queues набор очередей
+     * @param interactionHelper объект для вывода
+     */
+    static void showCredit(Queues queues, InteractionHelper interactionHelper) {
+        String credit = queues.describeCredit();
+        if (credit == null) {
+            interactionHelper.showMessage("credit flow control is disabled");
+        } else {
+            interactionHelper.showMessage("credit %s", credit);
+        }
+    }
+
+    private AbstractWorker makeServerWorker(CountDownLatch startSignal, CountDownLatch exitSignal) {
+        if (config.engine.equals(ENGINE_THREADS)) {
+            return new ServerWorker(config.transport, queues, startSignal, exitSignal, threadPool);
+        } else if (config.engine.equals(ENGINE_NIO)) {
+            return new NioServerWorker(config.transport, config.eventLoops, config.mode.equals(MODE_FORWARD), queues, startSignal, exitSignal, threadPool);
+        }
+        throw new IllegalStateException(String.format("Unknown proxy engine %s", config.engine));
+    }
+
     private void processExit() {
+        String credit = queues.describeCredit();
+        if (credit != null) {
+            logger.log(Level.INFO, "credit {0}", credit);
+        }
         threadPool.shutdown();
         try {
             threadPool.awaitTermination(1000, TimeUnit.MILLISECONDS);
@@ -90,7 +264,12 @@ public class ProxyServer extends Thread {
     }
 
     private static final class Config {
-        int port;
+        Transport transport;
+        String engine;
+        String mode;
+        int eventLoops;
+        boolean interactive;
+        int creditWindow;
         
         Config() {
             // empty constructor
@@ -105,7 +284,7 @@ public class ProxyServer extends Thread {
         } else {
             out = System.err;
         }
-        out.printf("Usage: java %s <port>\n", ProxyServer.class.getName());
+        out.printf("Usage: java [-Dproxy.engine=nio|threads] [-Dproxy.eventLoops=<count>] [-Dproxy.mode=queue|forward] [-Dnetwork.codec=delta|plain] [-Dnetwork.credit.window=<count>] %s <port>|unix:<socket-path>\n", ProxyServer.class.getName());
         return retval;
     }
     
@@ -116,14 +295,67 @@ public class ProxyServer extends Thread {
         Config config = new Config();
         int index = 0;
         try {
-            config.port = Integer.parseInt(args[index++]);
-        } catch (NumberFormatException e) {
+            config.transport = Transport.forServer(args[index++]);
+        } catch (IllegalArgumentException e) {
             System.err.println(e.getMessage());
             System.exit(usage(2));
         }
+        config.interactive = true;
+        readProperties(config);
         return config;
     }
 
+    /**
+     * Дополнить параметры системными свойствами. Если параметры заданы неверно,
+     * программа завершается.
+     */
+    private static void readProperties(Config config) {
+        config.engine = System.getProperty("proxy.engine", config.transport.hasChannels() ? ENGINE_NIO : ENGINE_THREADS);
+        if (!config.engine.equals(ENGINE_NIO) && !config.engine.equals(ENGINE_THREADS)) {
+            System.err.printf("Unknown proxy engine %s\n", config.engine);
+            System.exit(usage(3));
+        }
+        if (config.engine.equals(ENGINE_NIO) && !config.transport.hasChannels()) {
+            System.err.printf("Proxy engine %s is not supported by transport %s\n", ENGINE_NIO, config.transport);
+            System.exit(usage(3));
+        }
+        config.mode = System.getProperty("proxy.mode", MODE_QUEUE);
+        if (!config.mode.equals(MODE_QUEUE) && !config.mode.equals(MODE_FORWARD)) {
+            System.err.printf("Unknown proxy mode %s\n", config.mode);
+            System.exit(usage(3));
+        }
+        if (config.mode.equals(MODE_FORWARD) && !config.engine.equals(ENGINE_NIO)) {
+            System.err.printf("Proxy mode %s requires engine %s\n", MODE_FORWARD, ENGINE_NIO);
+            System.exit(usage(3));
+        }
+        try {
+            config.creditWindow = CreditPool.windowFromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(usage(3));
+        }
+        config.eventLoops = Integer.getInteger("proxy.eventLoops", Runtime.getRuntime().availableProcessors());
+        if (config.eventLoops <= 0) {
+            System.err.printf("Incorrect number of event loops %d. Specify number greater than %d\n", config.eventLoops, 0);
+            System.exit(usage(3));
+        }
+    }
+
+    /**
+     * Создать сервер, который управляется не из консоли, а методом {@link #execute(String)}.
+     * Сервер надо запустить методом {@link #start()}.
+     *
+     * @param transport транспорт, через который принимаются соединения клиентов
+     * @return сервер
+     */
+    public static ProxyServer create(Transport transport) {
+        Config config = new Config();
+        config.transport = transport;
+        config.interactive = false;
+        readProperties(config);
+        return new ProxyServer(config);
+    }
+
     public static void main(String[] args) {
         try {
             Config config = parseArguments(args);
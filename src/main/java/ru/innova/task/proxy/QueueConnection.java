@@ -0,0 +1,412 @@
+package ru.innova.task.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.PayloadFormat;
+import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.network.CreditPool;
+import ru.innova.task.network.DeltaCodec;
+
+/**
+ * <p>
+ * Неблокирующее соединение, которое разбирает числа и передает их через очереди
+ * {@link ProxyServer.Queues}. Соединение работает в одном из двух режимов:
+ * </p>
+ * <ul>
+ *  <li>входящее &mdash; числа, полученные от клиента, помещаются в очередь
+ *      {@link ProxyServer.Queues#from(int)};</li>
+ *  <li>исходящее &mdash; числа из очереди {@link ProxyServer.Queues#to(int)}
+ *      отправляются клиенту.</li>
+ * </ul>
+ *
+ * <p>
+ * Тип кадра проверяется один раз на кадр, числа пакета перекладываются в очередь без проверок.
+ * Управляющие кадры в очередь не попадают, а выводятся на консоль.
+ * </p>
+ *
+ * <p>
+ * Объявление о возобновлении прежнего запуска (см. {@link ProtocolConstants#RESUME_SIGN}),
+ * полученное входящим соединением, запоминается в {@link ProxyServer.Queues#resumeFrom(int)}.
+ * Исходящее соединение проверяет {@link ProxyServer.Queues#resumeTo(int)} после того, как взяло
+ * числа из очереди, и отправляет каждое новое значение перед ними.
+ * </p>
+ *
+ * <p>
+ * Входящее соединение понимает и пакеты разностей (см. {@link ProtocolConstants#DELTA_SIGN}):
+ * пакет декодируется, когда он целиком получен. Исходящее соединение читает из канала
+ * объявление кодировок клиента (см. {@link ProtocolConstants#CODEC_SIGN}) и, получив его,
+ * отправляет числа пакетами разностей, если их понимают обе стороны.
+ * Числа, которые взяты из очереди, но не поместились в буфер, отправляются следующим пакетом.
+ * </p>
+ *
+ * <p>
+ * Если задан набор кредитов {@link CreditPool}, входящее соединение вместе с кодировками объявляет
+ * флаг {@link ProtocolConstants#CREDIT_FLOW} и выдает клиенту кредиты кадрами
+ * {@link ProtocolConstants#CREDIT_SIGN}, когда у клиента остается не больше половины окна.
+ * Кредиты чисел, помещенных в очередь, сразу возвращаются в набор. Если у клиента кредитов нет,
+ * а в очереди нет места, соединение ждет очередь так же, как при заполненной очереди.
+ * </p>
+ *
+ * @author sergey
+ */
+class QueueConnection extends NioConnection {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_WRITES = 16;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int NUMBER_SIZE = 8;
+    private static final int RESUME_SIZE = 12;
+    private final ByteBuffer buffer;
+    private final LongBlockingQueue queue;
+    private final boolean inbound;
+    private final long[] numbers;
+    private final DeltaCodec codec;
+    private final int codecs;
+    private final CreditPool credit;
+    private final ByteBuffer grant;
+    private final AtomicLong resume;
+    private long announced;
+    private int held;
+    private long stallStart;
+    private boolean hasPending;
+    private long pending;
+    private int batchRemaining;
+    private int numbersOffset;
+    private int numbersCount;
+    /**
+     * Буфер для объявления кодировок клиента, пока оно не получено, иначе <code>null</code>.
+     */
+    private ByteBuffer feedback;
+    private boolean delta;
+
+    /**
+     * Создает объект
+     *
+     * @param channel канал соединения
+     * @param key ключ, под которым канал зарегистрирован в цикле
+     * @param queue очередь, в которую помещаются или из которой берутся числа
+     * @param inbound <code>true</code> для входящего соединения
+     * @param credit набор кредитов очереди входящего соединения или <code>null</code>,
+     *     если кредиты не выдаются
+     * @param resume последнее число прежнего запуска: входящее соединение запоминает
+     *     в нем объявленное клиентом значение, исходящее объявляет его клиенту
+     */
+    QueueConnection(ByteChannel channel, SelectionKey key, LongBlockingQueue queue, boolean inbound, CreditPool credit, AtomicLong resume) {
+        super(channel, key);
+        this.queue = queue;
+        this.inbound = inbound;
+        this.resume = resume;
+        this.announced = ProtocolConstants.NONE_VALUE;
+        this.credit = inbound ? credit : null;
+        this.grant = this.credit == null ? null : ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        this.held = 0;
+        this.stallStart = 0;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        if (!inbound) {
+            buffer.flip();
+        }
+        this.numbers = inbound ? null : new long[ProtocolConstants.MAX_BATCH_SIZE];
+        this.codec = inbound ? new DeltaCodec() : null;
+        this.codecs = DeltaCodec.supportedCodecs();
+        this.hasPending = false;
+        this.batchRemaining = 0;
+        this.numbersOffset = 0;
+        this.numbersCount = 0;
+        this.feedback = inbound ? null : ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        this.delta = false;
+        if (!inbound) {
+            key.interestOps(outputOps());
+        }
+    }
+
+    @Override
+    void onReadable() throws IOException {
+        if (!inbound) {
+            readCodecs();
+            return;
+        }
+        if (channel.read(buffer) < 0) {
+            throw new EOFException("End of stream");
+        }
+        drainInput();
+    }
+
+    @Override
+    void onWritable() throws IOException {
+        pumpOutput();
+    }
+
+    @Override
+    boolean resume() throws IOException {
+        if (inbound) {
+            drainInput();
+        } else {
+            pumpOutput();
+        }
+        return !isStarving();
+    }
+
+    /**
+     * Переложить полученные числа из буфера в очередь. Если очередь заполнена,
+     * соединение перестает читать данные из канала до тех пор, пока в очереди не появится место.
+     */
+    private void drainInput() throws IOException {
+        int offered = 0;
+        if (hasPending) {
+            if (!queue.offerLong(pending)) {
+                return;
+            }
+            hasPending = false;
+            offered++;
+        }
+        buffer.flip();
+        while (true) {
+            while (codec.hasRemaining()) {
+                long number = codec.decode(buffer);
+                if (!queue.offerLong(number)) {
+                    hasPending = true;
+                    pending = number;
+                    break;
+                }
+                offered++;
+            }
+            while (batchRemaining > 0 && buffer.remaining() >= NUMBER_SIZE) {
+                long number = buffer.getLong();
+                batchRemaining--;
+                if (!queue.offerLong(number)) {
+                    hasPending = true;
+                    pending = number;
+                    break;
+                }
+                offered++;
+            }
+            if (hasPending || batchRemaining > 0 || buffer.remaining() < FRAME_HEADER_SIZE) {
+                break;
+            }
+            int type = buffer.getInt(buffer.position());
+            int value = buffer.getInt(buffer.position() + 4);
+            if (type == ProtocolConstants.DELTA_SIGN && value > 0 && value <= ProtocolConstants.MAX_DELTA_SIZE
+                    && buffer.remaining() < FRAME_HEADER_SIZE + PayloadFormat.padded(value)) {
+                // the batch is decoded only when it is received completely
+                break;
+            }
+            if (type == ProtocolConstants.RESUME_SIGN) {
+                if (buffer.remaining() < RESUME_SIZE) {
+                    break;
+                }
+                long last = buffer.getLong(buffer.position() + 4);
+                buffer.position(buffer.position() + RESUME_SIZE);
+                if (resume.getAndSet(last) != last) {
+                    reportResume(last);
+                }
+                continue;
+            }
+            buffer.position(buffer.position() + FRAME_HEADER_SIZE);
+            if (type == ProtocolConstants.BATCH_SIGN) {
+                if (value <= 0 || value > ProtocolConstants.MAX_BATCH_SIZE) {
+                    throw new IllegalStateException(String.format("Incorrect batch size received (%d)", value));
+                }
+                batchRemaining = value;
+            } else if (type == ProtocolConstants.DELTA_SIGN) {
+                codec.start(value);
+            } else if (type == ProtocolConstants.CONTROL_SIGN) {
+                reportSign(value);
+            } else if (type == ProtocolConstants.PAYLOAD_SIGN) {
+                throw new IllegalStateException("Payload is supported only in proxy.mode=forward");
+            } else {
+                throw new IllegalStateException(String.format("Unknown frame type received (%d)", type));
+            }
+        }
+        buffer.compact();
+        boolean granted = grantCredit(offered);
+        setStarving(hasPending || !granted, SelectionKey.OP_READ);
+    }
+
+    @Override
+    protected void announceCodecs(int announced) throws IOException {
+        if (credit == null) {
+            super.announceCodecs(announced);
+            return;
+        }
+        super.announceCodecs(announced | ProtocolConstants.CREDIT_FLOW);
+        setStarving(!grantCredit(0), SelectionKey.OP_READ);
+    }
+
+    /**
+     * Вернуть в набор кредиты чисел, помещенных в очередь, и, если у клиента осталось
+     * не больше половины окна, выдать ему новые кредиты.
+     *
+     * @param offered количество чисел, помещенных в очередь
+     * @return <code>false</code>, если у клиента нет кредитов, а выдать их нельзя
+     */
+    private boolean grantCredit(int offered) throws IOException {
+        if (credit == null) {
+            return true;
+        }
+        int consumed = Math.min(offered, held);
+        held -= consumed;
+        credit.release(consumed);
+        int window = credit.getWindow();
+        if (held > window / 2) {
+            return true;
+        }
+        int count = credit.acquire(window - held);
+        if (count == 0) {
+            if (held == 0 && stallStart == 0) {
+                stallStart = System.nanoTime();
+            }
+            return held > 0;
+        }
+        grant.clear();
+        grant.putInt(ProtocolConstants.CREDIT_SIGN);
+        grant.putInt(count);
+        grant.flip();
+        channel.write(grant);
+        if (grant.hasRemaining()) {
+            throw new IOException("Cannot grant credit");
+        }
+        held += count;
+        if (stallStart != 0) {
+            credit.getMeter().stalled(System.nanoTime() - stallStart);
+            stallStart = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Закрыть соединение и вернуть в набор кредиты, которые клиент не успел использовать.
+     */
+    @Override
+    void close() {
+        if (credit != null) {
+            credit.release(held);
+            held = 0;
+        }
+        super.close();
+    }
+
+    /**
+     * Дописать в буфер числа из очереди, сколько поместится, пакетами
+     * (см. {@link ProtocolConstants#BATCH_SIGN} и {@link ProtocolConstants#DELTA_SIGN}).
+     */
+    private void fillOutput() {
+        buffer.compact();
+        while (true) {
+            if (numbersCount == 0) {
+                numbersOffset = 0;
+                numbersCount = queue.drainTo(numbers, 0, numbers.length);
+                if (numbersCount == 0) {
+                    break;
+                }
+            }
+            if (!putResume()) {
+                break;
+            }
+            int count;
+            if (delta) {
+                count = DeltaCodec.encode(numbers, numbersOffset, numbersCount, buffer);
+            } else {
+                count = putBatch(numbers, numbersOffset, numbersCount);
+            }
+            if (count == 0) {
+                break;
+            }
+            numbersOffset += count;
+            numbersCount -= count;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Записать в буфер объявление о возобновлении, если значение изменилось с прошлого объявления.
+     *
+     * @return <code>false</code>, если объявление не поместилось в буфер
+     */
+    private boolean putResume() {
+        long last = resume.get();
+        if (last == announced) {
+            return true;
+        }
+        if (buffer.remaining() < RESUME_SIZE) {
+            return false;
+        }
+        buffer.putInt(ProtocolConstants.RESUME_SIGN);
+        buffer.putLong(last);
+        announced = last;
+        return true;
+    }
+
+    /**
+     * Записать в буфер пакет чисел, сколько поместится.
+     *
+     * @return количество записанных чисел
+     */
+    private int putBatch(long[] values, int off, int len) {
+        int count = Math.min(len, (buffer.remaining() - FRAME_HEADER_SIZE) / NUMBER_SIZE);
+        if (count <= 0) {
+            return 0;
+        }
+        buffer.putInt(ProtocolConstants.BATCH_SIGN);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(values[off + i]);
+        }
+        return count;
+    }
+
+    /**
+     * Прочитать объявление кодировок, которые понимает клиент. Клиенты, которые не объявляют
+     * кодировки, получают числа пакетами без сжатия.
+     */
+    private void readCodecs() throws IOException {
+        if (channel.read(feedback) < 0) {
+            throw new EOFException("End of stream");
+        }
+        if (feedback.hasRemaining()) {
+            return;
+        }
+        feedback.flip();
+        int type = feedback.getInt();
+        if (type != ProtocolConstants.CODEC_SIGN) {
+            throw new IllegalStateException(String.format("Unknown frame type received (%d)", type));
+        }
+        delta = (feedback.getInt() & codecs & ProtocolConstants.DELTA_CODEC) != 0;
+        feedback = null;
+        if (!isStarving()) {
+            key.interestOps(outputOps());
+        }
+    }
+
+    /**
+     * События канала, которые нужны исходящему соединению, когда оно не ждет очередь.
+     */
+    private int outputOps() {
+        return feedback == null ? SelectionKey.OP_WRITE : SelectionKey.OP_WRITE | SelectionKey.OP_READ;
+    }
+
+    /**
+     * Отправить клиенту числа из очереди. Отправка продолжается, пока в очереди
+     * есть числа и сокет их принимает, но не более {@link #MAX_WRITES} раз подряд,
+     * чтобы не задерживать остальные соединения цикла.
+     */
+    private void pumpOutput() throws IOException {
+        boolean empty = false;
+        for (int i = 0; i < MAX_WRITES; i++) {
+            fillOutput();
+            if (!buffer.hasRemaining()) {
+                empty = true;
+                break;
+            }
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+        }
+        setStarving(empty, outputOps());
+    }
+}
@@ -1,13 +1,15 @@
 package ru.innova.task.proxy;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.InterruptedIOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 
 import ru.innova.task.common.AbstractWorker;
+import ru.innova.task.network.Acceptor;
+import ru.innova.task.network.Connection;
+import ru.innova.task.network.Transport;
 
 /**
  * Поток, слушающий серверное соединение.
@@ -15,43 +17,47 @@ import ru.innova.task.common.AbstractWorker;
  * @author sergey
  */
 public class ServerWorker extends AbstractWorker {
-    private final int port;
+    private final Transport transport;
     private final ExecutorService threadPool;
     private final CountDownLatch startSignal;
     private final CountDownLatch exitSignal;
     private final ProxyServer.Queues queues;
-    private ServerSocket serverSocket;
+    private volatile Acceptor acceptor;
 
     /**
      * Создает объект
      * 
-     * @param port номер порта
+     * @param transport транспорт, через который принимаются соединения
+     * @param queues набор очередей
      * @param startSignal объект для получения сигнала о старте
      * @param exitSignal объект для получения сигнала о выходе
      * @param threadPool пул потоков для обработчиков подключаемых соединений
      */
-    public ServerWorker(int port, CountDownLatch startSignal, CountDownLatch exitSignal, ExecutorService threadPool) {
+    public ServerWorker(Transport transport, ProxyServer.Queues queues, CountDownLatch startSignal, CountDownLatch exitSignal, ExecutorService threadPool) {
         super(1, "proxy.Server");
-        this.port = port;
+        this.transport = transport;
         this.threadPool = threadPool;
         this.startSignal = startSignal;
         this.exitSignal = exitSignal;
-        this.queues = new ProxyServer.Queues();
-        this.serverSocket = null;
+        this.queues = queues;
+        this.acceptor = null;
     }
 
     @Override
     public Integer call() {
         try {
             startSignal.await();
-            this.serverSocket = new ServerSocket(port);
+            this.acceptor = transport.listen();
             while (true) {
                 if (exited) {
                     break;
                 }
-                final Socket socket = serverSocket.accept();
-                threadPool.submit(new ConnectionHandler(socket, queues, startSignal));
+                Connection connection = acceptor.accept();
+                threadPool.submit(new ConnectionHandler(connection, queues, startSignal, threadPool));
             }
+        } catch (InterruptedIOException e) {
+            exitSignal.countDown();
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
             exitSignal.countDown();
@@ -65,9 +71,9 @@ public class ServerWorker extends AbstractWorker {
     @Override
     public void exitWork() {
         super.exitWork();
-        if (serverSocket != null) {
+        if (acceptor != null) {
             try {
-                serverSocket.close();
+                acceptor.close();
             } catch (IOException e) {
                 logger.log(Level.SEVERE, e.getMessage(), e);
             }
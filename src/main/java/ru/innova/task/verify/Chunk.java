@@ -0,0 +1,33 @@
+package ru.innova.task.verify;
+
+import java.io.IOException;
+
+/**
+ * Часть файла, которая проверяется одной задачей {@link VerifyTask}.
+ *
+ * @author sergey
+ */
+interface Chunk {
+
+    /**
+     * Проверить часть файла.
+     *
+     * @return результат проверки
+     * @throws IOException при ошибке чтения или неверном формате файла
+     */
+    Summary verify() throws IOException;
+
+    /**
+     * Узнать размер части в байтах.
+     *
+     * @return размер части
+     */
+    long length();
+
+    /**
+     * Описать начало части для сообщений о нарушениях.
+     *
+     * @return описание
+     */
+    String describe();
+}
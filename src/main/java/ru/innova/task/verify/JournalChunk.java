@@ -0,0 +1,73 @@
+package ru.innova.task.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ru.innova.task.common.JournalWriter;
+
+/**
+ * Часть сегмента двоичного журнала {@link JournalWriter}: записи с номерами <code>[from, to)</code>.
+ *
+ * @author sergey
+ */
+final class JournalChunk implements Chunk {
+    private final File file;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param file сегмент журнала
+     * @param from номер первой записи
+     * @param to номер записи, следующей за последней
+     */
+    JournalChunk(File file, int from, int to) {
+        this.file = file;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public Summary verify() throws IOException {
+        if (from == to) {
+            return Summary.EMPTY;
+        }
+        long offset = JournalWriter.HEADER_SIZE + (long) from * JournalWriter.RECORD_SIZE;
+        MappedByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, (long) (to - from) * JournalWriter.RECORD_SIZE);
+        }
+        long first = buffer.getLong(0);
+        long previous = first;
+        long gaps = 0;
+        long duplicates = 0;
+        String violation = null;
+        for (int i = 1; i < to - from; i++) {
+            long number = buffer.getLong(i * JournalWriter.RECORD_SIZE);
+            if (number != previous + 1) {
+                if (number > previous) {
+                    gaps++;
+                } else {
+                    duplicates++;
+                }
+                if (violation == null) {
+                    violation = Summary.describe(previous, number, String.format("%s record %d", file, from + i));
+                }
+            }
+            previous = number;
+        }
+        return new Summary(to - from, first, previous, gaps, duplicates, violation);
+    }
+
+    @Override
+    public long length() {
+        return (long) (to - from) * JournalWriter.RECORD_SIZE;
+    }
+
+    @Override
+    public String describe() {
+        return String.format("%s record %d", file, from);
+    }
+}
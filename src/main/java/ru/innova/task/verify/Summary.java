@@ -0,0 +1,90 @@
+package ru.innova.task.verify;
+
+/**
+ * <p>
+ * Результат проверки части последовательности: первое и последнее число, количество чисел,
+ * количество пропусков и повторов (нарушений порядка) и описание первого нарушения.
+ * </p>
+ *
+ * <p>
+ * Результаты соседних частей объединяются методом {@link #merge(Summary, Summary, String)},
+ * при этом проверяется и стык частей.
+ * </p>
+ *
+ * @author sergey
+ */
+final class Summary {
+    /**
+     * Результат проверки пустой части.
+     */
+    static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, null);
+    final long count;
+    final long first;
+    final long last;
+    final long gaps;
+    final long duplicates;
+    /**
+     * Описание первого нарушения или <code>null</code>, если нарушений нет.
+     */
+    final String violation;
+
+    Summary(long count, long first, long last, long gaps, long duplicates, String violation) {
+        this.count = count;
+        this.first = first;
+        this.last = last;
+        this.gaps = gaps;
+        this.duplicates = duplicates;
+        this.violation = violation;
+    }
+
+    /**
+     * Объединить результаты двух соседних частей.
+     *
+     * @param left результат предшествующей части
+     * @param right результат следующей части
+     * @param where описание места стыка
+     * @return объединенный результат
+     */
+    static Summary merge(Summary left, Summary right, String where) {
+        if (left.count == 0) {
+            return right;
+        }
+        if (right.count == 0) {
+            return left;
+        }
+        long gaps = left.gaps + right.gaps;
+        long duplicates = left.duplicates + right.duplicates;
+        String violation = left.violation;
+        String junction = describe(left.last, right.first, where);
+        if (right.first > left.last + 1) {
+            gaps++;
+        } else if (right.first <= left.last) {
+            duplicates++;
+        }
+        if (violation == null) {
+            violation = junction != null ? junction : right.violation;
+        }
+        return new Summary(left.count + right.count, left.first, right.last, gaps, duplicates, violation);
+    }
+
+    /**
+     * Описать нарушение между двумя соседними числами.
+     *
+     * @param previous предыдущее число
+     * @param value следующее число
+     * @param where описание места
+     * @return описание нарушения или <code>null</code>, если нарушения нет
+     */
+    static String describe(long previous, long value, String where) {
+        if (value == previous + 1) {
+            return null;
+        }
+        if (value > previous) {
+            return String.format("gap: %d follows %d (%d missing) at %s", value, previous, value - previous - 1, where);
+        }
+        if (value == previous) {
+            return String.format("duplicate: %d at %s", value, where);
+        }
+        return String.format("order violation: %d follows %d at %s", value, previous, where);
+    }
+}
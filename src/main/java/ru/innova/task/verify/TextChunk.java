@@ -0,0 +1,123 @@
+package ru.innova.task.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Часть текстового файла с числами по одному в строке. Части нарезаются по байтам,
+ * а строки распределяются между ними по началу: строка принадлежит той части,
+ * в которую попадает ее первый байт. Поэтому части проверяются независимо,
+ * а каждая строка проверяется ровно один раз.
+ * </p>
+ *
+ * @author sergey
+ */
+final class TextChunk implements Chunk {
+    /**
+     * Сколько байтов сверх конца части надо отобразить, чтобы дочитать последнюю строку.
+     */
+    private static final int MAX_LINE_LENGTH = 32;
+    private final File file;
+    private final long start;
+    private final long end;
+    private final long size;
+
+    /**
+     * @param file файл
+     * @param start смещение начала части
+     * @param end смещение конца части
+     * @param size размер файла
+     */
+    TextChunk(File file, long start, long end, long size) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.size = size;
+    }
+
+    @Override
+    public Summary verify() throws IOException {
+        long mapStart = start == 0 ? 0 : start - 1;
+        long mapEnd = Math.min(size, end + MAX_LINE_LENGTH);
+        MappedByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        }
+        int limit = buffer.limit();
+        int position = 0;
+        if (start > 0) {
+            // skip the line started in the previous chunk
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+        long count = 0;
+        long first = 0;
+        long previous = 0;
+        long gaps = 0;
+        long duplicates = 0;
+        String violation = null;
+        while (position < limit && mapStart + position < end) {
+            int lineStart = position;
+            boolean negative = false;
+            long value = 0;
+            int digits = 0;
+            boolean overflow = false;
+            if (buffer.get(position) == '-') {
+                negative = true;
+                position++;
+            }
+            byte b = 0;
+            while (position < limit && (b = buffer.get(position)) >= '0' && b <= '9' && digits <= 19) {
+                overflow |= value > (Long.MAX_VALUE - (b - '0')) / 10;
+                value = value * 10 + (b - '0');
+                digits++;
+                position++;
+            }
+            if (position < limit && b == '\r') {
+                position++;
+            }
+            if (digits == 0 || digits > 19 || position == limit || buffer.get(position) != '\n') {
+                throw new IOException(String.format("Malformed line at %s:%d", file, mapStart + lineStart));
+            }
+            position++;
+            if (overflow) {
+                throw new IOException(String.format("Number out of range at %s:%d", file, mapStart + lineStart));
+            }
+            long number = negative ? -value : value;
+            if (count == 0) {
+                first = number;
+            } else if (number != previous + 1) {
+                if (number > previous) {
+                    gaps++;
+                } else {
+                    duplicates++;
+                }
+                if (violation == null) {
+                    violation = Summary.describe(previous, number, file + ":" + (mapStart + lineStart));
+                }
+            }
+            previous = number;
+            count++;
+        }
+        if (count == 0) {
+            return Summary.EMPTY;
+        }
+        return new Summary(count, first, previous, gaps, duplicates, violation);
+    }
+
+    @Override
+    public long length() {
+        return end - start;
+    }
+
+    @Override
+    public String describe() {
+        return file + ":" + start;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.innova.task.verify;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Задача, проверяющая части <code>[from, to)</code> списка: список делится пополам,
+ * пока не останется одна часть, а результаты половин объединяются по порядку.
+ * Ошибка чтения передается вызывающему в {@link VerifyException}.
+ *
+ * @author sergey
+ */
+final class VerifyTask extends RecursiveTask<Summary> {
+    private static final long serialVersionUID = 1L;
+    private final List<Chunk> chunks;
+    private final int from;
+    private final int to;
+
+    VerifyTask(List<Chunk> chunks, int from, int to) {
+        this.chunks = chunks;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Summary compute() {
+        if (to == from) {
+            return Summary.EMPTY;
+        }
+        if (to - from == 1) {
+            try {
+                return chunks.get(from).verify();
+            } catch (IOException e) {
+                throw new VerifyException(e);
+            }
+        }
+        int middle = (from + to) >>> 1;
+        VerifyTask left = new VerifyTask(chunks, from, middle);
+        VerifyTask right = new VerifyTask(chunks, middle, to);
+        left.fork();
+        Summary rightResult = right.compute();
+        return Summary.merge(left.join(), rightResult, chunks.get(middle).describe());
+    }
+
+    /**
+     * Исключение, в котором ошибка чтения выходит из задачи.
+     */
+    static final class VerifyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        VerifyException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ru.innova.task.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ru.innova.task.common.GroupCommitWriter;
+import ru.innova.task.common.JournalWriter;
+import ru.innova.task.common.Saver;
+
+/**
+ * <p>
+ * Программа проверки выходных файлов: <code>initiator_send.txt</code>, <code>initiator_receieve.txt</code>,
+ * <code>echo_.txt</code> или любых других, указанных в командной строке.
+ * В каждом файле числа должны идти подряд, без пропусков и повторов.
+ * </p>
+ *
+ * <p>
+ * Для каждого имени проверяются все найденные представления: сам текстовый файл,
+ * его сегменты (см. {@link GroupCommitWriter}) и двоичный журнал (см. {@link JournalWriter}).
+ * Файлы отображаются в память и режутся на части (по границам строк или записей), которые
+ * проверяются параллельно в {@link ForkJoinPool}. Для каждого представления выводятся
+ * количество чисел, первое и последнее число, количество пропусков и повторов, первое
+ * нарушение и скорость проверки. В конце проверяется, что все представления содержат
+ * одни и те же числа.
+ * </p>
+ *
+ * <p>
+ * Если старые сегменты удалены по правилу хранения (свойство <code>output.roll.keep</code>),
+ * то сегменты начинаются позже, чем файл без сегментов и журнал. Об этом выводится сообщение,
+ * а такое представление сверяется с остальными только на общем диапазоне чисел: последние
+ * числа должны совпадать, а первое число не может быть меньше, чем у полного представления.
+ * </p>
+ *
+ * @author sergey
+ */
+public class VerifyTool {
+    private static final String[] DEFAULT_FILES = {"initiator_send.txt", "initiator_receieve.txt", "echo_.txt"};
+    private static final long DEFAULT_CHUNK_SIZE = 32L * 1024 * 1024;
+    private final Config config;
+    private final ForkJoinPool pool;
+
+    VerifyTool(Config config) {
+        this.config = config;
+        this.pool = new ForkJoinPool(config.threads);
+    }
+
+    /**
+     * Проверить все файлы.
+     *
+     * @return <code>true</code>, если нарушений нет
+     */
+    boolean verifyAll() throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Summary> results = new ArrayList<>();
+        List<Boolean> trimmed = new ArrayList<>();
+        for (String fileName: config.files) {
+            boolean found = false;
+            if (new File(fileName).isFile()) {
+                found = true;
+                names.add(fileName);
+                results.add(verify(fileName, textChunks(new File[] {new File(fileName)})));
+                trimmed.add(false);
+            }
+            File[] segments = segments(fileName);
+            if (segments.length > 0) {
+                found = true;
+                String name = String.format("%s (%d segments)", fileName, segments.length);
+                names.add(name);
+                Summary summary = verify(name, textChunks(segments));
+                results.add(summary);
+                boolean retained = segments.length <= GroupCommitWriter.lastSegment(fileName);
+                trimmed.add(retained);
+                if (retained) {
+                    System.out.printf("  older segments were deleted by the retention policy; compared with the other files from number %d only%n", summary.first);
+                }
+            }
+            String journal = Saver.journalName(fileName);
+            if (JournalWriter.lastSegment(journal) >= 0) {
+                found = true;
+                String name = String.format("%s (journal)", journal);
+                names.add(name);
+                results.add(verify(name, journalChunks(journal)));
+                trimmed.add(false);
+            }
+            if (!found) {
+                System.out.printf("%s: not found%n", fileName);
+            }
+        }
+        boolean ok = true;
+        for (Summary summary: results) {
+            ok &= summary.violation == null;
+        }
+        for (int i = 1; i < results.size(); i++) {
+            Summary expected = results.get(0);
+            Summary actual = results.get(i);
+            if (!sameNumbers(expected, trimmed.get(0), actual, trimmed.get(i))) {
+                System.out.printf("MISMATCH: %s has %d numbers [%d, %d], but %s has %d numbers [%d, %d]%n",
+                        names.get(i), actual.count, actual.first, actual.last,
+                        names.get(0), expected.count, expected.first, expected.last);
+                ok = false;
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        return ok;
+    }
+
+    /**
+     * Сверить два представления. Если у представления удалены старые сегменты,
+     * сверяется только общий диапазон чисел.
+     *
+     * @param expectedTrimmed <code>true</code>, если у первого представления удалены старые сегменты
+     * @param actualTrimmed <code>true</code>, если у второго представления удалены старые сегменты
+     * @return <code>true</code>, если представления содержат одни и те же числа
+     */
+    private static boolean sameNumbers(Summary expected, boolean expectedTrimmed, Summary actual, boolean actualTrimmed) {
+        if (actual.last != expected.last) {
+            return false;
+        }
+        if (actualTrimmed && !expectedTrimmed) {
+            return actual.first >= expected.first;
+        }
+        if (expectedTrimmed && !actualTrimmed) {
+            return actual.first <= expected.first;
+        }
+        if (actualTrimmed) {
+            return true;
+        }
+        return actual.count == expected.count && actual.first == expected.first;
+    }
+
+    /**
+     * Проверить одно представление и вывести результат.
+     */
+    private Summary verify(String name, List<Chunk> chunks) throws IOException {
+        long bytes = 0;
+        for (Chunk chunk: chunks) {
+            bytes += chunk.length();
+        }
+        long startTime = System.nanoTime();
+        Summary summary;
+        try {
+            summary = pool.invoke(new VerifyTask(chunks, 0, chunks.size()));
+        } catch (VerifyTask.VerifyException e) {
+            throw e.getCause();
+        }
+        double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        System.out.printf("%s: %d numbers", name, summary.count);
+        if (summary.count > 0) {
+            System.out.printf(" [%d, %d]", summary.first, summary.last);
+        }
+        System.out.printf(", %d gaps, %d duplicates or order violations, %d chunks, %.3f s, %.1f MB/s, %.0f numbers/s%n",
+                summary.gaps, summary.duplicates, chunks.size(), seconds, bytes / seconds / (1024 * 1024), summary.count / seconds);
+        if (summary.violation != null) {
+            System.out.printf("  first violation: %s%n", summary.violation);
+        }
+        return summary;
+    }
+
+    /**
+     * Найти существующие сегменты файла по порядку.
+     */
+    private static File[] segments(String fileName) {
+        List<File> result = new ArrayList<>();
+        for (int index = GroupCommitWriter.lastSegment(fileName); index >= 0; index--) {
+            File segment = new File(GroupCommitWriter.segmentName(fileName, index));
+            if (!segment.isFile()) {
+                // older segments were deleted by the retention policy
+                break;
+            }
+            result.add(0, segment);
+        }
+        return result.toArray(new File[result.size()]);
+    }
+
+    private List<Chunk> textChunks(File[] files) {
+        List<Chunk> result = new ArrayList<>();
+        for (File file: files) {
+            long size = file.length();
+            for (long start = 0; start < size; start += config.chunkSize) {
+                result.add(new TextChunk(file, start, Math.min(start + config.chunkSize, size), size));
+            }
+        }
+        return result;
+    }
+
+    private List<Chunk> journalChunks(String journal) throws IOException {
+        List<Chunk> result = new ArrayList<>();
+        int recordsPerChunk = (int) Math.max(config.chunkSize / JournalWriter.RECORD_SIZE, 1);
+        for (int index = 0; index <= JournalWriter.lastSegment(journal); index++) {
+            File file = new File(JournalWriter.segmentName(journal, index));
+            int count;
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                if (input.length() < JournalWriter.HEADER_SIZE || input.readInt() != JournalWriter.MAGIC) {
+                    throw new IOException(String.format("%s is not a journal segment", file));
+                }
+                input.seek(JournalWriter.COUNT_OFFSET);
+                count = input.readInt();
+                if (count < 0 || JournalWriter.HEADER_SIZE + (long) count * JournalWriter.RECORD_SIZE > input.length()) {
+                    throw new IOException(String.format("Journal segment %s is corrupted", file));
+                }
+            }
+            for (int from = 0; from < count; from += recordsPerChunk) {
+                result.add(new JournalChunk(file, from, (int) Math.min((long) from + recordsPerChunk, count)));
+            }
+        }
+        return result;
+    }
+
+    private static final class Config {
+        String[] files;
+        int threads;
+        long chunkSize;
+
+        Config() {
+            // empty constructor
+        }
+    }
+
+    private static int usage(int retval) {
+        PrintStream out;
+        if (retval == 0) {
+            out = System.out;
+        } else {
+            out = System.err;
+        }
+        out.printf("Usage: java [-Dverify.threads=<count>] [-Dverify.chunk=<bytes>] %s [<file>...]\n", VerifyTool.class.getName());
+        return retval;
+    }
+
+    private static Config parseArguments(String[] args) {
+        Config config = new Config();
+        config.files = args.length > 0 ? args : DEFAULT_FILES;
+        config.threads = Integer.getInteger("verify.threads", Runtime.getRuntime().availableProcessors());
+        if (config.threads <= 0) {
+            System.err.printf("Incorrect number of threads %d. Specify number greater than %d\n", config.threads, 0);
+            System.exit(usage(3));
+        }
+        config.chunkSize = Long.getLong("verify.chunk", DEFAULT_CHUNK_SIZE);
+        if (config.chunkSize <= 0 || config.chunkSize > Integer.MAX_VALUE / 2) {
+            System.err.printf("Incorrect chunk size %d. Specify number greater than %d less or equal than %d\n", config.chunkSize, 0, Integer.MAX_VALUE / 2);
+            System.exit(usage(3));
+        }
+        return config;
+    }
+
+    public static void main(String[] args) {
+        try {
+            Config config = parseArguments(args);
+            VerifyTool tool = new VerifyTool(config);
+            System.exit(tool.verifyAll() ? 0 : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+}
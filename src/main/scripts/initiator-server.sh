@@ -1,4 +1,4 @@
 #! /bin/sh
 
 cd "$(dirname "$0")"
-exec java -classpath ${project.build.finalName}.jar ru.innova.task.initiator.InitiatorServer "$@"
+exec java $JAVA_OPTS -classpath ${project.build.finalName}.jar ru.innova.task.initiator.InitiatorServer "$@"
@@ -1,3 +1,3 @@
 @echo off
 cd /d %~dp0
-java -classpath ${project.build.finalName}.jar ru.innova.task.proxy.ProxyServer %*
\ No newline at end of file
+java %JAVA_OPTS% -classpath ${project.build.finalName}.jar ru.innova.task.proxy.ProxyServer %*
\ No newline at end of file
@@ -0,0 +1,3 @@
+@echo off
+cd /d %~dp0
+java %JAVA_OPTS% -classpath ${project.build.finalName}.jar ru.innova.task.verify.VerifyTool %*
\ No newline at end of file
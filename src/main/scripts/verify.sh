@@ -0,0 +1,4 @@
+#! /bin/sh
+
+cd "$(dirname "$0")"
+exec java $JAVA_OPTS -classpath ${project.build.finalName}.jar ru.innova.task.verify.VerifyTool "$@"
@@ -0,0 +1,260 @@
+package ru.innova.task.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Общие проверки очередей {@link ReorderBuffer}. Наследник создает проверяемую очередь.
+ *
+ * @author sergey
+ */
+public abstract class AbstractReorderBufferTest {
+    protected static final int SEGMENT_SIZE = 64;
+    private static final int PRODUCERS = 4;
+    private static final int COUNT = 200000;
+    private static final int SHUFFLE_BLOCK = 5 * SEGMENT_SIZE;
+
+    /**
+     * Создать очередь.
+     *
+     * @param segmentSize размер сегмента
+     * @param maxWindow наибольшее окно
+     * @param firstValue первое ожидаемое значение
+     * @return очередь
+     */
+    protected abstract ReorderBuffer create(int segmentSize, int maxWindow, long firstValue);
+
+    @Test(timeout = 10000)
+    public void outOfOrderNumbersComeOutInOrder() throws Exception {
+        ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 10);
+        for (long value = 10 + 3 * SEGMENT_SIZE - 1; value >= 10; value--) {
+            queue.putLong(value);
+        }
+        for (long value = 10; value < 10 + 3 * SEGMENT_SIZE; value++) {
+            assertEquals(value, queue.takeLong());
+        }
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentProducersDeliverEveryNumberOnce() throws Exception {
+        final ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        List<Future<Void>> results = startProducers(queue);
+        SequenceRange range = new SequenceRange();
+        long expected = 0;
+        while (expected < COUNT) {
+            queue.takeRun(range, 1000);
+            assertEquals(expected, range.getFirst());
+            expected += range.getCount();
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        assertEquals(COUNT, expected);
+        assertEquals(0, queue.getDuplicates());
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+    }
+
+    @Test(timeout = 10000)
+    public void duplicatesAndTakenNumbersAreDropped() throws Exception {
+        ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        queue.putLong(1);
+        queue.putLong(1);
+        queue.putLong(0);
+        assertEquals(1, queue.getDuplicates());
+        assertEquals(0, queue.takeLong());
+        assertEquals(1, queue.takeLong());
+        queue.putLong(0);
+        queue.putLong(1);
+        assertEquals(3, queue.getDuplicates());
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+        queue.putLong(2);
+        assertEquals(2, queue.takeLong());
+    }
+
+    @Test(timeout = 10000)
+    public void skipToDropsSkippedNumbers() throws Exception {
+        ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        queue.putLong(0);
+        queue.putLong(7);
+        queue.skipTo(5);
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+        assertEquals(5, queue.getSkipped());
+        queue.putLong(3);
+        queue.putLong(5);
+        assertEquals(5, queue.takeLong());
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+        queue.putLong(6);
+        assertEquals(6, queue.takeLong());
+        assertEquals(7, queue.takeLong());
+        assertEquals(1, queue.getDuplicates());
+        queue.skipTo(2);
+        queue.putLong(8);
+        assertEquals(8, queue.takeLong());
+        assertEquals(5, queue.getSkipped());
+    }
+
+    @Test(timeout = 10000)
+    public void skipToPastTheLastSegment() throws Exception {
+        ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        long target = 100L * SEGMENT_SIZE + 7;
+        queue.putLong(1);
+        queue.skipTo(target);
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+        assertEquals(target, queue.getSkipped());
+        queue.putLong(target - 1);
+        queue.putLong(target + SEGMENT_SIZE);
+        queue.putLong(target);
+        assertEquals(target, queue.takeLong());
+        assertEquals(ProtocolConstants.NONE_VALUE, queue.pollLong());
+        for (long value = target + 1; value < target + SEGMENT_SIZE; value++) {
+            queue.putLong(value);
+        }
+        SequenceRange range = new SequenceRange();
+        long expected = target + 1;
+        while (expected <= target + SEGMENT_SIZE) {
+            assertTrue(queue.pollRun(range, SEGMENT_SIZE, 1, TimeUnit.SECONDS));
+            assertEquals(expected, range.getFirst());
+            expected += range.getCount();
+        }
+        assertFalse(queue.pollRun(range, SEGMENT_SIZE, 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.getDuplicates());
+    }
+
+    @Test(timeout = 10000)
+    public void waitingConsumerWakesUpAfterSkip() throws Exception {
+        final ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> taken = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return queue.takeLong();
+            }
+        });
+        executor.shutdown();
+        // потребитель должен уснуть до пропуска
+        Thread.sleep(50);
+        assertFalse(taken.isDone());
+        queue.skipTo(100);
+        Thread.sleep(50);
+        queue.putLong(100);
+        assertEquals(100, taken.get(2, TimeUnit.SECONDS).longValue());
+    }
+
+    @Test(timeout = 10000)
+    public void pollingConsumerWakesUpAfterSkip() throws Exception {
+        final ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> polled = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                SequenceRange range = new SequenceRange();
+                long start = System.nanoTime();
+                assertTrue(queue.pollRun(range, 10, 1, TimeUnit.MINUTES));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+                return range.getFirst();
+            }
+        });
+        executor.shutdown();
+        Thread.sleep(50);
+        queue.skipTo(3 * SEGMENT_SIZE + 1);
+        Thread.sleep(50);
+        queue.putLong(3 * SEGMENT_SIZE + 1);
+        assertEquals(3 * SEGMENT_SIZE + 1, polled.get(2, TimeUnit.SECONDS).longValue());
+    }
+
+    @Test(timeout = 10000)
+    public void putBlocksUntilWindowAdvances() throws Exception {
+        final ReorderBuffer queue = create(SEGMENT_SIZE, 2 * SEGMENT_SIZE, 0);
+        assertFalse(queue.offerLong(2 * SEGMENT_SIZE));
+        assertTrue(queue.offerLong(2 * SEGMENT_SIZE - 1));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Void> blocked = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                queue.putLong(2 * SEGMENT_SIZE);
+                return null;
+            }
+        });
+        executor.shutdown();
+        while (!queue.isStalled()) {
+            Thread.sleep(1);
+        }
+        for (long value = 0; value < SEGMENT_SIZE - 1; value++) {
+            queue.putLong(value);
+            assertEquals(value, queue.takeLong());
+        }
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+        assertTrue(queue.isStalled());
+        queue.putLong(SEGMENT_SIZE - 1);
+        assertEquals(SEGMENT_SIZE - 1, queue.takeLong());
+        blocked.get(5, TimeUnit.SECONDS);
+        assertFalse(queue.isStalled());
+        assertFalse(queue.offerLong(3 * SEGMENT_SIZE));
+        for (long value = SEGMENT_SIZE; value < 2 * SEGMENT_SIZE - 1; value++) {
+            queue.putLong(value);
+        }
+        SequenceRange range = new SequenceRange();
+        queue.takeRun(range, Integer.MAX_VALUE);
+        assertEquals(SEGMENT_SIZE, range.getFirst());
+        assertEquals(SEGMENT_SIZE + 1, range.getCount());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentProducersWithinWindow() throws Exception {
+        // окно шире блока, который поток помещает в обратном порядке, иначе все потоки ждут окна
+        ReorderBuffer queue = create(SEGMENT_SIZE, SHUFFLE_BLOCK + 3 * SEGMENT_SIZE, 0);
+        List<Future<Void>> results = startProducers(queue);
+        SequenceRange range = new SequenceRange();
+        long expected = 0;
+        while (expected < COUNT) {
+            queue.takeRun(range, 1000);
+            assertEquals(expected, range.getFirst());
+            expected += range.getCount();
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        assertEquals(0, queue.getDuplicates());
+    }
+
+    /**
+     * Запустить потоки, которые вместе помещают в очередь числа от 0 до {@link #COUNT}.
+     * Каждый поток берет свои числа блоками и помещает блок в обратном порядке.
+     */
+    private List<Future<Void>> startProducers(final ReorderBuffer queue) {
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            final int producer = i;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int block = 0; block < COUNT; block += SHUFFLE_BLOCK) {
+                        int end = Math.min(block + SHUFFLE_BLOCK, COUNT);
+                        for (int value = end - 1; value >= block; value--) {
+                            if (value % PRODUCERS == producer) {
+                                queue.putLong(value);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        return results;
+    }
+}
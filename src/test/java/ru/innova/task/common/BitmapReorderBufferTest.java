@@ -0,0 +1,35 @@
+package ru.innova.task.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Проверка очереди {@link BitmapReorderBuffer}.
+ *
+ * @author sergey
+ */
+public class BitmapReorderBufferTest extends AbstractReorderBufferTest {
+
+    @Override
+    protected ReorderBuffer create(int segmentSize, int maxWindow, long firstValue) {
+        return new BitmapReorderBuffer(segmentSize, maxWindow, firstValue);
+    }
+
+    @Test(timeout = 10000)
+    public void consecutiveNumbersAreTakenAsOneRun() throws Exception {
+        ReorderBuffer queue = create(SEGMENT_SIZE, AbstractReorderBuffer.UNLIMITED_WINDOW, 3);
+        for (long value = 3 + 2 * SEGMENT_SIZE; value >= 3; value--) {
+            queue.putLong(value);
+        }
+        SequenceRange range = new SequenceRange();
+        queue.takeRun(range, Integer.MAX_VALUE);
+        assertEquals(3, range.getFirst());
+        assertEquals(2 * SEGMENT_SIZE + 1, range.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentSizeMustBeWholeWords() {
+        new BitmapReorderBuffer(100, AbstractReorderBuffer.UNLIMITED_WINDOW, 0);
+    }
+}
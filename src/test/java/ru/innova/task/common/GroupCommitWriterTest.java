@@ -0,0 +1,126 @@
+package ru.innova.task.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Проверка выходного файла {@link GroupCommitWriter}.
+ *
+ * @author sergey
+ */
+public class GroupCommitWriterTest {
+    private static final DurabilityPolicy ON_CLOSE = new DurabilityPolicy(0, 0, false, false);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String fileName;
+
+    @Before
+    public void setUp() {
+        fileName = new File(folder.getRoot(), "output.txt").getPath();
+    }
+
+    @Test
+    public void recordsAreDecimalLines() throws IOException {
+        long[] values = {0, 7, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        try (GroupCommitWriter writer = new GroupCommitWriter(fileName, ON_CLOSE)) {
+            for (long value: values) {
+                writer.appendLong(value);
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        for (long value: values) {
+            expected.add(String.valueOf(value));
+        }
+        assertEquals(expected, lines(fileName));
+    }
+
+    @Test
+    public void recordsAreCommittedInGroups() throws IOException {
+        try (GroupCommitWriter writer = new GroupCommitWriter(fileName, new DurabilityPolicy(3, 0, false, false))) {
+            writer.appendLong(1);
+            writer.appendLong(2);
+            assertTrue(writer.hasPending());
+            assertFalse(writer.isCommitDue());
+            writer.appendLong(3);
+            assertTrue(writer.isCommitDue());
+            writer.commit();
+            assertFalse(writer.hasPending());
+            assertEquals(Arrays.asList("1", "2", "3"), lines(fileName));
+            assertEquals(1, writer.getCommits());
+            assertEquals(3, writer.getCommittedRecords());
+        }
+    }
+
+    @Test
+    public void oldSegmentsAreDeletedByRetention() throws IOException {
+        write(0, 100, new RollingPolicy(0, 10, 2, 4), false);
+        assertEquals(9, GroupCommitWriter.lastSegment(fileName));
+        for (int index = 0; index < 8; index++) {
+            assertFalse(new File(GroupCommitWriter.segmentName(fileName, index)).exists());
+            assertFalse(new File(GroupCommitWriter.indexName(fileName, index)).exists());
+        }
+        assertEquals(Arrays.asList("80", "81", "82", "83", "84", "85", "86", "87", "88", "89"),
+                lines(GroupCommitWriter.segmentName(fileName, 8)));
+        assertTrue(new File(GroupCommitWriter.indexName(fileName, 9)).exists());
+    }
+
+    @Test
+    public void newRunDeletesSegmentsLeftAfterRetention() throws IOException {
+        write(1000, 100, new RollingPolicy(0, 10, 2, 4), false);
+        write(0, 15, new RollingPolicy(0, 10, 2, 4), false);
+        assertEquals(1, GroupCommitWriter.lastSegment(fileName));
+        for (int index = 2; index < 10; index++) {
+            assertFalse(new File(GroupCommitWriter.segmentName(fileName, index)).exists());
+            assertFalse(new File(GroupCommitWriter.indexName(fileName, index)).exists());
+        }
+        assertEquals("14", last(lines(GroupCommitWriter.segmentName(fileName, 1))));
+        assertEquals(14, OutputRecovery.truncateAbove(fileName, true, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void appendStartsNextSegment() throws IOException {
+        write(0, 25, new RollingPolicy(0, 10, 0, 4), false);
+        write(25, 5, new RollingPolicy(0, 10, 0, 4), true);
+        assertEquals(3, GroupCommitWriter.lastSegment(fileName));
+        assertEquals(Arrays.asList("20", "21", "22", "23", "24"), lines(GroupCommitWriter.segmentName(fileName, 2)));
+        assertEquals(Arrays.asList("25", "26", "27", "28", "29"), lines(GroupCommitWriter.segmentName(fileName, 3)));
+    }
+
+    @Test
+    public void segmentNamesKeepExtension() {
+        assertEquals("a/out.000012.txt", GroupCommitWriter.segmentName("a/out.txt", 12));
+        assertEquals("a/out.000012.idx", GroupCommitWriter.indexName("a/out.txt", 12));
+        assertEquals("out.000003", GroupCommitWriter.segmentName("out", 3));
+        assertEquals(-1, GroupCommitWriter.lastSegment(fileName));
+    }
+
+    private void write(long first, int count, RollingPolicy rolling, boolean append) throws IOException {
+        try (GroupCommitWriter writer = new GroupCommitWriter(fileName, ON_CLOSE, rolling, append)) {
+            for (long value = first; value < first + count; value++) {
+                writer.appendLong(value);
+            }
+        }
+    }
+
+    static List<String> lines(String name) throws IOException {
+        return Files.readAllLines(new File(name).toPath(), StandardCharsets.US_ASCII);
+    }
+
+    private static String last(List<String> lines) {
+        return lines.get(lines.size() - 1);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.innova.task.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Проверка восстановления выходных файлов {@link OutputRecovery}.
+ *
+ * @author sergey
+ */
+public class OutputRecoveryTest {
+    private static final DurabilityPolicy ON_CLOSE = new DurabilityPolicy(0, 0, false, false);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String fileName;
+
+    @Before
+    public void setUp() {
+        fileName = new File(folder.getRoot(), "output.txt").getPath();
+    }
+
+    @Test
+    public void unfinishedLineIsDropped() throws IOException {
+        write(1, 5, null);
+        appendText(fileName, "12");
+        assertEquals(5, OutputRecovery.truncateAbove(fileName, false, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), GroupCommitWriterTest.lines(fileName));
+    }
+
+    @Test
+    public void numbersAboveLimitAreDropped() throws IOException {
+        write(1, 5, null);
+        appendText(fileName, "6");
+        assertEquals(3, OutputRecovery.truncateAbove(fileName, false, 3));
+        assertEquals(Arrays.asList("1", "2", "3"), GroupCommitWriterTest.lines(fileName));
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, false, 0));
+        assertEquals(0, new File(fileName).length());
+    }
+
+    @Test
+    public void clearingDoesNotReadFile() throws IOException {
+        appendText(fileName, "not a number" + System.lineSeparator());
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, false, ProtocolConstants.NONE_VALUE));
+        assertEquals(0, new File(fileName).length());
+    }
+
+    @Test
+    public void missingFileHasNoNumbers() throws IOException {
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, false, 10));
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, true, 10));
+        assertFalse(new File(fileName).exists());
+    }
+
+    @Test
+    public void segmentsAboveLimitAreDeletedAndIndexIsTrimmed() throws IOException {
+        write(0, 40, new RollingPolicy(0, 10, 0, 3));
+        appendText(GroupCommitWriter.segmentName(fileName, 3), "4");
+        assertEquals(25, OutputRecovery.truncateAbove(fileName, true, 25));
+        assertEquals(2, GroupCommitWriter.lastSegment(fileName));
+        assertFalse(new File(GroupCommitWriter.indexName(fileName, 3)).exists());
+        String segment = GroupCommitWriter.segmentName(fileName, 2);
+        assertEquals(Arrays.asList("20", "21", "22", "23", "24", "25"), GroupCommitWriterTest.lines(segment));
+        String index = GroupCommitWriter.indexName(fileName, 2);
+        // marks for 20, 23 remain, the mark for 26 is dropped
+        assertEquals(2 * SegmentIndex.ENTRY_SIZE, new File(index).length());
+        assertTrue(SegmentIndex.find(index, 29) < new File(segment).length());
+    }
+
+    @Test
+    public void segmentsDeletedByRetentionAreSkipped() throws IOException {
+        write(0, 100, new RollingPolicy(0, 10, 3, 4));
+        assertEquals(85, OutputRecovery.truncateAbove(fileName, true, 85));
+        assertEquals(8, GroupCommitWriter.lastSegment(fileName));
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, true, 50));
+        assertEquals(-1, GroupCommitWriter.lastSegment(fileName));
+    }
+
+    @Test
+    public void clearingDeletesSegmentsAcrossRetentionGap() throws IOException {
+        write(0, 100, new RollingPolicy(0, 10, 2, 4));
+        // a segment left below the gap, e.g. by an older run
+        write(0, 5, null, GroupCommitWriter.segmentName(fileName, 0));
+        assertEquals(ProtocolConstants.NONE_VALUE, OutputRecovery.truncateAbove(fileName, true, ProtocolConstants.NONE_VALUE));
+        assertEquals(-1, GroupCommitWriter.lastSegment(fileName));
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    private void write(long first, int count, RollingPolicy rolling) throws IOException {
+        write(first, count, rolling, fileName);
+    }
+
+    private static void write(long first, int count, RollingPolicy rolling, String name) throws IOException {
+        GroupCommitWriter writer = rolling == null
+                ? new GroupCommitWriter(name, ON_CLOSE)
+                : new GroupCommitWriter(name, ON_CLOSE, rolling);
+        try {
+            for (long value = first; value < first + count; value++) {
+                writer.appendLong(value);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void appendText(String name, String text) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(name, true)) {
+            output.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
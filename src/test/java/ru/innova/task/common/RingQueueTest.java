@@ -0,0 +1,14 @@
+package ru.innova.task.common;
+
+/**
+ * Проверка очереди {@link RingQueue}.
+ *
+ * @author sergey
+ */
+public class RingQueueTest extends AbstractReorderBufferTest {
+
+    @Override
+    protected ReorderBuffer create(int segmentSize, int maxWindow, long firstValue) {
+        return new RingQueue(segmentSize, maxWindow, firstValue);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.innova.task.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Проверка поиска по индексу сегмента {@link SegmentIndex}.
+ *
+ * @author sergey
+ */
+public class SegmentIndexTest {
+    private static final int INTERVAL = 4;
+    private static final int STEP = 3;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String fileName;
+
+    @Before
+    public void setUp() throws IOException {
+        fileName = new File(folder.getRoot(), "output.txt").getPath();
+        DurabilityPolicy policy = new DurabilityPolicy(0, 0, false, false);
+        try (GroupCommitWriter writer = new GroupCommitWriter(fileName, policy, new RollingPolicy(0, 50, 0, INTERVAL))) {
+            for (long value = 100; value < 100 + 100 * STEP; value += STEP) {
+                writer.appendLong(value);
+            }
+        }
+    }
+
+    @Test
+    public void indexHasMarkEveryInterval() {
+        File index = new File(GroupCommitWriter.indexName(fileName, 0));
+        // 50 records, a mark for records 0, 4, ..., 48
+        assertEquals((50 + INTERVAL - 1) / INTERVAL * SegmentIndex.ENTRY_SIZE, index.length());
+    }
+
+    @Test
+    public void everyNumberIsFoundWithinOneInterval() throws IOException {
+        for (int segment = 0; segment < 2; segment++) {
+            String segmentName = GroupCommitWriter.segmentName(fileName, segment);
+            String indexName = GroupCommitWriter.indexName(fileName, segment);
+            long first = 100 + segment * 50 * STEP;
+            for (long value = first; value < first + 50 * STEP; value += STEP) {
+                long offset = SegmentIndex.find(indexName, value);
+                assertTrue(offset >= 0);
+                assertTrue(String.format("%d not found from offset %d", value, offset), linesUntil(segmentName, offset, value) < INTERVAL);
+            }
+        }
+    }
+
+    @Test
+    public void numbersBetweenRecordsPointToPrecedingMark() throws IOException {
+        String segmentName = GroupCommitWriter.segmentName(fileName, 0);
+        String indexName = GroupCommitWriter.indexName(fileName, 0);
+        long offset = SegmentIndex.find(indexName, 100 + 5 * STEP + 1);
+        assertEquals(SegmentIndex.find(indexName, 100 + 4 * STEP), offset);
+        assertEquals(SegmentIndex.find(indexName, 100 + 6 * STEP), offset);
+        assertEquals(0, linesUntil(segmentName, offset, 100 + 4 * STEP));
+    }
+
+    @Test
+    public void numberBelowSegmentIsNotFound() throws IOException {
+        assertEquals(-1, SegmentIndex.find(GroupCommitWriter.indexName(fileName, 0), 99));
+        assertEquals(-1, SegmentIndex.find(GroupCommitWriter.indexName(fileName, 1), 100 + 50 * STEP - 1));
+        assertEquals(0, SegmentIndex.find(GroupCommitWriter.indexName(fileName, 1), 100 + 50 * STEP));
+    }
+
+    /**
+     * Посчитать строки от смещения до строки с указанным числом.
+     */
+    private static int linesUntil(String segmentName, long offset, long value) throws IOException {
+        try (RandomAccessFile segment = new RandomAccessFile(segmentName, "r")) {
+            segment.seek(offset);
+            int skipped = 0;
+            for (String line = segment.readLine(); line != null; line = segment.readLine()) {
+                if (Long.parseLong(line) == value) {
+                    return skipped;
+                }
+                skipped++;
+            }
+            return Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.innova.task.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Проверка кольцевого буфера {@link ByteRing}.
+ *
+ * @author sergey
+ */
+public class ByteRingTest {
+
+    @Test(timeout = 10000)
+    public void bytesPassInOrderThroughWrapAround() throws Exception {
+        final ByteRing ring = new ByteRing(16);
+        final int total = 100000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Void> writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                byte[] chunk = new byte[7];
+                for (int done = 0; done < total; done += chunk.length) {
+                    int count = Math.min(chunk.length, total - done);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = (byte) (done + i);
+                    }
+                    ring.write(chunk, 0, count);
+                }
+                ring.close();
+                return null;
+            }
+        });
+        executor.shutdown();
+        byte[] buffer = new byte[5];
+        int received = 0;
+        int count;
+        while ((count = ring.read(buffer, 0, buffer.length)) >= 0) {
+            for (int i = 0; i < count; i++) {
+                assertEquals((byte) (received + i), buffer[i]);
+            }
+            received += count;
+        }
+        writer.get();
+        assertEquals(total, received);
+    }
+
+    @Test
+    public void offerTakesAllBytesOrNone() throws IOException {
+        ByteRing ring = new ByteRing(8);
+        assertTrue(ring.offer(new byte[] {1, 2, 3, 4, 5}, 0, 5));
+        assertFalse(ring.offer(new byte[] {6, 7, 8, 9}, 0, 4));
+        assertEquals(5, ring.available());
+        assertTrue(ring.offer(new byte[] {6, 7, 8}, 0, 3));
+        byte[] buffer = new byte[8];
+        assertEquals(8, ring.read(buffer, 0, buffer.length));
+        assertEquals(8, buffer[7]);
+    }
+
+    @Test(timeout = 10000)
+    public void readerDrainsDataBeforeEndOfStream() throws IOException {
+        ByteRing ring = new ByteRing(8);
+        ring.write(new byte[] {1, 2, 3}, 0, 3);
+        ring.close();
+        byte[] buffer = new byte[8];
+        assertEquals(3, ring.read(buffer, 0, buffer.length));
+        assertEquals(3, buffer[2]);
+        assertEquals(-1, ring.read(buffer, 0, buffer.length));
+        assertEquals(-1, ring.read(buffer, 0, buffer.length));
+    }
+
+    @Test(timeout = 10000)
+    public void readerWaitsForData() throws Exception {
+        final ByteRing ring = new ByteRing(8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> reader = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                return ring.read(new byte[8], 0, 8);
+            }
+        });
+        executor.shutdown();
+        Thread.sleep(20);
+        assertFalse(reader.isDone());
+        ring.write(new byte[] {9}, 0, 1);
+        assertEquals(1, reader.get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test(timeout = 10000)
+    public void blockedWriterFailsOnClose() throws Exception {
+        final ByteRing ring = new ByteRing(4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Void> writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                ring.write(new byte[6], 0, 6);
+                return null;
+            }
+        });
+        executor.shutdown();
+        while (ring.available() < 4) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(20);
+        assertFalse(writer.isDone());
+        ring.close();
+        try {
+            writer.get(5, TimeUnit.SECONDS);
+            fail("Writer must fail on a closed ring");
+        } catch (ExecutionException e) {
+            assertEquals(IOException.class, e.getCause().getClass());
+        }
+        assertEquals(4, ring.read(new byte[8], 0, 8));
+        assertEquals(-1, ring.read(new byte[8], 0, 8));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        ByteRing ring = new ByteRing(4);
+        ring.close();
+        ring.write(new byte[1], 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new ByteRing(12);
+    }
+}
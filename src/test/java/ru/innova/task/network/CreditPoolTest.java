@@ -0,0 +1,103 @@
+package ru.innova.task.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import ru.innova.task.common.LongArrayBlockingQueue;
+import ru.innova.task.common.LongBlockingQueue;
+
+/**
+ * Проверка кредитов {@link CreditPool}.
+ *
+ * @author sergey
+ */
+public class CreditPoolTest {
+    private static final int CAPACITY = 1000;
+    private static final int WINDOW = 300;
+    private static final int CONNECTIONS = 4;
+    private static final int COUNT = 200000;
+
+    @Test
+    public void creditsDoNotExceedFreeCapacity() {
+        LongBlockingQueue queue = new LongArrayBlockingQueue(CAPACITY);
+        CreditPool pool = new CreditPool(queue, WINDOW);
+        assertEquals(WINDOW, pool.acquire(WINDOW));
+        assertEquals(WINDOW, pool.acquire(WINDOW));
+        assertEquals(WINDOW, pool.acquire(WINDOW));
+        assertEquals(CAPACITY - 3 * WINDOW, pool.acquire(WINDOW));
+        assertEquals(0, pool.acquire(WINDOW));
+        for (int i = 0; i < WINDOW; i++) {
+            assertTrue(queue.offerLong(i));
+        }
+        pool.release(WINDOW);
+        assertEquals(0, pool.acquire(WINDOW));
+        queue.drainTo(new long[10]);
+        assertEquals(10, pool.acquire(WINDOW));
+        assertEquals(0, pool.acquire(WINDOW));
+        assertEquals(CAPACITY + 10, pool.getMeter().getCredits());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentConnectionsNeverOverfillQueue() throws Exception {
+        final LongBlockingQueue queue = new LongArrayBlockingQueue(CAPACITY);
+        final CreditPool pool = new CreditPool(queue, WINDOW);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(CONNECTIONS + 1);
+        List<Future<Integer>> connections = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            connections.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int sent = 0;
+                    while (sent < COUNT) {
+                        int credits = pool.acquire(Math.min(WINDOW, COUNT - sent));
+                        if (credits == 0) {
+                            Thread.yield();
+                            continue;
+                        }
+                        for (int j = 0; j < credits; j++) {
+                            // within credits the queue always has room
+                            assertTrue(queue.offerLong(sent + j));
+                        }
+                        pool.release(credits);
+                        sent += credits;
+                    }
+                    return sent;
+                }
+            }));
+        }
+        Future<Long> consumer = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                long[] buffer = new long[64];
+                long taken = 0;
+                while (!done.get() || queue.size() > 0) {
+                    int count = queue.drainTo(buffer);
+                    if (count == 0) {
+                        Thread.yield();
+                    }
+                    taken += count;
+                }
+                return taken;
+            }
+        });
+        executor.shutdown();
+        for (Future<Integer> connection : connections) {
+            assertEquals(COUNT, connection.get().intValue());
+        }
+        done.set(true);
+        assertEquals((long) CONNECTIONS * COUNT, consumer.get().longValue());
+        assertEquals((long) CONNECTIONS * COUNT, pool.getMeter().getCredits());
+        assertEquals(CAPACITY, pool.acquire(CAPACITY + 1));
+    }
+}
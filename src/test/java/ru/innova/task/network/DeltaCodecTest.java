@@ -0,0 +1,119 @@
+package ru.innova.task.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * Проверка кодировки пакетов разностей {@link DeltaCodec}.
+ *
+ * @author sergey
+ */
+public class DeltaCodecTest {
+
+    @Test
+    public void consecutiveNumbersTakeOneByteEach() throws IOException {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 5 + i;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        assertEquals(values.length, DeltaCodec.encode(values, 0, values.length, buffer));
+        assertEquals(8 + values.length, buffer.position());
+        buffer.flip();
+        assertArrayEquals(values, decodeAll(buffer, values.length));
+    }
+
+    @Test
+    public void negativeZeroAndExtremeDeltas() throws IOException {
+        long[] values = {0, 0, -1, -1, 63, -64, 1000000, 999999, Long.MAX_VALUE, Long.MIN_VALUE,
+            Long.MIN_VALUE, Long.MAX_VALUE, -1, 0, Long.MIN_VALUE + 1, 1};
+        assertArrayEquals(values, roundTrip(values));
+    }
+
+    @Test
+    public void framesStartFromTheirOwnFirstNumber() throws IOException {
+        long[] values = new long[ProtocolConstants.MAX_BATCH_SIZE * 3 + 17];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i % 3 == 0 ? -i : i) * 1000003L;
+        }
+        assertArrayEquals(values, roundTrip(values));
+    }
+
+    @Test
+    public void partialBufferTakesWhatFits() throws IOException {
+        long[] values = {Long.MAX_VALUE, Long.MIN_VALUE, 1, 2, 3};
+        ByteBuffer buffer = ByteBuffer.allocate(8 + DeltaCodec.MAX_VARINT_SIZE - 1);
+        assertEquals(0, DeltaCodec.encode(values, 0, values.length, buffer));
+        assertEquals(0, buffer.position());
+
+        buffer = ByteBuffer.allocate(8 + 2 * DeltaCodec.MAX_VARINT_SIZE + 3);
+        int count = DeltaCodec.encode(values, 0, values.length, buffer);
+        assertEquals(2, count);
+        assertEquals(0, buffer.position() % 4);
+        buffer.flip();
+        assertArrayEquals(Arrays.copyOf(values, count), decodeAll(buffer, count));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void batchIsLimitedByMaxBatchSize() {
+        long[] values = new long[ProtocolConstants.MAX_BATCH_SIZE + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        assertEquals(ProtocolConstants.MAX_BATCH_SIZE, DeltaCodec.encode(values, 0, values.length, buffer));
+    }
+
+    @Test(expected = IOException.class)
+    public void incorrectSizeIsRejected() throws IOException {
+        new DeltaCodec().start(ProtocolConstants.MAX_DELTA_SIZE + 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedNumberIsRejected() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80, 0, 0});
+        DeltaCodec codec = new DeltaCodec();
+        codec.start(2);
+        codec.decode(buffer);
+    }
+
+    /**
+     * Закодировать числа пакетами, как это делает отправитель, и декодировать их.
+     */
+    private static long[] roundTrip(long[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * DeltaCodec.MAX_VARINT_SIZE + 1024);
+        int off = 0;
+        while (off < values.length) {
+            int count = DeltaCodec.encode(values, off, values.length - off, buffer);
+            assertTrue(count > 0);
+            off += count;
+        }
+        buffer.flip();
+        long[] result = decodeAll(buffer, values.length);
+        assertFalse(buffer.hasRemaining());
+        return result;
+    }
+
+    private static long[] decodeAll(ByteBuffer buffer, int count) throws IOException {
+        DeltaCodec codec = new DeltaCodec();
+        long[] result = new long[count];
+        int n = 0;
+        while (n < count) {
+            assertEquals(ProtocolConstants.DELTA_SIGN, buffer.getInt());
+            codec.start(buffer.getInt());
+            while (codec.hasRemaining()) {
+                result[n++] = codec.decode(buffer);
+            }
+            assertEquals(0, buffer.position() % 4);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,178 @@
+package ru.innova.task.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.innova.task.common.ProtocolConstants;
+
+/**
+ * Проверка мультиплексированного соединения {@link Multiplexer} поверх соединения
+ * внутри процесса {@link MemoryConnection}.
+ *
+ * @author sergey
+ */
+public class MultiplexerTest {
+    private static final int RING_SIZE = 1 << 12;
+    private ExecutorService executor;
+    private Multiplexer client;
+    private Multiplexer server;
+    private BlockingQueue<Connection> accepted;
+    private Future<Void> clientReader;
+    private Future<Void> serverReader;
+
+    @Before
+    public void setUp() {
+        ByteRing toServer = new ByteRing(1 << 16);
+        ByteRing toClient = new ByteRing(1 << 16);
+        client = new Multiplexer(new MemoryConnection(toClient, toServer), RING_SIZE);
+        server = new Multiplexer(new MemoryConnection(toServer, toClient), RING_SIZE);
+        accepted = new LinkedBlockingQueue<>();
+        executor = Executors.newCachedThreadPool();
+        clientReader = demultiplex(client, null);
+        serverReader = demultiplex(server, new StreamListener() {
+            @Override
+            public void onStream(Connection stream) {
+                accepted.add(stream);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void streamsAreOpenedInOrderAndCarryTheirOwnData() throws Exception {
+        Connection first = client.open();
+        Connection second = client.open();
+        Connection firstAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        Connection secondAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        second.getOutputStream().write(new byte[] {2, 2});
+        first.getOutputStream().write(new byte[] {1, 1, 1});
+        assertArrayEquals(new byte[] {1, 1, 1}, read(firstAccepted, 3));
+        assertArrayEquals(new byte[] {2, 2}, read(secondAccepted, 2));
+        firstAccepted.getOutputStream().write(new byte[] {-1});
+        assertArrayEquals(new byte[] {-1}, read(first, 1));
+        assertEquals(0, secondAccepted.getInputStream().available());
+    }
+
+    @Test(timeout = 10000)
+    public void largeWritesAreSplitIntoFrames() throws Exception {
+        final Connection stream = client.open();
+        Connection acceptedStream = accepted.poll(5, TimeUnit.SECONDS);
+        final byte[] data = new byte[3 * ProtocolConstants.MAX_STREAM_DATA + 5];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        Future<Void> writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                stream.getOutputStream().write(data);
+                return null;
+            }
+        });
+        assertArrayEquals(data, read(acceptedStream, data.length));
+        writer.get();
+    }
+
+    @Test(timeout = 10000)
+    public void unreadStreamDoesNotStopOtherStreams() throws Exception {
+        final Connection slow = client.open();
+        Connection fast = client.open();
+        Connection slowAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        Connection fastAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        final byte[] data = new byte[4 * RING_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Future<Void> writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                slow.getOutputStream().write(data);
+                return null;
+            }
+        });
+        // the writer of the unread stream runs out of window, the other stream is still delivered
+        for (int i = 0; i < 100; i++) {
+            fast.getOutputStream().write(new byte[] {(byte) i});
+            assertArrayEquals(new byte[] {(byte) i}, read(fastAccepted, 1));
+        }
+        assertFalse(writer.isDone());
+        assertArrayEquals(data, read(slowAccepted, data.length));
+        writer.get();
+    }
+
+    @Test(timeout = 10000)
+    public void closedStreamEndsOnlyItself() throws Exception {
+        Connection first = client.open();
+        Connection second = client.open();
+        Connection firstAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        Connection secondAccepted = accepted.poll(5, TimeUnit.SECONDS);
+        first.getOutputStream().write(new byte[] {7});
+        first.close();
+        assertFalse(first.isConnected());
+        assertArrayEquals(new byte[] {7}, read(firstAccepted, 1));
+        assertEquals(-1, firstAccepted.getInputStream().read());
+        assertFalse(firstAccepted.isConnected());
+        second.getOutputStream().write(new byte[] {8});
+        assertArrayEquals(new byte[] {8}, read(secondAccepted, 1));
+        assertTrue(secondAccepted.isConnected());
+        assertTrue(client.isOpen());
+    }
+
+    @Test(timeout = 10000)
+    public void closedConnectionEndsAllStreams() throws Exception {
+        Connection stream = client.open();
+        Connection acceptedStream = accepted.poll(5, TimeUnit.SECONDS);
+        stream.getOutputStream().write(new byte[] {5});
+        client.close();
+        clientReader.get(5, TimeUnit.SECONDS);
+        serverReader.get(5, TimeUnit.SECONDS);
+        assertFalse(server.isOpen());
+        assertFalse(stream.isConnected());
+        assertArrayEquals(new byte[] {5}, read(acceptedStream, 1));
+        assertEquals(-1, acceptedStream.getInputStream().read());
+        try {
+            client.open();
+            fail("Closed connection must not open streams");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private Future<Void> demultiplex(final Multiplexer multiplexer, final StreamListener listener) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                multiplexer.demultiplex(listener);
+                return null;
+            }
+        });
+    }
+
+    private static byte[] read(Connection stream, int count) throws IOException {
+        byte[] result = new byte[count];
+        new DataInputStream(stream.getInputStream()).readFully(result);
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+package ru.innova.task.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.innova.task.common.LongBlockingQueue;
+import ru.innova.task.common.ProtocolConstants;
+import ru.innova.task.network.Connection;
+import ru.innova.task.network.MuxTransport;
+import ru.innova.task.network.Transport;
+
+/**
+ * Проверка разбора мультиплексированного соединения циклом обработки событий
+ * {@link MuxConnection}.
+ *
+ * @author sergey
+ */
+public class MuxConnectionTest {
+    private ExecutorService executor;
+    private ServerSocketChannel server;
+    private EventLoop loop;
+    private ProxyServer.Queues queues;
+    private MuxTransport transport;
+    private DataOutputStream sender;
+    private DataInputStream receiver;
+
+    @Before
+    public void setUp() throws IOException {
+        queues = new ProxyServer.Queues(0);
+        loop = new EventLoop(1, queues, null);
+        executor = Executors.newSingleThreadExecutor();
+        executor.submit(loop);
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        transport = new MuxTransport(Transport.tcp("localhost", server.socket().getLocalPort()), ProtocolConstants.INITIATOR_SIGN);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        loop.exitWork();
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void streamsCarryNumbersBothWays() throws Exception {
+        openStreams();
+        sendBatch(1, 2, 3);
+        assertTrue(queues.toInitiator.offerLong(7));
+        assertTrue(queues.toInitiator.offerLong(8));
+        long[] received = await(queues.toEcho, 3);
+        assertEquals(1, received[0]);
+        assertEquals(3, received[2]);
+        assertEquals(ProtocolConstants.BATCH_SIGN, receiver.readInt());
+        assertEquals(2, receiver.readInt());
+        assertEquals(7, receiver.readLong());
+        assertEquals(8, receiver.readLong());
+    }
+
+    @Test(timeout = 20000)
+    public void fullQueueDoesNotStopOtherStreams() throws Exception {
+        openStreams();
+        int capacity = queues.toEcho.remainingCapacity();
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(queues.toEcho.offerLong(-1));
+        }
+        // the sender stream waits for the queue, the receiver stream still gets numbers
+        sendBatch(10, 11);
+        for (long value = 0; value < 100; value++) {
+            assertTrue(queues.toInitiator.offerLong(value));
+            assertEquals(ProtocolConstants.BATCH_SIGN, receiver.readInt());
+            assertEquals(1, receiver.readInt());
+            assertEquals(value, receiver.readLong());
+        }
+        assertEquals(capacity, await(queues.toEcho, capacity).length);
+        long[] rest = await(queues.toEcho, 2);
+        assertEquals(10, rest[0]);
+        assertEquals(11, rest[1]);
+    }
+
+    /**
+     * Открыть через одно соединение логический поток, отправляющий числа, и поток, получающий их.
+     * Потоку, отправляющему числа, прокси сначала объявляет кодировки.
+     */
+    private void openStreams() throws IOException {
+        Connection senderStream = transport.connect();
+        loop.register(server.accept());
+        sender = new DataOutputStream(new BufferedOutputStream(senderStream.getOutputStream()));
+        writeHandshake(sender, ProtocolConstants.SENDER_SIGN);
+        DataInputStream feedback = new DataInputStream(senderStream.getInputStream());
+        assertEquals(ProtocolConstants.CODEC_SIGN, feedback.readInt());
+        feedback.readInt();
+        Connection receiverStream = transport.connect();
+        writeHandshake(new DataOutputStream(receiverStream.getOutputStream()), ProtocolConstants.RECEIVER_SIGN);
+        receiver = new DataInputStream(receiverStream.getInputStream());
+    }
+
+    private static void writeHandshake(DataOutputStream output, int connectorType) throws IOException {
+        output.writeInt(ProtocolConstants.INITIATOR_SIGN);
+        output.writeInt(connectorType);
+        output.flush();
+    }
+
+    private void sendBatch(long... values) throws IOException {
+        sender.writeInt(ProtocolConstants.BATCH_SIGN);
+        sender.writeInt(values.length);
+        for (long value: values) {
+            sender.writeLong(value);
+        }
+        sender.flush();
+    }
+
+    private static long[] await(LongBlockingQueue queue, int count) throws InterruptedException {
+        long[] result = new long[count];
+        int taken = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (taken < count && System.nanoTime() < deadline) {
+            int drained = queue.drainTo(result, taken, count - taken);
+            if (drained == 0) {
+                Thread.sleep(1);
+            }
+            taken += drained;
+        }
+        assertEquals(count, taken);
+        return result;
+    }
+}